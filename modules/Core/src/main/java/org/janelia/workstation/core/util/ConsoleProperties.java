@@ -262,6 +262,16 @@ public class ConsoleProperties extends ConfigProperties {
         return ConsoleProperties.getString("console.localCache.rootDirectory", StringUtils.appendIfMissing(consolePrefsDir, "/") + ".jacs-file-cache");
     }
 
+    public static String getMappedTileStoreDir() {
+        String consolePrefsDir = System.getProperty("user.home") + ConsoleProperties.getString("Console.Home.Path");
+        return ConsoleProperties.getString("console.lvv.mappedTileStore.rootDirectory", StringUtils.appendIfMissing(consolePrefsDir, "/") + ".lvv-mapped-tiles");
+    }
+
+    public static String getNeuronSnapshotDir() {
+        String consolePrefsDir = System.getProperty("user.home") + ConsoleProperties.getString("Console.Home.Path");
+        return ConsoleProperties.getString("console.lvv.neuronSnapshots.rootDirectory", StringUtils.appendIfMissing(consolePrefsDir, "/") + ".lvv-neuron-snapshots");
+    }
+
     public static String getOutOfSyncNeuronDir() {
         String consolePrefsDir = System.getProperty("user.home") + ConsoleProperties.getString("Console.Home.Path");
         return ConsoleProperties.getString("console.localCache.rootDirectory", StringUtils.appendIfMissing(consolePrefsDir, "/") + ".lvv-out-of-sync-neurons");
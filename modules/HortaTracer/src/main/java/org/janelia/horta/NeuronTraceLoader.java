@@ -3,6 +3,9 @@ package org.janelia.horta;
 
 import org.janelia.horta.render.NeuronMPRenderer;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Observable;
 import java.util.Observer;
 import org.janelia.scenewindow.SceneWindow;
@@ -28,6 +31,8 @@ import org.openide.awt.StatusDisplayer;
  */
 public class NeuronTraceLoader {
 
+    private static final int MAX_REFINEMENT_STEPS = 3;
+
     private final NeuronTracerTopComponent nttc;
     private final NeuronMPRenderer neuronMPRenderer;
     private final SceneWindow sceneWindow;
@@ -95,6 +100,13 @@ public class NeuronTraceLoader {
     }
 
     public static BrickInfoSet getBricksForCameraResolution(StaticVolumeBrickSource volumeSource, PerspectiveCamera camera) {
+        return volumeSource.getAllBrickInfoForResolution(getResolutionForCamera(volumeSource, camera));
+    }
+
+    /**
+     * @return the available resolution closest to the size of a screen pixel
+     */
+    public static Double getResolutionForCamera(StaticVolumeBrickSource volumeSource, PerspectiveCamera camera) {
         double screenPixelResolution = camera.getVantage().getSceneUnitsPerViewportHeight()
                 / camera.getViewport().getHeightPixels();
         double minDist = Double.MAX_VALUE;
@@ -109,8 +121,30 @@ public class NeuronTraceLoader {
         Double brickResolution = bestRes;
         assert brickResolution != null : "No best-resolution found.  Volume Source=" + volumeSource;
 
-        BrickInfoSet brickInfoSet = volumeSource.getAllBrickInfoForResolution(brickResolution);
-        return brickInfoSet;
+        return brickResolution;
+    }
+
+    /**
+     * Coarser resolutions to show while bricks at the target resolution load: the coarsest available
+     * resolution, then up to two more leading to the target resolution.
+     *
+     * @return resolutions coarser than the target resolution, coarsest first
+     */
+    public static List<Double> getRefinementResolutions(StaticVolumeBrickSource volumeSource, Double targetResolution) {
+        List<Double> coarser = new ArrayList<>();
+        for (Double res : volumeSource.getAvailableResolutions()) {
+            if (res > targetResolution) {
+                coarser.add(res);
+            }
+        }
+        Collections.sort(coarser, Collections.reverseOrder());
+        if (coarser.size() > MAX_REFINEMENT_STEPS) {
+            List<Double> steps = new ArrayList<>();
+            steps.add(coarser.get(0));
+            steps.addAll(coarser.subList(coarser.size() - (MAX_REFINEMENT_STEPS - 1), coarser.size()));
+            coarser = steps;
+        }
+        return coarser;
     }
 
     /**
@@ -144,6 +178,10 @@ public class NeuronTraceLoader {
         }
 
         if ((!tileAlreadyLoaded) && (!nttc.doesUpdateVolumeCache())) {
+            if (nttc.isProgressiveLoading()) {
+                showCoarsestBrick(volumeSource, pCam, colorChannel);
+            }
+
             GL3Actor boxMesh = nttc.createBrickActor((BrainTileInfo) brickInfo, colorChannel);
 
             StatusDisplayer.getDefault().setStatusText(
@@ -162,6 +200,26 @@ public class NeuronTraceLoader {
         return brickInfo;
     }
 
+    /**
+     * Shows the coarsest brick at the focus, which loads quickly, while the brick at the camera resolution loads.
+     */
+    private void showCoarsestBrick(StaticVolumeBrickSource volumeSource, PerspectiveCamera camera, int colorChannel)
+            throws IOException {
+        List<Double> refinements = getRefinementResolutions(volumeSource, getResolutionForCamera(volumeSource, camera));
+        if (refinements.isEmpty()) {
+            return;
+        }
+        BrickInfo coarsest = volumeSource.getAllBrickInfoForResolution(refinements.get(0))
+                .getBestContainingBrick(camera.getVantage().getFocusPosition());
+        if (coarsest == null) {
+            return;
+        }
+        GL3Actor coarseMesh = nttc.createBrickActor((BrainTileInfo) coarsest, colorChannel);
+        neuronMPRenderer.clearVolumeActors();
+        neuronMPRenderer.addVolumeActor(coarseMesh);
+        nttc.redrawNow();
+    }
+
     void loadKtxTileAtLocation(KtxOctreeBlockTileSource ktxSource, Vector3 location, final boolean loadPersistent)
             throws IOException {
         if (ktxSource == null) {
@@ -28,7 +28,6 @@ import javax.swing.event.MouseInputAdapter;
 import javax.swing.event.MouseInputListener;
 import javax.swing.text.Keymap;
 
-import Jama.Matrix;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.eventbus.Subscribe;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
@@ -1089,18 +1088,9 @@ public final class NeuronTracerTopComponent extends TopComponent
                     public void actionPerformed(ActionEvent e) {
                         // send out a view event to synchronize
                         Vantage vantage = sceneWindow.getVantage();
-                        Matrix m2v = TmModelManager.getInstance().getMicronToVoxMatrix();
-                        Jama.Matrix micLoc = new Jama.Matrix(new double[][]{
-                                {vantage.getFocus()[0],},
-                                {vantage.getFocus()[1],},
-                                {vantage.getFocus()[2],},
-                                {1.0,},});
-                        // NeuronVertex API requires coordinates in micrometers
-                        Jama.Matrix voxLoc = m2v.times(micLoc);
-                        Vec3 voxelXyz = new Vec3(
-                                (float) voxLoc.get(0, 0),
-                                (float) voxLoc.get(1, 0),
-                                (float) voxLoc.get(2, 0));
+                        float[] voxLoc = TmModelManager.getInstance().getMicronToVoxTransform().transform(
+                                vantage.getFocus()[0], vantage.getFocus()[1], vantage.getFocus()[2]);
+                        Vec3 voxelXyz = new Vec3(voxLoc[0], voxLoc[1], voxLoc[2]);
                         TmViewState currView = TmModelManager.getInstance().getCurrentView();
                         currView.setCameraFocusX(voxelXyz.getX());
                         currView.setCameraFocusY(voxelXyz.getY());
@@ -1813,6 +1803,10 @@ public final class NeuronTracerTopComponent extends TopComponent
         return volumeCache.isUpdateCache();
     }
 
+    boolean isProgressiveLoading() {
+        return volumeCache.isProgressiveLoading();
+    }
+
     GL3Actor createBrickActor(BrainTileInfo brainTile, int colorChannel) throws IOException {
         return new BrickActor(brainTile, imageColorModel, volumeState, colorChannel);
     }
@@ -30,7 +30,6 @@ import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
 import javax.swing.event.MouseInputListener;
 
-import Jama.Matrix;
 import org.janelia.workstation.controller.action.AnnotationSetRadiusAction;
 import org.janelia.workstation.controller.action.NeuronChooseColorAction;
 import org.janelia.workstation.controller.model.DefaultNeuron;
@@ -61,6 +60,7 @@ import org.janelia.workstation.core.util.ConsoleProperties;
 import org.janelia.model.domain.tiledMicroscope.TmNeuronMetadata;
 import org.janelia.model.domain.tiledMicroscope.TmNeuronTagMap;
 import org.janelia.workstation.core.workers.SimpleWorker;
+import org.janelia.workstation.geom.AffineTransform3d;
 import org.janelia.workstation.geom.Vec3;
 import org.janelia.workstation.integration.util.FrameworkAccess;
 import org.openide.awt.StatusDisplayer;
@@ -565,21 +565,11 @@ public class TracingInteractor extends MouseAdapter
                 hoverVertex.getY(), hoverVertex.getZ());
         ConstVector3 oldLocation = new Vector3(hoverLocation);
         ConstVector3 newLocation = oldLocation.plus(dXYZ);
-        Matrix m2v = TmModelManager.getInstance().getMicronToVoxMatrix();
-        // Matrix m2v = MatrixUtilities.deserializeMatrix(sample.getMicronToVoxMatrix(), "micronToVoxMatrix");
-        // Convert from image voxel coordinates to Cartesian micrometers
+        // Convert from Cartesian micrometers back to image voxel coordinates;
         // TmGeoAnnotation is in voxel coordinates
-        Jama.Matrix micLoc = new Jama.Matrix(new double[][]{
-                {newLocation.getX(),},
-                {newLocation.getY(),},
-                {newLocation.getZ(),},
-                {1.0,},});
-        // NeuronVertex API requires coordinates in micrometers
-        Jama.Matrix voxLoc = m2v.times(micLoc);
-        Vec3 voxelXyz = new Vec3(
-                (float) voxLoc.get(0, 0),
-                (float) voxLoc.get(1, 0),
-                (float) voxLoc.get(2, 0));
+        float[] voxLoc = TmModelManager.getInstance().getMicronToVoxTransform().transform(
+                newLocation.getX(), newLocation.getY(), newLocation.getZ());
+        Vec3 voxelXyz = new Vec3(voxLoc[0], voxLoc[1], voxLoc[2]);
         hoverVertex.setX(new Double(voxelXyz.getX()));
         hoverVertex.setY(new Double(voxelXyz.getY()));
         hoverVertex.setZ(new Double(voxelXyz.getZ()));
@@ -787,18 +777,11 @@ public class TracingInteractor extends MouseAdapter
         {
             Point optimizedPoint = optimizePosition(hoverPoint);
             Vector3 cursorXyz = volumeProjection.worldXyzForScreenXy(optimizedPoint);
-            Matrix m2v = TmModelManager.getInstance().getMicronToVoxMatrix();
+            AffineTransform3d m2v = TmModelManager.getInstance().getMicronToVoxTransform();
 
             if (m2v != null) {
-                Jama.Matrix micLoc = new Jama.Matrix(new double[][]{
-                        {cursorXyz.getX(),},
-                        {cursorXyz.getY(),},
-                        {cursorXyz.getZ(),},
-                        {1.0,},});
-                // NeuronVertex API requires coordinates in micrometers
-                Jama.Matrix voxLoc = m2v.times(micLoc);
-                Vector3 newLoc = new Vector3(voxLoc.get(0, 0), voxLoc.get(1, 0),
-                        voxLoc.get(2, 0));
+                float[] voxLoc = m2v.transform(cursorXyz.getX(), cursorXyz.getY(), cursorXyz.getZ());
+                Vector3 newLoc = new Vector3(voxLoc[0], voxLoc[1], voxLoc[2]);
                 setDensityCursor(newLoc, optimizedPoint);
             }
         }
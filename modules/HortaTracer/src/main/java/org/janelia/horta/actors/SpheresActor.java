@@ -14,6 +14,7 @@ import org.janelia.gltools.texture.Texture2d;
 import org.janelia.model.domain.tiledMicroscope.TmGeoAnnotation;
 import org.janelia.model.domain.tiledMicroscope.TmNeuronMetadata;
 import org.janelia.workstation.controller.model.TmModelManager;
+import org.janelia.workstation.geom.AffineTransform3d;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -55,9 +56,9 @@ public class SpheresActor extends BasicGL3Actor
     public void updateGeometry() {
         // TODO: more careful updating of nodes
         meshGeometry.clear();
+        AffineTransform3d voxToMicron = TmModelManager.getInstance().getVoxToMicronTransform();
         for (TmGeoAnnotation neuronVertex : neuron.getGeoAnnotationMap().values()) {
-            float[] location = TmModelManager.getInstance().getLocationInMicrometers(neuronVertex.getX(),
-                    neuronVertex.getY(), neuronVertex.getZ());
+            float[] location = voxToMicron.transform(neuronVertex.getX(), neuronVertex.getY(), neuronVertex.getZ());
             Vertex vertex = meshGeometry.addVertex(location);
             float radius = DefaultNeuron.radius;
             if (neuronVertex.getRadius()!=null)
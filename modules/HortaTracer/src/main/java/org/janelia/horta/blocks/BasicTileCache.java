@@ -5,6 +5,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -34,12 +35,54 @@ public abstract class BasicTileCache<TILE_KEY, TILE_DATA> {
 
     public interface LoadRunner<TILE_KEY, TILE_DATA> {
         TILE_DATA loadTile(TILE_KEY key) throws InterruptedException, IOException;
+
+        /**
+         * Tiles with the same batch key come from the same storage agent, and may be
+         * handed to loadTiles() together, which can look the agent up once and fetch
+         * them concurrently.
+         */
+        default Object getBatchKey(TILE_KEY key) {
+            return null;
+        }
+
+        /**
+         * Load a batch of tiles, reporting each one as soon as it is available.
+         */
+        default void loadTiles(List<TILE_KEY> keys, BatchListener<TILE_KEY, TILE_DATA> listener) throws InterruptedException {
+            for (TILE_KEY key : keys) {
+                if (!listener.isWanted(key)) {
+                    continue;
+                }
+                try {
+                    listener.tileLoaded(key, loadTile(key));
+                } catch (IOException ex) {
+                    listener.tileFailed(key, ex);
+                }
+            }
+        }
     }
 
-    private final Map<TILE_KEY, RequestProcessor.Task> queuedTiles = new ConcurrentHashMap<>();
-    private final Map<TILE_KEY, RequestProcessor.Task> loadingTiles = new ConcurrentHashMap<>();
+    public interface BatchListener<TILE_KEY, TILE_DATA> {
+        boolean isWanted(TILE_KEY key);
+
+        void tileLoaded(TILE_KEY key, TILE_DATA data);
+
+        void tileFailed(TILE_KEY key, Exception ex);
+    }
 
-    private final Set<TILE_KEY> nearVolumeMetadata = new HashSet<>();
+    // Most tiles handed to one loadTiles() call
+    private static final int MAX_BATCH_SIZE = 8;
+
+    // Tiles waiting for a load worker, in order of decreasing importance
+    private final Map<TILE_KEY, Long> queuedTiles = new LinkedHashMap<>();
+    private final Set<TILE_KEY> loadingTiles = new HashSet<>();
+    // Tiles from the most recent request
+    private Set<TILE_KEY> desiredTiles = new HashSet<>();
+    private int activeWorkers = 0;
+    private int maxWorkers = 1;
+    private int workerGeneration = 0; // workers of an earlier load processor retire on their own
+
+    private final Set<TILE_KEY> nearVolumeMetadata = ConcurrentHashMap.newKeySet();
 
     final Map<TILE_KEY, TILE_DATA> nearVolumeInRam = new ConcurrentHashMap<>();
     final Map<TILE_KEY, TILE_DATA> obsoleteTiles = new ConcurrentHashMap<>();
@@ -75,6 +118,7 @@ public abstract class BasicTileCache<TILE_KEY, TILE_DATA> {
     }
 
     public synchronized void addDesiredTile(TILE_KEY key) {
+        desiredTiles.add(key);
         if (nearVolumeMetadata.contains(key)) {
             return; // already queued
         }
@@ -82,157 +126,197 @@ public abstract class BasicTileCache<TILE_KEY, TILE_DATA> {
         if (nearVolumeInRam.containsKey(key)) {
             return; // already loaded
         }
-        queueLoad(key, getLoadRunner());
+        queueLoad(key);
+        startWorkers();
     }
 
-    public synchronized void updateDesiredTiles(List<TILE_KEY> desiredTiles) {
-        List<TILE_KEY> newTiles = new ArrayList<>();
-        for (TILE_KEY key : desiredTiles) {
-            if (!nearVolumeMetadata.contains(key)) {
-                nearVolumeMetadata.add(key);
-            }
+    public synchronized void updateDesiredTiles(List<TILE_KEY> desiredTileList) {
+        desiredTiles = new HashSet<>(desiredTileList);
+        nearVolumeMetadata.addAll(desiredTiles);
 
-            if (queuedTiles.containsKey(key)) {
-                continue; // already queued
-            }
-            if (loadingTiles.containsKey(key)) {
-                continue; // already loading
-            }
+        // Tiles that are no longer desired give up their place in line
+        queuedTiles.keySet().retainAll(desiredTiles);
+
+        for (TILE_KEY key : desiredTileList) {
             if (nearVolumeInRam.containsKey(key)) {
                 continue; // already loaded
             }
-            newTiles.add(key);
-        }
-
-        removeIfNotDesired (desiredTiles, queuedTiles);
-        removeIfNotDesired (desiredTiles, loadingTiles);
-
-        for (TILE_KEY key : newTiles) {
-            queueLoad(key, getLoadRunner());
+            queueLoad(key);
         }
+        startWorkers();
     }
 
-    private void removeIfNotDesired (List<TILE_KEY> desiredTiles, Map<TILE_KEY, RequestProcessor.Task> tileSet) {
-        Iterator<Map.Entry<TILE_KEY, RequestProcessor.Task>> mapIter = tileSet.entrySet().iterator();
-        while (mapIter.hasNext()) {
-            Map.Entry<TILE_KEY, RequestProcessor.Task> entry = mapIter.next();
-            TILE_KEY key = entry.getKey();
-            if (!desiredTiles.contains(key)) {
-                RequestProcessor.Task task = loadingTiles.get(key);
-                if (task != null) {
-                    task.cancel();
-                }
-                mapIter.remove();
-            }
+    private boolean queueLoad(TILE_KEY key) {
+        if (queuedTiles.containsKey(key)) {
+            return false; // already queued
+        }
+        if (loadingTiles.contains(key)) {
+            return false; // already loading
         }
+        log.debug("Queueing brick {} (queued={}, loading={})", key, queuedTiles.size(), loadingTiles.size());
+        queuedTiles.put(key, System.currentTimeMillis());
+        return true;
     }
 
-    public ObservableInterface getDisplayChangeObservable() {
-        return displayChangeObservable;
+    private synchronized void startWorkers() {
+        while (activeWorkers < maxWorkers && !queuedTiles.isEmpty()) {
+            activeWorkers += 1;
+            final LoadRunner<TILE_KEY, TILE_DATA> loadRunner = getLoadRunner();
+            final int generation = workerGeneration;
+            loadProcessor.post(() -> runWorker(loadRunner, generation));
+        }
     }
 
-    public Collection<TILE_DATA> popObsoleteTiles() {
-        Collection<TILE_DATA> result = new ArrayList<>(obsoleteTiles.values());
-        if (!result.isEmpty()) {
-            obsoleteTiles.clear();
+    private void runWorker(LoadRunner<TILE_KEY, TILE_DATA> loadRunner, int generation) {
+        try {
+            List<TILE_KEY> batch = nextBatch(loadRunner, generation);
+            while (!batch.isEmpty()) {
+                loadBatch(loadRunner, batch);
+                batch = nextBatch(loadRunner, generation);
+            }
+        } catch (InterruptedException ex) {
+            log.info("Tile load worker was interrupted", ex);
+            retireWorker(generation);
+        } catch (RuntimeException ex) {
+            log.error("Tile load worker failed", ex);
+            retireWorker(generation);
+            startWorkers(); // replace this worker if tiles are still queued
         }
-        return result;
     }
 
-    public void clearAllTiles() {
-        obsoleteTiles.clear();
-        nearVolumeInRam.clear();
+    private synchronized void retireWorker(int generation) {
+        if (generation == workerGeneration) {
+            activeWorkers -= 1;
+        }
     }
 
-    private synchronized boolean queueLoad(final TILE_KEY key, final LoadRunner<TILE_KEY, TILE_DATA> loadRunner) {
-        if (queuedTiles.containsKey(key)) {
-            return false; // already queued
+    /**
+     * Take the most important queued tile, and the next queued tiles from the same storage agent.
+     * Returns an empty batch, and retires the calling worker, when the queue is empty.
+     */
+    private synchronized List<TILE_KEY> nextBatch(LoadRunner<TILE_KEY, TILE_DATA> loadRunner, int generation) {
+        List<TILE_KEY> batch = new ArrayList<>();
+        Iterator<TILE_KEY> queueIter = queuedTiles.keySet().iterator();
+        if (generation != workerGeneration) {
+            return batch;
         }
-        if (loadingTiles.containsKey(key)) {
-            return false; // already loading
+        if (!queueIter.hasNext()) {
+            retireWorker(generation);
+            return batch;
         }
-        Runnable loadTask = new Runnable() {
-            @Override
-            public void run() {
-                // Move from "queued" to "loading" state
-                synchronized (queuedTiles) {
-                    RequestProcessor.Task task = queuedTiles.get(key);
-                    if (task == null) {
-                        log.warn("Tile has no task: " + key.toString());
-                        return;
-                    }
-                    log.info("Tile has loaded: {}",key.toString());
-                    loadingTiles.put(key, task);
-                    queuedTiles.remove(key);
-                }
-
-                ProgressHandle progress = ProgressHandleFactory.createHandle("Loading Tile " + key.toString() + " ...", null, null);
+        TILE_KEY first = queueIter.next();
+        long queuedTime = queuedTiles.get(first);
+        Object batchKey = loadRunner.getBatchKey(first);
+        batch.add(first);
+        queueIter.remove();
+        // Leave some work for the other workers
+        int batchSize = Math.max(1, Math.min(MAX_BATCH_SIZE, (queuedTiles.size() + 1) / maxWorkers));
+        while (batchKey != null && batch.size() < batchSize && queueIter.hasNext()) {
+            TILE_KEY key = queueIter.next();
+            if (batchKey.equals(loadRunner.getBatchKey(key))) {
+                batch.add(key);
+                queueIter.remove();
+            }
+        }
+        loadingTiles.addAll(batch);
+        log.debug("Loading batch of {} tiles; {} was queued for {} ms", batch.size(), first, System.currentTimeMillis() - queuedTime);
+        return batch;
+    }
 
-                try {
-                    // Check whether this tile is still relevant
-                    if (!nearVolumeMetadata.contains(key)) {
-                        return;
+    private void loadBatch(LoadRunner<TILE_KEY, TILE_DATA> loadRunner, List<TILE_KEY> batch) throws InterruptedException {
+        ProgressHandle progress = ProgressHandleFactory.createHandle("Loading " + batch.size() + " Tiles ...", null, null);
+        progress.start(batch.size());
+        Set<TILE_KEY> unfinished = new HashSet<>(batch);
+        try {
+            loadRunner.loadTiles(batch, new BatchListener<TILE_KEY, TILE_DATA>() {
+                @Override
+                public boolean isWanted(TILE_KEY key) {
+                    synchronized (BasicTileCache.this) {
+                        return desiredTiles.contains(key) && !nearVolumeInRam.containsKey(key);
                     }
+                }
 
-                    progress.start();
-                    progress.setDisplayName("Loading Tile " + key.toString() + " ...");
-                    progress.switchToIndeterminate();
-
-                    log.debug("Tile cache load tile data for {}", key);
-
-                    TILE_DATA tileTexture = loadRunner.loadTile(key);
-
+                @Override
+                public void tileLoaded(TILE_KEY key, TILE_DATA tileTexture) {
+                    finishTile(key, unfinished);
+                    progress.progress(batch.size() - unfinished.size());
                     if (tileTexture == null) {
-                        log.info("Tile loaded was null {}", key.toString());
+                        log.info("Tile loaded was null {}", key);
                         return;
                     }
-
                     if (!nearVolumeMetadata.contains(key)) {
-                        log.info("Tile loaded was no longer needed {}", key.toString());
+                        log.info("Tile loaded was no longer needed {}", key);
                         return; // no longer needed
                     }
-
-                    if (nearVolumeInRam.containsKey(key)) {
-                        log.info("Tile loaded was already loaded {}", key.toString());
+                    if (nearVolumeInRam.putIfAbsent(key, tileTexture) != null) {
+                        log.info("Tile loaded was already loaded {}", key);
                         return; // already loaded by another thread?
                     }
-
-                    nearVolumeInRam.put(key, tileTexture);
                     displayChangeObservable.setChanged();
                     displayChangeObservable.notifyObservers();
-                } catch (IOException ex) {
-                    log.info("loadTask was IOException {}", key.toString(), ex);
-                } catch (InterruptedException ex) {
-                    log.info("loadTask was interrupted {}", key.toString(), ex);
-                } finally {
-                    loadingTiles.remove(key);
-                    // figure out if there are tiles we need to remove after successful load of a tile
-                    Map<TILE_KEY, TILE_DATA> obsoleteTiles = blockStrategy.chooseObsoleteTiles(nearVolumeInRam, queuedTiles, (BlockTileKey)key);
-                    if (obsoleteTiles != null) {
-                        for (TILE_KEY key : obsoleteTiles.keySet()) {
-                            nearVolumeInRam.remove(key);
-                        }
-                    }
-                    progress.finish();
+                    removeObsoleteTiles(key);
+                }
+
+                @Override
+                public void tileFailed(TILE_KEY key, Exception ex) {
+                    finishTile(key, unfinished);
+                    log.info("Tile load failed {}", key, ex);
                 }
+            });
+        } finally {
+            synchronized (this) {
+                loadingTiles.removeAll(unfinished); // skipped or abandoned
             }
-        };
+            progress.finish();
+        }
+    }
 
-        // Submit load task asynchronously
-        synchronized (queuedTiles) {
-            log.info("Queueing brick {} (queued={}, loading={})", key.toString(), queuedTiles.size(), loadingTiles.size());
-            queuedTiles.put(key, loadProcessor.post(loadTask));
+    private synchronized void finishTile(TILE_KEY key, Set<TILE_KEY> unfinished) {
+        unfinished.remove(key);
+        loadingTiles.remove(key);
+    }
+
+    // figure out if there are tiles we need to remove after successful load of a tile
+    private void removeObsoleteTiles(TILE_KEY loadedKey) {
+        Map<TILE_KEY, TILE_DATA> obsoleteTiles;
+        synchronized (this) {
+            obsoleteTiles = blockStrategy.chooseObsoleteTiles(nearVolumeInRam, queuedTiles, (BlockTileKey) loadedKey);
         }
-        return true;
+        if (obsoleteTiles != null) {
+            for (TILE_KEY key : obsoleteTiles.keySet()) {
+                nearVolumeInRam.remove(key);
+            }
+        }
+    }
+
+    public ObservableInterface getDisplayChangeObservable() {
+        return displayChangeObservable;
+    }
+
+    public Collection<TILE_DATA> popObsoleteTiles() {
+        Collection<TILE_DATA> result = new ArrayList<>(obsoleteTiles.values());
+        if (!result.isEmpty()) {
+            obsoleteTiles.clear();
+        }
+        return result;
+    }
+
+    public void clearAllTiles() {
+        obsoleteTiles.clear();
+        nearVolumeInRam.clear();
     }
 
-    private void setConcurrentLoads(String preferenceValue) {
+    private synchronized void setConcurrentLoads(String preferenceValue) {
         int loadThreads = Integer.parseInt(preferenceValue);
         log.info("Configuring loadThreads={}", loadThreads);
         if (loadProcessor != null) {
             loadProcessor.shutdown();
         }
-        loadProcessor = new RequestProcessor("VolumeTileLoad", loadThreads, true);
+        workerGeneration += 1;
+        activeWorkers = 0;
+        maxWorkers = Math.max(1, loadThreads);
+        loadProcessor = new RequestProcessor("VolumeTileLoad", maxWorkers, true);
+        startWorkers();
     }
 
     public boolean canDisplay() {
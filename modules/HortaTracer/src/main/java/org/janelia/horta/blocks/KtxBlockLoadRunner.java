@@ -4,6 +4,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
 import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 import org.janelia.geometry3d.ComposableObservable;
 import org.janelia.horta.actors.TetVolumeActor;
@@ -34,6 +35,7 @@ public class KtxBlockLoadRunner
     private DataSource ktxStreamDataSource;
     private KtxOctreeBlockTileSource ktxBlockTileSource;
     private KtxOctreeBlockTileKey ktxOctreeBlockTileKey;
+    private Supplier<InputStream> ktxBlockStreamSupplier;
 
     public State state = State.INITIAL;
     public TetVolumeMeshActor blockActor;
@@ -43,15 +45,23 @@ public class KtxBlockLoadRunner
     }
 
     public KtxBlockLoadRunner(KtxOctreeBlockTileSource source, KtxOctreeBlockTileKey key) {
+        this(source, key, source.streamKeyBlock(key));
+    }
+
+    /**
+     * @param blockStreamSupplier content of the block, e.g. already fetched as part of a batch
+     */
+    public KtxBlockLoadRunner(KtxOctreeBlockTileSource source, KtxOctreeBlockTileKey key, Supplier<InputStream> blockStreamSupplier) {
         this.ktxBlockTileSource = source;
         this.ktxOctreeBlockTileKey = key;
+        this.ktxBlockStreamSupplier = blockStreamSupplier;
     }
 
     private void loadFromBlockSource() {
         long startTime = System.currentTimeMillis();
         URI sourceURI = ktxBlockTileSource.getKeyBlockAbsolutePathURI(ktxOctreeBlockTileKey);
         LOG.debug("Load ktx tile {} from {}", ktxOctreeBlockTileKey, sourceURI);
-        try (InputStream blockStream = ktxBlockTileSource.streamKeyBlock(ktxOctreeBlockTileKey).get()) {
+        try (InputStream blockStream = ktxBlockStreamSupplier.get()) {
             loadStream(blockStream, ktxData -> {
                 long endTime = System.currentTimeMillis();
                 LOG.info("Loading ktx tile {} from {} took {} ms", ktxOctreeBlockTileKey, sourceURI, endTime-startTime);
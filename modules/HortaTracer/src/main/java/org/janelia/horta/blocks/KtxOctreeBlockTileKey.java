@@ -19,6 +19,10 @@ public class KtxOctreeBlockTileKey implements BlockTileKey {
         return tileSource.getBlockCentroid(this);
     }
 
+    KtxOctreeBlockTileSource getTileSource() {
+        return tileSource;
+    }
+
     List<Integer> getOctreePath() {
         return octreePath;
     }
@@ -9,6 +9,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
+import java.util.Optional;
 import java.util.function.Supplier;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -156,6 +157,23 @@ public class KtxOctreeBlockTileSource implements BlockTileSource<KtxOctreeBlockT
                 ;
     }
 
+    /**
+     * @return the storage agent that serves all blocks of this source, so that a batch of
+     * blocks only needs to look it up once
+     */
+    Optional<String> findKeyBlockStorageLocation() {
+        return tileLoader.findStorageLocation(sampleKtxTilesBaseDir);
+    }
+
+    /**
+     * @param storageLocation as returned by findKeyBlockStorageLocation()
+     * @return the block content, or null if the block is not available
+     */
+    InputStream streamKeyBlock(KtxOctreeBlockTileKey octreeKey, String storageLocation) {
+        String octreeKeyBlockAbsolutePath = getKeyBlockAbsolutePathURI(octreeKey).toString();
+        return tileLoader.streamTileContent(storageLocation, octreeKeyBlockAbsolutePath).asOptional().orElse(null);
+    }
+
     @Override
     public BlockTileResolution getMaximumResolution() {
         return maximumResolution;
@@ -1,9 +1,24 @@
 package org.janelia.horta.blocks;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import javax.media.opengl.GL3;
+
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.janelia.horta.actors.SortableBlockActor;
 
 /**
@@ -12,6 +27,15 @@ import org.janelia.horta.actors.SortableBlockActor;
  */
 public class KtxTileCache extends BasicTileCache<KtxOctreeBlockTileKey, SortableBlockActor> {
 
+    // Single-block requests in flight at once, across all load workers
+    private static final int BLOCK_FETCH_CONCURRENCY = 8;
+    private static final ExecutorService BLOCK_FETCH_EXECUTOR = Executors.newFixedThreadPool(
+            BLOCK_FETCH_CONCURRENCY,
+            new ThreadFactoryBuilder()
+                    .setNameFormat("KtxBlockFetch-%d")
+                    .setDaemon(true)
+                    .build());
+
     private KtxOctreeBlockTileSource source;
 
     public KtxTileCache(KtxOctreeBlockTileSource source) {
@@ -31,9 +55,79 @@ public class KtxTileCache extends BasicTileCache<KtxOctreeBlockTileKey, Sortable
                 loader.run();
                 return loader.blockActor;
             }
+
+            @Override
+            public Object getBatchKey(KtxOctreeBlockTileKey key) {
+                return key.getTileSource();
+            }
+
+            @Override
+            public void loadTiles(List<KtxOctreeBlockTileKey> keys, BatchListener<KtxOctreeBlockTileKey, SortableBlockActor> listener)
+                    throws InterruptedException {
+                loadBatch(keys, listener);
+            }
         };
     }
 
+    /**
+     * Fetch all blocks of a batch concurrently, and parse each one as soon as it arrives,
+     * so that block transfers overlap with each other and with parsing.
+     *
+     * The storage agent serves one file per request, so this is not a multi-block request:
+     * the batch looks up its storage agent once, then sends one request per block, with at
+     * most BLOCK_FETCH_CONCURRENCY requests in flight across all batches.
+     */
+    private void loadBatch(List<KtxOctreeBlockTileKey> keys, BasicTileCache.BatchListener<KtxOctreeBlockTileKey, SortableBlockActor> listener)
+            throws InterruptedException {
+        KtxOctreeBlockTileSource batchSource = keys.get(0).getTileSource();
+        Optional<String> storageLocation = batchSource.findKeyBlockStorageLocation();
+        if (!storageLocation.isPresent()) {
+            for (KtxOctreeBlockTileKey key : keys) {
+                listener.tileFailed(key, new IOException("No storage location found for " + key));
+            }
+            return;
+        }
+        CompletionService<KtxOctreeBlockTileKey> fetches = new ExecutorCompletionService<>(BLOCK_FETCH_EXECUTOR);
+        Map<KtxOctreeBlockTileKey, byte[]> fetchedBlocks = new ConcurrentHashMap<>();
+        List<Future<KtxOctreeBlockTileKey>> pending = new ArrayList<>();
+        for (KtxOctreeBlockTileKey key : keys) {
+            pending.add(fetches.submit(() -> {
+                if (listener.isWanted(key)) {
+                    try (InputStream blockStream = batchSource.streamKeyBlock(key, storageLocation.get())) {
+                        if (blockStream != null) {
+                            fetchedBlocks.put(key, ByteStreams.toByteArray(blockStream));
+                        }
+                    }
+                }
+                return key;
+            }));
+        }
+        try {
+            for (int i = 0; i < keys.size(); ++i) {
+                Future<KtxOctreeBlockTileKey> fetch = fetches.take();
+                KtxOctreeBlockTileKey key;
+                try {
+                    key = fetch.get();
+                } catch (ExecutionException ex) {
+                    KtxOctreeBlockTileKey failedKey = keys.get(pending.indexOf(fetch));
+                    listener.tileFailed(failedKey, ex);
+                    continue;
+                }
+                byte[] blockBytes = fetchedBlocks.remove(key);
+                if (blockBytes == null) {
+                    continue; // no longer wanted, or missing from the octree
+                }
+                KtxBlockLoadRunner loader = new KtxBlockLoadRunner(batchSource, key, () -> new ByteArrayInputStream(blockBytes));
+                loader.run();
+                listener.tileLoaded(key, loader.blockActor);
+            }
+        } finally {
+            for (Future<KtxOctreeBlockTileKey> fetch : pending) {
+                fetch.cancel(true);
+            }
+        }
+    }
+
     public void disposeObsoleteTiles(GL3 gl) {
         Collection<SortableBlockActor> obs = popObsoleteTiles();
         for (SortableBlockActor actor : obs) {
@@ -6,7 +6,9 @@ import com.google.common.eventbus.Subscribe;
 
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import org.janelia.gltools.MeshActor;
 import org.janelia.horta.actors.TetVolumeActor;
@@ -41,6 +43,8 @@ public class HortaManager {
     private NeuronTracerTopComponent topComponent;
     private NeuronMPRenderer renderer;
     private TracingInteractor guiManager;
+    // neurons added while the workspace was still loading
+    private Set<Long> batchLoadedNeuronIds = new HashSet<>();
 
     private final Logger logger = LoggerFactory.getLogger(this.getClass());
 
@@ -137,6 +141,7 @@ public class HortaManager {
     @Subscribe
     public void workspaceClosed(UnloadProjectEvent event) {
         try {
+            batchLoadedNeuronIds.clear();
             renderer.clearNeuronReconstructions();
             TetVolumeActor.getInstance().clearAllBlocks();
             List<MeshActor> meshActorList = renderer.getMeshActors();
@@ -153,10 +158,19 @@ public class HortaManager {
     @Subscribe
     public void workspaceLoaded(LoadNeuronsEvent event) {
         try {
-            renderer.clearNeuronReconstructions();
+            // keep the neurons shown while loading, unless the spatial filter has changed the set
+            Collection<TmNeuronMetadata> neurons = NeuronManager.getInstance().getNeuronList();
+            boolean allLoaded = batchLoadedNeuronIds.size() == neurons.size();
+            for (TmNeuronMetadata neuron : neurons) {
+                allLoaded = allLoaded && batchLoadedNeuronIds.contains(neuron.getId());
+            }
+            batchLoadedNeuronIds.clear();
+            if (!allLoaded) {
+                renderer.clearNeuronReconstructions();
+            }
 
             if (TmModelManager.getInstance().getCurrentWorkspace() != null) {
-                for (TmNeuronMetadata neuron : NeuronManager.getInstance().getNeuronList()) {
+                for (TmNeuronMetadata neuron : neurons) {
                     renderer.addNeuronActors(neuron);
                 }
             }
@@ -172,6 +186,19 @@ public class HortaManager {
         }
     }
 
+    @Subscribe
+    public void workspaceNeuronsBatchLoaded(LoadNeuronsBatchEvent event) {
+        try {
+            for (TmNeuronMetadata neuron : event.getNeurons()) {
+                renderer.addNeuronActors(neuron);
+                batchLoadedNeuronIds.add(neuron.getId());
+            }
+            topComponent.redrawNow();
+        } catch (Exception e) {
+            FrameworkAccess.handleException("Problem loading neurons into Horta", e);
+        }
+    }
+
     @Subscribe
     private void neuronUpdate(NeuronUpdateEvent event) {
         for (NeuronUpdateListener listener: neuronUpdateListeners) {
@@ -213,13 +240,15 @@ public class HortaManager {
 
     @Subscribe
     private void vertexCreated(AnnotationCreateEvent event) {
-        TmGeoAnnotation annotation = event.getAnnotations().iterator().next();
-        if (annotation==null)
-            return;
+        // events for several vertices of a neuron may arrive merged into one
+        for (TmGeoAnnotation annotation: event.getAnnotations()) {
+            if (annotation==null)
+                continue;
 
-        VertexWithNeuron vn = new VertexWithNeuron(annotation, NeuronManager.getInstance().getNeuronFromNeuronID(annotation.getNeuronId()));
-        for (NeuronVertexCreationListener listener: vertexCreationListeners) {
-            listener.neuronVertexCreated(vn);
+            VertexWithNeuron vn = new VertexWithNeuron(annotation, NeuronManager.getInstance().getNeuronFromNeuronID(annotation.getNeuronId()));
+            for (NeuronVertexCreationListener listener: vertexCreationListeners) {
+                listener.neuronVertexCreated(vn);
+            }
         }
         topComponent.redrawNow();
     }
@@ -270,13 +299,15 @@ public class HortaManager {
 
     @Subscribe
     private void vertexUpdated(AnnotationUpdateEvent event) {
-        TmGeoAnnotation annotation = event.getAnnotations().iterator().next();
-        if (annotation==null)
-            return;
+        // events for several vertices of a neuron may arrive merged into one
+        for (TmGeoAnnotation annotation: event.getAnnotations()) {
+            if (annotation==null)
+                continue;
 
-        VertexWithNeuron vn = new VertexWithNeuron(annotation, NeuronManager.getInstance().getNeuronFromNeuronID(annotation.getNeuronId()));
-        for (NeuronVertexUpdateListener listener: vertexUpdateListeners) {
-            listener.neuronVertexUpdated(vn);
+            VertexWithNeuron vn = new VertexWithNeuron(annotation, NeuronManager.getInstance().getNeuronFromNeuronID(annotation.getNeuronId()));
+            for (NeuronVertexUpdateListener listener: vertexUpdateListeners) {
+                listener.neuronVertexUpdated(vn);
+            }
         }
         topComponent.redrawNow();
     }
@@ -2,7 +2,6 @@ package org.janelia.horta.loader;
 
 import org.janelia.workstation.controller.model.color.ImageColorModel;
 import org.janelia.geometry3d.PerspectiveCamera;
-import org.janelia.geometry3d.Vector3;
 import org.janelia.horta.volume.VolumeMipMaterial;
 import org.janelia.gltools.texture.Texture3d;
 import org.janelia.horta.BrainTileInfo;
@@ -23,7 +22,6 @@ import org.slf4j.LoggerFactory;
 import javax.swing.*;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentSkipListSet;
 import java.util.prefs.PreferenceChangeEvent;
 import java.util.prefs.PreferenceChangeListener;
 import java.util.prefs.Preferences;
@@ -42,24 +40,17 @@ import java.util.prefs.Preferences;
 public class HortaVolumeCache {
     private static final Logger LOG = LoggerFactory.getLogger(HortaVolumeCache.class);
 
+    // Queue priority for coarse-to-fine refinements and the bricks they stand in for
+    private static final int REFINEMENT_PRIORITY = Thread.NORM_PRIORITY - 1;
+
     private int ramTileCount = 4; // Three is better than two for tile availability
     private int gpuTileCount = 1;
+    private boolean progressiveLoading = true;
     private final PerspectiveCamera camera;
     private StaticVolumeBrickSource source = null;
 
     // Lightweight metadata
-    private final Collection<BrickInfo> nearVolumeMetadata = new ConcurrentSkipListSet<>((t1, t2) -> {
-        // dummmy comparator that simply looks at the X coordinate of the centroid
-        Vector3 c1 = t1.getBoundingBox().getCentroid();
-        Vector3 c2 = t2.getBoundingBox().getCentroid();
-        if (c1.getX() < c2.getX()) {
-            return -1;
-        } else if (c1.getX() > c2.getX()) {
-            return 1;
-        } else {
-            return 0;
-        }
-    });
+    private final Collection<BrickInfo> nearVolumeMetadata = ConcurrentHashMap.newKeySet();
 
     // Large in-memory cache
     private final Map<BrickInfo, Texture3d> nearVolumeInRam = new ConcurrentHashMap<>();
@@ -69,18 +60,10 @@ public class HortaVolumeCache {
 
     // Fewer on GPU cache
     private final Map<BrickInfo, BrickActor> actualDisplayTiles = new ConcurrentHashMap<>();
-    private final Collection<BrickInfo> desiredDisplayTiles = new ConcurrentSkipListSet<>((t1, t2) -> {
-        // dummmy comparator that simply looks at the X coordinate of the centroid
-        Vector3 c1 = t1.getBoundingBox().getCentroid();
-        Vector3 c2 = t2.getBoundingBox().getCentroid();
-        if (c1.getX() < c2.getX()) {
-            return -1;
-        } else if (c1.getX() > c2.getX()) {
-            return 1;
-        } else {
-            return 0;
-        }
-    });
+    private final Collection<BrickInfo> desiredDisplayTiles = ConcurrentHashMap.newKeySet();
+    // Guarded by desiredDisplayTiles: bricks at the camera resolution, and coarser ones to show until they load
+    private Collection<BrickInfo> targetDisplayTiles = Collections.emptyList();
+    private List<BrickInfo> refinementTiles = Collections.emptyList();
     
     // To enable/disable loading
     private boolean doUpdateCache = true;
@@ -90,6 +73,8 @@ public class HortaVolumeCache {
     private float cachedFocusY = Float.NaN;
     private float cachedFocusZ = Float.NaN;
     private float cachedZoom = Float.NaN;
+    private float[] cachedViewMatrix = null;
+    private float[] cachedProjectionMatrix = null;
 
     private RequestProcessor loadProcessor;
     private final ImageColorModel imageColorModel;
@@ -117,6 +102,9 @@ public class HortaVolumeCache {
         String ramTileCountStr = pref.get(TileLoadingPanel.PREFERENCE_RAM_TILE_COUNT, TileLoadingPanel.PREFERENCE_RAM_TILE_COUNT_DEFAULT);
         setRamTileCount(ramTileCountStr);
 
+        String progressiveLoadingStr = pref.get(TileLoadingPanel.PREFERENCE_PROGRESSIVE_LOADING, TileLoadingPanel.PREFERENCE_PROGRESSIVE_LOADING_DEFAULT);
+        setProgressiveLoading(progressiveLoadingStr);
+
         pref.addPreferenceChangeListener(new PreferenceChangeListener() {
             public void preferenceChange(PreferenceChangeEvent evt) {
                 if (evt.getKey().equals(TileLoadingPanel.PREFERENCE_CONCURRENT_LOADS)) {
@@ -125,6 +113,9 @@ public class HortaVolumeCache {
                 else if (evt.getKey().equals(TileLoadingPanel.PREFERENCE_RAM_TILE_COUNT)) {
                     setRamTileCount(evt.getNewValue());
                 }
+                else if (evt.getKey().equals(TileLoadingPanel.PREFERENCE_PROGRESSIVE_LOADING)) {
+                    setProgressiveLoading(evt.getNewValue());
+                }
             }
         });
     }
@@ -143,6 +134,15 @@ public class HortaVolumeCache {
         LOG.info("Configuring ramTileCount={}", ramTileCount);
     }
 
+    private void setProgressiveLoading(String preferenceValue) {
+        this.progressiveLoading = Boolean.parseBoolean(preferenceValue);
+        LOG.info("Configuring progressiveLoading={}", progressiveLoading);
+    }
+
+    public boolean isProgressiveLoading() {
+        return progressiveLoading;
+    }
+
     public void registerLoneDisplayedTile(BrickActor actor) 
     {
         if (actualDisplayTiles.containsKey(actor.getBrainTile()))
@@ -221,10 +221,15 @@ public class HortaVolumeCache {
             return;
 
         // Cache previous location for early termination
+        // Rotation and viewport shape change which bricks are in view, so compare the matrices too
+        float[] viewMatrix = camera.getViewMatrix().asArray();
+        float[] projectionMatrix = camera.getProjectionMatrix().asArray();
         if (xyz[0] == cachedFocusX
                 && xyz[1] == cachedFocusY
                 && xyz[2] == cachedFocusZ
-                && zoom == cachedZoom) 
+                && zoom == cachedZoom
+                && Arrays.equals(viewMatrix, cachedViewMatrix)
+                && Arrays.equals(projectionMatrix, cachedProjectionMatrix))
         {
             return; // no important change to camera
         }
@@ -232,19 +237,32 @@ public class HortaVolumeCache {
         cachedFocusY = xyz[1];
         cachedFocusZ = xyz[2];
         cachedZoom = zoom;
+        cachedViewMatrix = viewMatrix.clone();
+        cachedProjectionMatrix = projectionMatrix.clone();
 
         if (source == null) {
             return;
         }
         
-        // Find the metadata for the closest volume tiles
-        BrickInfoSet allBricks = NeuronTraceLoader.getBricksForCameraResolution(source, camera);
-        Collection<BrickInfo> closestBricks = allBricks.getClosestBricks(xyz, ramTileCount);
-        Collection<BrickInfo> veryClosestBricks = allBricks.getClosestBricks(xyz, gpuTileCount);
+        // Find the metadata for the closest volume tiles, preferring those in view
+        Double resolution = NeuronTraceLoader.getResolutionForCamera(source, camera);
+        BrickInfoSet allBricks = source.getAllBrickInfoForResolution(resolution);
+        Collection<BrickInfo> closestBricks = new HashSet<>(allBricks.getClosestBricksInView(camera, xyz, ramTileCount));
+        Collection<BrickInfo> veryClosestBricks = allBricks.getClosestBricksInView(camera, xyz, gpuTileCount);
+
+        // Coarser bricks at the focus, coarsest first, to show while the closest bricks load
+        List<BrickInfo> refinements = new ArrayList<>();
+        if (progressiveLoading) {
+            for (Double coarserResolution : NeuronTraceLoader.getRefinementResolutions(source, resolution)) {
+                refinements.addAll(source.getAllBrickInfoForResolution(coarserResolution).getClosestBricks(xyz, 1));
+            }
+        }
+        closestBricks.addAll(refinements);
 
         synchronized(desiredDisplayTiles) {
-            desiredDisplayTiles.clear();
-            desiredDisplayTiles.addAll(veryClosestBricks);
+            targetDisplayTiles = veryClosestBricks;
+            refinementTiles = refinements;
+            updateDesiredDisplayTiles();
         }
 
         // Compare to cached list of tile metadata
@@ -282,7 +300,8 @@ public class HortaVolumeCache {
         
         // Begin loading the new tiles asynchronously to RAM
         // ...starting with the ones we want to display right now
-        for (BrickInfo brick : desiredDisplayTiles) {
+        int displayPriority = Thread.NORM_PRIORITY;
+        for (BrickInfo brick : getDisplayLoadOrder(refinements, veryClosestBricks, nearVolumeInRam.keySet())) {
             BrainTileInfo tile = (BrainTileInfo)brick;
             if (actualDisplayTiles.containsKey(brick)) {// Is it already displayed?
                 continue; // already displayed
@@ -290,8 +309,12 @@ public class HortaVolumeCache {
             if (nearVolumeInRam.containsKey(brick)) { // Is the texture already loaded in RAM?
                 continue; // already loaded
             }
-            LOG.debug("Queueing brick with norm priority: "+tile.getTileRelativePath());
-            queueLoad(tile, Thread.NORM_PRIORITY);
+            LOG.debug("Queueing brick with priority {}: {}", displayPriority, tile.getTileRelativePath());
+            queueLoad(tile, displayPriority);
+            if (progressiveLoading) {
+                // Only the first load cancels others; the rest queue up behind it, coarse to fine
+                displayPriority = REFINEMENT_PRIORITY;
+            }
         }
         for (BrickInfo brick : newBricks) {
             BrainTileInfo tile = (BrainTileInfo)brick;
@@ -307,6 +330,60 @@ public class HortaVolumeCache {
         }
     }
     
+    /**
+     * Display the bricks at the camera resolution once they are in RAM.  Until then, display the finest
+     * refinement brick loaded so far, or the coarsest one if none has loaded yet.
+     * Must hold the desiredDisplayTiles lock.
+     */
+    private void updateDesiredDisplayTiles() {
+        Collection<BrickInfo> desired = new ArrayList<>(targetDisplayTiles);
+        BrickInfo standIn = getStandIn(refinementTiles, targetDisplayTiles, nearVolumeInRam.keySet());
+        if (standIn != null) {
+            desired.add(standIn);
+        }
+        desiredDisplayTiles.retainAll(desired);
+        desiredDisplayTiles.addAll(desired);
+    }
+
+    /**
+     * @param refinements coarser bricks at the focus, coarsest first
+     * @param loaded bricks in RAM
+     * @return the finest refinement loaded so far, or the coarsest one if none has loaded; null once all the
+     * targets have loaded, or if there are no refinements
+     */
+    static BrickInfo getStandIn(List<BrickInfo> refinements, Collection<BrickInfo> targets, Set<BrickInfo> loaded) {
+        if (loaded.containsAll(targets) || refinements.isEmpty()) {
+            return null;
+        }
+        BrickInfo standIn = refinements.get(0);
+        for (BrickInfo brick : refinements) {
+            if (loaded.contains(brick)) {
+                standIn = brick;
+            }
+        }
+        return standIn;
+    }
+
+    /**
+     * @param loaded bricks in RAM
+     * @return refinements finer than any already loaded, coarsest first, then the bricks at the camera resolution
+     */
+    static List<BrickInfo> getDisplayLoadOrder(List<BrickInfo> refinements, Collection<BrickInfo> targets,
+            Set<BrickInfo> loaded) {
+        List<BrickInfo> loadOrder = new ArrayList<>();
+        if (!loaded.containsAll(targets)) {
+            for (BrickInfo brick : refinements) {
+                if (loaded.contains(brick)) {
+                    loadOrder.clear(); // no need for anything coarser
+                } else {
+                    loadOrder.add(brick);
+                }
+            }
+        }
+        loadOrder.addAll(targets);
+        return loadOrder;
+    }
+
     private void queueLoad(final BrainTileInfo tile, int priority) 
     {
         if (! doUpdateCache)
@@ -357,6 +434,11 @@ public class HortaVolumeCache {
                     if (tileTexture != null) {
                         if (nearVolumeMetadata.contains(tile)) { // Make sure this tile is still desired after loading
                             nearVolumeInRam.put(tile, tileTexture);
+                            if (progressiveLoading) {
+                                synchronized(desiredDisplayTiles) {
+                                    updateDesiredDisplayTiles();
+                                }
+                            }
                             // Trigger GPU upload, if appropriate
                             if (desiredDisplayTiles.contains(tile)) {
                                 // Trigger GPU upload
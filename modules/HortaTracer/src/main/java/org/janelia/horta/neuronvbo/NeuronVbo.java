@@ -6,8 +6,6 @@ import java.nio.FloatBuffer;
 import java.nio.IntBuffer;
 import java.util.*;
 import javax.media.opengl.GL3;
-import org.janelia.model.domain.tiledMicroscope.TmGeoAnnotation;
-import org.janelia.model.domain.tiledMicroscope.TmNeuronEdge;
 import org.janelia.model.domain.tiledMicroscope.TmNeuronMetadata;
 import org.janelia.workstation.controller.model.TmModelManager;
 import org.janelia.workstation.controller.model.TmReviewState;
@@ -20,12 +18,16 @@ import org.slf4j.LoggerFactory;
  * Multiple NeuronVbos may be held in a NeuronVboPool
  * @author brunsc
  * 
+ * The buffer contents are built on the CPU by a NeuronVboGeometry, which
+ * rebuilds only the neurons that changed; updateGeometry() may run off the GL
+ * thread, and only the changed ranges are uploaded.
+ * 
  * TODO: Perform full clear when workspace changes
  * TODO: Test all edit operations, from both LVV and Horta
  */
 public class NeuronVbo implements Iterable<TmNeuronMetadata>
 {
-    private final static int FLOATS_PER_VERTEX = 8;
+    private final static int FLOATS_PER_VERTEX = NeuronVboGeometry.FLOATS_PER_VERTEX;
     // Be sure to synchronize these constants with the actual shader vertex attribute (in) layout
     private final static int XYZR_ATTRIB = 1;
     private final static int RGBV_ATTRIB = 2;
@@ -34,20 +36,20 @@ public class NeuronVbo implements Iterable<TmNeuronMetadata>
     private final Set<TmNeuronMetadata> neurons = new HashSet<>();
     private int vboVertices = 0;
     private int vboEdgeIndices = 0;
-    private int edgeCount = 0;
-    private int vertexCount = 0;
     
-    private boolean buffersNeedRebuild = false; // non-gl population of buffer data
-    private boolean buffersNeedAllocation = false; // allocate and upload gl buffers
-    private boolean buffersNeedUpdate = false; // replace contents of existing gl buffers
+    private final NeuronVboGeometry geometry = new NeuronVboGeometry();
+    // vertices of neurons added since the last geometry update, so the pool stays balanced
+    private int pendingVertexCount = 0;
+    
+    private boolean buffersNeedAllocation = true; // allocate and upload gl buffers
+    // sizes of the allocated gl buffers, in vertices and edges
+    private int glVertexCapacity = 0;
+    private int glEdgeCapacity = 0;
     
-    private IntBuffer edgeBuffer;
-    private FloatBuffer vertexBuffer;
+    // reused for staging uploads
+    private FloatBuffer vertexBuffer = Buffers.newDirectFloatBuffer(0);
+    private IntBuffer edgeBuffer = Buffers.newDirectIntBuffer(0);
     
-    // Cached indices
-    private final Map<TmNeuronMetadata, Integer> neuronOffsets = new HashMap<>(); // for surgically updating buffers
-    private final Map<TmNeuronMetadata, Integer> neuronVertexCounts = new HashMap<>(); // for sanity checking
-    private final Map<TmNeuronMetadata, Integer> neuronEdgeCounts = new HashMap<>(); // for sanity checking
     private final Map<TmNeuronMetadata, NeuronObserver> neuronObservers = new HashMap<>();
     
     private final Logger log = LoggerFactory.getLogger(this.getClass());
@@ -56,19 +58,12 @@ public class NeuronVbo implements Iterable<TmNeuronMetadata>
         return neurons.size();
     }
     
-    public void clear() {
+    public synchronized void clear() {
         // first disconnect all signals
-        if (edgeCount > 0)
-            buffersNeedRebuild = true;
-        if (vertexCount > 0)
-            buffersNeedRebuild = true;
         neurons.clear();
-        neuronOffsets.clear();
-        neuronEdgeCounts.clear();
-        neuronVertexCounts.clear();
+        geometry.clear();
         neuronObservers.clear();
-        edgeCount = 0;
-        vertexCount = 0;
+        pendingVertexCount = 0;
     }
     
     private void connectSignals(final TmNeuronMetadata neuron) {
@@ -86,39 +81,38 @@ public class NeuronVbo implements Iterable<TmNeuronMetadata>
         gl.glGenBuffers(2, vbos);
         vboVertices = vbos.get(0);
         vboEdgeIndices = vbos.get(1);
+        buffersNeedAllocation = true;
     }
     
     // Make sure the cone shader is loaded before calling this method
     synchronized void displayEdges(GL3 gl) 
     {
         init(gl);
-        if (buffersNeedRebuild)
-            rebuildBuffers();
-        if (edgeCount < 1) 
+        updateGeometry();
+        if (geometry.getEdgeCount() < 1) 
             return;
         setUpVbo(gl);
         gl.glBindBuffer(GL3.GL_ELEMENT_ARRAY_BUFFER, vboEdgeIndices);
-        gl.glDrawElements(GL3.GL_LINES, 2 * edgeCount, GL3.GL_UNSIGNED_INT, 0);
+        gl.glDrawElements(GL3.GL_LINES, 2 * geometry.getEdgeCount(), GL3.GL_UNSIGNED_INT, 0);
     }
     
     // Make sure the sphere shader is loaded before calling this method
     synchronized void displayNodes(GL3 gl) 
     {
         init(gl);
-        if (buffersNeedRebuild)
-            rebuildBuffers();
-        if (vertexCount < 1) 
+        updateGeometry();
+        if (geometry.getVertexCount() < 1) 
             return;
         setUpVbo(gl);
-        gl.glDrawArrays(GL3.GL_POINTS, 0, vertexCount);
+        gl.glDrawArrays(GL3.GL_POINTS, 0, geometry.getVertexCount());
     }
     
     private void setUpVbo(GL3 gl) {
-        if (buffersNeedRebuild)
-            rebuildBuffers();
-        if (buffersNeedAllocation)
+        if (buffersNeedAllocation
+                || (glVertexCapacity < geometry.getVertexCapacity())
+                || (glEdgeCapacity < geometry.getEdgeCapacity()))
             allocateBuffers(gl);
-        if (buffersNeedUpdate)
+        else if (geometry.hasDirtyRanges())
             updateBuffers(gl);
         gl.glBindBuffer(GL3.GL_ARRAY_BUFFER, vboVertices);
         gl.glEnableVertexAttribArray(XYZR_ATTRIB);
@@ -143,8 +137,9 @@ public class NeuronVbo implements Iterable<TmNeuronMetadata>
     
     synchronized void dispose(GL3 gl) 
     {
-        if (vertexCount > 0)
-            buffersNeedAllocation = true;
+        buffersNeedAllocation = true;
+        glVertexCapacity = 0;
+        glEdgeCapacity = 0;
         if (vboVertices == 0)
             return; // never allocated
         int [] vbos = {vboVertices, vboEdgeIndices};
@@ -156,139 +151,71 @@ public class NeuronVbo implements Iterable<TmNeuronMetadata>
     // lightweight update of just the color field
     private boolean updateNeuronColor(TmNeuronMetadata neuron)
     {
-        if (buffersNeedRebuild)
-            return false;
-        int sv = neuron.getAnnotationCount();
-        int se = neuron.getEdges().size();
+        if (geometry.isDirty(neuron))
+            return false; // it's going to be rebuilt anyway, so skip the surgical update
         float rgb[] = {0,0,0,1};
         neuron.getColor().getRGBComponents(rgb);
-        boolean bChanged = false; // nothing has changed yet
         
         // check for whether the neuron is under review
         if (TmModelManager.getInstance().getCurrentView().isNeuronInReviewMode(neuron.getId())) {
-            buffersNeedRebuild = true;
+            geometry.markDirty(neuron);
             return false;
         }
-        
-        // sanity check
-        // Do we already have most of the information for this neuron tabulated?
-        if ( neuronOffsets.containsKey(neuron)
-                && (neuronVertexCounts.get(neuron) == sv)
-                && (neuronEdgeCounts.get(neuron) == se)) 
-        {
-            // Has the color actually changed?
-            final int COLOR_OFFSET = 4; // red color begins at 5th value
-            int offset = neuronOffsets.get(neuron) * FLOATS_PER_VERTEX + COLOR_OFFSET;
-            int max_offset = offset + (sv-1) * FLOATS_PER_VERTEX + 2;
-            if (max_offset >= vertexBuffer.limit()) {
-                // Hmm. The actual buffer is no longer big enough to hold this neuron.
-                log.info("vertex buffer object is too small. rebuild queued (after updateNeuronColor())");
-                buffersNeedRebuild = true;
-                return true;
-            }
-            try {
-                if ( (vertexBuffer.get(offset+0) == rgb[0])
-                        && (vertexBuffer.get(offset+1) == rgb[1])
-                        && (vertexBuffer.get(offset+2) == rgb[2]) )
-                {
-                    return bChanged; // color has not changed
-                }
-                log.trace("old neuron color was [{},{},{}]",
-                        vertexBuffer.get(offset+0), 
-                        vertexBuffer.get(offset+1), 
-                        vertexBuffer.get(offset+2));
-                log.trace("new neuron color = [{},{},{}]", rgb[0], rgb[1], rgb[2]);
-                for (int v = 0; v < sv; ++v) {
-                    int index = offset + v * FLOATS_PER_VERTEX;
-                    for (int r = 0; r < 3; ++r) {
-                        vertexBuffer.put(index + r, rgb[r]);
-                        // assert(vertexBuffer.get(index + r) == rgb[r]);
-                    }
-                }
-                buffersNeedUpdate = true;
-                bChanged = true;
-            } catch (IndexOutOfBoundsException exc) {
-                log.info("stale vertex buffer object accessed with bogus index {}. Queueing rebuild.", offset);
-                buffersNeedRebuild = true;
-                return true;
-            }
-        }
-        else {
-            buffersNeedRebuild = true;
-            bChanged = true;
-        }
-        return bChanged;
+        return geometry.patchColor(neuron, rgb);
     }
     
     // lightweight update of just the visibility field
     // returns true if the buffer state actually changed
     private boolean updateNeuronVisibility(TmNeuronMetadata neuron)
     {
-        if (buffersNeedRebuild)
-            return false; // we are going to redo everything anyway, so skip the surgical update
-        int sv = neuron.getAnnotationCount();
-        int se = neuron.getEdges().size();
-        boolean bIsVisible = neuron.isVisible();
-        float visFloat = bIsVisible ? 1.0f : 0.0f;
-        boolean bChanged = false;
-        // log.info("Updating neuron visibility to '{}'", bIsVisible);
-
-        // sanity check
-        // Do we already have most of the information for this neuron tabulated?
-        if ( neuronOffsets.containsKey(neuron)
-                && (neuronVertexCounts.get(neuron) == sv)
-                && (neuronEdgeCounts.get(neuron) == se) ) 
-        {
-            // Has the visibility actually changed?
-            final int VISIBILITY_OFFSET = 7; // visibility is the 8th attribute value
-            int offset = neuronOffsets.get(neuron) * FLOATS_PER_VERTEX + VISIBILITY_OFFSET;
-            int max_offset = offset + (sv-1) * FLOATS_PER_VERTEX;
-            if (max_offset >= vertexBuffer.limit()) {
-                log.info("vertex buffer object is too small. rebuild queued (after updateNeuronVisibility())");
-                // Hmm. The actual buffer is no longer big enough to hold this neuron.
-                buffersNeedRebuild = true;
-                return true;
-            }
-            try {
-                if (vertexBuffer.get(offset) != visFloat) { // visibility actually changed
-                    for (int v = 0; v < sv; ++v) {
-                        int index = offset + v * FLOATS_PER_VERTEX;
-                        vertexBuffer.put(index, visFloat);
-                    }
-                    buffersNeedUpdate = true;
-                    bChanged = true;
-                }
-            } catch (IndexOutOfBoundsException exc) {
-                log.info("stale vertex buffer object accessed with bogus index {}. Queueing rebuild.", offset);
-                buffersNeedRebuild = true;
-                return true;
-            }
-        }
-        else {
-            buffersNeedRebuild = true;
-            bChanged = true; // something changed...
-        }
-        return bChanged;
+        if (geometry.isDirty(neuron))
+            return false; // it's going to be rebuilt anyway, so skip the surgical update
+        float visFloat = neuron.isVisible() ? 1.0f : 0.0f;
+        return geometry.patchVisibility(neuron, visFloat);
+    }
+    
+    synchronized boolean needsGeometryUpdate() {
+        return geometry.needsUpdate();
+    }
+    
+    /**
+     * Copies the annotations of the neurons that changed, on the calling
+     * thread, for a later buildGeometry().
+     */
+    synchronized void snapshotGeometry()
+    {
+        geometry.snapshot();
+    }
+    
+    /**
+     * Rebuilds the CPU side buffer contents of the neurons that changed, all
+     * on the calling thread.
+     */
+    synchronized void updateGeometry()
+    {
+        snapshotGeometry();
+        buildGeometry();
     }
     
-    private void rebuildBuffers()
+    /**
+     * Rebuilds the CPU side buffer contents of the neurons copied by
+     * snapshotGeometry(). No GL calls, and no reads of the neuron models, so
+     * NeuronVboPool runs it on worker threads ahead of display.
+     */
+    synchronized void buildGeometry()
     {
-        log.info("Rebuilding neuron vbo data");
-        // count the primitives
-        List<Float> vertexAttributes = new ArrayList<>();
-        List<Integer> edgeIndexes = new ArrayList<>();
-        vertexCount = 0;
-        edgeCount = 0;
-        float rgb[] = {0,0,0};
-        neuronOffsets.clear();
-        neuronVertexCounts.clear();
-        neuronEdgeCounts.clear();
-        TmViewState viewState = TmModelManager.getInstance().getCurrentView();
-        for (TmNeuronMetadata neuron : neurons) {
-            neuronOffsets.put(neuron, vertexCount);
-            neuronVertexCounts.put(neuron, neuron.getAnnotationCount());
-            neuronEdgeCounts.put(neuron, neuron.getEdges().size());
-            float visibility = viewState.isHidden(neuron.getId()) ? 0 : 1;
+        if (! geometry.needsUpdate())
+            return;
+        log.debug("Rebuilding neuron vbo data");
+        final TmViewState viewState = TmModelManager.getInstance().getCurrentView();
+        final TmReviewState reviews = TmModelManager.getInstance().getCurrentReviews();
+        Color loopColor = viewState.getColorLoopIndicator();
+        final float[] loopRgb = {
+            loopColor.getRed()/255.0f, loopColor.getGreen()/255.0f, loopColor.getBlue()/255.0f};
+        final float[] reviewedRgb = {REVIEWED_GRAY_COLOR, REVIEWED_GRAY_COLOR, REVIEWED_GRAY_COLOR};
+        geometry.buildSnapshot(neuron -> {
+            NeuronVboGeometry.NeuronStyle style = new NeuronVboGeometry.NeuronStyle();
+            style.visibility = viewState.isHidden(neuron.getId()) ? 0 : 1;
             Color color = TmViewState.getColorForNeuron(neuron.getId());
             if (color == null) {
                 if (neuron.getColor()==null) {
@@ -297,150 +224,87 @@ public class NeuronVbo implements Iterable<TmNeuronMetadata>
                     color = neuron.getColor();
                 }
             }
-            color.getColorComponents(rgb);
-            Map<TmGeoAnnotation, Integer> vertexIndices = new HashMap<>();
-            TmReviewState reviews = TmModelManager.getInstance().getCurrentReviews();
-            for (TmGeoAnnotation vertex : neuron.getGeoAnnotationMap().values()) {
-                int index = vertexCount;
-                vertexIndices.put(vertex, index);
-                // X, Y, Z, radius, r, g, b, visibility
-                float[] xyz = TmModelManager.getInstance().getLocationInMicrometers(vertex.getX(),
-                        vertex.getY(), vertex.getZ());
-                vertexAttributes.add(xyz[0]); // X
-                vertexAttributes.add(xyz[1]); // Y
-                vertexAttributes.add(xyz[2]); // Z
-                float radius = 1.0f;
-                if (vertex.getRadius()!=null)
-                    radius = vertex.getRadius().floatValue();
-                if (TmModelManager.getInstance().getCurrentView().isNeuronRadiusToggle(neuron.getId())) {
-                    radius = 0.3f;
-                }
-                vertexAttributes.add(radius); // radius
-                if (reviews.isReviewedAnnotation(vertex.getId())) {
-                    vertexAttributes.add(REVIEWED_GRAY_COLOR); // red
-                    vertexAttributes.add(REVIEWED_GRAY_COLOR); // green
-                    vertexAttributes.add(REVIEWED_GRAY_COLOR); // blue
-                } else if (reviews.isLoopedAnnotation(vertex.getId())) {
-                    Color loopColor = viewState.getColorLoopIndicator();
-                    vertexAttributes.add(loopColor.getRed()/255.0f); // red
-                    vertexAttributes.add(loopColor.getGreen()/255.0f); // green
-                    vertexAttributes.add(loopColor.getBlue()/255.0f); // blue
-                } else {
-                    vertexAttributes.add(rgb[0]); // red
-                    vertexAttributes.add(rgb[1]); // green
-                    vertexAttributes.add(rgb[2]); // blue
-                }
-                vertexAttributes.add(visibility); // visibility
-                vertexCount += 1;
-            }
-           for (TmNeuronEdge edge : getEdges(neuron)) {
-                TmGeoAnnotation v1 = edge.getParentVertex();
-                TmGeoAnnotation v2 = edge.getChildVertex();
-                Integer i1 = vertexIndices.get(v1);
-                Integer i2 = vertexIndices.get(v2);
-                if ( (i1 == null) || (i2 == null) ) {
-                    log.error("Found neuron edge with unknown vertices {} and {} in neuron '{}'", v1, v2, neuron.getName());
-                    continue;
-                }
-                edgeIndexes.add(i1);
-                edgeIndexes.add(i2);
-                edgeCount += 1;
-            }
-        }
-        
-        // allocate storage
-        vertexBuffer = Buffers.newDirectFloatBuffer(vertexCount * FLOATS_PER_VERTEX);        
-        vertexBuffer.rewind();
-        for (float f : vertexAttributes) {
-            vertexBuffer.put(f);
-        }
-        vertexBuffer.flip();
-        
-        edgeBuffer = Buffers.newDirectIntBuffer(edgeCount * 2);
-        edgeBuffer.rewind();
-        for (int i : edgeIndexes) {
-            edgeBuffer.put(i);
-        }
-        edgeBuffer.flip();
-
-        buffersNeedRebuild = false;
-        buffersNeedAllocation = true;
-
-        final boolean debugVboContents = false;
-        if (debugVboContents) {
-            log.info("Vertex buffer contents:");
-            for (int i = 0; i < vertexBuffer.capacity(); ++i) {
-                log.info(" vertex {} : {}", i, vertexBuffer.get(i));            
-            }
-            log.info("Edge buffer contents:");
-            for (int i = 0; i < edgeBuffer.capacity(); ++i) {
-                log.info(" edge {} : {}", i, edgeBuffer.get(i));            
+            style.rgb = color.getColorComponents(null);
+            if (viewState.isNeuronRadiusToggle(neuron.getId())) {
+                style.radiusOverride = 0.3f;
             }
-        }        
-    }
-
-    private Collection<TmNeuronEdge> getEdges(TmNeuronMetadata neuron) {
-        Set<TmNeuronEdge> freshEdges = new HashSet<>(); // All edges in the current model
-        for (TmGeoAnnotation child : neuron.getGeoAnnotationMap().values()) {
-                Long parentId = child.getParentId();
-                TmGeoAnnotation parent = neuron.getGeoAnnotationMap().get(parentId);
-                if (parent == null)
-                    continue;
-                TmNeuronEdge edge = new TmNeuronEdge(parent, child);
-                freshEdges.add(edge);
-        }
-        return freshEdges;
+            style.reviewed = reviews::isReviewedAnnotation;
+            style.reviewedRgb = reviewedRgb;
+            style.looped = reviews::isLoopedAnnotation;
+            style.loopRgb = loopRgb;
+            return style;
+        }, TmModelManager.getInstance().getVoxToMicronTransform());
+        pendingVertexCount = 0;
     }
 
+    // Sizes the gl buffers to the geometry's capacity, so they only need
+    // reallocating when the geometry grows, and uploads everything
     private void allocateBuffers(GL3 gl)
     {
         log.info("Uploading neuron vbo data");
-        if (buffersNeedRebuild)
-            rebuildBuffers();
-        vertexBuffer.rewind();
+        glVertexCapacity = geometry.getVertexCapacity();
+        glEdgeCapacity = geometry.getEdgeCapacity();
         gl.glBindBuffer(GL3.GL_ARRAY_BUFFER, vboVertices);
         gl.glBufferData(GL3.GL_ARRAY_BUFFER, 
-                vertexBuffer.capacity() * Buffers.SIZEOF_FLOAT,
-                vertexBuffer, 
-                GL3.GL_STATIC_DRAW);
-        edgeBuffer.rewind();
+                (long) glVertexCapacity * FLOATS_PER_VERTEX * Buffers.SIZEOF_FLOAT,
+                null, 
+                GL3.GL_DYNAMIC_DRAW);
         gl.glBindBuffer(GL3.GL_ELEMENT_ARRAY_BUFFER, vboEdgeIndices);        
         gl.glBufferData(
                 GL3.GL_ELEMENT_ARRAY_BUFFER,
-                edgeBuffer.capacity() * Buffers.SIZEOF_INT,
-                edgeBuffer,
-                GL3.GL_STATIC_DRAW);
+                (long) glEdgeCapacity * 2 * Buffers.SIZEOF_INT,
+                null,
+                GL3.GL_DYNAMIC_DRAW);
+        uploadVertices(gl, 0, geometry.getVertexCount());
+        uploadEdges(gl, 0, geometry.getEdgeCount());
 
+        geometry.clearDirtyRanges();
         buffersNeedAllocation = false;
-        buffersNeedUpdate = false;
     }
     
-    // Reloads the entire buffer
-    // TODO: Incrementally update one neuron at a time.
+    // Replaces just the ranges of the buffers that changed since the last upload
     private void updateBuffers(GL3 gl)
     {
-        // log.info("Updating neuron vbo data");
-        if (buffersNeedRebuild)
-            rebuildBuffers();
-        vertexBuffer.rewind();
+        uploadVertices(gl, geometry.getDirtyVertexStart(), geometry.getDirtyVertexEnd());
+        uploadEdges(gl, geometry.getDirtyEdgeStart(), geometry.getDirtyEdgeEnd());
+        geometry.clearDirtyRanges();
+    }
+
+    private void uploadVertices(GL3 gl, int start, int end) {
+        if (start >= end)
+            return;
+        int floatCount = (end - start) * FLOATS_PER_VERTEX;
+        if (vertexBuffer.capacity() < floatCount)
+            vertexBuffer = Buffers.newDirectFloatBuffer(Math.max(floatCount, 2 * vertexBuffer.capacity()));
+        vertexBuffer.clear();
+        vertexBuffer.put(geometry.getVertices(), start * FLOATS_PER_VERTEX, floatCount);
+        vertexBuffer.flip();
         gl.glBindBuffer(GL3.GL_ARRAY_BUFFER, vboVertices);
         gl.glBufferSubData(
                 GL3.GL_ARRAY_BUFFER, 
-                0,
-                vertexBuffer.capacity() * Buffers.SIZEOF_FLOAT,
+                (long) start * FLOATS_PER_VERTEX * Buffers.SIZEOF_FLOAT,
+                (long) floatCount * Buffers.SIZEOF_FLOAT,
                 vertexBuffer);
-        edgeBuffer.rewind();
+    }
+
+    private void uploadEdges(GL3 gl, int start, int end) {
+        if (start >= end)
+            return;
+        int intCount = (end - start) * 2;
+        if (edgeBuffer.capacity() < intCount)
+            edgeBuffer = Buffers.newDirectIntBuffer(Math.max(intCount, 2 * edgeBuffer.capacity()));
+        edgeBuffer.clear();
+        edgeBuffer.put(geometry.getEdges(), start * 2, intCount);
+        edgeBuffer.flip();
         gl.glBindBuffer(GL3.GL_ELEMENT_ARRAY_BUFFER, vboEdgeIndices);        
         gl.glBufferSubData(
                 GL3.GL_ELEMENT_ARRAY_BUFFER,
-                0, 
-                edgeBuffer.capacity() * Buffers.SIZEOF_INT,
+                (long) start * 2 * Buffers.SIZEOF_INT, 
+                (long) intCount * Buffers.SIZEOF_INT,
                 edgeBuffer);
-
-        buffersNeedUpdate = false;
     }
 
-    boolean add(final TmNeuronMetadata neuron)
+    synchronized boolean add(final TmNeuronMetadata neuron)
     {
         if (neuron == null)
             return false;
@@ -449,8 +313,8 @@ public class NeuronVbo implements Iterable<TmNeuronMetadata>
         if (! neurons.add(neuron))
             return false;
 
-        vertexCount += neuron.getAnnotationCount();
-        buffersNeedRebuild = true;
+        geometry.add(neuron);
+        pendingVertexCount += neuron.getAnnotationCount();
 
         connectSignals(neuron);
         
@@ -466,32 +330,33 @@ public class NeuronVbo implements Iterable<TmNeuronMetadata>
         return neurons.isEmpty();
     }
 
-    int getVertexCount() {
-        return vertexCount;
+    synchronized int getVertexCount() {
+        return geometry.getVertexCount() + pendingVertexCount;
     }
 
     boolean contains(TmNeuronMetadata neuron) {
         return neurons.contains(neuron);
     }
 
-    boolean remove(TmNeuronMetadata neuron) {
+    synchronized boolean remove(TmNeuronMetadata neuron) {
         if (! neurons.remove(neuron))
             return false;
-        buffersNeedRebuild = true;
+        geometry.remove(neuron);
         return true;
     }
 
-    void checkForChanges() 
+    synchronized void checkForChanges() 
     {
         // log.info("check for changes");
-        if (buffersNeedRebuild)
-            return; // no need to check counts, if we will be rebuilding anyway
         for (TmNeuronMetadata neuron : this) {
-            if ( (neuron.getAnnotationCount() != neuronVertexCounts.get(neuron))
-                    || (neuron.getEdges().size() != neuronEdgeCounts.get(neuron)))
+            int vertexCount = geometry.getVertexCount(neuron);
+            if (vertexCount < 0)
+                continue; // not built yet
+            if ( (neuron.getAnnotationCount() != vertexCount)
+                    || (neuron.getEdges().size() != geometry.getEdgeCount(neuron)))
             {
-                buffersNeedRebuild = true;
-                return;
+                geometry.markDirty(neuron);
+                continue;
             }
             // Check for visibility and color changes, in case of bulk update
             updateNeuronVisibility(neuron);
@@ -499,8 +364,13 @@ public class NeuronVbo implements Iterable<TmNeuronMetadata>
         }
     }
 
-    public void markAsDirty () {
-        buffersNeedRebuild = true;
+    public synchronized void markAsDirty () {
+        geometry.markAllDirty();
+    }
+    
+    // rebuild just the one neuron
+    synchronized void markAsDirty(Long neuronId) {
+        geometry.markDirty(neuronId);
     }
     
     private class NeuronObserver
@@ -0,0 +1,516 @@
+package org.janelia.horta.neuronvbo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.LongPredicate;
+import org.janelia.model.domain.tiledMicroscope.TmGeoAnnotation;
+import org.janelia.model.domain.tiledMicroscope.TmNeuronMetadata;
+import org.janelia.workstation.geom.AffineTransform3d;
+
+/**
+ * CPU side contents of one NeuronVbo, kept in primitive arrays that are reused
+ * from one update to the next: eight floats per vertex (x, y, z, radius, r, g, b,
+ * visibility), and pairs of vertex indices for the edges.  Each neuron owns a
+ * contiguous range of vertices and of edges.
+ *
+ * update() rebuilds just the neurons marked dirty.  A neuron whose vertex and edge
+ * counts haven't changed is rewritten in place; otherwise the neurons after it are
+ * moved along, without reading their models again.  The ranges of the arrays that
+ * changed since the last upload are tracked, so only those need to go to the GPU.
+ *
+ * The neuron models are only read by snapshot(), which copies the annotations of
+ * the dirty neurons, so that buildSnapshot() can run on a worker thread while the
+ * models change.  Neurons marked dirty after the snapshot keep their old contents
+ * until the next one.
+ *
+ * No OpenGL here, so it can be exercised without a GL context.  Not thread safe;
+ * NeuronVbo synchronizes access.
+ */
+class NeuronVboGeometry {
+
+    static final int FLOATS_PER_VERTEX = 8;
+    static final int COLOR_OFFSET = 4; // red is the 5th value
+    static final int VISIBILITY_OFFSET = 7; // visibility is the 8th value
+
+    /**
+     * How to draw one neuron's vertices.
+     */
+    static class NeuronStyle {
+        float[] rgb = {0, 0, 0};
+        float visibility = 1;
+        float radiusOverride = Float.NaN; // NaN to use each vertex's radius
+        LongPredicate reviewed = annotationId -> false;
+        float[] reviewedRgb;
+        LongPredicate looped = annotationId -> false;
+        float[] loopRgb;
+    }
+
+    interface StyleSource {
+        NeuronStyle styleFor(TmNeuronMetadata neuron);
+    }
+
+    private static class Range {
+        final int vertexStart;
+        final int vertexCount;
+        final int edgeStart;
+        final int edgeCount;
+
+        Range(int vertexStart, int vertexCount, int edgeStart, int edgeCount) {
+            this.vertexStart = vertexStart;
+            this.vertexCount = vertexCount;
+            this.edgeStart = edgeStart;
+            this.edgeCount = edgeCount;
+        }
+    }
+
+    // neurons in buffer order; null until first built
+    private final LinkedHashMap<TmNeuronMetadata, Range> layout = new LinkedHashMap<>();
+    private final Map<Long, TmNeuronMetadata> neuronsById = new HashMap<>();
+    private final Set<TmNeuronMetadata> dirty = new HashSet<>();
+    // annotations of dirty neurons, copied by snapshot() for the next build
+    private final Map<TmNeuronMetadata, List<TmGeoAnnotation>> snapshots = new HashMap<>();
+    private boolean layoutChanged = false;
+
+    private float[] vertices = new float[0];
+    private int[] edges = new int[0];
+    private int vertexCount = 0;
+    private int edgeCount = 0;
+    // moving neurons writes into these, then they're swapped with the above
+    private float[] spareVertices = new float[0];
+    private int[] spareEdges = new int[0];
+
+    // one neuron at a time is built here, with edges indexed from its first vertex
+    private float[] neuronVertices = new float[0];
+    private long[] neuronParentIds = new long[0];
+    private int[] neuronEdges = new int[0];
+    private int neuronVertexCount;
+    private int neuronEdgeCount;
+    private final Map<Long, Integer> neuronIndices = new HashMap<>();
+
+    // changed since the last upload, in vertices and edges; empty if start >= end
+    private int dirtyVertexStart = Integer.MAX_VALUE;
+    private int dirtyVertexEnd = 0;
+    private int dirtyEdgeStart = Integer.MAX_VALUE;
+    private int dirtyEdgeEnd = 0;
+
+    boolean add(TmNeuronMetadata neuron) {
+        if (layout.containsKey(neuron)) {
+            return false;
+        }
+        layout.put(neuron, null);
+        neuronsById.put(neuron.getId(), neuron);
+        dirty.add(neuron);
+        layoutChanged = true;
+        return true;
+    }
+
+    boolean remove(TmNeuronMetadata neuron) {
+        if (!layout.containsKey(neuron)) {
+            return false;
+        }
+        layout.remove(neuron);
+        neuronsById.remove(neuron.getId());
+        dirty.remove(neuron);
+        snapshots.remove(neuron);
+        layoutChanged = true;
+        return true;
+    }
+
+    void clear() {
+        layout.clear();
+        neuronsById.clear();
+        dirty.clear();
+        snapshots.clear();
+        layoutChanged = false;
+        vertexCount = 0;
+        edgeCount = 0;
+        clearDirtyRanges();
+    }
+
+    boolean contains(TmNeuronMetadata neuron) {
+        return layout.containsKey(neuron);
+    }
+
+    // a neuron that changes again after its snapshot waits for a fresh one
+    void markDirty(TmNeuronMetadata neuron) {
+        if (layout.containsKey(neuron)) {
+            dirty.add(neuron);
+            snapshots.remove(neuron);
+        }
+    }
+
+    void markDirty(Long neuronId) {
+        TmNeuronMetadata neuron = neuronsById.get(neuronId);
+        if (neuron != null) {
+            dirty.add(neuron);
+            snapshots.remove(neuron);
+        }
+    }
+
+    void markAllDirty() {
+        dirty.addAll(layout.keySet());
+        snapshots.clear();
+    }
+
+    boolean isDirty(TmNeuronMetadata neuron) {
+        return dirty.contains(neuron);
+    }
+
+    boolean needsUpdate() {
+        return layoutChanged || !dirty.isEmpty();
+    }
+
+    /**
+     * Snapshots and rebuilds the dirty neurons, and moves the others if need be,
+     * all on the calling thread.
+     *
+     * @return true if anything changed
+     */
+    boolean update(StyleSource styles, AffineTransform3d voxToMicron) {
+        snapshot();
+        return buildSnapshot(styles, voxToMicron);
+    }
+
+    /**
+     * Copies the annotations of the dirty neurons.  Should be called on the
+     * thread that owns the neuron models, before buildSnapshot() is handed off.
+     */
+    void snapshot() {
+        for (TmNeuronMetadata neuron : dirty) {
+            if (!snapshots.containsKey(neuron)) {
+                snapshots.put(neuron, new ArrayList<>(neuron.getGeoAnnotationMap().values()));
+            }
+        }
+    }
+
+    /**
+     * Rebuilds the snapshotted neurons, and moves the others if need be; reads
+     * no annotation maps, so may run on any thread.
+     *
+     * @return true if anything changed
+     */
+    boolean buildSnapshot(StyleSource styles, AffineTransform3d voxToMicron) {
+        if (!layoutChanged && snapshots.isEmpty()) {
+            return false;
+        }
+        if (layoutChanged || !patchInPlace(styles, voxToMicron)) {
+            relayout(styles, voxToMicron);
+        }
+        // neurons marked dirty since the snapshot wait for the next one
+        dirty.retainAll(waiting());
+        snapshots.clear();
+        layoutChanged = false;
+        return true;
+    }
+
+    private Set<TmNeuronMetadata> waiting() {
+        Set<TmNeuronMetadata> waiting = new HashSet<>(dirty);
+        waiting.removeAll(snapshots.keySet());
+        return waiting;
+    }
+
+    // Rewrites dirty neurons where they are; false if one has changed size,
+    // leaving it and the remaining dirty neurons to relayout()
+    private boolean patchInPlace(StyleSource styles, AffineTransform3d voxToMicron) {
+        for (Iterator<TmNeuronMetadata> it = dirty.iterator(); it.hasNext();) {
+            TmNeuronMetadata neuron = it.next();
+            if (!snapshots.containsKey(neuron)) {
+                continue;
+            }
+            Range range = layout.get(neuron);
+            buildNeuron(neuron, styles.styleFor(neuron), voxToMicron);
+            if (neuronVertexCount != range.vertexCount || neuronEdgeCount != range.edgeCount) {
+                return false;
+            }
+            placeNeuron(vertices, edges, range.vertexStart, range.edgeStart);
+            markDirtyVertices(range.vertexStart, range.vertexStart + range.vertexCount);
+            markDirtyEdges(range.edgeStart, range.edgeStart + range.edgeCount);
+            it.remove();
+        }
+        return true;
+    }
+
+    // Lays every neuron out again into the spare arrays, building the dirty and
+    // new ones, and copying the rest; ranges are only replaced once all succeed
+    private void relayout(StyleSource styles, AffineTransform3d voxToMicron) {
+        List<Range> ranges = new ArrayList<>(layout.size());
+        int v = 0;
+        int e = 0;
+        int firstChangedVertex = -1;
+        int firstChangedEdge = -1;
+        for (Map.Entry<TmNeuronMetadata, Range> entry : layout.entrySet()) {
+            TmNeuronMetadata neuron = entry.getKey();
+            Range old = entry.getValue();
+            Range range;
+            boolean changed;
+            if (old == null && !snapshots.containsKey(neuron)) {
+                // added since the snapshot; takes no room until the next one
+                range = new Range(v, 0, e, 0);
+                changed = false;
+            } else if (old != null && !snapshots.containsKey(neuron)) {
+                range = new Range(v, old.vertexCount, e, old.edgeCount);
+                ensureSpareCapacity(v + range.vertexCount, e + range.edgeCount);
+                System.arraycopy(vertices, FLOATS_PER_VERTEX * old.vertexStart,
+                        spareVertices, FLOATS_PER_VERTEX * v, FLOATS_PER_VERTEX * old.vertexCount);
+                int shift = v - old.vertexStart;
+                for (int i = 2 * old.edgeStart, j = 2 * e; i < 2 * (old.edgeStart + old.edgeCount); i++, j++) {
+                    spareEdges[j] = edges[i] + shift;
+                }
+                changed = shift != 0 || e != old.edgeStart;
+            } else {
+                buildNeuron(neuron, styles.styleFor(neuron), voxToMicron);
+                range = new Range(v, neuronVertexCount, e, neuronEdgeCount);
+                ensureSpareCapacity(v + range.vertexCount, e + range.edgeCount);
+                placeNeuron(spareVertices, spareEdges, v, e);
+                changed = true;
+            }
+            if (changed && firstChangedVertex < 0) {
+                firstChangedVertex = v;
+                firstChangedEdge = e;
+            }
+            ranges.add(range);
+            v += range.vertexCount;
+            e += range.edgeCount;
+        }
+
+        Iterator<Range> newRanges = ranges.iterator();
+        for (Map.Entry<TmNeuronMetadata, Range> entry : layout.entrySet()) {
+            entry.setValue(newRanges.next());
+        }
+        float[] oldVertices = vertices;
+        vertices = spareVertices;
+        spareVertices = oldVertices;
+        int[] oldEdges = edges;
+        edges = spareEdges;
+        spareEdges = oldEdges;
+        vertexCount = v;
+        edgeCount = e;
+        if (firstChangedVertex >= 0) {
+            markDirtyVertices(firstChangedVertex, v);
+            markDirtyEdges(firstChangedEdge, e);
+        }
+        // ranges past the new ends aren't drawn, so needn't be uploaded
+        dirtyVertexEnd = Math.min(dirtyVertexEnd, vertexCount);
+        dirtyEdgeEnd = Math.min(dirtyEdgeEnd, edgeCount);
+    }
+
+    private void buildNeuron(TmNeuronMetadata neuron, NeuronStyle style, AffineTransform3d voxToMicron) {
+        List<TmGeoAnnotation> annotations = snapshots.get(neuron);
+        ensureNeuronCapacity(annotations.size());
+        neuronIndices.clear();
+        int n = 0;
+        for (TmGeoAnnotation vertex : annotations) {
+            neuronIndices.put(vertex.getId(), n);
+            Long parentId = vertex.getParentId();
+            neuronParentIds[n] = parentId == null ? Long.MIN_VALUE : parentId;
+
+            // X, Y, Z, radius, r, g, b, visibility
+            int f = FLOATS_PER_VERTEX * n;
+            voxToMicron.transform(vertex.getX(), vertex.getY(), vertex.getZ(), neuronVertices, f);
+            float radius = 1.0f;
+            if (vertex.getRadius() != null) {
+                radius = vertex.getRadius().floatValue();
+            }
+            if (!Float.isNaN(style.radiusOverride)) {
+                radius = style.radiusOverride;
+            }
+            neuronVertices[f + 3] = radius;
+            float[] rgb = style.rgb;
+            if (style.reviewed.test(vertex.getId())) {
+                rgb = style.reviewedRgb;
+            } else if (style.looped.test(vertex.getId())) {
+                rgb = style.loopRgb;
+            }
+            neuronVertices[f + COLOR_OFFSET] = rgb[0];
+            neuronVertices[f + COLOR_OFFSET + 1] = rgb[1];
+            neuronVertices[f + COLOR_OFFSET + 2] = rgb[2];
+            neuronVertices[f + VISIBILITY_OFFSET] = style.visibility;
+            n++;
+        }
+        neuronVertexCount = n;
+
+        // an edge from each vertex whose parent is another vertex of the neuron
+        int e = 0;
+        for (int child = 0; child < n; child++) {
+            Integer parent = neuronIndices.get(neuronParentIds[child]);
+            if (parent != null) {
+                neuronEdges[2 * e] = parent;
+                neuronEdges[2 * e + 1] = child;
+                e++;
+            }
+        }
+        neuronEdgeCount = e;
+    }
+
+    private void placeNeuron(float[] toVertices, int[] toEdges, int vertexStart, int edgeStart) {
+        System.arraycopy(neuronVertices, 0, toVertices, FLOATS_PER_VERTEX * vertexStart,
+                FLOATS_PER_VERTEX * neuronVertexCount);
+        for (int i = 0, j = 2 * edgeStart; i < 2 * neuronEdgeCount; i++, j++) {
+            toEdges[j] = neuronEdges[i] + vertexStart;
+        }
+    }
+
+    /**
+     * Lightweight update of just the neuron's color, unless it's waiting to be
+     * rebuilt anyway.  Compares against its first vertex.
+     *
+     * @return true if the buffer changed
+     */
+    boolean patchColor(TmNeuronMetadata neuron, float[] rgb) {
+        Range range = layout.get(neuron);
+        if (range == null || range.vertexCount == 0 || dirty.contains(neuron)) {
+            return false;
+        }
+        int offset = FLOATS_PER_VERTEX * range.vertexStart + COLOR_OFFSET;
+        if (vertices[offset] == rgb[0] && vertices[offset + 1] == rgb[1] && vertices[offset + 2] == rgb[2]) {
+            return false;
+        }
+        for (int v = 0; v < range.vertexCount; v++) {
+            int index = offset + v * FLOATS_PER_VERTEX;
+            vertices[index] = rgb[0];
+            vertices[index + 1] = rgb[1];
+            vertices[index + 2] = rgb[2];
+        }
+        markDirtyVertices(range.vertexStart, range.vertexStart + range.vertexCount);
+        return true;
+    }
+
+    /**
+     * Lightweight update of just the neuron's visibility, as above.
+     *
+     * @return true if the buffer changed
+     */
+    boolean patchVisibility(TmNeuronMetadata neuron, float visibility) {
+        Range range = layout.get(neuron);
+        if (range == null || range.vertexCount == 0 || dirty.contains(neuron)) {
+            return false;
+        }
+        int offset = FLOATS_PER_VERTEX * range.vertexStart + VISIBILITY_OFFSET;
+        if (vertices[offset] == visibility) {
+            return false;
+        }
+        for (int v = 0; v < range.vertexCount; v++) {
+            vertices[offset + v * FLOATS_PER_VERTEX] = visibility;
+        }
+        markDirtyVertices(range.vertexStart, range.vertexStart + range.vertexCount);
+        return true;
+    }
+
+    /**
+     * @return the number of vertices the neuron has in the buffer, or -1 if it
+     * hasn't been built yet
+     */
+    int getVertexCount(TmNeuronMetadata neuron) {
+        Range range = layout.get(neuron);
+        return range == null ? -1 : range.vertexCount;
+    }
+
+    int getEdgeCount(TmNeuronMetadata neuron) {
+        Range range = layout.get(neuron);
+        return range == null ? -1 : range.edgeCount;
+    }
+
+    int getVertexCount() {
+        return vertexCount;
+    }
+
+    int getEdgeCount() {
+        return edgeCount;
+    }
+
+    /**
+     * the vertex attributes; only the first getVertexCount() * FLOATS_PER_VERTEX are in use
+     */
+    float[] getVertices() {
+        return vertices;
+    }
+
+    /**
+     * pairs of vertex indices; only the first 2 * getEdgeCount() are in use
+     */
+    int[] getEdges() {
+        return edges;
+    }
+
+    /**
+     * number of vertices the arrays can hold without growing
+     */
+    int getVertexCapacity() {
+        return vertices.length / FLOATS_PER_VERTEX;
+    }
+
+    int getEdgeCapacity() {
+        return edges.length / 2;
+    }
+
+    boolean hasDirtyRanges() {
+        return dirtyVertexStart < dirtyVertexEnd || dirtyEdgeStart < dirtyEdgeEnd;
+    }
+
+    int getDirtyVertexStart() {
+        return dirtyVertexStart;
+    }
+
+    int getDirtyVertexEnd() {
+        return dirtyVertexEnd;
+    }
+
+    int getDirtyEdgeStart() {
+        return dirtyEdgeStart;
+    }
+
+    int getDirtyEdgeEnd() {
+        return dirtyEdgeEnd;
+    }
+
+    void clearDirtyRanges() {
+        dirtyVertexStart = Integer.MAX_VALUE;
+        dirtyVertexEnd = 0;
+        dirtyEdgeStart = Integer.MAX_VALUE;
+        dirtyEdgeEnd = 0;
+    }
+
+    private void markDirtyVertices(int start, int end) {
+        if (start < end) {
+            dirtyVertexStart = Math.min(dirtyVertexStart, start);
+            dirtyVertexEnd = Math.max(dirtyVertexEnd, end);
+        }
+    }
+
+    private void markDirtyEdges(int start, int end) {
+        if (start < end) {
+            dirtyEdgeStart = Math.min(dirtyEdgeStart, start);
+            dirtyEdgeEnd = Math.max(dirtyEdgeEnd, end);
+        }
+    }
+
+    // Both buffer sets grow together, by half again, so they settle at a size that
+    // fits and stop being reallocated
+    private void ensureSpareCapacity(int vertexCapacity, int edgeCapacity) {
+        if (FLOATS_PER_VERTEX * vertexCapacity > spareVertices.length) {
+            int grown = Math.max(vertexCapacity, getVertexCapacity() + getVertexCapacity() / 2);
+            spareVertices = Arrays.copyOf(spareVertices, FLOATS_PER_VERTEX * grown);
+        }
+        if (2 * edgeCapacity > spareEdges.length) {
+            int grown = Math.max(edgeCapacity, getEdgeCapacity() + getEdgeCapacity() / 2);
+            spareEdges = Arrays.copyOf(spareEdges, 2 * grown);
+        }
+    }
+
+    private void ensureNeuronCapacity(int vertexCapacity) {
+        if (vertexCapacity > neuronParentIds.length) {
+            int grown = Math.max(vertexCapacity, neuronParentIds.length + neuronParentIds.length / 2);
+            neuronVertices = Arrays.copyOf(neuronVertices, FLOATS_PER_VERTEX * grown);
+            neuronParentIds = Arrays.copyOf(neuronParentIds, grown);
+            neuronEdges = Arrays.copyOf(neuronEdges, 2 * grown);
+        }
+    }
+
+}
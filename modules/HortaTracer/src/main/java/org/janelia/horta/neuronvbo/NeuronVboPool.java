@@ -1,8 +1,13 @@
 package org.janelia.horta.neuronvbo;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import java.io.IOException;
 import java.util.*;
 import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import javax.media.opengl.GL3;
 import org.janelia.geometry3d.AbstractCamera;
 import org.janelia.gltools.BasicShaderProgram;
@@ -31,6 +36,12 @@ public class NeuronVboPool implements Iterable<TmNeuronMetadata> {
     // (smaller blocks for the win...)
     private final static int POOL_SIZE = 30;
 
+    // Rebuilds the CPU side contents of dirty vbos in parallel, so the GL
+    // thread only waits for the slowest one, then uploads the changed ranges
+    private final static ExecutorService GEOMETRY_EXECUTOR = Executors.newFixedThreadPool(
+            Math.max(1, Math.min(POOL_SIZE, Runtime.getRuntime().availableProcessors() - 1)),
+            new ThreadFactoryBuilder().setNameFormat("NeuronVboGeometry-%d").setDaemon(true).build());
+
     // Maintain vbos in a structure sorted by how much stuff is in each one.
     private final NavigableMap<Integer, Deque<NeuronVbo>> vbos = new TreeMap<>();
     // private final List<NeuronVbo> vbos;
@@ -140,6 +151,8 @@ public class NeuronVboPool implements Iterable<TmNeuronMetadata> {
                 / camera.getViewport().getHeightPixels();
         radiusOffset = minPixelRadius * micrometersPerPixel;
 
+        updateGeometry();
+
         // First pass: draw all the connections (edges) between adjacent neuron anchor nodes.
         // These edges are drawn as truncated cones, tapering width between
         // the radii of the adjacent nodes.
@@ -157,6 +170,38 @@ public class NeuronVboPool implements Iterable<TmNeuronMetadata> {
         }
     }
 
+    // Brings the CPU side contents of every dirty vbo up to date before drawing
+    private void updateGeometry() {
+        List<NeuronVbo> dirtyVbos = new ArrayList<>();
+        for (NeuronVbo vbo : new VboIterable()) {
+            if (vbo.needsGeometryUpdate()) {
+                dirtyVbos.add(vbo);
+            }
+        }
+        // the annotation maps are only read here, never from the workers
+        for (NeuronVbo vbo : dirtyVbos) {
+            vbo.snapshotGeometry();
+        }
+        if (dirtyVbos.size() == 1) {
+            dirtyVbos.get(0).buildGeometry(); // not worth a hand off
+            return;
+        }
+        List<Future<?>> updates = new ArrayList<>();
+        for (NeuronVbo vbo : dirtyVbos) {
+            updates.add(GEOMETRY_EXECUTOR.submit(vbo::buildGeometry));
+        }
+        for (Future<?> update : updates) {
+            try {
+                update.get();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return; // anything left over is rebuilt as the vbos are drawn
+            } catch (ExecutionException ex) {
+                log.error("Failed to rebuild neuron vbo data", ex.getCause());
+            }
+        }
+    }
+
     void dispose(GL3 gl) {
         for (NeuronVbo vbo : new VboIterable()) {
             vbo.dispose(gl);
@@ -239,7 +284,7 @@ public class NeuronVboPool implements Iterable<TmNeuronMetadata> {
     public void markAsDirty(Long neuronId) {
         NeuronVbo dirtyVbo = neuronMap.get(neuronId);
         if (dirtyVbo!=null) {
-            dirtyVbo.markAsDirty();
+            dirtyVbo.markAsDirty(neuronId);
         }
     }
 
@@ -0,0 +1,118 @@
+package org.janelia.horta.omezarr;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+import org.janelia.horta.volume.BrickInfo;
+import org.janelia.horta.volume.OmeZarrVolumeBrickSource;
+
+/**
+ * Times brick loading from a synthetic local OME-Zarr pyramid, first with a cold chunk cache, then a warm one.
+ *
+ * Usage: MeasureOmeZarrReadTime [directory [edge [chunk [levels]]]]
+ */
+public class MeasureOmeZarrReadTime {
+
+    public static void main(String[] args) throws IOException {
+        Path directory = args.length > 0 ? Paths.get(args[0]) : Files.createTempDirectory("synthetic").resolve("synthetic.zarr");
+        int edge = args.length > 1 ? Integer.parseInt(args[1]) : 1024;
+        int chunk = args.length > 2 ? Integer.parseInt(args[2]) : 128;
+        int levels = args.length > 3 ? Integer.parseInt(args[3]) : 4;
+
+        if (!Files.exists(directory)) {
+            System.out.println("Writing " + levels + " level pyramid of " + edge + "^3 voxels to " + directory);
+            writePyramid(directory, edge, chunk, levels);
+        }
+
+        OmeZarrVolumeBrickSource source = new OmeZarrVolumeBrickSource(directory.toString()).init();
+        for (int pass = 0; pass < 2; pass++) {
+            System.out.println(pass == 0 ? "Cold chunk cache:" : "Warm chunk cache:");
+            for (Double resolution : source.getAvailableResolutions()) {
+                long start = System.nanoTime();
+                int brickCount = 0;
+                for (BrickInfo brick : source.getAllBrickInfoForResolution(resolution)) {
+                    if (brick.loadBrick(0, source.getFileType().getExtension()) == null) {
+                        System.out.println("  failed to load brick " + brick);
+                    }
+                    brickCount++;
+                }
+                double seconds = (System.nanoTime() - start) / 1e9;
+                System.out.println(String.format("  %.2f um: %d bricks in %.2f s", resolution, brickCount, seconds));
+            }
+            OmeZarrChunkCache cache = OmeZarrChunkCache.getInstance();
+            System.out.println(String.format("  chunk cache hit rate %.1f%%", 100 * cache.getHitRate()));
+        }
+    }
+
+    /**
+     * Writes a tczyx uint16 OME-Zarr pyramid with zlib compressed chunks, halving the XYZ size at each level.
+     */
+    static void writePyramid(Path directory, int edge, int chunk, int levels) throws IOException {
+        Files.createDirectories(directory);
+        write(directory.resolve(".zgroup"), "{\"zarr_format\": 2}");
+
+        StringBuilder datasets = new StringBuilder();
+        for (int level = 0; level < levels; level++) {
+            double scale = 1 << level;
+            datasets.append(level == 0 ? "" : ", ")
+                    .append("{\"path\": \"").append(level).append("\", \"coordinateTransformations\": [")
+                    .append("{\"type\": \"scale\", \"scale\": [1.0, 1.0, ")
+                    .append(scale).append(", ").append(scale).append(", ").append(scale).append("]}]}");
+        }
+        write(directory.resolve(".zattrs"), "{\"multiscales\": [{\"version\": \"0.4\", \"name\": \"synthetic\", \"axes\": ["
+                + "{\"name\": \"t\", \"type\": \"time\", \"unit\": \"millisecond\"}, "
+                + "{\"name\": \"c\", \"type\": \"channel\"}, "
+                + "{\"name\": \"z\", \"type\": \"space\", \"unit\": \"micrometer\"}, "
+                + "{\"name\": \"y\", \"type\": \"space\", \"unit\": \"micrometer\"}, "
+                + "{\"name\": \"x\", \"type\": \"space\", \"unit\": \"micrometer\"}], "
+                + "\"datasets\": [" + datasets + "]}]}");
+
+        for (int level = 0; level < levels; level++) {
+            int size = Math.max(1, edge >> level);
+            Path array = directory.resolve(Integer.toString(level));
+            Files.createDirectories(array);
+            write(array.resolve(".zarray"), "{\"zarr_format\": 2, \"shape\": [1, 1, " + size + ", " + size + ", " + size + "], "
+                    + "\"chunks\": [1, 1, " + chunk + ", " + chunk + ", " + chunk + "], \"dtype\": \"<u2\", "
+                    + "\"compressor\": {\"id\": \"zlib\", \"level\": 1}, \"fill_value\": 0, \"order\": \"C\", \"filters\": null}");
+
+            int chunkCount = (size + chunk - 1) / chunk;
+            ByteBuffer voxels = ByteBuffer.allocate(2 * chunk * chunk * chunk).order(ByteOrder.LITTLE_ENDIAN);
+            for (int cz = 0; cz < chunkCount; cz++) {
+                for (int cy = 0; cy < chunkCount; cy++) {
+                    for (int cx = 0; cx < chunkCount; cx++) {
+                        voxels.clear();
+                        // Smooth pattern with some noise, so that chunks compress like real data
+                        for (int z = 0; z < chunk; z++) {
+                            for (int y = 0; y < chunk; y++) {
+                                for (int x = 0; x < chunk; x++) {
+                                    int gx = (cx * chunk + x) << level;
+                                    int gy = (cy * chunk + y) << level;
+                                    int gz = (cz * chunk + z) << level;
+                                    int value = 1000 + (int) (800 * Math.sin(gx * 0.05) * Math.cos(gy * 0.03))
+                                            + ((gx * 7 + gy * 13 + gz * 17) & 0x3f);
+                                    voxels.putShort((short) (value + gz));
+                                }
+                            }
+                        }
+                        Path chunkFile = array.resolve("0.0." + cz + "." + cy + "." + cx);
+                        try (OutputStream out = new DeflaterOutputStream(Files.newOutputStream(chunkFile), new Deflater(1))) {
+                            out.write(voxels.array());
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private static void write(Path file, String contents) throws IOException {
+        Files.write(file, contents.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,115 @@
+package org.janelia.horta.omezarr;
+
+import java.awt.image.DataBuffer;
+import java.awt.image.WritableRaster;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.janelia.workstation.core.util.ConsoleProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Least recently used cache of decoded OME-Zarr chunks, shared by all datasets, resolutions and channels.
+ * Each entry holds the Z slices of one chunk. Cached rasters are shared, and must not be modified.
+ */
+public class OmeZarrChunkCache {
+    private final static Logger log = LoggerFactory.getLogger(OmeZarrChunkCache.class);
+
+    private static OmeZarrChunkCache instance;
+
+    public static synchronized OmeZarrChunkCache getInstance() {
+        if (instance == null) {
+            long maxMegabytes = ConsoleProperties.getLong("console.horta.omeZarrChunkCacheMB", 1024);
+            instance = new OmeZarrChunkCache(maxMegabytes * 1024 * 1024);
+        }
+        return instance;
+    }
+
+    private final long maxBytes;
+
+    private final Map<String, WritableRaster[]> chunks = new LinkedHashMap<>(64, 0.75f, true);
+
+    private long currentBytes = 0;
+
+    private long hitCount = 0;
+
+    private long missCount = 0;
+
+    public OmeZarrChunkCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @return the slices of the chunk, or null if it is not cached
+     */
+    public synchronized WritableRaster[] get(String key) {
+        WritableRaster[] slices = chunks.get(key);
+        if (slices == null) {
+            missCount++;
+        } else {
+            hitCount++;
+        }
+        return slices;
+    }
+
+    public synchronized void put(String key, WritableRaster[] slices) {
+        long size = sizeOf(slices);
+        if (size > maxBytes) {
+            return;
+        }
+        WritableRaster[] previous = chunks.put(key, slices);
+        if (previous != null) {
+            currentBytes -= sizeOf(previous);
+        }
+        currentBytes += size;
+        Iterator<WritableRaster[]> eldest = chunks.values().iterator();
+        while (currentBytes > maxBytes && eldest.hasNext()) {
+            currentBytes -= sizeOf(eldest.next());
+            eldest.remove();
+        }
+    }
+
+    public synchronized void clear() {
+        chunks.clear();
+        currentBytes = 0;
+    }
+
+    public synchronized long getSizeBytes() {
+        return currentBytes;
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * @return fraction of lookups that found their chunk, between 0 and 1
+     */
+    public synchronized double getHitRate() {
+        long lookups = hitCount + missCount;
+        return lookups == 0 ? 0 : hitCount / (double) lookups;
+    }
+
+    public void logStatistics() {
+        if (!log.isDebugEnabled()) {
+            return;
+        }
+        log.debug(String.format("chunk cache: hit rate %.1f%% (%d hits, %d misses), %.1f MB used",
+                100.0 * getHitRate(), getHitCount(), getMissCount(), getSizeBytes() / 1048576.0));
+    }
+
+    static long sizeOf(WritableRaster[] slices) {
+        long size = 0;
+        for (WritableRaster slice : slices) {
+            int bytesPerSample = DataBuffer.getDataTypeSize(slice.getDataBuffer().getDataType()) / 8;
+            size += (long) slice.getWidth() * slice.getHeight() * slice.getNumBands() * bytesPerSample;
+        }
+        return size;
+    }
+}
@@ -0,0 +1,183 @@
+package org.janelia.horta.omezarr;
+
+import java.awt.image.WritableRaster;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Future;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.aind.omezarr.OmeZarrDataset;
+import org.aind.omezarr.image.AutoContrastParameters;
+import org.aind.omezarr.image.TCZYXRasterZStack;
+
+/**
+ * Reads subvolumes of a tczyx OME-Zarr dataset one native zarr chunk at a time. Chunks are decoded in parallel,
+ * and kept in the shared OmeZarrChunkCache, so that a chunk is only decoded once while it is in use.
+ */
+public class OmeZarrChunkReader {
+
+    private static final ForkJoinPool CHUNK_POOL = new ForkJoinPool(
+            Math.max(2, Runtime.getRuntime().availableProcessors()),
+            pool -> {
+                ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                thread.setName("OmeZarrChunk-" + thread.getPoolIndex());
+                return thread;
+            },
+            null, false);
+
+    private final OmeZarrDataset dataset;
+
+    private final String datasetKey;
+
+    // [t, c, z, y, x]
+    private final int[] shape;
+
+    // [t, c, z, y, x]
+    private final int[] chunkShape;
+
+    private final OmeZarrChunkCache cache;
+
+    /**
+     * @param datasetKey identifies the dataset in the shared cache, e.g. its full path
+     * @param chunkShape native zarr chunk shape [t, c, z, y, x]
+     */
+    public OmeZarrChunkReader(OmeZarrDataset dataset, String datasetKey, int[] chunkShape, OmeZarrChunkCache cache) throws IOException {
+        this.dataset = dataset;
+        this.datasetKey = datasetKey;
+        this.shape = dataset.getShape();
+        this.chunkShape = chunkShape;
+        this.cache = cache;
+    }
+
+    public OmeZarrDataset getDataset() {
+        return dataset;
+    }
+
+    public OmeZarrChunkCache getCache() {
+        return cache;
+    }
+
+    /**
+     * @return native chunk shape [x, y, z]
+     */
+    public int[] getChunkSizeXyz() {
+        return new int[]{chunkShape[4], chunkShape[3], chunkShape[2]};
+    }
+
+    /**
+     * Reads the chunk shape from the zarr array metadata.
+     *
+     * @param zarray contents of the .zarray file of the dataset
+     * @return chunk shape, in the same axis order as the dataset shape
+     */
+    public static int[] readChunkShape(InputStream zarray) throws IOException {
+        JsonNode chunks = new ObjectMapper().readTree(zarray).get("chunks");
+        if (chunks == null || !chunks.isArray()) {
+            throw new IOException("zarr array metadata has no chunk shape");
+        }
+        int[] chunkShape = new int[chunks.size()];
+        for (int i = 0; i < chunkShape.length; i++) {
+            chunkShape[i] = chunks.get(i).asInt();
+        }
+        return chunkShape;
+    }
+
+    /**
+     * Reads a subvolume of one channel at time 0.
+     *
+     * @param offset [x, y, z] voxel offset of the subvolume
+     * @param size [x, y, z] voxel size of the subvolume
+     * @return one raster per Z slice
+     */
+    public WritableRaster[] read(int channel, int[] offset, int[] size, AutoContrastParameters autoContrast) throws IOException {
+        // [x, y, z]
+        int[] chunkSize = getChunkSizeXyz();
+        int[] datasetSize = {shape[4], shape[3], shape[2]};
+        int[] first = new int[3];
+        int[] last = new int[3];
+        for (int i = 0; i < 3; i++) {
+            first[i] = offset[i] / chunkSize[i];
+            last[i] = (Math.min(offset[i] + size[i], datasetSize[i]) - 1) / chunkSize[i];
+        }
+
+        List<int[]> origins = new ArrayList<>();
+        List<Callable<WritableRaster[]>> loads = new ArrayList<>();
+        for (int z = first[2]; z <= last[2]; z++) {
+            for (int y = first[1]; y <= last[1]; y++) {
+                for (int x = first[0]; x <= last[0]; x++) {
+                    final int[] origin = {x * chunkSize[0], y * chunkSize[1], z * chunkSize[2]};
+                    origins.add(origin);
+                    loads.add(() -> readChunk(channel, origin, autoContrast));
+                }
+            }
+        }
+
+        List<Future<WritableRaster[]>> results = CHUNK_POOL.invokeAll(loads);
+
+        WritableRaster[] slices = new WritableRaster[size[2]];
+        for (int c = 0; c < results.size(); c++) {
+            WritableRaster[] chunk;
+            try {
+                chunk = results.get(c).get();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IOException("interrupted while reading chunks of " + datasetKey, ex);
+            } catch (ExecutionException ex) {
+                throw new IOException("failed to read chunk of " + datasetKey, ex.getCause());
+            }
+            copyIntersection(chunk, origins.get(c), slices, offset, size);
+        }
+        return slices;
+    }
+
+    /**
+     * Chunks are cached as scaled by autoContrast, so the parameters are part of the key.
+     */
+    static String chunkKey(String datasetKey, int channel, int[] origin, AutoContrastParameters autoContrast) {
+        String contrast = autoContrast == null ? "raw" : autoContrast.min + "," + autoContrast.slope;
+        return String.format("%s/%d/%d.%d.%d/%s", datasetKey, channel, origin[2], origin[1], origin[0], contrast);
+    }
+
+    private WritableRaster[] readChunk(int channel, int[] origin, AutoContrastParameters autoContrast) throws Exception {
+        String key = chunkKey(datasetKey, channel, origin, autoContrast);
+        WritableRaster[] chunk = cache.get(key);
+        if (chunk != null) {
+            return chunk;
+        }
+        // Edge chunks are clipped to the dataset
+        int[] readShape = {1, 1,
+                Math.min(chunkShape[2], shape[2] - origin[2]),
+                Math.min(chunkShape[3], shape[3] - origin[1]),
+                Math.min(chunkShape[4], shape[4] - origin[0])};
+        int[] readOffset = {0, channel, origin[2], origin[1], origin[0]};
+        chunk = TCZYXRasterZStack.fromDataset(dataset, readShape, readOffset, true, autoContrast, false);
+        cache.put(key, chunk);
+        return chunk;
+    }
+
+    private static void copyIntersection(WritableRaster[] chunk, int[] chunkOrigin, WritableRaster[] slices, int[] offset, int[] size) {
+        int x0 = Math.max(chunkOrigin[0], offset[0]);
+        int y0 = Math.max(chunkOrigin[1], offset[1]);
+        int x1 = Math.min(chunkOrigin[0] + chunk[0].getWidth(), offset[0] + size[0]);
+        int y1 = Math.min(chunkOrigin[1] + chunk[0].getHeight(), offset[1] + size[1]);
+        int z0 = Math.max(chunkOrigin[2], offset[2]);
+        int z1 = Math.min(chunkOrigin[2] + chunk.length, offset[2] + size[2]);
+        for (int z = z0; z < z1; z++) {
+            WritableRaster source = chunk[z - chunkOrigin[2]];
+            int s = z - offset[2];
+            if (slices[s] == null) {
+                slices[s] = source.createCompatibleWritableRaster(size[0], size[1]);
+            }
+            WritableRaster part = source.createWritableChild(
+                    x0 - chunkOrigin[0], y0 - chunkOrigin[1], x1 - x0, y1 - y0, 0, 0, null);
+            slices[s].setRect(x0 - offset[0], y0 - offset[1], part);
+        }
+    }
+}
@@ -4,6 +4,7 @@ import java.awt.BorderLayout;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 
+import javax.swing.JCheckBox;
 import javax.swing.JComboBox;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
@@ -26,6 +27,9 @@ public class TileLoadingPanel extends javax.swing.JPanel {
     public static final String PREFERENCE_RAM_TILE_COUNT = "RamTileCount";
     public static final String PREFERENCE_RAM_TILE_COUNT_DEFAULT = "4";
 
+    public static final String PREFERENCE_PROGRESSIVE_LOADING = "ProgressiveLoading";
+    public static final String PREFERENCE_PROGRESSIVE_LOADING_DEFAULT = "true";
+
     public static final String PREFERENCE_ANNOTATIONS_CLICK_MODE = "AnnotationClickMode";
     public static final String CLICK_MODE_SHIFT_LEFT_CLICK = "shift-left-click";
     public static final String CLICK_MODE_LEFT_CLICK = "left-click";
@@ -34,6 +38,7 @@ public class TileLoadingPanel extends javax.swing.JPanel {
     private final TileLoadingOptionsPanelController controller;
     private final JTextField concurrentLoadsField;
     private final JTextField ramTileCountField;
+    private final JCheckBox progressiveLoadingCheckBox;
     private JComboBox<String> clickModeCombo;
 
     DocumentListener listener = new DocumentListener() {
@@ -73,6 +78,18 @@ public class TileLoadingPanel extends javax.swing.JPanel {
         attrPanel.add(titleLabel,"gap para");
         attrPanel.add(ramTileCountField,"gap para, width 100:400:600, growx");
 
+        this.progressiveLoadingCheckBox = new JCheckBox();
+        progressiveLoadingCheckBox.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                controller.changed();
+            }
+        });
+        titleLabel = new JLabel("Show coarse tiles while loading: ");
+        titleLabel.setLabelFor(progressiveLoadingCheckBox);
+        attrPanel.add(titleLabel,"gap para");
+        attrPanel.add(progressiveLoadingCheckBox,"gap para");
+
         // note: this click-mode preference really belongs in the other panel, ApplicationPanel,
         //  alongside the 2d version; unfortunately, they are currently using the same text string
         //  key in different classes, so doing so would require code to migrate and update the
@@ -110,12 +127,14 @@ public class TileLoadingPanel extends javax.swing.JPanel {
     void load() {
         concurrentLoadsField.setText(NbPreferences.forModule(TileLoadingPanel.class).get(PREFERENCE_CONCURRENT_LOADS, PREFERENCE_CONCURRENT_LOADS_DEFAULT));
         ramTileCountField.setText(NbPreferences.forModule(TileLoadingPanel.class).get(PREFERENCE_RAM_TILE_COUNT, PREFERENCE_RAM_TILE_COUNT_DEFAULT));
+        progressiveLoadingCheckBox.setSelected(Boolean.parseBoolean(NbPreferences.forModule(TileLoadingPanel.class).get(PREFERENCE_PROGRESSIVE_LOADING, PREFERENCE_PROGRESSIVE_LOADING_DEFAULT)));
         clickModeCombo.setSelectedItem(NbPreferences.forModule(TileLoadingPanel.class).get(PREFERENCE_ANNOTATIONS_CLICK_MODE, PREFERENCE_ANNOTATIONS_CLICK_MODE_DEFAULT));
     }
 
     void store() {
         NbPreferences.forModule(TileLoadingPanel.class).put(PREFERENCE_CONCURRENT_LOADS, concurrentLoadsField.getText());
         NbPreferences.forModule(TileLoadingPanel.class).put(PREFERENCE_RAM_TILE_COUNT, ramTileCountField.getText());
+        NbPreferences.forModule(TileLoadingPanel.class).put(PREFERENCE_PROGRESSIVE_LOADING, Boolean.toString(progressiveLoadingCheckBox.isSelected()));
         NbPreferences.forModule(TileLoadingPanel.class).put(PREFERENCE_ANNOTATIONS_CLICK_MODE, (String) clickModeCombo.getSelectedItem());
     }
 
@@ -1,9 +1,7 @@
 package org.janelia.horta.volume;
 
 import Jama.Matrix;
-import org.aind.omezarr.OmeZarrDataset;
 import org.aind.omezarr.image.AutoContrastParameters;
-import org.aind.omezarr.image.TCZYXRasterZStack;
 import org.apache.commons.lang3.builder.EqualsBuilder;
 import org.apache.commons.lang3.builder.HashCodeBuilder;
 import org.janelia.geometry3d.Box3;
@@ -11,6 +9,7 @@ import org.janelia.geometry3d.ConstVector3;
 import org.janelia.geometry3d.Vector3;
 import org.janelia.gltools.texture.Texture3d;
 import org.janelia.horta.BrainTileInfo;
+import org.janelia.horta.omezarr.OmeZarrChunkReader;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -31,7 +30,7 @@ import java.util.Objects;
 public class BrainChunkInfo extends BrainTileInfo {
     private final static Logger log = LoggerFactory.getLogger(BrainChunkInfo.class);
 
-    private final OmeZarrDataset dataset;
+    private final OmeZarrChunkReader chunkReader;
 
     private final int[] readShape;
 
@@ -57,10 +56,10 @@ public class BrainChunkInfo extends BrainTileInfo {
 
     private boolean haveShownBoundingBox = false;
 
-    public BrainChunkInfo(OmeZarrDataset dataset, int[] shape, int[] offset, double[] voxelSize, int channelCount, AutoContrastParameters autoContrastParameters) throws IOException {
+    public BrainChunkInfo(OmeZarrChunkReader chunkReader, int[] shape, int[] offset, double[] voxelSize, int channelCount, AutoContrastParameters autoContrastParameters) throws IOException {
         super();
 
-        this.dataset = dataset;
+        this.chunkReader = chunkReader;
 
         this.autoContrastParameters = autoContrastParameters;
 
@@ -95,7 +94,7 @@ public class BrainChunkInfo extends BrainTileInfo {
         // Assumes tczyx dataset.  Default to time 0, channel 0.
         this.readOffset = new int[]{0, 0, offset[2], offset[1], offset[0]};
 
-        tileRelativePath = String.format("[%s] [%.0f, %.0f, %.0f] [%.0f, %.0f, %.0f]", dataset.getPath(), originMicrometers[0], originMicrometers[1], originMicrometers[2], shapeMicrometers[0], shapeMicrometers[1], shapeMicrometers[2]);
+        tileRelativePath = String.format("[%s] [%.0f, %.0f, %.0f] [%.0f, %.0f, %.0f]", chunkReader.getDataset().getPath(), originMicrometers[0], originMicrometers[1], originMicrometers[2], shapeMicrometers[0], shapeMicrometers[1], shapeMicrometers[2]);
     }
 
     @Override
@@ -200,10 +199,16 @@ public class BrainChunkInfo extends BrainTileInfo {
         Texture3d texture = new Texture3d();
 
         try {
-            WritableRaster[] slices = TCZYXRasterZStack.fromDataset(dataset, readShape, readOffset, true, autoContrastParameters, false);
+            // [x, y, z]
+            int[] offset = {readOffset[4], readOffset[3], readOffset[2]};
+            int[] shape = {readShape[4], readShape[3], readShape[2]};
+
+            WritableRaster[] slices = chunkReader.read(readOffset[1], offset, shape, autoContrastParameters);
 
             texture.loadRasterSlices(slices, colorModel);
 
+            chunkReader.getCache().logStatistics();
+
             return texture;
         } catch (Exception e) {
             log.error(e.getMessage());
@@ -1,14 +1,15 @@
 package org.janelia.horta.volume;
 
-import edu.wlu.cs.levy.CG.KDTree;
-import edu.wlu.cs.levy.CG.KeyDuplicateException;
-import edu.wlu.cs.levy.CG.KeySizeException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Set;
+import org.janelia.geometry3d.AbstractCamera;
+import org.janelia.geometry3d.Matrix4;
 import org.janelia.geometry3d.Vector3;
-import org.openide.util.Exceptions;
 
 /**
  *
@@ -16,41 +17,69 @@ import org.openide.util.Exceptions;
  */
 public class BrickInfoSet implements Set<BrickInfo> {
 
-    // TODO - maybe just use the KDTree and not the HashSet?
     private final Set<BrickInfo> set = new HashSet<>();
-    private final KDTree<BrickInfo> centroidIndex = new KDTree<>(3);
+    // Built on first query after a change; bricks are not modified once a set is loaded
+    private BrickSpatialIndex spatialIndex = null;
     
+    private synchronized BrickSpatialIndex getSpatialIndex() {
+        if (spatialIndex == null)
+            spatialIndex = new BrickSpatialIndex(set);
+        return spatialIndex;
+    }
+
+    private synchronized void invalidateSpatialIndex() {
+        spatialIndex = null;
+    }
+
     public BrickInfo getBestContainingBrick(Vector3 xyz) {
-        double[] key = new double[] {xyz.getX(), xyz.getY(), xyz.getZ()};
-        try {
-            return centroidIndex.nearest(key);
-        } catch (KeySizeException | ArrayIndexOutOfBoundsException ex) {
-            Exceptions.printStackTrace(ex);
-            return null;
-        }
+        return getSpatialIndex().getNearestBrick(xyz.getX(), xyz.getY(), xyz.getZ());
     }
     
-    public Collection<BrickInfo> getClosestBricks(float[] xyz, int count) {
-        double[] key = new double[] {xyz[0], xyz[1], xyz[2]};
-        try {
-            return centroidIndex.nearest(key, count);
-        } catch (KeySizeException ex) {
-            Exceptions.printStackTrace(ex);
-        } catch (IllegalArgumentException ex) {
-            Exceptions.printStackTrace(ex);
+    /**
+     * @return up to count bricks with centroids nearest to xyz, nearest first
+     */
+    public List<BrickInfo> getClosestBricks(float[] xyz, int count) {
+        return getSpatialIndex().getNearestBricks(xyz[0], xyz[1], xyz[2], count);
+    }
+
+    /**
+     * @return bricks whose bounding boxes intersect the view frustum of camera
+     */
+    public List<BrickInfo> getBricksInView(AbstractCamera camera) {
+        return getSpatialIndex().getBricksInFrustum(getViewProjection(camera));
+    }
+
+    /**
+     * @return up to count bricks, nearest to xyz first among those in the view frustum of camera,
+     * then nearest to xyz among the rest, so bricks just out of view still fill any spare room
+     */
+    public List<BrickInfo> getClosestBricksInView(AbstractCamera camera, float[] xyz, int count) {
+        BrickSpatialIndex index = getSpatialIndex();
+        Set<BrickInfo> result = new LinkedHashSet<>(
+                index.getNearestBricksInFrustum(xyz[0], xyz[1], xyz[2], count, getViewProjection(camera)));
+        if (result.size() < count) {
+            for (BrickInfo brick : index.getNearestBricks(xyz[0], xyz[1], xyz[2], count)) {
+                if (result.size() >= count)
+                    break;
+                result.add(brick);
+            }
         }
-        return null;
+        return new ArrayList<>(result);
     }
 
+    private static Matrix4 getViewProjection(AbstractCamera camera) {
+        // view matrix first, then projection
+        return new Matrix4(camera.getViewMatrix()).multiply(camera.getProjectionMatrix());
+    }
     
     @Override
     public int size() {
-        return centroidIndex.size();
+        return set.size();
     }
 
     @Override
     public boolean isEmpty() {
-        return centroidIndex.size() == 0;
+        return set.isEmpty();
     }
 
     @Override
@@ -76,25 +105,17 @@ public class BrickInfoSet implements Set<BrickInfo> {
     @Override
     public boolean add(BrickInfo brickInfo) {
         boolean result = set.add(brickInfo);
-        
-        // Insert into KDTree for quick search
-        // TODO - update tree for all other inserting/deleting operations
-        Vector3 cv = brickInfo.getBoundingBox().getCentroid();
-        double[] ca = new double[] {cv.getX(), cv.getY(), cv.getZ()};
-        try {
-            centroidIndex.insert(ca, brickInfo);
-        } catch (KeySizeException ex) {
-            Exceptions.printStackTrace(ex);
-        } catch (KeyDuplicateException ex) {
-            Exceptions.printStackTrace(ex);
-        }
-        
+        if (result)
+            invalidateSpatialIndex();
         return result;
     }
 
     @Override
     public boolean remove(Object o) {
-        return set.remove(o);
+        boolean result = set.remove(o);
+        if (result)
+            invalidateSpatialIndex();
+        return result;
     }
 
     @Override
@@ -104,22 +125,32 @@ public class BrickInfoSet implements Set<BrickInfo> {
 
     @Override
     public boolean addAll(Collection<? extends BrickInfo> c) {
-        return set.addAll(c);
+        boolean result = set.addAll(c);
+        if (result)
+            invalidateSpatialIndex();
+        return result;
     }
 
     @Override
     public boolean retainAll(Collection<?> c) {
-        return set.retainAll(c);
+        boolean result = set.retainAll(c);
+        if (result)
+            invalidateSpatialIndex();
+        return result;
     }
 
     @Override
     public boolean removeAll(Collection<?> c) {
-        return set.removeAll(c);
+        boolean result = set.removeAll(c);
+        if (result)
+            invalidateSpatialIndex();
+        return result;
     }
 
     @Override
     public void clear() {
         set.clear();
+        invalidateSpatialIndex();
     }
 
     
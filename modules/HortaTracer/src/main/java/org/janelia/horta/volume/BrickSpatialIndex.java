@@ -0,0 +1,290 @@
+package org.janelia.horta.volume;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+import org.janelia.geometry3d.Box3;
+import org.janelia.geometry3d.Matrix4;
+import org.janelia.geometry3d.Vector3;
+
+/**
+ * Immutable bounding volume hierarchy over the bounding boxes of a set of bricks,
+ * for nearest-brick and view frustum queries that do not touch every brick.
+ *
+ * Each node covers a contiguous range of bricks, and keeps the bounds of both
+ * the brick centroids (for nearest queries) and the brick boxes (for frustum queries).
+ */
+class BrickSpatialIndex {
+
+    private static final int LEAF_SIZE = 8;
+
+    private final BrickInfo[] bricks;
+    // Per brick: centroid xyz, then box min xyz, then box max xyz
+    private final float[] brickBounds;
+
+    // Per node: centroid min xyz, centroid max xyz, box min xyz, box max xyz
+    private final List<float[]> nodeBounds = new ArrayList<>();
+    private final List<int[]> nodes = new ArrayList<>(); // start, end, left child, right child
+
+    BrickSpatialIndex(Collection<BrickInfo> brickInfos) {
+        bricks = brickInfos.toArray(new BrickInfo[brickInfos.size()]);
+        brickBounds = new float[9 * bricks.length];
+        for (int b = 0; b < bricks.length; ++b) {
+            Box3 box = bricks[b].getBoundingBox();
+            Vector3 c = box.getCentroid();
+            for (int i = 0; i < 3; ++i) {
+                brickBounds[9 * b + i] = c.get(i);
+                brickBounds[9 * b + 3 + i] = Math.min(box.min.get(i), box.max.get(i));
+                brickBounds[9 * b + 6 + i] = Math.max(box.min.get(i), box.max.get(i));
+            }
+        }
+        int[] order = new int[bricks.length];
+        for (int b = 0; b < order.length; ++b)
+            order[b] = b;
+        if (bricks.length > 0)
+            build(order, 0, order.length);
+        // Store bricks in tree order, so each node covers a contiguous range
+        BrickInfo[] sortedBricks = new BrickInfo[bricks.length];
+        float[] sortedBounds = new float[brickBounds.length];
+        for (int b = 0; b < order.length; ++b) {
+            sortedBricks[b] = bricks[order[b]];
+            System.arraycopy(brickBounds, 9 * order[b], sortedBounds, 9 * b, 9);
+        }
+        System.arraycopy(sortedBricks, 0, bricks, 0, bricks.length);
+        System.arraycopy(sortedBounds, 0, brickBounds, 0, brickBounds.length);
+    }
+
+    int size() {
+        return bricks.length;
+    }
+
+    private int build(int[] order, int start, int end) {
+        float[] bounds = new float[] {
+            Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY,
+            Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY,
+            Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY,
+            Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY};
+        for (int n = start; n < end; ++n) {
+            int b = 9 * order[n];
+            for (int i = 0; i < 3; ++i) {
+                bounds[i] = Math.min(bounds[i], brickBounds[b + i]);
+                bounds[3 + i] = Math.max(bounds[3 + i], brickBounds[b + i]);
+                bounds[6 + i] = Math.min(bounds[6 + i], brickBounds[b + 3 + i]);
+                bounds[9 + i] = Math.max(bounds[9 + i], brickBounds[b + 6 + i]);
+            }
+        }
+        int[] node = new int[] {start, end, -1, -1};
+        int nodeIndex = nodes.size();
+        nodes.add(node);
+        nodeBounds.add(bounds);
+        if (end - start <= LEAF_SIZE)
+            return nodeIndex;
+        // Split at the median centroid along the longest axis
+        int axis = 0;
+        for (int i = 1; i < 3; ++i) {
+            if (bounds[3 + i] - bounds[i] > bounds[3 + axis] - bounds[axis])
+                axis = i;
+        }
+        int middle = (start + end) >>> 1;
+        select(order, start, end - 1, middle, axis);
+        node[2] = build(order, start, middle);
+        node[3] = build(order, middle, end);
+        return nodeIndex;
+    }
+
+    // Partially sorts order[left..right] so that order[k] holds the k-th smallest centroid coordinate
+    private void select(int[] order, int left, int right, int k, int axis) {
+        while (left < right) {
+            float pivot = brickBounds[9 * order[(left + right) >>> 1] + axis];
+            int i = left;
+            int j = right;
+            while (i <= j) {
+                while (brickBounds[9 * order[i] + axis] < pivot)
+                    i++;
+                while (brickBounds[9 * order[j] + axis] > pivot)
+                    j--;
+                if (i <= j) {
+                    int t = order[i];
+                    order[i] = order[j];
+                    order[j] = t;
+                    i++;
+                    j--;
+                }
+            }
+            if (k <= j)
+                right = j;
+            else if (k >= i)
+                left = i;
+            else
+                return;
+        }
+    }
+
+    /**
+     * @return the brick with the centroid nearest to xyz, or null if there are no bricks
+     */
+    BrickInfo getNearestBrick(float x, float y, float z) {
+        List<BrickInfo> result = getNearestBricks(x, y, z, 1);
+        return result.isEmpty() ? null : result.get(0);
+    }
+
+    /**
+     * @return up to count bricks with centroids nearest to xyz, nearest first
+     */
+    List<BrickInfo> getNearestBricks(float x, float y, float z, int count) {
+        if (count <= 0 || bricks.length == 0)
+            return Collections.emptyList();
+        // Max-heap of the best candidates found so far
+        PriorityQueue<Candidate> best = new PriorityQueue<>(count + 1, Collections.<Candidate>reverseOrder());
+        searchNearest(0, x, y, z, count, null, best);
+        return sortedBricks(best);
+    }
+
+    /**
+     * @param viewProjection matrix from world coordinates to clip coordinates
+     * @return up to count bricks whose bounding boxes intersect the view frustum,
+     * with centroids nearest to xyz, nearest first
+     */
+    List<BrickInfo> getNearestBricksInFrustum(float x, float y, float z, int count, Matrix4 viewProjection) {
+        if (count <= 0 || bricks.length == 0)
+            return Collections.emptyList();
+        PriorityQueue<Candidate> best = new PriorityQueue<>(count + 1, Collections.<Candidate>reverseOrder());
+        searchNearest(0, x, y, z, count, frustumPlanes(viewProjection), best);
+        return sortedBricks(best);
+    }
+
+    private List<BrickInfo> sortedBricks(PriorityQueue<Candidate> best) {
+        List<Candidate> sorted = new ArrayList<>(best);
+        Collections.sort(sorted);
+        List<BrickInfo> result = new ArrayList<>(sorted.size());
+        for (Candidate c : sorted)
+            result.add(bricks[c.brick]);
+        return result;
+    }
+
+    // planes, if not null, restricts the search to bricks that intersect the frustum
+    private void searchNearest(int nodeIndex, float x, float y, float z, int count, float[] planes, PriorityQueue<Candidate> best) {
+        int[] node = nodes.get(nodeIndex);
+        int test = planes == null ? 1 : testBox(planes, nodeBounds.get(nodeIndex), 6);
+        if (test < 0)
+            return; // entirely outside
+        if (test > 0)
+            planes = null; // entirely inside, so no brick below needs testing
+        if (node[2] < 0) {
+            for (int b = node[0]; b < node[1]; ++b) {
+                if (planes != null && testBox(planes, brickBounds, 9 * b + 3) < 0)
+                    continue;
+                float dx = brickBounds[9 * b] - x;
+                float dy = brickBounds[9 * b + 1] - y;
+                float dz = brickBounds[9 * b + 2] - z;
+                double d2 = dx * dx + dy * dy + dz * dz;
+                if (best.size() < count) {
+                    best.add(new Candidate(b, d2));
+                } else if (d2 < best.peek().distanceSquared) {
+                    best.poll();
+                    best.add(new Candidate(b, d2));
+                }
+            }
+            return;
+        }
+        // Visit the nearer child first, so the farther one can often be skipped
+        double dLeft = centroidDistanceSquared(node[2], x, y, z);
+        double dRight = centroidDistanceSquared(node[3], x, y, z);
+        int first = dLeft <= dRight ? node[2] : node[3];
+        int second = dLeft <= dRight ? node[3] : node[2];
+        double dSecond = Math.max(dLeft, dRight);
+        searchNearest(first, x, y, z, count, planes, best);
+        if (best.size() < count || dSecond < best.peek().distanceSquared)
+            searchNearest(second, x, y, z, count, planes, best);
+    }
+
+    private double centroidDistanceSquared(int nodeIndex, float x, float y, float z) {
+        float[] bounds = nodeBounds.get(nodeIndex);
+        double dx = Math.max(0, Math.max(bounds[0] - x, x - bounds[3]));
+        double dy = Math.max(0, Math.max(bounds[1] - y, y - bounds[4]));
+        double dz = Math.max(0, Math.max(bounds[2] - z, z - bounds[5]));
+        return dx * dx + dy * dy + dz * dz;
+    }
+
+    /**
+     * @param viewProjection matrix from world coordinates to clip coordinates
+     * @return bricks whose bounding boxes intersect the view frustum
+     */
+    List<BrickInfo> getBricksInFrustum(Matrix4 viewProjection) {
+        float[] planes = frustumPlanes(viewProjection);
+        List<BrickInfo> result = new ArrayList<>();
+        if (bricks.length > 0)
+            searchFrustum(0, planes, result);
+        return result;
+    }
+
+    private void searchFrustum(int nodeIndex, float[] planes, List<BrickInfo> result) {
+        int[] node = nodes.get(nodeIndex);
+        float[] bounds = nodeBounds.get(nodeIndex);
+        int test = testBox(planes, bounds, 6);
+        if (test < 0)
+            return; // entirely outside
+        if (test > 0 || node[2] < 0) {
+            for (int b = node[0]; b < node[1]; ++b) {
+                if (test > 0 || testBox(planes, brickBounds, 9 * b + 3) >= 0)
+                    result.add(bricks[b]);
+            }
+            return;
+        }
+        searchFrustum(node[2], planes, result);
+        searchFrustum(node[3], planes, result);
+    }
+
+    /**
+     * @return -1 if the box is outside the frustum, 1 if it is entirely inside, 0 otherwise
+     */
+    private static int testBox(float[] planes, float[] box, int offset) {
+        int result = 1;
+        for (int p = 0; p < 24; p += 4) {
+            // Distances of the box corners farthest along and against the plane normal
+            float far = planes[p + 3];
+            float near = planes[p + 3];
+            for (int i = 0; i < 3; ++i) {
+                float lo = planes[p + i] * box[offset + i];
+                float hi = planes[p + i] * box[offset + 3 + i];
+                far += Math.max(lo, hi);
+                near += Math.min(lo, hi);
+            }
+            if (far < 0)
+                return -1;
+            if (near < 0)
+                result = 0;
+        }
+        return result;
+    }
+
+    // Left, right, bottom, top, near and far planes, as (a, b, c, d) with ax + by + cz + d >= 0 inside
+    private static float[] frustumPlanes(Matrix4 viewProjection) {
+        float[] m = viewProjection.asArray(); // column major
+        float[] planes = new float[24];
+        for (int p = 0; p < 6; ++p) {
+            int row = p / 2;
+            float sign = (p % 2 == 0) ? 1 : -1;
+            for (int c = 0; c < 4; ++c)
+                planes[4 * p + c] = m[4 * c + 3] + sign * m[4 * c + row];
+        }
+        return planes;
+    }
+
+    private static class Candidate implements Comparable<Candidate> {
+        private final int brick;
+        private final double distanceSquared;
+
+        private Candidate(int brick, double distanceSquared) {
+            this.brick = brick;
+            this.distanceSquared = distanceSquared;
+        }
+
+        @Override
+        public int compareTo(Candidate other) {
+            return Double.compare(distanceSquared, other.distanceSquared);
+        }
+    }
+}
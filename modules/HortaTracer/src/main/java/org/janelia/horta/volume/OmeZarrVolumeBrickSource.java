@@ -9,6 +9,8 @@ import org.aind.omezarr.image.TCZYXRasterZStack;
 import org.apache.commons.lang3.tuple.Pair;
 import org.janelia.horta.TileLoader;
 import org.janelia.horta.omezarr.JadeZarrStoreProvider;
+import org.janelia.horta.omezarr.OmeZarrChunkCache;
+import org.janelia.horta.omezarr.OmeZarrChunkReader;
 import org.janelia.horta.omezarr.OmeZarrJadeReader;
 import org.janelia.model.domain.tiledMicroscope.TmSample;
 import org.slf4j.Logger;
@@ -17,6 +19,7 @@ import ucar.ma2.InvalidRangeException;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
@@ -28,6 +31,12 @@ import java.util.function.Consumer;
 public class OmeZarrVolumeBrickSource implements StaticVolumeBrickSource {
     private final static Logger log = LoggerFactory.getLogger(OmeZarrVolumeBrickSource.class);
 
+    // Bricks are grown a whole chunk at a time up to this size
+    private final static long MAX_BRICK_VOXELS = 256L * 512 * 512;
+
+    // [t, c, z, y, x], used when the zarr array metadata cannot be read
+    private final static int[] DEFAULT_CHUNK_SHAPE = {1, 1, 64, 64, 64};
+
     private final ArrayList<Double> resolutionsMicrometers = new ArrayList<>();
 
     private final Map<Double, BrickInfoSet> brickInfoSets = new HashMap<>();
@@ -108,8 +117,9 @@ public class OmeZarrVolumeBrickSource implements StaticVolumeBrickSource {
 
     @Override
     public BrickInfoSet getAllBrickInfoForResolution(Double resolution) {
-        if (resolution != lastResolution) {
-            log.info(String.format("requesting resolution %.1f", resolution.floatValue()));
+        if (!resolution.equals(lastResolution)) {
+            // progressive loading asks for several resolutions in turn
+            log.debug(String.format("requesting resolution %.1f", resolution.floatValue()));
             lastResolution = resolution;
         }
 
@@ -152,8 +162,8 @@ public class OmeZarrVolumeBrickSource implements StaticVolumeBrickSource {
             // [t, c, z, y, x]
             int[] shape = dataset.getShape();
 
-            // [x, y, z]
-            int[] chunkSize = {shape[4], shape[3], shape[2]};
+            OmeZarrChunkReader chunkReader = new OmeZarrChunkReader(dataset, basePath + "/" + dataset.getPath(),
+                    readChunkShape(dataset), OmeZarrChunkCache.getInstance());
 
             if (autoContrast == null) {
                 int[] autoContrastShape = {1, 1, 256, 256, 128};
@@ -174,27 +184,28 @@ public class OmeZarrVolumeBrickSource implements StaticVolumeBrickSource {
             // [z, y, x]
             List<Double> spatialShape = dataset.getSpatialResolution(OmeZarrAxisUnit.MICROMETER);
 
-            int chunkSegment = (int) Math.round(4e5 / chunkSize[2] / 1.0);
-
-            log.info("chunkSegment for dataset path " + dataset.getPath() + ": " + chunkSegment);
-
-            for (int xIdx = 0; xIdx < shape[4]; xIdx += chunkSegment) {
-                for (int yIdx = 0; yIdx < shape[3]; yIdx += chunkSegment) {
-                    // for (int zIdx = 0; zIdx < shape[2]; zIdx += zChunkSegment) {
-
-                    // [x, y, z]
-                    int[] offset = {xIdx, yIdx, 0}; // zIdx};
-
-                    chunkSize[0] = Math.min(shape[4] - xIdx, chunkSegment);
-                    chunkSize[1] = Math.min(shape[3] - yIdx, chunkSegment);
-                    // chunkSize[2] = Math.min(shape[2] - zIdx, zChunkSegment);
+            // [x, y, z]
+            int[] brickSize = getBrickSize(chunkReader.getChunkSizeXyz(), new int[]{shape[4], shape[3], shape[2]});
 
-                    // [x, y, z]
-                    double[] voxelSize = {spatialShape.get(2), spatialShape.get(1), spatialShape.get(0)};
+            log.info("brick size for dataset path " + dataset.getPath() + ": " + Arrays.toString(brickSize));
 
-                    // All args [x, y, z]
-                    brickInfoList.add(new BrainChunkInfo(dataset, chunkSize, offset, voxelSize, shape[1], autoContrast));
-                    // }
+            // [x, y, z]
+            double[] voxelSize = {spatialShape.get(2), spatialShape.get(1), spatialShape.get(0)};
+
+            for (int zIdx = 0; zIdx < shape[2]; zIdx += brickSize[2]) {
+                for (int yIdx = 0; yIdx < shape[3]; yIdx += brickSize[1]) {
+                    for (int xIdx = 0; xIdx < shape[4]; xIdx += brickSize[0]) {
+                        // [x, y, z]
+                        int[] offset = {xIdx, yIdx, zIdx};
+
+                        int[] chunkSize = {
+                                Math.min(shape[4] - xIdx, brickSize[0]),
+                                Math.min(shape[3] - yIdx, brickSize[1]),
+                                Math.min(shape[2] - zIdx, brickSize[2])};
+
+                        // All args [x, y, z]
+                        brickInfoList.add(new BrainChunkInfo(chunkReader, chunkSize, offset, voxelSize, shape[1], autoContrast));
+                    }
                 }
             }
         } catch (Exception ex) {
@@ -203,4 +214,52 @@ public class OmeZarrVolumeBrickSource implements StaticVolumeBrickSource {
 
         return brickInfoList;
     }
+
+    /**
+     * Bricks are whole multiples of the zarr chunk shape, so that no chunk is shared between bricks.  Starting
+     * from a single chunk, the shortest edge is extended one chunk at a time until the brick is large enough.
+     *
+     * @param chunkSize [x, y, z]
+     * @param shape [x, y, z]
+     * @return brick size [x, y, z]
+     */
+    static int[] getBrickSize(int[] chunkSize, int[] shape) {
+        int[] brickSize = new int[3];
+        for (int i = 0; i < 3; i++) {
+            brickSize[i] = Math.min(chunkSize[i], shape[i]);
+        }
+        while (true) {
+            int axis = -1;
+            for (int i = 0; i < 3; i++) {
+                if (brickSize[i] < shape[i] && (axis < 0 || brickSize[i] < brickSize[axis])) {
+                    axis = i;
+                }
+            }
+            if (axis < 0) {
+                break; // whole dataset
+            }
+            long voxels = (long) brickSize[0] * brickSize[1] * brickSize[2] / brickSize[axis]
+                    * Math.min(brickSize[axis] + chunkSize[axis], shape[axis]);
+            if (voxels > MAX_BRICK_VOXELS) {
+                break;
+            }
+            brickSize[axis] = Math.min(brickSize[axis] + chunkSize[axis], shape[axis]);
+        }
+        return brickSize;
+    }
+
+    private int[] readChunkShape(OmeZarrDataset dataset) {
+        try (InputStream zarray = reader != null
+                ? reader.getInputStream(dataset.getPath() + "/.zarray")
+                : Files.newInputStream(Paths.get(basePath, dataset.getPath(), ".zarray"))) {
+            int[] chunkShape = OmeZarrChunkReader.readChunkShape(zarray);
+            if (chunkShape.length == 5) {
+                return chunkShape;
+            }
+            log.warn("unexpected chunk shape for dataset path " + dataset.getPath() + ": " + Arrays.toString(chunkShape));
+        } catch (Exception ex) {
+            log.warn("failed to read chunk shape for dataset path " + dataset.getPath(), ex);
+        }
+        return DEFAULT_CHUNK_SHAPE;
+    }
 }
@@ -0,0 +1,50 @@
+package org.janelia.horta;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import org.janelia.horta.volume.BrickInfoSet;
+import org.janelia.horta.volume.StaticVolumeBrickSource;
+import org.junit.Test;
+
+public class TestNeuronTraceLoader {
+
+	private static StaticVolumeBrickSource source(Double... resolutions) {
+		final List<Double> available = new ArrayList<>(Arrays.asList(resolutions));
+		return new StaticVolumeBrickSource() {
+			@Override
+			public Collection<Double> getAvailableResolutions() {
+				return available;
+			}
+
+			@Override
+			public BrickInfoSet getAllBrickInfoForResolution(Double resolution) {
+				return new BrickInfoSet();
+			}
+
+			@Override
+			public FileType getFileType() {
+				return FileType.ZARR;
+			}
+		};
+	}
+
+	@Test
+	public void testRefinementsAreCoarsestFirst() {
+		StaticVolumeBrickSource source = source(0.5, 4.0, 1.0, 2.0);
+		assertEquals(Arrays.asList(4.0, 2.0, 1.0), NeuronTraceLoader.getRefinementResolutions(source, 0.5));
+		assertEquals(Arrays.asList(4.0), NeuronTraceLoader.getRefinementResolutions(source, 2.0));
+		assertTrue(NeuronTraceLoader.getRefinementResolutions(source, 4.0).isEmpty());
+	}
+
+	@Test
+	public void testDeepPyramidsSkipMiddleLevels() {
+		// the coarsest level shows something at once; the two next to the target lead up to it
+		StaticVolumeBrickSource source = source(0.25, 0.5, 1.0, 2.0, 4.0, 8.0, 16.0);
+		assertEquals(Arrays.asList(16.0, 1.0, 0.5), NeuronTraceLoader.getRefinementResolutions(source, 0.25));
+	}
+}
@@ -0,0 +1,162 @@
+package org.janelia.horta.blocks;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.janelia.geometry3d.ConstVector3;
+import org.janelia.geometry3d.Vantage;
+import org.junit.Test;
+
+public class TestBasicTileCache {
+
+	private static final long TIMEOUT_MS = 5000;
+
+	/** a block, and the storage agent it comes from */
+	private static class Key implements BlockTileKey {
+		final String source;
+		final int index;
+
+		Key(String source, int index) {
+			this.source = source;
+			this.index = index;
+		}
+
+		@Override
+		public ConstVector3 getCentroid() {
+			return null;
+		}
+
+		@Override
+		public String toString() {
+			return source + index;
+		}
+	}
+
+	private static class NoObsoleteTiles implements BlockChooser<Key, BlockTileSource<Key>> {
+		@Override
+		public List<Key> chooseBlocks(BlockTileSource<Key> source, ConstVector3 focus, ConstVector3 previousFocus, Vantage vantage) {
+			return Collections.emptyList();
+		}
+
+		@Override
+		public Map<BlockTileKey, BlockTileData> chooseObsoleteTiles(Map<BlockTileKey, BlockTileData> currentTiles,
+				Map<BlockTileKey, BlockTileData> desiredTiles, BlockTileKey finishedTile) {
+			return null;
+		}
+	}
+
+	/**
+	 * Records every batch and every load; the first load waits for a signal, so requests
+	 * can change while a batch is in progress.
+	 */
+	private static class FakeCache extends BasicTileCache<Key, String> {
+		final List<List<String>> batches = Collections.synchronizedList(new ArrayList<>());
+		final List<String> loads = Collections.synchronizedList(new ArrayList<>());
+		final CountDownLatch firstLoadStarted = new CountDownLatch(1);
+		final CountDownLatch firstLoadReleased = new CountDownLatch(1);
+
+		FakeCache() {
+			setBlockStrategy(new NoObsoleteTiles());
+		}
+
+		@Override
+		LoadRunner<Key, String> getLoadRunner() {
+			return new LoadRunner<Key, String>() {
+				@Override
+				public String loadTile(Key key) throws InterruptedException {
+					if (loads.isEmpty()) {
+						firstLoadStarted.countDown();
+						assertTrue(firstLoadReleased.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+					}
+					loads.add(key.toString());
+					return key.toString();
+				}
+
+				@Override
+				public Object getBatchKey(Key key) {
+					return key.source;
+				}
+
+				@Override
+				public void loadTiles(List<Key> keys, BatchListener<Key, String> listener) throws InterruptedException {
+					List<String> batch = new ArrayList<>();
+					for (Key key : keys) {
+						batch.add(key.toString());
+					}
+					batches.add(batch);
+					LoadRunner.super.loadTiles(keys, listener);
+				}
+			};
+		}
+
+		void awaitLoaded(int count) throws InterruptedException {
+			long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+			while (getDisplayedActors().size() < count) {
+				assertTrue("timed out with " + getDisplayedActors(), System.currentTimeMillis() < deadline);
+				Thread.sleep(5);
+			}
+		}
+	}
+
+	private static List<Key> keys(String... sources) {
+		List<Key> keys = new ArrayList<>();
+		for (int i = 0; i < sources.length; i++) {
+			keys.add(new Key(sources[i], i));
+		}
+		return keys;
+	}
+
+	@Test
+	public void testBatchesAreCoalescedBySource() throws Exception {
+		FakeCache cache = new FakeCache();
+		List<Key> keys = keys("a", "b", "a", "a", "b", "a", "a", "a", "a", "a", "a", "a", "b");
+		cache.updateDesiredTiles(keys);
+		cache.firstLoadReleased.countDown();
+		cache.awaitLoaded(keys.size());
+
+		// the most important block leads each batch, joined by later blocks from its source
+		assertEquals(3, cache.batches.size());
+		assertEquals(Arrays.asList("a0", "a2", "a3", "a5", "a6", "a7", "a8", "a9"), cache.batches.get(0));
+		assertEquals(Arrays.asList("b1", "b4", "b12"), cache.batches.get(1));
+		assertEquals(Arrays.asList("a10", "a11"), cache.batches.get(2));
+		assertEquals(keys.size(), cache.loads.size());
+	}
+
+	@Test
+	public void testTilesNoLongerWantedAreSkipped() throws Exception {
+		FakeCache cache = new FakeCache();
+		List<Key> keys = keys("a", "a", "a", "a");
+		cache.updateDesiredTiles(keys);
+		assertTrue(cache.firstLoadStarted.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+		// the view moves on while the batch is in progress
+		cache.updateDesiredTiles(Arrays.asList(keys.get(0), keys.get(2)));
+		cache.firstLoadReleased.countDown();
+		cache.awaitLoaded(2);
+
+		assertEquals(1, cache.batches.size());
+		assertEquals(4, cache.batches.get(0).size());
+		assertEquals(Arrays.asList("a0", "a2"), cache.loads);
+	}
+
+	@Test
+	public void testLoadedTilesAreNotQueuedAgain() throws Exception {
+		FakeCache cache = new FakeCache();
+		List<Key> keys = keys("a", "b");
+		cache.updateDesiredTiles(keys);
+		cache.firstLoadReleased.countDown();
+		cache.awaitLoaded(2);
+
+		List<Key> more = new ArrayList<>(keys);
+		more.add(new Key("b", 2));
+		cache.updateDesiredTiles(more);
+		cache.awaitLoaded(3);
+		assertEquals(Arrays.asList("a0", "b1", "b2"), cache.loads);
+	}
+}
@@ -0,0 +1,128 @@
+package org.janelia.horta.loader;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import Jama.Matrix;
+import org.janelia.geometry3d.Box3;
+import org.janelia.geometry3d.ConstVector3;
+import org.janelia.gltools.texture.Texture3d;
+import org.janelia.horta.volume.BrickInfo;
+import org.janelia.horta.volume.VoxelIndex;
+import org.junit.Test;
+
+public class TestHortaVolumeCache {
+
+	/** a brick known only by name */
+	private static class Brick implements BrickInfo {
+		final String name;
+
+		Brick(String name) {
+			this.name = name;
+		}
+
+		@Override
+		public String toString() {
+			return name;
+		}
+
+		@Override
+		public boolean isSameBrick(BrickInfo other) {
+			return other == this;
+		}
+
+		@Override
+		public List<? extends ConstVector3> getCornerLocations() {
+			return null;
+		}
+
+		@Override
+		public List<? extends ConstVector3> getValidCornerLocations() {
+			return null;
+		}
+
+		@Override
+		public List<? extends ConstVector3> getTilingSubsetLocations() {
+			return null;
+		}
+
+		@Override
+		public VoxelIndex getRasterDimensions() {
+			return null;
+		}
+
+		@Override
+		public int getChannelCount() {
+			return 1;
+		}
+
+		@Override
+		public int getBytesPerIntensity() {
+			return 2;
+		}
+
+		@Override
+		public double getResolutionMicrometers() {
+			return 1;
+		}
+
+		@Override
+		public Box3 getBoundingBox() {
+			return null;
+		}
+
+		@Override
+		public Texture3d loadBrick(double maxEdgePadWidth, String fileExtension) {
+			return null;
+		}
+
+		@Override
+		public Matrix getStageCoordToTexCoord() {
+			return null;
+		}
+	}
+
+	private final Brick coarsest = new Brick("coarsest");
+	private final Brick coarse = new Brick("coarse");
+	private final Brick fine = new Brick("fine");
+	private final Brick target = new Brick("target");
+	private final List<BrickInfo> refinements = Arrays.asList(coarsest, coarse, fine);
+	private final List<BrickInfo> targets = Collections.singletonList(target);
+
+	private static Set<BrickInfo> loaded(BrickInfo... bricks) {
+		return new HashSet<>(Arrays.asList(bricks));
+	}
+
+	@Test
+	public void testStandInIsFinestLoadedRefinement() {
+		assertSame(coarsest, HortaVolumeCache.getStandIn(refinements, targets, loaded()));
+		assertSame(coarse, HortaVolumeCache.getStandIn(refinements, targets, loaded(coarsest, coarse)));
+		// a finer refinement may arrive before a coarser one
+		assertSame(fine, HortaVolumeCache.getStandIn(refinements, targets, loaded(fine)));
+	}
+
+	@Test
+	public void testNoStandInOnceTargetsLoad() {
+		assertNull(HortaVolumeCache.getStandIn(refinements, targets, loaded(target, coarsest)));
+		assertNull(HortaVolumeCache.getStandIn(Collections.<BrickInfo>emptyList(), targets, loaded()));
+	}
+
+	@Test
+	public void testLoadOrderIsCoarseToFine() {
+		assertEquals(Arrays.asList(coarsest, coarse, fine, target),
+				HortaVolumeCache.getDisplayLoadOrder(refinements, targets, loaded()));
+		// nothing coarser than a loaded refinement is needed
+		assertEquals(Arrays.asList(fine, target),
+				HortaVolumeCache.getDisplayLoadOrder(refinements, targets, loaded(coarse)));
+		assertEquals(Arrays.asList(target),
+				HortaVolumeCache.getDisplayLoadOrder(refinements, targets, loaded(fine)));
+		// refinements are pointless once the targets are in RAM
+		assertEquals(Arrays.asList(target),
+				HortaVolumeCache.getDisplayLoadOrder(refinements, targets, loaded(target)));
+	}
+}
@@ -0,0 +1,284 @@
+package org.janelia.horta.neuronvbo;
+
+import static org.junit.Assert.*;
+
+import org.janelia.model.domain.tiledMicroscope.TmGeoAnnotation;
+import org.janelia.model.domain.tiledMicroscope.TmNeuronMetadata;
+import org.janelia.workstation.geom.AffineTransform3d;
+import org.junit.Test;
+
+public class TestNeuronVboGeometry {
+
+	private static final int F = NeuronVboGeometry.FLOATS_PER_VERTEX;
+
+	// doubles x, and shifts y by 1000
+	private static final AffineTransform3d TRANSFORM = new AffineTransform3d(new double[]{
+			2, 0, 0, 0,
+			0, 1, 0, 1000,
+			0, 0, 1, 0});
+
+	// each neuron gets its own color, from its ID
+	private static final NeuronVboGeometry.StyleSource STYLES = neuron -> {
+		NeuronVboGeometry.NeuronStyle style = new NeuronVboGeometry.NeuronStyle();
+		style.rgb = new float[]{neuron.getId(), 0.5f, 0.25f};
+		return style;
+	};
+
+	private static TmNeuronMetadata neuron(long id) {
+		TmNeuronMetadata neuron = new TmNeuronMetadata();
+		neuron.setId(id);
+		return neuron;
+	}
+
+	private static TmGeoAnnotation add(TmNeuronMetadata neuron, long id, TmGeoAnnotation parent) {
+		TmGeoAnnotation annotation = new TmGeoAnnotation(id, parent == null ? neuron.getId() : parent.getId(),
+				neuron.getId(), id, id + 0.5, id + 0.25, id % 2 == 0 ? 3.0 : null, null, null);
+		neuron.getGeoAnnotationMap().put(id, annotation);
+		return annotation;
+	}
+
+	// a chain of count annotations, with IDs from 10 * neuron ID
+	private static TmNeuronMetadata chain(long neuronId, int count) {
+		TmNeuronMetadata neuron = neuron(neuronId);
+		TmGeoAnnotation parent = null;
+		for (int i = 0; i < count; i++) {
+			parent = add(neuron, 10 * neuronId + i, parent);
+		}
+		return neuron;
+	}
+
+	// finds the vertex of the annotation by its transformed x
+	private static int vertexOf(NeuronVboGeometry geometry, long annotationId) {
+		for (int v = 0; v < geometry.getVertexCount(); v++) {
+			if (geometry.getVertices()[F * v] == 2 * annotationId) {
+				return v;
+			}
+		}
+		fail("no vertex for annotation " + annotationId);
+		return -1;
+	}
+
+	// every edge joins a parent annotation's vertex to its child's
+	private static void assertEdges(NeuronVboGeometry geometry, TmNeuronMetadata... neurons) {
+		int expected = 0;
+		for (TmNeuronMetadata neuron : neurons) {
+			for (TmGeoAnnotation annotation : neuron.getGeoAnnotationMap().values()) {
+				if (neuron.getGeoAnnotationMap().containsKey(annotation.getParentId())) {
+					expected++;
+					int parent = vertexOf(geometry, annotation.getParentId());
+					int child = vertexOf(geometry, annotation.getId());
+					boolean found = false;
+					for (int e = 0; e < geometry.getEdgeCount(); e++) {
+						found |= geometry.getEdges()[2 * e] == parent && geometry.getEdges()[2 * e + 1] == child;
+					}
+					assertTrue("edge to " + annotation.getId(), found);
+				}
+			}
+		}
+		assertEquals(expected, geometry.getEdgeCount());
+	}
+
+	@Test
+	public void testBuildsVertices() {
+		NeuronVboGeometry geometry = new NeuronVboGeometry();
+		TmNeuronMetadata first = chain(1, 3);
+		TmNeuronMetadata second = chain(2, 2);
+		geometry.add(first);
+		geometry.add(second);
+		assertTrue(geometry.needsUpdate());
+		assertTrue(geometry.update(STYLES, TRANSFORM));
+		assertFalse(geometry.needsUpdate());
+		assertFalse(geometry.update(STYLES, TRANSFORM));
+
+		assertEquals(5, geometry.getVertexCount());
+		assertEquals(3, geometry.getVertexCount(first));
+		assertEquals(2, geometry.getEdgeCount(first));
+		int v = vertexOf(geometry, 21);
+		float[] expected = {42, 1021.5f, 21.25f, 1, 2, 0.5f, 0.25f, 1};
+		for (int i = 0; i < F; i++) {
+			assertEquals(expected[i], geometry.getVertices()[F * v + i], 0);
+		}
+		assertEquals(3, geometry.getVertices()[F * vertexOf(geometry, 20) + 3], 0);
+		assertEdges(geometry, first, second);
+		assertEquals(0, geometry.getDirtyVertexStart());
+		assertEquals(5, geometry.getDirtyVertexEnd());
+		assertEquals(3, geometry.getDirtyEdgeEnd());
+	}
+
+	@Test
+	public void testStyles() {
+		NeuronVboGeometry geometry = new NeuronVboGeometry();
+		TmNeuronMetadata neuron = chain(1, 3);
+		geometry.add(neuron);
+		geometry.update(neuronToStyle -> {
+			NeuronVboGeometry.NeuronStyle style = STYLES.styleFor(neuronToStyle);
+			style.visibility = 0;
+			style.radiusOverride = 0.3f;
+			style.reviewed = id -> id == 11;
+			style.reviewedRgb = new float[]{200, 200, 200};
+			style.looped = id -> id == 11 || id == 12;
+			style.loopRgb = new float[]{0, 1, 0};
+			return style;
+		}, TRANSFORM);
+
+		float[] vertices = geometry.getVertices();
+		int reviewed = F * vertexOf(geometry, 11);
+		int looped = F * vertexOf(geometry, 12);
+		int plain = F * vertexOf(geometry, 10);
+		assertEquals(200, vertices[reviewed + NeuronVboGeometry.COLOR_OFFSET], 0);
+		assertEquals(1, vertices[looped + NeuronVboGeometry.COLOR_OFFSET + 1], 0);
+		assertEquals(0.5f, vertices[plain + NeuronVboGeometry.COLOR_OFFSET + 1], 0);
+		for (int v = 0; v < 3; v++) {
+			assertEquals(0.3f, vertices[F * v + 3], 0);
+			assertEquals(0, vertices[F * v + NeuronVboGeometry.VISIBILITY_OFFSET], 0);
+		}
+	}
+
+	@Test
+	public void testPatchesUnresizedNeuronInPlace() {
+		NeuronVboGeometry geometry = new NeuronVboGeometry();
+		TmNeuronMetadata first = chain(1, 3);
+		TmNeuronMetadata second = chain(2, 2);
+		geometry.add(first);
+		geometry.add(second);
+		geometry.update(STYLES, TRANSFORM);
+		geometry.clearDirtyRanges();
+		float[] vertices = geometry.getVertices();
+		int[] edges = geometry.getEdges();
+		int secondStart = vertexOf(geometry, 20);
+
+		// moving an anchor only rewrites its neuron, in the same arrays
+		second.getGeoAnnotationMap().get(21L).setY(100);
+		geometry.markDirty(second.getId());
+		assertTrue(geometry.update(STYLES, TRANSFORM));
+		assertSame(vertices, geometry.getVertices());
+		assertSame(edges, geometry.getEdges());
+		assertEquals(1100, geometry.getVertices()[F * vertexOf(geometry, 21) + 1], 0);
+		assertEquals(secondStart, geometry.getDirtyVertexStart());
+		assertEquals(secondStart + 2, geometry.getDirtyVertexEnd());
+		assertEdges(geometry, first, second);
+	}
+
+	@Test
+	public void testMovesNeuronsAfterResizedOne() {
+		NeuronVboGeometry geometry = new NeuronVboGeometry();
+		TmNeuronMetadata first = chain(1, 3);
+		TmNeuronMetadata second = chain(2, 2);
+		TmNeuronMetadata third = chain(3, 4);
+		geometry.add(first);
+		geometry.add(second);
+		geometry.add(third);
+		geometry.update(STYLES, TRANSFORM);
+		geometry.clearDirtyRanges();
+		int firstEnd = 3;
+
+		// a branch on the second neuron moves the third along
+		add(second, 29, second.getGeoAnnotationMap().get(20L));
+		geometry.markDirty(second);
+		geometry.update(STYLES, TRANSFORM);
+		assertEquals(10, geometry.getVertexCount());
+		assertEquals(3, geometry.getVertexCount(second));
+		assertEquals(firstEnd, geometry.getDirtyVertexStart());
+		assertEquals(10, geometry.getDirtyVertexEnd());
+		assertEquals(2, geometry.getDirtyEdgeStart());
+		assertEdges(geometry, first, second, third);
+		assertEquals(3, geometry.getVertices()[F * vertexOf(geometry, 32) + NeuronVboGeometry.COLOR_OFFSET], 0);
+
+		// removing the last needs no upload; removing the first moves the others back
+		geometry.clearDirtyRanges();
+		geometry.remove(third);
+		geometry.update(STYLES, TRANSFORM);
+		assertFalse(geometry.hasDirtyRanges());
+		assertEquals(6, geometry.getVertexCount());
+		geometry.remove(first);
+		geometry.update(STYLES, TRANSFORM);
+		assertEquals(3, geometry.getVertexCount());
+		assertEquals(0, geometry.getDirtyVertexStart());
+		assertEquals(3, geometry.getDirtyVertexEnd());
+		assertEdges(geometry, second);
+		assertEquals(-1, geometry.getVertexCount(first));
+	}
+
+	@Test
+	public void testPatchColorAndVisibility() {
+		NeuronVboGeometry geometry = new NeuronVboGeometry();
+		TmNeuronMetadata first = chain(1, 3);
+		TmNeuronMetadata second = chain(2, 2);
+		geometry.add(first);
+		geometry.add(second);
+		geometry.update(STYLES, TRANSFORM);
+		geometry.clearDirtyRanges();
+
+		assertFalse(geometry.patchColor(second, new float[]{2, 0.5f, 0.25f}));
+		assertFalse(geometry.hasDirtyRanges());
+		assertTrue(geometry.patchColor(second, new float[]{0, 0, 1}));
+		assertTrue(geometry.patchVisibility(second, 0));
+		assertFalse(geometry.patchVisibility(second, 0));
+		int start = vertexOf(geometry, 20);
+		assertEquals(start, geometry.getDirtyVertexStart());
+		assertEquals(start + 2, geometry.getDirtyVertexEnd());
+		assertFalse(geometry.getDirtyEdgeStart() < geometry.getDirtyEdgeEnd());
+		for (int v = start; v < start + 2; v++) {
+			assertEquals(1, geometry.getVertices()[F * v + NeuronVboGeometry.COLOR_OFFSET + 2], 0);
+			assertEquals(0, geometry.getVertices()[F * v + NeuronVboGeometry.VISIBILITY_OFFSET], 0);
+		}
+		for (int v = vertexOf(geometry, 10), n = 0; n < 3; n++) {
+			assertEquals(1, geometry.getVertices()[F * (v + n) + NeuronVboGeometry.VISIBILITY_OFFSET], 0);
+		}
+
+		// a neuron waiting to be rebuilt isn't patched
+		geometry.markDirty(first);
+		assertFalse(geometry.patchVisibility(first, 0));
+	}
+
+
+	@Test
+	public void testBuildsFromSnapshot() {
+		NeuronVboGeometry geometry = new NeuronVboGeometry();
+		TmNeuronMetadata first = chain(1, 3);
+		geometry.add(first);
+		geometry.snapshot();
+
+		// changes after the snapshot, as on another thread while the build runs, aren't seen
+		add(first, 19, first.getGeoAnnotationMap().get(12L));
+		TmNeuronMetadata second = chain(2, 2);
+		geometry.add(second);
+		assertTrue(geometry.buildSnapshot(STYLES, TRANSFORM));
+		assertEquals(3, geometry.getVertexCount());
+		assertEquals(3, geometry.getVertexCount(first));
+		assertEquals(0, geometry.getVertexCount(second));
+		assertTrue(geometry.needsUpdate());
+		// nothing snapshotted, so nothing to build
+		assertFalse(geometry.buildSnapshot(STYLES, TRANSFORM));
+
+		geometry.markDirty(first);
+		assertTrue(geometry.update(STYLES, TRANSFORM));
+		assertFalse(geometry.needsUpdate());
+		assertEquals(6, geometry.getVertexCount());
+		assertEdges(geometry, first, second);
+	}
+
+	@Test
+	public void testChangeAfterSnapshotWaitsForTheNext() {
+		NeuronVboGeometry geometry = new NeuronVboGeometry();
+		TmNeuronMetadata first = chain(1, 3);
+		geometry.add(first);
+		geometry.update(STYLES, TRANSFORM);
+
+		first.getGeoAnnotationMap().get(11L).setY(100);
+		geometry.markDirty(first);
+		geometry.snapshot();
+		first.getGeoAnnotationMap().get(11L).setY(200);
+		add(first, 19, first.getGeoAnnotationMap().get(12L));
+		geometry.markDirty(first);
+		// the snapshot is stale, so the neuron keeps its contents until the next one
+		geometry.buildSnapshot(STYLES, TRANSFORM);
+		assertEquals(1011.5f, geometry.getVertices()[F * vertexOf(geometry, 11) + 1], 0);
+		assertTrue(geometry.isDirty(first));
+
+		geometry.update(STYLES, TRANSFORM);
+		assertEquals(1200, geometry.getVertices()[F * vertexOf(geometry, 11) + 1], 0);
+		assertEquals(4, geometry.getVertexCount(first));
+		assertEdges(geometry, first);
+	}
+}
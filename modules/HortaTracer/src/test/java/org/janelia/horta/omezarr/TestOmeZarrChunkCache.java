@@ -0,0 +1,74 @@
+package org.janelia.horta.omezarr;
+
+import static org.junit.Assert.*;
+
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+
+import org.aind.omezarr.image.AutoContrastParameters;
+import org.junit.Test;
+
+public class TestOmeZarrChunkCache {
+
+	// a chunk of 16 bit slices, 100 bytes each
+	private static WritableRaster[] chunk(int depth) {
+		WritableRaster[] slices = new WritableRaster[depth];
+		for (int z = 0; z < depth; z++) {
+			slices[z] = Raster.createBandedRaster(DataBuffer.TYPE_USHORT, 10, 5, 1, null);
+		}
+		return slices;
+	}
+
+	@Test
+	public void testSizeOf() {
+		assertEquals(300, OmeZarrChunkCache.sizeOf(chunk(3)));
+		WritableRaster bytes = Raster.createInterleavedRaster(DataBuffer.TYPE_BYTE, 10, 5, 3, null);
+		assertEquals(150, OmeZarrChunkCache.sizeOf(new WritableRaster[] {bytes}));
+	}
+
+	@Test
+	public void testLeastRecentlyUsedChunksAreEvicted() {
+		OmeZarrChunkCache cache = new OmeZarrChunkCache(500);
+		WritableRaster[] a = chunk(2);
+		cache.put("a", a);
+		cache.put("b", chunk(2));
+		assertSame(a, cache.get("a")); // now b is the eldest
+		cache.put("c", chunk(2));
+		assertEquals(400, cache.getSizeBytes());
+		assertNull(cache.get("b"));
+		assertNotNull(cache.get("c"));
+		assertSame(a, cache.get("a"));
+
+		assertEquals(3, cache.getHitCount());
+		assertEquals(1, cache.getMissCount());
+		assertEquals(0.75, cache.getHitRate(), 1e-9);
+	}
+
+	@Test
+	public void testReplacedAndOversizedChunks() {
+		OmeZarrChunkCache cache = new OmeZarrChunkCache(500);
+		cache.put("a", chunk(2));
+		cache.put("a", chunk(3));
+		assertEquals(300, cache.getSizeBytes());
+		// larger than the whole cache, so not kept, and nothing else is evicted for it
+		cache.put("b", chunk(6));
+		assertNull(cache.get("b"));
+		assertNotNull(cache.get("a"));
+		cache.clear();
+		assertEquals(0, cache.getSizeBytes());
+		assertNull(cache.get("a"));
+	}
+
+	@Test
+	public void testChunkKeyIncludesContrast() {
+		int[] origin = {128, 64, 32};
+		String raw = OmeZarrChunkReader.chunkKey("/data/0", 1, origin, null);
+		String scaled = OmeZarrChunkReader.chunkKey("/data/0", 1, origin, new AutoContrastParameters(100, 2.5));
+		String rescaled = OmeZarrChunkReader.chunkKey("/data/0", 1, origin, new AutoContrastParameters(100, 3.0));
+		assertNotEquals(raw, scaled);
+		assertNotEquals(scaled, rescaled);
+		assertEquals(scaled, OmeZarrChunkReader.chunkKey("/data/0", 1, origin.clone(), new AutoContrastParameters(100, 2.5)));
+		assertNotEquals(scaled, OmeZarrChunkReader.chunkKey("/data/0", 0, origin, new AutoContrastParameters(100, 2.5)));
+	}
+}
@@ -0,0 +1,238 @@
+package org.janelia.horta.volume;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import Jama.Matrix;
+import org.janelia.geometry3d.Box3;
+import org.janelia.geometry3d.ConstVector3;
+import org.janelia.geometry3d.Matrix4;
+import org.janelia.geometry3d.PerspectiveCamera;
+import org.janelia.geometry3d.Vantage;
+import org.janelia.geometry3d.Vector3;
+import org.janelia.geometry3d.Viewport;
+import org.janelia.gltools.texture.Texture3d;
+import org.junit.Test;
+
+public class TestBrickSpatialIndex {
+
+	private static class Brick implements BrickInfo {
+		private final Box3 box;
+
+		Brick(float x, float y, float z, float size) {
+			box = new Box3(new Vector3(x, y, z), new Vector3(x + size, y + size, z + size));
+		}
+
+		@Override
+		public Box3 getBoundingBox() {
+			return box;
+		}
+
+		@Override
+		public boolean isSameBrick(BrickInfo other) {
+			return other == this;
+		}
+
+		@Override
+		public List<? extends ConstVector3> getCornerLocations() {
+			return null;
+		}
+
+		@Override
+		public List<? extends ConstVector3> getValidCornerLocations() {
+			return null;
+		}
+
+		@Override
+		public List<? extends ConstVector3> getTilingSubsetLocations() {
+			return null;
+		}
+
+		@Override
+		public VoxelIndex getRasterDimensions() {
+			return null;
+		}
+
+		@Override
+		public int getChannelCount() {
+			return 1;
+		}
+
+		@Override
+		public int getBytesPerIntensity() {
+			return 2;
+		}
+
+		@Override
+		public double getResolutionMicrometers() {
+			return 1;
+		}
+
+		@Override
+		public Texture3d loadBrick(double maxEdgePadWidth, String fileExtension) {
+			return null;
+		}
+
+		@Override
+		public Matrix getStageCoordToTexCoord() {
+			return null;
+		}
+	}
+
+	private static double distanceSquared(BrickInfo brick, float[] xyz) {
+		Vector3 c = brick.getBoundingBox().getCentroid();
+		double dx = c.getX() - xyz[0];
+		double dy = c.getY() - xyz[1];
+		double dz = c.getZ() - xyz[2];
+		return dx * dx + dy * dy + dz * dz;
+	}
+
+	// Reference answer: every brick, sorted by distance
+	private static List<BrickInfo> bruteForceNearest(List<BrickInfo> bricks, float[] xyz, int count) {
+		List<BrickInfo> sorted = new ArrayList<>(bricks);
+		sorted.sort(Comparator.comparingDouble(b -> distanceSquared(b, xyz)));
+		return sorted.subList(0, Math.min(count, sorted.size()));
+	}
+
+	private static void assertSameDistances(List<BrickInfo> expected, List<BrickInfo> actual, float[] xyz) {
+		assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			// ties may come in either order, so compare distances
+			assertEquals("rank " + i, distanceSquared(expected.get(i), xyz), distanceSquared(actual.get(i), xyz), 1e-6);
+		}
+	}
+
+	@Test
+	public void testNearestBricksMatchBruteForce() {
+		Random random = new Random(7);
+		List<BrickInfo> bricks = new ArrayList<>();
+		BrickInfoSet set = new BrickInfoSet();
+		// a regular octree level, with duplicate centroids, plus scattered bricks of other sizes
+		for (int x = 0; x < 8; x++)
+			for (int y = 0; y < 6; y++)
+				for (int z = 0; z < 4; z++)
+					bricks.add(new Brick(100 * x, 100 * y, 100 * z, 100));
+		bricks.add(new Brick(0, 0, 0, 100));
+		for (int i = 0; i < 300; i++)
+			bricks.add(new Brick(1000 * random.nextFloat() - 100, 800 * random.nextFloat(), 500 * random.nextFloat(),
+					10 + 200 * random.nextFloat()));
+		set.addAll(bricks);
+
+		for (int q = 0; q < 200; q++) {
+			float[] xyz = {1200 * random.nextFloat() - 200, 1000 * random.nextFloat() - 100, 700 * random.nextFloat() - 100};
+			int count = 1 + random.nextInt(40);
+			assertSameDistances(bruteForceNearest(bricks, xyz, count), set.getClosestBricks(xyz, count), xyz);
+			BrickInfo best = set.getBestContainingBrick(new Vector3(xyz[0], xyz[1], xyz[2]));
+			assertEquals(distanceSquared(bruteForceNearest(bricks, xyz, 1).get(0), xyz), distanceSquared(best, xyz), 1e-6);
+		}
+		float[] origin = {0, 0, 0};
+		assertEquals(bricks.size(), set.getClosestBricks(origin, bricks.size() + 10).size());
+	}
+
+	// Orthographic view of the box center +/- halfWidth, as a matrix from world to clip coordinates
+	private static Matrix4 boxView(float[] center, float[] halfWidth) {
+		return new Matrix4(new float[] {
+			1 / halfWidth[0], 0, 0, 0,
+			0, 1 / halfWidth[1], 0, 0,
+			0, 0, 1 / halfWidth[2], 0,
+			-center[0] / halfWidth[0], -center[1] / halfWidth[1], -center[2] / halfWidth[2], 1});
+	}
+
+	private static boolean overlaps(BrickInfo brick, float[] center, float[] halfWidth) {
+		Box3 box = brick.getBoundingBox();
+		for (int i = 0; i < 3; i++) {
+			if (box.max.get(i) < center[i] - halfWidth[i] || box.min.get(i) > center[i] + halfWidth[i])
+				return false;
+		}
+		return true;
+	}
+
+	private static List<BrickInfo> randomBricks(Random random) {
+		List<BrickInfo> bricks = new ArrayList<>();
+		for (int x = 0; x < 8; x++)
+			for (int y = 0; y < 6; y++)
+				for (int z = 0; z < 4; z++)
+					bricks.add(new Brick(100 * x, 100 * y, 100 * z, 100));
+		for (int i = 0; i < 300; i++)
+			bricks.add(new Brick(1000 * random.nextFloat() - 100, 800 * random.nextFloat(), 500 * random.nextFloat(),
+					10 + 200 * random.nextFloat()));
+		return bricks;
+	}
+
+	@Test
+	public void testFrustumBricksMatchBruteForce() {
+		Random random = new Random(11);
+		List<BrickInfo> bricks = randomBricks(random);
+		BrickSpatialIndex index = new BrickSpatialIndex(bricks);
+
+		for (int q = 0; q < 200; q++) {
+			float[] center = {1000 * random.nextFloat(), 800 * random.nextFloat(), 500 * random.nextFloat()};
+			float[] halfWidth = {1 + 300 * random.nextFloat(), 1 + 300 * random.nextFloat(), 1 + 300 * random.nextFloat()};
+			Matrix4 view = boxView(center, halfWidth);
+
+			List<BrickInfo> visible = new ArrayList<>();
+			for (BrickInfo brick : bricks) {
+				if (overlaps(brick, center, halfWidth))
+					visible.add(brick);
+			}
+			List<BrickInfo> inView = index.getBricksInFrustum(view);
+			assertEquals(visible.size(), inView.size());
+			assertTrue(inView.containsAll(visible));
+
+			float[] xyz = {1200 * random.nextFloat() - 200, 1000 * random.nextFloat() - 100, 700 * random.nextFloat() - 100};
+			int count = 1 + random.nextInt(40);
+			assertSameDistances(bruteForceNearest(visible, xyz, count),
+					index.getNearestBricksInFrustum(xyz[0], xyz[1], xyz[2], count, view), xyz);
+		}
+	}
+
+	@Test
+	public void testClosestBricksInViewPreferVisibleBricks() {
+		Vantage vantage = new Vantage(null);
+		vantage.setFocus(500, 500, 500);
+		vantage.setSceneUnitsPerViewportHeight(200);
+		Viewport viewport = new Viewport();
+		viewport.setWidthPixels(400);
+		viewport.setHeightPixels(400);
+		PerspectiveCamera camera = new PerspectiveCamera(vantage, viewport);
+
+		BrickInfoSet set = new BrickInfoSet();
+		Brick atFocus = new Brick(450, 450, 450, 100);
+		Brick offScreen = new Brick(2000, 450, 450, 100);
+		set.add(atFocus);
+		set.add(offScreen);
+
+		assertEquals(1, set.getBricksInView(camera).size());
+		assertSame(atFocus, set.getBricksInView(camera).get(0));
+		// nearer to the off-screen brick, but the visible one comes first
+		float[] xyz = {1800, 500, 500};
+		assertSame(offScreen, set.getClosestBricks(xyz, 1).get(0));
+		assertSame(atFocus, set.getClosestBricksInView(camera, xyz, 1).get(0));
+		// spare room is filled with the nearest bricks out of view
+		List<BrickInfo> both = set.getClosestBricksInView(camera, xyz, 5);
+		assertEquals(2, both.size());
+		assertSame(atFocus, both.get(0));
+		assertSame(offScreen, both.get(1));
+	}
+
+	@Test
+	public void testIndexFollowsChanges() {
+		BrickInfoSet set = new BrickInfoSet();
+		float[] xyz = {500, 500, 500};
+		assertNull(set.getBestContainingBrick(new Vector3(xyz[0], xyz[1], xyz[2])));
+		assertTrue(set.getClosestBricks(xyz, 3).isEmpty());
+
+		Brick far = new Brick(0, 0, 0, 10);
+		Brick near = new Brick(490, 490, 490, 20);
+		set.add(far);
+		assertSame(far, set.getClosestBricks(xyz, 1).get(0));
+		set.add(near);
+		assertSame(near, set.getClosestBricks(xyz, 1).get(0));
+		set.remove(near);
+		assertSame(far, set.getBestContainingBrick(new Vector3(xyz[0], xyz[1], xyz[2])));
+	}
+}
@@ -440,6 +440,15 @@ public class QuadViewUi extends JPanel implements VolumeLoadListener {
         }
     }
 
+    public void retraceNeuronRequested(Long neuronId) {
+        // as above, before the paths are drawn
+        getSkeletonActor().getModel().setTileFormat(
+                tileServer.getLoadAdapter().getTileFormat());
+        if (pathTraceListener != null) {
+            pathTraceListener.retraceNeuron(neuronId);
+        }
+    }
+
     public Skeleton getSkeleton() {
         return skeleton;
     }
@@ -771,7 +780,7 @@ public class QuadViewUi extends JPanel implements VolumeLoadListener {
 
         buttonsPanel.add(loadUpdatesButton);
 
-        buttonsPanel.add(new TileStackCacheStatusPanel());
+        buttonsPanel.add(new TileStackCacheStatusPanel(tileServer));
 
         Component verticalGlue = Box.createVerticalGlue();
         buttonsPanel.add(verticalGlue);
@@ -55,7 +55,9 @@ public class SliceActor implements GLActor {
         if (viewTileManager != null) {
             TextureCache tc = viewTileManager.getTextureCache();
             if (tc != null) {
-                int[] txIds = tc.popObsoleteTextureIds();
+                tc.getTextureUploader().beginFrame(gl.getGL2GL3());
+                // Obsolete textures are reused for new tiles of the same size where possible
+                int[] txIds = tc.getTextureUploader().recycleTextures(tc.popObsoleteTextureIds());
                 int historySize = tc.getHistoryCache().size();
                 int futureSize = tc.getFutureCache().size();
                 if (txIds.length > 0) {
@@ -100,6 +102,12 @@ public class SliceActor implements GLActor {
         }
         shader.unload(gl2);
 
+        // Tiles whose upload did not fit in this frame's budget are drawn in a later frame
+        TextureCache textureCache = viewTileManager.getTextureCache();
+        if (textureCache != null && textureCache.getTextureUploader().hasDeferredUploads()) {
+            viewTileManager.getTileConsumer().repaint();
+        }
+
         // Numeral display at high zoom			
         if (pixelsPerVoxel > 40.0) {
             numeralShader.setMicrometersPerPixel(1.0 / pixelsPerVoxel);
@@ -108,7 +116,7 @@ public class SliceActor implements GLActor {
             int tw = 10;
             for (Tile2d tile : tiles) {
                 TileTexture texture = tile.getBestTexture();
-                if (texture != null) {
+                if (texture != null && texture.getTexture() != null) {
                     th = texture.getTexture().getHeight();
                     tw = texture.getTexture().getWidth();
                     break;
@@ -5,6 +5,7 @@ import java.awt.datatransfer.Clipboard;
 import java.awt.datatransfer.StringSelection;
 import java.util.*;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import javax.swing.JOptionPane;
 
@@ -39,6 +40,8 @@ import org.janelia.workstation.gui.large_volume_viewer.skeleton.UpdateAnchorList
 import org.janelia.workstation.controller.tileimagery.TileFormat;
 import org.janelia.workstation.integration.util.FrameworkAccess;
 import org.janelia.workstation.geom.Vec3;
+import org.janelia.workstation.core.util.ConsoleProperties;
+import org.janelia.workstation.core.workers.BackgroundWorker;
 import org.janelia.workstation.core.workers.SimpleWorker;
 import org.janelia.workstation.gui.large_volume_viewer.ComponentUtil;
 import org.janelia.workstation.gui.large_volume_viewer.skeleton.Anchor;
@@ -63,6 +66,10 @@ public class AnnotationManager implements UpdateAnchorListener, PathTraceListene
     private Collection<TmGeoAnnotationAnchorListener> anchorListeners = new ArrayList<>();
     private Collection<NextParentListener> nextParentListeners = new ArrayList<>();
     private ViewStateListener viewStateListener;
+    // kept between clicks, so it can reuse the data it loaded for earlier ones
+    private PointRefiner pointRefiner;
+    // kept between requests, so they share its threads
+    private PathTraceService pathTraceService;
 
     public void addTmGeoAnchorListener(TmGeoAnnotationAnchorListener l) {
         anchorListeners.add(l);
@@ -320,6 +327,38 @@ public class AnnotationManager implements UpdateAnchorListener, PathTraceListene
         return TmModelManager.getInstance().getTileServer().getLoadAdapter().getTileFormat();
     }
 
+    /**
+     * the algorithm can be chosen with console.lvv.refinementAlgorithm; see
+     * PointRefiner.Algorithm for the names
+     */
+    private synchronized PointRefiner getPointRefiner() {
+        if (pointRefiner == null) {
+            pointRefiner = new PointRefiner(quadViewUi.getSubvolumeProvider());
+            String algorithm = ConsoleProperties.getString("console.lvv.refinementAlgorithm", "MAX_INTENSITY_Z");
+            try {
+                pointRefiner.setAlgorithm(PointRefiner.Algorithm.valueOf(algorithm.trim().toUpperCase()));
+            } catch (IllegalArgumentException e) {
+                log.warn("Unknown point refinement algorithm {}; using {}", algorithm, pointRefiner.getAlgorithm());
+            }
+        }
+        return pointRefiner;
+    }
+
+    /**
+     * the number of threads can be set with console.lvv.pathTraceThreads
+     */
+    private synchronized PathTraceService getPathTraceService() {
+        if (pathTraceService == null) {
+            int threadCount = ConsoleProperties.getInt("console.lvv.pathTraceThreads",
+                    Runtime.getRuntime().availableProcessors());
+            pathTraceService = new PathTraceService(tileServer.getSharedVolumeImage(), tileServer.getTextureCache(),
+                    threadCount);
+            pathTraceService.setTimeout(AUTOMATIC_TRACING_TIMEOUT);
+            pathTraceService.setPathTraceListener(this);
+        }
+        return pathTraceService;
+    }
+
     // ----- methods called from UI
     // these methods are called by actions from the 2d view; should be not
     //  much more than what tool is active and where the click was;
@@ -365,11 +404,13 @@ public class AnnotationManager implements UpdateAnchorListener, PathTraceListene
                 if (annotationModel.automatedRefinementEnabled()) {
                     StopWatch stopwatch = new StopWatch();
                     stopwatch.start();
-                    PointRefiner refiner = new PointRefiner(quadViewUi.getSubvolumeProvider());
+                    PointRefiner refiner = getPointRefiner();
                     finalLocation = refiner.refine(xyz);
                     stopwatch.stop();
                     // System.out.println("refined annotation; elapsed time = " + stopwatch.toString());
-                    log.info("refined annotation; elapsed time = {} ms", stopwatch.getElapsedTime());
+                    log.info("refined annotation; elapsed time = {} ms; p95 {} ms over {} refinements, {} from cached data",
+                            stopwatch.getElapsedTime(), refiner.getLatencyHistogram().getPercentileMillis(95),
+                            refiner.getLatencyHistogram().getCount(), refiner.getCacheHitCount());
 
                     // System.out.println("add annotation: input point " + xyz);
                     // System.out.println("add annotation: refined point " + finalLocation);
@@ -897,6 +938,46 @@ public class AnnotationManager implements UpdateAnchorListener, PathTraceListene
         worker.execute();
     }
 
+    /**
+     * traces the path from every anchor of the neuron to its parent again,
+     * in the background, replacing the paths already there
+     */
+    public void retraceNeuron(Long neuronId) {
+        final TmNeuronMetadata neuron = annotationModel.getNeuronFromNeuronID(neuronId);
+        if (neuron == null || !TmModelManager.getInstance().checkOwnership(neuronId)) {
+            return;
+        }
+
+        BackgroundWorker worker = new BackgroundWorker() {
+            @Override
+            public String getName() {
+                return "retrace paths in neuron " + neuron.getName();
+            }
+
+            @Override
+            protected void doStuff() throws Exception {
+                setStatus("Tracing");
+                PathTraceService.Batch batch = getPathTraceService().traceNeuron(neuron);
+                try {
+                    while (!batch.awaitCompletion(1, TimeUnit.SECONDS)) {
+                        setProgress(batch.getTracedCount() + batch.getFailedCount(), batch.getRequestCount());
+                    }
+                } catch (InterruptedException e) {
+                    batch.cancel();
+                    throw e;
+                }
+                setFinalStatus(String.format("%d of %d paths traced, %d failed",
+                        batch.getTracedCount(), batch.getRequestCount(), batch.getFailedCount()));
+            }
+
+            @Override
+            protected void hadError(Throwable error) {
+                FrameworkAccess.handleException(error);
+            }
+        };
+        worker.executeWithEvents();
+    }
+
     private Long getSampleID() {
         if (TmModelManager.getInstance().getCurrentWorkspace() != null) {
             return TmModelManager.getInstance().getCurrentWorkspace().getSampleRef().getTargetId();
@@ -85,6 +85,10 @@ public class QuadViewController implements ViewStateListener {
     public void pathTraceRequested(Long neuronId, Long annotationId) {
         ui.pathTraceRequested(neuronId, annotationId);
     }
+
+    public void retraceNeuronRequested(Long neuronId) {
+        ui.retraceNeuronRequested(neuronId);
+    }
     
     @Override
     public void centerNextParent() {
@@ -266,6 +270,11 @@ public class QuadViewController implements ViewStateListener {
         public void pathTrace(PathTraceToParentRequest request) {
             annoMgr.tracePathToParent(request);
         }
+
+        @Override
+        public void retraceNeuron(Long neuronId) {
+            annoMgr.retraceNeuron(neuronId);
+        }
         
     }
 }
@@ -13,7 +13,6 @@ import javax.swing.AbstractAction;
 import javax.swing.JMenuItem;
 import javax.swing.KeyStroke;
 
-import Jama.Matrix;
 import org.janelia.workstation.controller.NeuronManager;
 import org.janelia.workstation.controller.ViewerEventBus;
 import org.janelia.workstation.controller.action.*;
@@ -398,18 +397,9 @@ implements MouseMode, KeyListener
                                 500, null, false);
                         Camera3d camera = getCamera();
 
-                        Matrix m2v = TmModelManager.getInstance().getMicronToVoxMatrix();
-                        Jama.Matrix micLoc = new Jama.Matrix(new double[][]{
-                                {location.getX(),},
-                                {location.getY(),},
-                                {location.getZ(),},
-                                {1.0,},});
-                        // NeuronVertex API requires coordinates in micrometers
-                        Jama.Matrix voxLoc = m2v.times(micLoc);
-                        Vec3 voxelXyz = new Vec3(
-                                (float) voxLoc.get(0, 0),
-                                (float) voxLoc.get(1, 0),
-                                (float) voxLoc.get(2, 0));
+                        float[] voxLoc = TmModelManager.getInstance().getMicronToVoxTransform().transform(
+                                location.getX(), location.getY(), location.getZ());
+                        Vec3 voxelXyz = new Vec3(voxLoc[0], voxLoc[1], voxLoc[2]);
                         TmViewState currView = TmModelManager.getInstance().getCurrentView();
                         currView.setCameraFocusX(voxelXyz.getX());
                         currView.setCameraFocusY(voxelXyz.getY());
@@ -515,6 +505,15 @@ implements MouseMode, KeyListener
                         };
                         tracePathToParentAction.setEnabled(controller.editsAllowed());
                         result.add(new JMenuItem(tracePathToParentAction));
+
+                        AbstractAction retraceNeuronAction = new AbstractAction("Retrace all paths in this neuron") {
+                            @Override
+                            public void actionPerformed(ActionEvent e) {
+                                controller.retraceNeuronRequested(hover.getNeuronID());
+                            }
+                        };
+                        retraceNeuronAction.setEnabled(controller.editsAllowed());
+                        result.add(new JMenuItem(retraceNeuronAction));
                     }
                     // Make Parent
                     if (hover != parent) {
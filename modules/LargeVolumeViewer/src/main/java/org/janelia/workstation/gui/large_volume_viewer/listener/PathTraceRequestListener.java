@@ -8,4 +8,6 @@ import org.janelia.workstation.gui.large_volume_viewer.tracing.PathTraceToParent
  */
 public interface PathTraceRequestListener {
     void pathTrace(PathTraceToParentRequest request);
+
+    void retraceNeuron(Long neuronId);
 }
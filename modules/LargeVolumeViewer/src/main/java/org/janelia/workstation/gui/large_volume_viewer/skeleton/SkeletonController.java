@@ -2,7 +2,9 @@ package org.janelia.workstation.gui.large_volume_viewer.skeleton;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
 
@@ -43,6 +45,10 @@ public class SkeletonController implements NextParentListener {
     private QuadViewController qvController;
     private Timer meshDrawUpdateTimer;
     private boolean skipSkeletonChange=false;
+    // neurons added while the workspace was still loading
+    private Set<Long> batchLoadedNeuronIds = new HashSet<>();
+    private long lastBatchUpdateTime;
+    private static final long BATCH_UPDATE_INTERVAL_MS = 500;
 
     private static SkeletonController instance = new SkeletonController();
     
@@ -136,10 +142,25 @@ public class SkeletonController implements NextParentListener {
     }
 
     private void loadWorkspaceNeurons(TmWorkspace workspace) {
+        Collection<TmNeuronMetadata> neurons = NeuronManager.getInstance().getNeuronList();
+        if (!batchLoadedNeuronIds.isEmpty()) {
+            // nothing to do if the batches already added exactly these neurons
+            boolean allLoaded = batchLoadedNeuronIds.size() == neurons.size();
+            for (TmNeuronMetadata neuron : neurons) {
+                allLoaded = allLoaded && batchLoadedNeuronIds.contains(neuron.getId());
+            }
+            batchLoadedNeuronIds.clear();
+            if (allLoaded) {
+                log.info("Workspace neurons loaded; anchor model is up to date");
+                skeletonChanged(true);
+                return;
+            }
+            skeleton.clear();
+        }
         log.info("Workspace neurons loaded; rebuilding anchor model");
         if (workspace != null) {
             setSkipSkeletonChange(true);
-            for (TmNeuronMetadata neuron : NeuronManager.getInstance().getNeuronList()) {
+            for (TmNeuronMetadata neuron : neurons) {
                 processNeuronCreated(neuron);
             }
             skeletonChanged(true);
@@ -147,9 +168,29 @@ public class SkeletonController implements NextParentListener {
         }
     }
 
+    @Subscribe
+    public void workspaceNeuronsBatchLoaded(LoadNeuronsBatchEvent event) {
+        if (skeleton == null || event.getWorkspace() == null) {
+            return;
+        }
+        setSkipSkeletonChange(true);
+        for (TmNeuronMetadata neuron : event.getNeurons()) {
+            processNeuronCreated(neuron);
+            batchLoadedNeuronIds.add(neuron.getId());
+        }
+        setSkipSkeletonChange(false);
+        // every update rebuilds all the anchors, so don't do it for each batch
+        long now = System.currentTimeMillis();
+        if (now - lastBatchUpdateTime > BATCH_UPDATE_INTERVAL_MS) {
+            lastBatchUpdateTime = now;
+            skeletonChanged(true);
+        }
+    }
+
     @Subscribe
     public void workspaceUnloaded(UnloadProjectEvent event) {
         log.info("Workspace unloaded");
+        batchLoadedNeuronIds.clear();
         clearAnchors();
     }
 
@@ -170,10 +211,7 @@ public class SkeletonController implements NextParentListener {
 
     @Subscribe
     public void neuronDeleted(NeuronDeleteEvent event) {
-        Collection<TmNeuronMetadata> neurons = event.getNeurons();
-        // should never be empty, but check anyway:
-        if (!neurons.isEmpty()) {
-            TmNeuronMetadata neuron = neurons.iterator().next();
+        for (TmNeuronMetadata neuron: event.getNeurons()) {
             processNeuronDeleted(neuron);
         }
     }
@@ -181,10 +219,7 @@ public class SkeletonController implements NextParentListener {
     @Subscribe
     public void neuronChanged(NeuronUpdateEvent event) {
         Collection<TmNeuronMetadata> neurons = event.getNeurons();
-        TmNeuronMetadata neuron=null;
-        if (neurons!=null && !neurons.isEmpty()) {
-            neuron = neurons.iterator().next();
-        } else {
+        if (neurons==null || neurons.isEmpty()) {
             return;
         }
 
@@ -195,7 +230,9 @@ public class SkeletonController implements NextParentListener {
 
 
 
-        processNeuronDeleted(neuron);
+        for (TmNeuronMetadata neuron: neurons) {
+            processNeuronDeleted(neuron);
+        }
         NeuronCreateEvent nce = new NeuronCreateEvent(this,
                 event.getNeurons());
         neuronCreated(nce);
@@ -492,6 +529,10 @@ public class SkeletonController implements NextParentListener {
         qvController.pathTraceRequested(neuronId, annotationId);
     }
 
+    public void retraceNeuronRequested(Long neuronId) {
+        qvController.retraceNeuronRequested(neuronId);
+    }
+
     public void navigationRelative(Long neuronId, Long annotationId, AnnotationNavigationDirection direction) {
         Anchor anchor = skeleton.getAnchorByID(annoMgr.relativeAnnotation(neuronId, annotationId, direction));
         setNextParent(anchor);
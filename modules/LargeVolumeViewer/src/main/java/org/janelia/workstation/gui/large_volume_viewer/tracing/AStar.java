@@ -2,17 +2,14 @@ package org.janelia.workstation.gui.large_volume_viewer.tracing;
 
 import java.nio.ByteBuffer;
 import java.nio.ShortBuffer;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
-import java.util.Map;
-import java.util.Set;
-import java.util.Vector;
 import org.janelia.workstation.controller.tileimagery.Subvolume;
 import org.janelia.workstation.octree.ZoomLevel;
 import org.janelia.workstation.octree.ZoomedVoxelIndex;
 
-import com.google.common.collect.Lists;
 import org.janelia.workstation.controller.tileimagery.raster.VoxelIndex;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -22,7 +19,13 @@ import org.slf4j.LoggerFactory;
  * http://en.wikipedia.org/wiki/A*_search_algorithm
  * 
  * @author brunsc
- *
+ * 
+ * Search state is kept in flat arrays with one entry per voxel of the
+ * subvolume (the best cost found so far, and which neighbor it came from),
+ * and the open set is a binary heap of voxel indices, so each step costs
+ * O(log n) without allocating.  Step costs come from a table indexed by
+ * intensity.  Optionally searches from both ends at once.
+ * 
  * TODO - store log(probability), not probability
  */
 public class AStar {
@@ -31,41 +34,78 @@ public class AStar {
         MANHATTAN,
     }
     private DistanceMetric distanceMetric = DistanceMetric.EUCLIDEAN;
-    
+
     // How many neighbors to examine for each voxel?
-    // TODO - not implemented yet
     enum NeighborClass {
         SIX_CONNECTED,
         // EIGHTEEN_CONNECTED, // I don't have all day here...
         TWENTYSIX_CONNECTED,
     }
     private NeighborClass neighborClass = NeighborClass.TWENTYSIX_CONNECTED;
-    
+
     private boolean debug = false;
     // Cached values
     // stepCostLowerBound has a dramatic effect on performance 9-25-2013
     // Numbers larger than <some small amount> take more time and cause more nodes to be explored.
     // Non-zero values prevent meandering path.
     private final double stepCostLowerBound = 1e-60;
-    
+    // Scores along bright paths are tiny, and summing them in a different
+    // order can shave off the last bit; reopening voxels over that cascades
+    private static final double MIN_IMPROVEMENT = 1e-9; // relative
+
     private double minStepCost = Double.NaN; // will be set from volume statistics
-    private Subvolume volume;
-    private Map<Integer, Double> pathCostForIntensity = new HashMap<Integer, Double>();
+    private final ZoomedVoxelIndex origin;
+    private final int sizeX;
+    private final int sizeY;
+    private final int sizeZ;
+    private final int channelCount;
+    private final int bytesPerIntensity;
+    private final ByteBuffer bytes;
+    private final ShortBuffer shorts;
+    // indexed by intensity, up to the brightest in the volume
+    private double[] pathCostForIntensity = new double[0];
     private double meanIntensity = Double.NaN;
     private double stdDevIntensity = Double.NaN;
     // In case of anisotropic voxel size
     private double voxelSizeX = 1.0;
     private double voxelSizeY = 1.0;
     private double voxelSizeZ = 1.0;
-    Map<VoxelIndex, Node> allNodes = new HashMap<VoxelIndex, Node>();
+    private boolean bidirectional = false;
+
+    // neighbor steps, set up for each trace
+    private int[] neighborDx;
+    private int[] neighborDy;
+    private int[] neighborDz;
+    private int[] neighborOffsets; // in flat voxel index
+    private double[] neighborDistances;
+
+    // best path found where the two searches meet, when searching both ways
+    private double meetingCost;
+    private int meetingVoxel;
+    private long checkedVoxelCount;
 
     private static final Logger log = LoggerFactory.getLogger(AStar.class);
 
     public AStar(Subvolume volume) {
-        this.volume = volume;
+        this(volume.getByteBuffer(), volume.getBytesPerIntensity(), volume.getChannelCount(),
+                volume.getExtent(), volume.getOrigin());
+    }
+
+    /**
+     * @param raster intensities with channel fastest, then x, y, z, as in Subvolume
+     */
+    AStar(ByteBuffer raster, int bytesPerIntensity, int channelCount, VoxelIndex extent, ZoomedVoxelIndex origin) {
+        this.bytes = raster;
+        this.bytesPerIntensity = bytesPerIntensity;
+        this.shorts = bytesPerIntensity == 2 ? raster.asShortBuffer() : null;
+        this.channelCount = channelCount;
+        this.sizeX = extent.getX();
+        this.sizeY = extent.getY();
+        this.sizeZ = extent.getZ();
+        this.origin = origin;
         computeIntensityStats();
     }
-    
+
     public void setVoxelSizes(double[] sizes) {
         setVoxelSizes(sizes[0], sizes[1], sizes[2]);
     }
@@ -74,64 +114,68 @@ public class AStar {
         voxelSizeY = ySize;
         voxelSizeZ = zSize;
     }
-    
+
+    /**
+     * Search from the start and the goal at once, meeting in the middle.  Finds
+     * a path of the same cost, with twice the memory; whether it examines fewer
+     * voxels depends on the image around each end (see MeasureAStarTime).
+     */
+    public void setBidirectional(boolean bidirectional) {
+        this.bidirectional = bidirectional;
+    }
+
     public List<ZoomedVoxelIndex> trace(
             ZoomedVoxelIndex start0,
             ZoomedVoxelIndex goal0,
             double timout)
     {
-        Node start = getNode(new VoxelIndex(
-                start0.getX() - volume.getOrigin().getX(), 
-                start0.getY() - volume.getOrigin().getY(), 
-                start0.getZ() - volume.getOrigin().getZ()));
-        Node goal = getNode(new VoxelIndex(
-                goal0.getX() - volume.getOrigin().getX(), 
-                goal0.getY() - volume.getOrigin().getY(), 
-                goal0.getZ() - volume.getOrigin().getZ()));
-        // 
-        // The set of nodes already evaluated
-        Set<Node> closedSet = new HashSet<Node>();
-        // The set of tentative nodes to be evaluated, initially containing the start node.
-        Set<Node> openSet = new HashSet<Node>();
-        openSet.add(start);
-        // The map of navigated nodes
-        // Map<VoxelIndex, VoxelIndex> cameFrom = new HashMap<VoxelIndex, VoxelIndex>();
-        // Cost from start along best known path
-        // Map<VoxelIndex, Double> gScore = new HashMap<VoxelIndex, Double>();
-        // Map<VoxelIndex, Double> fScore = new HashMap<VoxelIndex, Double>();
-        //
-        start.gScore = 0.0;
-        start.fScore = start.gScore + heuristicCostEstimate(start.index, goal.index);
+        int start = localVoxel(start0);
+        int goal = localVoxel(goal0);
+        if (start < 0 || goal < 0) {
+            log.warn("A-star tracing endpoints {} and {} aren't both in the subvolume", start0, goal0);
+            return null;
+        }
+        ZoomLevel zoomLevel = start0.getZoomLevel();
+        setUpNeighbors();
+        checkedVoxelCount = 0;
+        meetingCost = Double.POSITIVE_INFINITY;
+        meetingVoxel = -1;
+        if (start == goal) {
+            return reconstructPath(null, null, start, zoomLevel);
+        }
 
+        Frontier forward = new Frontier(true, start, goal);
+        Frontier backward = bidirectional ? new Frontier(false, goal, start) : null;
         long startTime = System.currentTimeMillis();
-        long checkedVoxelCount = 0;
-        while (openSet.size() > 0) {
-            // Get node with lowest fScore in openSet
-            // TODO - perhaps a sorted list could be maintained, to avoid 
-            // exhaustive search each time.
-            Node current = null;
-            for (Node n : openSet) {
-                if (current == null) {
-                    current = n;
-                    continue;
+        while (! forward.isEmpty() && (backward == null || ! backward.isEmpty())) {
+            Frontier frontier = forward;
+            Frontier other = null;
+            if (backward != null) {
+                // Every path cheaper than the best one found so far would
+                // have a voxel in each open set costing less than it
+                if (meetingCost <= Math.max(forward.minKey(), backward.minKey()))
+                    break;
+                // Grow the smaller frontier
+                if (backward.size() < forward.size()) {
+                    frontier = backward;
+                    other = forward;
+                } else {
+                    other = backward;
                 }
-                if (n.fScore < current.fScore)
-                    current = n;
             }
-            if (current.equals(goal)) {
+            int current = frontier.pop();
+            if (current < 0)
+                continue; // only stale entries were left
+            if (backward == null && current == goal) {
                 if (debug) {
                     System.out.println("Examined "+checkedVoxelCount+" voxels");
                 }
-                return reconstructPath(start, goal, start0.getZoomLevel());
+                return reconstructPath(forward, null, goal, zoomLevel);
             }
-            // Remove current from openSet
-            openSet.remove(current);
-            closedSet.add(current);
             checkedVoxelCount += 1;
             if (debug && checkedVoxelCount % 10000 == 0)
                 System.out.println("Examined "+checkedVoxelCount+" voxels");
-            // check timeout; quick tests suggest about 5k/sec, so this ought to
-            //  be more than sensitive enough
+            // check timeout
             if (checkedVoxelCount % 1000 == 0) {
                 if (System.currentTimeMillis() - startTime > timout * 1000) {
                     if (debug) {
@@ -142,116 +186,159 @@ public class AStar {
                     return null;
                 }
             }
-            for (VoxelIndex neighborIndex : getNeighbors(current.index))
-            {
-                Node neighbor = getNode(neighborIndex);
-                double tentativeGScore = current.gScore
-                        + distanceBetween(current.index, neighbor.index);
-                if ( closedSet.contains(neighbor)
-                       && (tentativeGScore >= neighbor.gScore ) ) {
-                    continue;
-                }
-                if ( (! openSet.contains(neighbor)) 
-                       || (tentativeGScore < neighbor.gScore) )
-                {
-                    neighbor.cameFrom = current;
-                    neighbor.gScore = tentativeGScore;
-                    neighbor.fScore = neighbor.gScore + heuristicCostEstimate(neighbor.index, goal.index);
-                    openSet.add(neighbor);
-                }
+            expand(frontier, current, other);
+        }
+        if (meetingVoxel >= 0) {
+            if (debug) {
+                System.out.println("Examined "+checkedVoxelCount+" voxels");
             }
+            return reconstructPath(forward, backward, meetingVoxel, zoomLevel);
         }
         return null;
     }
-    
-    private double distanceBetween(VoxelIndex current, VoxelIndex neighbor) {
-        // Set distance to cost of second node.
-        int intensity = volume.getIntensityLocal(neighbor, 0);
-        double pathScore = getPathStepCostForIntensity(intensity);
-        // Use Manhattan distance, and prohibit diagonal moves (for performance)
-        double dx = (current.getX() - neighbor.getX()) * voxelSizeX;
-        double dy = (current.getY() - neighbor.getY()) * voxelSizeY;
-        double dz = (current.getZ() - neighbor.getZ()) * voxelSizeZ;
-        double distance = 0;
-        if (distanceMetric == DistanceMetric.MANHATTAN) {
-            distance += Math.abs(dx);
-            distance += Math.abs(dy);
-            distance += Math.abs(dz);
-        } else if (distanceMetric == DistanceMetric.EUCLIDEAN) {
-            distance = Math.sqrt(dx*dx + dy*dy + dz*dz);
+
+    /**
+     * number of voxels examined by the last trace
+     */
+    long getCheckedVoxelCount() {
+        return checkedVoxelCount;
+    }
+
+    /**
+     * sum of the step costs along a path, as the search counts them
+     */
+    double pathCost(List<ZoomedVoxelIndex> path) {
+        double cost = 0;
+        for (int i = 1; i < path.size(); i++) {
+            ZoomedVoxelIndex from = path.get(i - 1);
+            ZoomedVoxelIndex to = path.get(i);
+            cost += stepCost(localVoxel(to)) * distance(
+                    to.getX() - from.getX(), to.getY() - from.getY(), to.getZ() - from.getZ());
         }
-        return pathScore * distance;
+        return cost;
     }
-    
-    private List<VoxelIndex> getNeighbors(VoxelIndex center) {
-        // For performance, don't step to diagonals
-        // Thus, up to six neighbors in 3D
-        List<VoxelIndex> result = new Vector<VoxelIndex>();
-        //
-        if (neighborClass == NeighborClass.SIX_CONNECTED) {
-            if (center.getX() > 0)
-                result.add(new VoxelIndex(center.getX()-1, center.getY(), center.getZ()));
-            if (center.getY() > 0)
-                result.add(new VoxelIndex(center.getX(), center.getY()-1, center.getZ()));
-            if (center.getZ() > 0)
-                result.add(new VoxelIndex(center.getX(), center.getY(), center.getZ()-1));
-            //
-            if (center.getX() < volume.getExtent().getX() - 1)
-                result.add(new VoxelIndex(center.getX()+1, center.getY(), center.getZ()));
-            if (center.getX() < volume.getExtent().getY() - 1)
-                result.add(new VoxelIndex(center.getX(), center.getY()+1, center.getZ()));
-            if (center.getX() < volume.getExtent().getZ() - 1)
-                result.add(new VoxelIndex(center.getX(), center.getY(), center.getZ()+1));
+
+    // Relaxes the neighbors of a voxel just taken from the open set
+    private void expand(Frontier frontier, int current, Frontier other) {
+        int cx = current % sizeX;
+        int cy = (current / sizeX) % sizeY;
+        int cz = current / (sizeX * sizeY);
+        boolean interior = cx > 0 && cx < sizeX - 1
+                && cy > 0 && cy < sizeY - 1
+                && cz > 0 && cz < sizeZ - 1;
+        double[] g = frontier.gScore;
+        double currentScore = g[current];
+        // Each step costs the intensity of the voxel stepped to, so searching
+        // backward from the goal, it's the voxel stepped from
+        double backwardStepCost = frontier.forward ? 0 : stepCost(current);
+        for (int k = 0; k < neighborOffsets.length; ++k) {
+            int x = cx + neighborDx[k];
+            int y = cy + neighborDy[k];
+            int z = cz + neighborDz[k];
+            if (! interior && (x < 0 || x >= sizeX || y < 0 || y >= sizeY || z < 0 || z >= sizeZ))
+                continue;
+            int neighbor = current + neighborOffsets[k];
+            double stepCost = frontier.forward ? stepCost(neighbor) : backwardStepCost;
+            double tentativeGScore = currentScore + stepCost * neighborDistances[k];
+            if (frontier.cameFrom[neighbor] != 0
+                    && tentativeGScore >= g[neighbor] * (1.0 - MIN_IMPROVEMENT))
+                continue;
+            g[neighbor] = tentativeGScore;
+            frontier.cameFrom[neighbor] = (byte) (k + 1); // also reopens it, if closed
+            frontier.push(neighbor, tentativeGScore + heuristicCostEstimate(
+                    frontier.targetX - x, frontier.targetY - y, frontier.targetZ - z));
+            if (other != null && other.cameFrom[neighbor] != 0) {
+                double cost = tentativeGScore + other.gScore[neighbor];
+                if (cost < meetingCost) {
+                    meetingCost = cost;
+                    meetingVoxel = neighbor;
+                }
+            }
         }
-        else if (neighborClass == NeighborClass.TWENTYSIX_CONNECTED) {            
-            for (int dx = -1; dx <= 1; ++dx) {
-                int x = center.getX() + dx;
-                if (x < 0) continue;
-                if (x >= volume.getExtent().getX() - 1) continue;
-                for (int dy = -1; dy <= 1; ++dy) {
-                    int y = center.getY() + dy;
-                    if (y < 0) continue;
-                    if (y >= volume.getExtent().getY() - 1) continue;
-                    for (int dz = -1; dz <= 1; ++dz) {
-                        if ((dx == 0) && (dy == 0) && (dz == 0)) 
-                            continue; // self is not a neighbor
-                        int z = center.getZ() + dz;
-                        if (z < 0) continue;
-                        if (z >= volume.getExtent().getZ() - 1) continue;
-                        result.add(new VoxelIndex(x, y, z));
-                    }
+    }
+
+    private void setUpNeighbors() {
+        List<int[]> steps = new ArrayList<>();
+        for (int dz = -1; dz <= 1; ++dz) {
+            for (int dy = -1; dy <= 1; ++dy) {
+                for (int dx = -1; dx <= 1; ++dx) {
+                    int axes = Math.abs(dx) + Math.abs(dy) + Math.abs(dz);
+                    if (axes == 0)
+                        continue; // self is not a neighbor
+                    if (neighborClass == NeighborClass.SIX_CONNECTED && axes > 1)
+                        continue;
+                    steps.add(new int[] {dx, dy, dz});
                 }
             }
         }
-        //
-        return result;
+        int count = steps.size();
+        neighborDx = new int[count];
+        neighborDy = new int[count];
+        neighborDz = new int[count];
+        neighborOffsets = new int[count];
+        neighborDistances = new double[count];
+        for (int k = 0; k < count; ++k) {
+            int[] step = steps.get(k);
+            neighborDx[k] = step[0];
+            neighborDy[k] = step[1];
+            neighborDz[k] = step[2];
+            neighborOffsets[k] = step[0] + sizeX * (step[1] + sizeY * step[2]);
+            neighborDistances[k] = distance(step[0], step[1], step[2]);
+        }
     }
-    
-    private Node getNode(VoxelIndex index) {
-        if (! allNodes.containsKey(index))
-            allNodes.put(index, new Node(index));
-        return allNodes.get(index);
+
+    private double distance(int dx, int dy, int dz) {
+        double x = dx * voxelSizeX;
+        double y = dy * voxelSizeY;
+        double z = dz * voxelSizeZ;
+        if (distanceMetric == DistanceMetric.MANHATTAN) {
+            return Math.abs(x) + Math.abs(y) + Math.abs(z);
+        }
+        return Math.sqrt(x*x + y*y + z*z);
+    }
+
+    private double stepCost(int voxel) {
+        int offset = voxel * channelCount; // channel 0
+        int intensity = (shorts != null) ? (shorts.get(offset) & 0xffff) : (bytes.get(offset) & 0xff);
+        return pathCostForIntensity[intensity];
     }
-    
+
+    // flat index of a voxel within the subvolume, or -1 if it's outside
+    private int localVoxel(ZoomedVoxelIndex v) {
+        int x = v.getX() - origin.getX();
+        int y = v.getY() - origin.getY();
+        int z = v.getZ() - origin.getZ();
+        if (x < 0 || x >= sizeX || y < 0 || y >= sizeY || z < 0 || z >= sizeZ)
+            return -1;
+        return x + sizeX * (y + sizeY * z);
+    }
+
+    private ZoomedVoxelIndex globalVoxel(int voxel, ZoomLevel zoomLevel) {
+        return new ZoomedVoxelIndex(zoomLevel,
+                voxel % sizeX + origin.getX(),
+                (voxel / sizeX) % sizeY + origin.getY(),
+                voxel / (sizeX * sizeY) + origin.getZ());
+    }
+
+    // Follows the forward search back from the voxel to the start, then the
+    // backward search, if any, on to the goal
     private List<ZoomedVoxelIndex> reconstructPath(
-            Node start,
-            Node goal,
+            Frontier forward,
+            Frontier backward,
+            int voxel,
             ZoomLevel zoomLevel) 
     {
-        List<ZoomedVoxelIndex> result = new Vector<ZoomedVoxelIndex>();
-        Node p = goal;
-        while (! p.equals(start)) {
-            result.add(new ZoomedVoxelIndex(zoomLevel, 
-                    p.index.getX() + volume.getOrigin().getX(), 
-                    p.index.getY() + volume.getOrigin().getY(), 
-                    p.index.getZ() + volume.getOrigin().getZ()));
-            p = p.cameFrom;
+        List<ZoomedVoxelIndex> result = new ArrayList<>();
+        for (int p = voxel; p >= 0; p = forward == null ? -1 : forward.parentOf(p)) {
+            result.add(globalVoxel(p, zoomLevel));
         }
-        result.add(new ZoomedVoxelIndex(zoomLevel, 
-                start.index.getX() + volume.getOrigin().getX(), 
-                start.index.getY() + volume.getOrigin().getY(), 
-                start.index.getZ() + volume.getOrigin().getZ()));
-        return Lists.reverse(result);
+        Collections.reverse(result);
+        if (backward != null) {
+            for (int p = backward.parentOf(voxel); p >= 0; p = backward.parentOf(p)) {
+                result.add(globalVoxel(p, zoomLevel));
+            }
+        }
+        return result;
     }
 
     // Compute mean, standard deviation, and minimum path score
@@ -259,9 +346,9 @@ public class AStar {
         double sumIntensity = 0;
         long intensityCount = 0;
         int maxIntensity = Integer.MIN_VALUE;
-        ByteBuffer intensityBytes = volume.getByteBuffer();
+        ByteBuffer intensityBytes = bytes;
         // Mean and min path
-        if (volume.getBytesPerIntensity() == 2) {
+        if (bytesPerIntensity == 2) {
             // two bytes per value ushort
             ShortBuffer shorts = intensityBytes.asShortBuffer();
             shorts.rewind();
@@ -282,11 +369,11 @@ public class AStar {
             }
         }
         meanIntensity = 0.0;
-        if (intensityCount > 0)
+        if (intensityCount > 0) 
             meanIntensity = sumIntensity / (double)intensityCount;
         // Standard deviation
         double delta = 0;
-        if (volume.getBytesPerIntensity() == 2) {
+        if (bytesPerIntensity == 2) {
             // two bytes per value ushort
             ShortBuffer shorts = intensityBytes.asShortBuffer();
             shorts.rewind();
@@ -307,12 +394,16 @@ public class AStar {
         stdDevIntensity = 1.0;
         if (intensityCount > 0) 
             stdDevIntensity = Math.sqrt(delta/(double)intensityCount);
-        // minStepCost must be computed AFTER mean/stddev
+        // the cost table, and minStepCost, must be computed AFTER mean/stddev
+        pathCostForIntensity = new double[Math.max(maxIntensity, 0) + 1];
+        for (int intensity = 0; intensity < pathCostForIntensity.length; ++intensity) {
+            pathCostForIntensity[intensity] = getPathStepCostForIntensity(intensity);
+        }
         minStepCost = getPathStepCostForIntensity(maxIntensity) 
                 + stepCostLowerBound
                 ;
     }
-    
+
     // fractional error in math formula less than 1.2 * 10 ^ -7.
     // although subject to catastrophic cancellation when z in very close to 0
     // from Chebyshev fitting formula for erf(z) from Numerical Recipes, 6.2
@@ -339,63 +430,134 @@ public class AStar {
     // Let path step cost be the probability that this intensity could 
     // occur by chance, given the intensity statistics.
     private double getPathStepCostForIntensity(int intensity) {
-        double result;
-        if (pathCostForIntensity.containsKey(intensity))
-            result = pathCostForIntensity.get(intensity);
-        else {
-            double zScore = (intensity - meanIntensity) / stdDevIntensity;
-            // Reduce Z-score by a factor, so we can numerically distinguish more very bright values
-            final double zFudge = 0.80;
-            result = oneMinusErf(zFudge*zScore);
-            // Store computed value for future use
-            pathCostForIntensity.put(intensity, result);
-        }
-        return result;
+        double zScore = (intensity - meanIntensity) / stdDevIntensity;
+        // Reduce Z-score by a factor, so we can numerically distinguish more very bright values
+        final double zFudge = 0.80;
+        return oneMinusErf(zFudge*zScore);
     }
 
     // Must not overestimate actual cost of path to goal
     double heuristicCostEstimate(VoxelIndex v1, VoxelIndex v2) {
-        double dx = (v1.getX() - v2.getX()) * voxelSizeX;
-        double dy = (v1.getY() - v2.getY()) * voxelSizeY;
-        double dz = (v1.getZ() - v2.getZ()) * voxelSizeZ;
-        double distance = 0;
-        if (distanceMetric == DistanceMetric.MANHATTAN) {
-            // Use Manhattan distance, and prohibit diagonal moves (for performance)
-            distance += Math.abs(dx);
-            distance += Math.abs(dy);
-            distance += Math.abs(dz);
-        } else if (distanceMetric == DistanceMetric.EUCLIDEAN) {
-            // TODO - cache the 6? possible distances
-            distance = Math.sqrt(dx*dx + dy*dy + dz*dz);
-        }
-        return distance * minStepCost;
+        return heuristicCostEstimate(v1.getX() - v2.getX(), v1.getY() - v2.getY(), v1.getZ() - v2.getZ());
+    }
+
+    private double heuristicCostEstimate(int dx, int dy, int dz) {
+        return distance(dx, dy, dz) * minStepCost;
     }
-    
-    static class Node {
-        Node(VoxelIndex index) {
-            this.index = index;
+
+    /**
+     * One direction's search: the best cost to each voxel so far, the step
+     * each came by, and a binary heap of open voxels by estimated total cost.
+     * Improving a voxel pushes it again rather than moving it within the
+     * heap; the older entry is skipped when it comes up, as the voxel will
+     * be closed by then.
+     */
+    private class Frontier {
+        private static final int CLOSED = 0x80;
+        private static final int STEP_MASK = 0x7f;
+        private static final int ORIGIN = STEP_MASK;
+
+        final boolean forward;
+        final int targetX;
+        final int targetY;
+        final int targetZ;
+        final double[] gScore;
+        // 1 + index of the neighbor step that reached each voxel, ORIGIN for
+        // where the search began, and 0 for voxels not reached yet (whose
+        // gScore is meaningless, so neither array needs filling in); the high
+        // bit marks voxels taken from the open set
+        final byte[] cameFrom;
+        private int[] heapVoxels = new int[1024];
+        private double[] heapKeys = new double[1024];
+        private int heapSize = 0;
+
+        Frontier(boolean forward, int from, int to) {
+            this.forward = forward;
+            targetX = to % sizeX;
+            targetY = (to / sizeX) % sizeY;
+            targetZ = to / (sizeX * sizeY);
+            int voxelCount = sizeX * sizeY * sizeZ;
+            gScore = new double[voxelCount];
+            cameFrom = new byte[voxelCount];
+            gScore[from] = 0.0;
+            cameFrom[from] = ORIGIN;
+            push(from, heuristicCostEstimate(
+                    targetX - from % sizeX, targetY - (from / sizeX) % sizeY, targetZ - from / (sizeX * sizeY)));
         }
 
-        @Override
-        public int hashCode() {
-            return index.hashCode();
+        boolean isEmpty() {
+            return heapSize == 0;
         }
-        
-        @Override
-        public boolean equals(Object obj) {
-            if (this == obj)
-                return true;
-            if (obj == null)
-                return false;
-            if (getClass() != obj.getClass())
-                return false;
-            Node other = (Node) obj;
-            return index.equals(other.index);
+
+        int size() {
+            return heapSize;
+        }
+
+        // lowest estimated total cost of any open voxel
+        double minKey() {
+            dropClosed();
+            return heapSize == 0 ? Double.POSITIVE_INFINITY : heapKeys[0];
+        }
+
+        // closes and returns the open voxel with the lowest estimated total
+        // cost, or -1 if there were only stale entries
+        int pop() {
+            dropClosed();
+            if (heapSize == 0)
+                return -1;
+            int voxel = removeTop();
+            cameFrom[voxel] |= CLOSED;
+            return voxel;
+        }
+
+        int parentOf(int voxel) {
+            int step = cameFrom[voxel] & STEP_MASK;
+            return (step == 0 || step == ORIGIN) ? -1 : voxel - neighborOffsets[step - 1];
         }
 
-        double fScore = Double.NaN;
-        double gScore = Double.NaN;
-        Node cameFrom = null;
-        VoxelIndex index;
+        void push(int voxel, double key) {
+            if (heapSize == heapVoxels.length) {
+                heapVoxels = Arrays.copyOf(heapVoxels, 2 * heapSize);
+                heapKeys = Arrays.copyOf(heapKeys, 2 * heapSize);
+            }
+            int i = heapSize++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (heapKeys[parent] <= key)
+                    break;
+                heapVoxels[i] = heapVoxels[parent];
+                heapKeys[i] = heapKeys[parent];
+                i = parent;
+            }
+            heapVoxels[i] = voxel;
+            heapKeys[i] = key;
+        }
+
+        private void dropClosed() {
+            while (heapSize > 0 && (cameFrom[heapVoxels[0]] & CLOSED) != 0)
+                removeTop();
+        }
+
+        private int removeTop() {
+            int top = heapVoxels[0];
+            int lastVoxel = heapVoxels[--heapSize];
+            double lastKey = heapKeys[heapSize];
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= heapSize)
+                    break;
+                if (child + 1 < heapSize && heapKeys[child + 1] < heapKeys[child])
+                    child++;
+                if (lastKey <= heapKeys[child])
+                    break;
+                heapVoxels[i] = heapVoxels[child];
+                heapKeys[i] = heapKeys[child];
+                i = child;
+            }
+            heapVoxels[i] = lastVoxel;
+            heapKeys[i] = lastKey;
+            return top;
+        }
     }
 }
@@ -0,0 +1,96 @@
+package org.janelia.workstation.gui.large_volume_viewer.tracing;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.util.List;
+import java.util.Random;
+
+import org.janelia.workstation.controller.tileimagery.raster.VoxelIndex;
+import org.janelia.workstation.octree.ZoomLevel;
+import org.janelia.workstation.octree.ZoomedVoxelIndex;
+
+/**
+ * Times AStar tracing end to end along a synthetic tube phantom: a bright
+ * helical tube, a few voxels across, winding through a noisy 16-bit volume, as
+ * between two anchors on a neurite, with a short break in the middle that the
+ * search has to spread out to cross.  Reports voxels examined per second, one-
+ * and two-directional.
+ *
+ * Usage: MeasureAStarTime [sizeX sizeY sizeZ [passes]]
+ */
+public class MeasureAStarTime {
+
+    public static void main(String[] args) {
+        int sizeX = args.length > 2 ? Integer.parseInt(args[0]) : 128;
+        int sizeY = args.length > 2 ? Integer.parseInt(args[1]) : 128;
+        int sizeZ = args.length > 2 ? Integer.parseInt(args[2]) : 32;
+        int passes = args.length > 3 ? Integer.parseInt(args[3]) : 5;
+
+        ZoomLevel zoom = new ZoomLevel(0);
+        ZoomedVoxelIndex origin = new ZoomedVoxelIndex(zoom, 0, 0, 0);
+        int[][] ends = new int[2][];
+        ByteBuffer raster = tubePhantom(new Random(1), sizeX, sizeY, sizeZ, ends);
+        ZoomedVoxelIndex start = new ZoomedVoxelIndex(zoom, ends[0][0], ends[0][1], ends[0][2]);
+        ZoomedVoxelIndex goal = new ZoomedVoxelIndex(zoom, ends[1][0], ends[1][1], ends[1][2]);
+        System.out.println(String.format("%dx%dx%d phantom, tracing %s to %s", sizeX, sizeY, sizeZ, start, goal));
+
+        for (int pass = 0; pass < passes; pass++) {
+            System.out.println("Pass " + pass + ":");
+            for (boolean bidirectional : new boolean[] {false, true}) {
+                long startNanos = System.nanoTime();
+                AStar astar = new AStar(raster, 2, 1, new VoxelIndex(sizeX, sizeY, sizeZ), origin);
+                astar.setVoxelSizes(0.3, 0.3, 1.0);
+                astar.setBidirectional(bidirectional);
+                long traceNanos = System.nanoTime();
+                List<ZoomedVoxelIndex> path = astar.trace(start, goal, 1000.0);
+                long endNanos = System.nanoTime();
+                double traceSeconds = (endNanos - traceNanos) / 1e9;
+                System.out.println(String.format(
+                        "  %s: setup %.1f ms, trace %.1f ms, %d voxels examined, %.0f voxels/sec, path %d voxels, cost %.4g",
+                        bidirectional ? "bidirectional " : "unidirectional",
+                        (traceNanos - startNanos) / 1e6, traceSeconds * 1e3,
+                        astar.getCheckedVoxelCount(), astar.getCheckedVoxelCount() / traceSeconds,
+                        path == null ? 0 : path.size(), path == null ? Double.NaN : astar.pathCost(path)));
+            }
+        }
+    }
+
+    // Fills the volume with background noise, then paints a helix of bright
+    // voxels from near one end of x to the other, leaving out a stretch in the
+    // middle, and returns its end points
+    static ByteBuffer tubePhantom(Random random, int sizeX, int sizeY, int sizeZ, int[][] ends) {
+        ByteBuffer raster = ByteBuffer.allocate(2 * sizeX * sizeY * sizeZ).order(ByteOrder.nativeOrder());
+        ShortBuffer shorts = raster.asShortBuffer();
+        for (int i = 0; i < shorts.capacity(); i++) {
+            shorts.put(i, (short) Math.max(0, 100 + random.nextGaussian() * 20));
+        }
+        double radius = 1.5;
+        int steps = 20 * (sizeX + sizeY + sizeZ);
+        for (int s = 0; s <= steps; s++) {
+            double t = s / (double) steps;
+            double cx = sizeX * (0.1 + 0.8 * t);
+            double cy = sizeY * (0.5 + 0.3 * Math.sin(4 * Math.PI * t));
+            double cz = sizeZ * (0.5 + 0.3 * Math.cos(3 * Math.PI * t));
+            boolean gap = t > 0.45 && t < 0.55;
+            for (int z = (int) (cz - radius); z <= cz + radius; z++) {
+                for (int y = (int) (cy - radius); y <= cy + radius; y++) {
+                    for (int x = (int) (cx - radius); x <= cx + radius; x++) {
+                        double d2 = (x - cx) * (x - cx) + (y - cy) * (y - cy) + (z - cz) * (z - cz);
+                        if (d2 <= radius * radius && ! gap) {
+                            shorts.put(x + sizeX * (y + sizeY * z),
+                                    (short) (1000 + random.nextGaussian() * 100));
+                        }
+                    }
+                }
+            }
+            if (s == 0) {
+                ends[0] = new int[] {(int) Math.round(cx), (int) Math.round(cy), (int) Math.round(cz)};
+            } else if (s == steps) {
+                ends[1] = new int[] {(int) Math.round(cx), (int) Math.round(cy), (int) Math.round(cz)};
+            }
+        }
+        return raster;
+    }
+
+}
@@ -0,0 +1,192 @@
+package org.janelia.workstation.gui.large_volume_viewer.tracing;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.janelia.model.domain.tiledMicroscope.TmGeoAnnotation;
+import org.janelia.model.domain.tiledMicroscope.TmNeuronMetadata;
+import org.janelia.workstation.controller.tileimagery.raster.VoxelIndex;
+import org.janelia.workstation.geom.Vec3;
+import org.janelia.workstation.octree.ZoomLevel;
+import org.janelia.workstation.octree.ZoomedVoxelIndex;
+
+/**
+ * Times re-tracing every segment of a large synthetic neuron with
+ * PathTraceService, against tracing the same segments one at a time with a
+ * load each, as PathTraceToParentWorker does.  The neuron follows a bright
+ * wavy tube through a noisy 16-bit volume, with an anchor every few voxels
+ * and a short side branch now and then; the volume is computed as it is
+ * loaded, and each load waits a while to stand in for fetching tiles.
+ *
+ * Usage: MeasurePathTraceServiceTime [anchors [threads [loadMillis [passes]]]]
+ */
+public class MeasurePathTraceServiceTime {
+
+    private static final ZoomLevel ZOOM = new ZoomLevel(0);
+    // voxels between anchors along the tube
+    private static final int ANCHOR_SPACING = 8;
+    // a side branch off every this many anchors
+    private static final int BRANCH_INTERVAL = 100;
+    // one-at-a-time traces timed, to estimate the whole neuron
+    private static final int SEQUENTIAL_SAMPLE = 200;
+
+    public static void main(String[] args) throws InterruptedException {
+        int anchorCount = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+        int threadCount = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        int loadMillis = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+        int passes = args.length > 3 ? Integer.parseInt(args[3]) : 3;
+
+        TmNeuronMetadata neuron = tubeNeuron(anchorCount);
+        TubeSource source = new TubeSource(loadMillis);
+        System.out.println(String.format("%d anchors, %d threads, %d ms per load",
+                neuron.getGeoAnnotationMap().size(), threadCount, loadMillis));
+
+        for (int pass = 0; pass < passes; pass++) {
+            System.out.println("Pass " + pass + ":");
+            PathTraceService service = new PathTraceService(source, threadCount);
+            int loadsBefore = source.loadCount.get();
+            PathTraceService.Batch batch = service.traceNeuron(neuron);
+            batch.awaitCompletion(1, TimeUnit.HOURS);
+            service.shutdown();
+            System.out.println(String.format("  service:    %s; %d loads", batch, source.loadCount.get() - loadsBefore));
+
+            System.out.println("  one by one: " + traceOneByOne(neuron, source, batch.getRequestCount()));
+        }
+    }
+
+    // Traces the first segments of the neuron one at a time, each with its
+    // own padded load, and scales the time up to all of them
+    private static String traceOneByOne(TmNeuronMetadata neuron, TubeSource source, int requestCount) {
+        int traced = 0;
+        int failed = 0;
+        long startNanos = System.nanoTime();
+        for (TmGeoAnnotation annotation : neuron.getGeoAnnotationMap().values()) {
+            if (traced + failed >= SEQUENTIAL_SAMPLE) {
+                break;
+            }
+            TmGeoAnnotation parent = neuron.getParentOf(annotation);
+            if (parent == null) {
+                continue;
+            }
+            ZoomedVoxelIndex start = source.voxelFor(new Vec3(annotation.getX(), annotation.getY(), annotation.getZ()));
+            ZoomedVoxelIndex goal = source.voxelFor(new Vec3(parent.getX(), parent.getY(), parent.getZ()));
+            AStar astar = source.load(
+                    new ZoomedVoxelIndex(ZOOM, Math.min(start.getX(), goal.getX()) - 10,
+                            Math.min(start.getY(), goal.getY()) - 10, Math.min(start.getZ(), goal.getZ()) - 10),
+                    new ZoomedVoxelIndex(ZOOM, Math.max(start.getX(), goal.getX()) + 10,
+                            Math.max(start.getY(), goal.getY()) + 10, Math.max(start.getZ(), goal.getZ()) + 10))
+                    .newAStar();
+            astar.setVoxelSizes(source.getVoxelMicrometers());
+            List<ZoomedVoxelIndex> path = astar.trace(start, goal, 10.0);
+            if (path == null) {
+                failed++;
+            } else {
+                traced++;
+            }
+        }
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+        int count = traced + failed;
+        return String.format("%d paths traced, %d failed, in %.1f s (%.1f traced/s); about %.0f s for all %d",
+                traced, failed, seconds, traced / seconds, seconds * requestCount / count, requestCount);
+    }
+
+    // center of the tube at x
+    private static double tubeY(double x) {
+        return 64 + 40 * Math.sin(2 * Math.PI * x / 400);
+    }
+
+    private static double tubeZ(double x) {
+        return 32 + 20 * Math.cos(2 * Math.PI * x / 300);
+    }
+
+    private static TmNeuronMetadata tubeNeuron(int anchorCount) {
+        TmNeuronMetadata neuron = new TmNeuronMetadata();
+        neuron.setId(1L);
+        TmGeoAnnotation parent = null;
+        // ids apart from the neuron's, which the root names as its parent
+        long firstId = 10;
+        long id = firstId;
+        for (int i = 0; id < firstId + anchorCount; i++) {
+            double x = 10 + ANCHOR_SPACING * i;
+            parent = add(neuron, id++, parent, x, Math.round(tubeY(x)), Math.round(tubeZ(x)));
+            if (i % BRANCH_INTERVAL == BRANCH_INTERVAL / 2 && id < firstId + anchorCount) {
+                // off the tube, through background
+                add(neuron, id++, parent, x, parent.getY() + 6, parent.getZ());
+            }
+        }
+        return neuron;
+    }
+
+    private static TmGeoAnnotation add(TmNeuronMetadata neuron, long id, TmGeoAnnotation parent,
+            double x, double y, double z) {
+        TmGeoAnnotation annotation = new TmGeoAnnotation(id, parent == null ? neuron.getId() : parent.getId(),
+                neuron.getId(), x, y, z, null, null, null);
+        if (parent == null) {
+            neuron.addRootAnnotation(annotation);
+        } else {
+            parent.addChild(annotation);
+        }
+        neuron.getGeoAnnotationMap().put(id, annotation);
+        return annotation;
+    }
+
+    // Computes the tube and background for each load, after a wait
+    private static class TubeSource implements PathTraceService.VolumeSource {
+        private final int loadMillis;
+        private final AtomicInteger loadCount = new AtomicInteger();
+
+        TubeSource(int loadMillis) {
+            this.loadMillis = loadMillis;
+        }
+
+        @Override
+        public ZoomedVoxelIndex voxelFor(Vec3 xyz) {
+            return new ZoomedVoxelIndex(ZOOM, (int) xyz.getX(), (int) xyz.getY(), (int) xyz.getZ());
+        }
+
+        @Override
+        public double[] getVoxelMicrometers() {
+            return new double[] {0.3, 0.3, 1.0};
+        }
+
+        @Override
+        public PathTraceService.Block load(ZoomedVoxelIndex corner1, ZoomedVoxelIndex corner2) {
+            loadCount.incrementAndGet();
+            try {
+                Thread.sleep(loadMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            }
+            VoxelIndex extent = new VoxelIndex(corner2.getX() - corner1.getX() + 1,
+                    corner2.getY() - corner1.getY() + 1, corner2.getZ() - corner1.getZ() + 1);
+            ByteBuffer raster = ByteBuffer.allocate(2 * extent.getX() * extent.getY() * extent.getZ())
+                    .order(ByteOrder.nativeOrder());
+            int i = 0;
+            for (int z = corner1.getZ(); z <= corner2.getZ(); z++) {
+                for (int y = corner1.getY(); y <= corner2.getY(); y++) {
+                    for (int x = corner1.getX(); x <= corner2.getX(); x++, i++) {
+                        double dy = y - tubeY(x);
+                        double dz = z - tubeZ(x);
+                        int intensity = dy * dy + dz * dz <= 2.25 ? 1000 : 100;
+                        raster.putShort(2 * i, (short) (intensity + noise(x, y, z)));
+                    }
+                }
+            }
+            return new PathTraceService.Block(raster, 2, 1, extent, corner1);
+        }
+
+        // repeatable noise, -32 to 31, so every load of a voxel agrees
+        private static int noise(int x, int y, int z) {
+            long h = x * 73856093L ^ y * 19349663L ^ z * 83492791L;
+            h ^= h >>> 13;
+            h *= 0x5bd1e995L;
+            h ^= h >>> 15;
+            return (int) (h & 63) - 32;
+        }
+    }
+
+}
@@ -0,0 +1,453 @@
+package org.janelia.workstation.gui.large_volume_viewer.tracing;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.janelia.model.domain.tiledMicroscope.TmGeoAnnotation;
+import org.janelia.model.domain.tiledMicroscope.TmNeuronMetadata;
+import org.janelia.workstation.controller.tileimagery.SharedVolumeImage;
+import org.janelia.workstation.controller.tileimagery.Subvolume;
+import org.janelia.workstation.controller.tileimagery.TextureCache;
+import org.janelia.workstation.controller.tileimagery.TileFormat;
+import org.janelia.workstation.controller.tileimagery.VoxelPosition;
+import org.janelia.workstation.controller.tileimagery.raster.VoxelIndex;
+import org.janelia.workstation.geom.Vec3;
+import org.janelia.workstation.octree.ZoomLevel;
+import org.janelia.workstation.octree.ZoomedVoxelIndex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Traces many anchor-to-anchor paths in the background, such as every
+ * segment of a neuron after the image data has changed; the batch version of
+ * PathTraceToParentWorker, which traces one.
+ *
+ * Requests are grouped, in the order given, into blocks of neighboring
+ * segments whose padded bounding boxes overlap; each block's raster is
+ * fetched once, and every trace in it searches its own padded box, copied
+ * out of the block, so paths come out the same as the worker's.  Blocks are
+ * fetched and traced concurrently on a fixed pool of worker threads.
+ * Segments are passed to the PathTraceListener as they are traced, on those
+ * threads; each batch keeps counts for reporting throughput.
+ */
+public class PathTraceService {
+
+    // same padding as PathTraceToParentWorker
+    private static final int PAD_VOXELS = 10;
+    // limits on one block, to bound the memory held by each thread
+    private static final long MAX_BLOCK_VOXELS = 16L * 1024 * 1024;
+    private static final int MAX_BLOCK_TRACES = 64;
+
+    private static final Logger log = LoggerFactory.getLogger(PathTraceService.class);
+
+    /**
+     * Where the image comes from; the production one fetches Subvolumes.
+     */
+    interface VolumeSource {
+        ZoomedVoxelIndex voxelFor(Vec3 xyz);
+
+        double[] getVoxelMicrometers();
+
+        /**
+         * Loads the raster between the corners, inclusive; may block for a
+         * while on tile fetches.
+         */
+        Block load(ZoomedVoxelIndex corner1, ZoomedVoxelIndex corner2);
+    }
+
+    /**
+     * A raster laid out as in Subvolume: channel fastest, then x, y, z.
+     */
+    static class Block {
+        final ByteBuffer raster;
+        final int bytesPerIntensity;
+        final int channelCount;
+        final VoxelIndex extent;
+        final ZoomedVoxelIndex origin;
+
+        Block(ByteBuffer raster, int bytesPerIntensity, int channelCount, VoxelIndex extent, ZoomedVoxelIndex origin) {
+            this.raster = raster;
+            this.bytesPerIntensity = bytesPerIntensity;
+            this.channelCount = channelCount;
+            this.extent = extent;
+            this.origin = origin;
+        }
+
+        Block(Subvolume subvolume) {
+            this(subvolume.getByteBuffer(), subvolume.getBytesPerIntensity(), subvolume.getChannelCount(),
+                    subvolume.getExtent(), subvolume.getOrigin());
+        }
+
+        /**
+         * Copies out the part of this block between two corners, inclusive,
+         * which must lie inside it.  Safe to call from several threads.
+         */
+        Block copy(ZoomedVoxelIndex corner1, ZoomedVoxelIndex corner2) {
+            int x0 = corner1.getX() - origin.getX();
+            int y0 = corner1.getY() - origin.getY();
+            int z0 = corner1.getZ() - origin.getZ();
+            VoxelIndex size = new VoxelIndex(
+                    corner2.getX() - corner1.getX() + 1,
+                    corner2.getY() - corner1.getY() + 1,
+                    corner2.getZ() - corner1.getZ() + 1);
+            int bytesPerVoxel = bytesPerIntensity * channelCount;
+            int rowBytes = size.getX() * bytesPerVoxel;
+            ByteBuffer copy = ByteBuffer.allocate(rowBytes * size.getY() * size.getZ()).order(raster.order());
+            // a duplicate, so threads don't share the position
+            ByteBuffer source = raster.duplicate();
+            for (int z = 0; z < size.getZ(); z++) {
+                for (int y = 0; y < size.getY(); y++) {
+                    int start = bytesPerVoxel * (x0 + extent.getX() * (y0 + y + extent.getY() * (z0 + z)));
+                    source.limit(start + rowBytes).position(start);
+                    copy.put(source);
+                }
+            }
+            copy.clear();
+            return new Block(copy, bytesPerIntensity, channelCount, size, corner1);
+        }
+
+        int getIntensity(VoxelPosition p) {
+            int offset = channelCount * ((p.getX() - origin.getX())
+                    + extent.getX() * ((p.getY() - origin.getY())
+                    + extent.getY() * (p.getZ() - origin.getZ())));
+            if (bytesPerIntensity == 2) {
+                return raster.getShort(2 * offset) & 0xffff;
+            } else {
+                return raster.get(offset) & 0xff;
+            }
+        }
+
+        AStar newAStar() {
+            return new AStar(raster, bytesPerIntensity, channelCount, extent, origin);
+        }
+    }
+
+    /**
+     * A set of traces handed in together; counts are updated as they go.
+     */
+    public static class Batch {
+        private final int requestCount;
+        private final AtomicInteger remainingBlocks;
+        private final CountDownLatch done = new CountDownLatch(1);
+        private final AtomicInteger tracedCount = new AtomicInteger();
+        private final AtomicInteger failedCount = new AtomicInteger();
+        private final AtomicLong examinedVoxelCount = new AtomicLong();
+        private final AtomicLong loadNanos = new AtomicLong();
+        private final AtomicLong traceNanos = new AtomicLong();
+        private final long startNanos = System.nanoTime();
+        private volatile long endNanos;
+        private volatile boolean cancelled;
+
+        Batch(int requestCount, int blockCount) {
+            this.requestCount = requestCount;
+            this.remainingBlocks = new AtomicInteger(blockCount);
+            if (blockCount == 0) {
+                endNanos = startNanos;
+                done.countDown();
+            }
+        }
+
+        /**
+         * Skips the traces that haven't started yet.
+         */
+        public void cancel() {
+            cancelled = true;
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        public boolean isDone() {
+            return done.getCount() == 0;
+        }
+
+        public boolean awaitCompletion(long timeout, TimeUnit unit) throws InterruptedException {
+            return done.await(timeout, unit);
+        }
+
+        public int getRequestCount() {
+            return requestCount;
+        }
+
+        public int getTracedCount() {
+            return tracedCount.get();
+        }
+
+        /**
+         * Traces that timed out, or whose data couldn't be loaded.
+         */
+        public int getFailedCount() {
+            return failedCount.get();
+        }
+
+        public long getExaminedVoxelCount() {
+            return examinedVoxelCount.get();
+        }
+
+        public double getElapsedSeconds() {
+            return ((isDone() ? endNanos : System.nanoTime()) - startNanos) / 1e9;
+        }
+
+        /**
+         * Paths traced successfully per second; failures are not counted.
+         */
+        public double getTracedPerSecond() {
+            return getTracedCount() / getElapsedSeconds();
+        }
+
+        public double getFailedPerSecond() {
+            return getFailedCount() / getElapsedSeconds();
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d of %d paths traced, %d failed, in %.1f s (%.1f traced/s, %.1f failed/s);"
+                            + " %d voxels examined; %.1f s loading and %.1f s tracing, over all threads",
+                    getTracedCount(), requestCount, getFailedCount(), getElapsedSeconds(),
+                    getTracedPerSecond(), getFailedPerSecond(),
+                    getExaminedVoxelCount(), loadNanos.get() / 1e9, traceNanos.get() / 1e9);
+        }
+
+        private void blockDone() {
+            if (remainingBlocks.decrementAndGet() == 0) {
+                endNanos = System.nanoTime();
+                done.countDown();
+                log.info("Batch path tracing done: {}", this);
+            }
+        }
+    }
+
+    // one request, with its padded box in voxels
+    private static class Trace {
+        final PathTraceRequest request;
+        final ZoomedVoxelIndex start;
+        final ZoomedVoxelIndex goal;
+        final ZoomedVoxelIndex corner1;
+        final ZoomedVoxelIndex corner2;
+
+        Trace(PathTraceRequest request, ZoomedVoxelIndex start, ZoomedVoxelIndex goal) {
+            this.request = request;
+            this.start = start;
+            this.goal = goal;
+            this.corner1 = new ZoomedVoxelIndex(start.getZoomLevel(),
+                    Math.min(start.getX(), goal.getX()) - PAD_VOXELS,
+                    Math.min(start.getY(), goal.getY()) - PAD_VOXELS,
+                    Math.min(start.getZ(), goal.getZ()) - PAD_VOXELS);
+            this.corner2 = new ZoomedVoxelIndex(start.getZoomLevel(),
+                    Math.max(start.getX(), goal.getX()) + PAD_VOXELS,
+                    Math.max(start.getY(), goal.getY()) + PAD_VOXELS,
+                    Math.max(start.getZ(), goal.getZ()) + PAD_VOXELS);
+        }
+    }
+
+    // traces sharing one load, with the box around them all
+    private static class BlockTraces {
+        final List<Trace> traces = new ArrayList<>();
+        int[] min;
+        int[] max;
+
+        boolean add(Trace trace) {
+            int[] lo = {trace.corner1.getX(), trace.corner1.getY(), trace.corner1.getZ()};
+            int[] hi = {trace.corner2.getX(), trace.corner2.getY(), trace.corner2.getZ()};
+            if (traces.isEmpty()) {
+                min = lo;
+                max = hi;
+            } else {
+                if (traces.size() >= MAX_BLOCK_TRACES) {
+                    return false;
+                }
+                long voxels = 1;
+                for (int i = 0; i < 3; i++) {
+                    if (hi[i] < min[i] || lo[i] > max[i]) {
+                        return false;
+                    }
+                    voxels *= Math.max(hi[i], max[i]) - Math.min(lo[i], min[i]) + 1;
+                }
+                if (voxels > MAX_BLOCK_VOXELS) {
+                    return false;
+                }
+                for (int i = 0; i < 3; i++) {
+                    min[i] = Math.min(lo[i], min[i]);
+                    max[i] = Math.max(hi[i], max[i]);
+                }
+            }
+            traces.add(trace);
+            return true;
+        }
+    }
+
+    private final VolumeSource volume;
+    private final ExecutorService executor;
+    private PathTraceListener pathTraceListener;
+    // timeout per trace, in seconds
+    private double timeout = 10.0;
+
+    /**
+     * @param threadCount how many blocks to fetch and trace at once
+     */
+    public PathTraceService(final SharedVolumeImage imageVolume, final TextureCache textureCache, int threadCount) {
+        this(new VolumeSource() {
+            private final ZoomLevel zoomLevel = new ZoomLevel(0);
+
+            @Override
+            public ZoomedVoxelIndex voxelFor(Vec3 xyz) {
+                return PathTraceToParentWorker.zoomedVoxelIndexForVoxelVec3(xyz, getTileFormat(), zoomLevel);
+            }
+
+            @Override
+            public double[] getVoxelMicrometers() {
+                return getTileFormat().getVoxelMicrometers();
+            }
+
+            @Override
+            public Block load(ZoomedVoxelIndex corner1, ZoomedVoxelIndex corner2) {
+                return new Block(new Subvolume(corner1, corner2, imageVolume, textureCache));
+            }
+
+            private TileFormat getTileFormat() {
+                return imageVolume.getLoadAdapter().getTileFormat();
+            }
+        }, threadCount);
+    }
+
+    PathTraceService(VolumeSource volume, int threadCount) {
+        this.volume = volume;
+        this.executor = Executors.newFixedThreadPool(threadCount,
+                new ThreadFactoryBuilder().setNameFormat("PathTrace-%d").setDaemon(true).build());
+    }
+
+    public void setPathTraceListener(PathTraceListener l) {
+        pathTraceListener = l;
+    }
+
+    public void setTimeout(double timeout) {
+        this.timeout = timeout;
+    }
+
+    /**
+     * Traces the path from each annotation of the neuron to its parent,
+     * walking outward from the roots.
+     */
+    public Batch traceNeuron(TmNeuronMetadata neuron) {
+        List<PathTraceRequest> requests = new ArrayList<>();
+        Deque<TmGeoAnnotation> toVisit = new ArrayDeque<>(neuron.getRootAnnotations());
+        while (!toVisit.isEmpty()) {
+            TmGeoAnnotation annotation = toVisit.pop();
+            TmGeoAnnotation parent = neuron.getGeoAnnotationMap().get(annotation.getParentId());
+            if (parent != null) {
+                requests.add(new PathTraceRequest(
+                        new Vec3(annotation.getX(), annotation.getY(), annotation.getZ()),
+                        new Vec3(parent.getX(), parent.getY(), parent.getZ()),
+                        neuron.getId(), annotation.getId(), parent.getId()));
+            }
+            // depth first, so that consecutive segments are near each other
+            List<Long> childIds = annotation.getChildIds();
+            for (int i = childIds.size() - 1; i >= 0; i--) {
+                TmGeoAnnotation child = neuron.getGeoAnnotationMap().get(childIds.get(i));
+                if (child != null) {
+                    toVisit.push(child);
+                }
+            }
+        }
+        return trace(requests);
+    }
+
+    /**
+     * Traces each request between its two anchors; requests next to each
+     * other in the collection that are near each other share loaded data.
+     */
+    public Batch trace(Collection<PathTraceRequest> requests) {
+        List<BlockTraces> blocks = new ArrayList<>();
+        BlockTraces block = null;
+        for (PathTraceRequest request : requests) {
+            Trace trace = new Trace(request,
+                    volume.voxelFor(request.getXyz1()), volume.voxelFor(request.getXyz2()));
+            if (block == null || !block.add(trace)) {
+                block = new BlockTraces();
+                block.add(trace);
+                blocks.add(block);
+            }
+        }
+        log.info("Tracing {} paths in {} blocks", requests.size(), blocks.size());
+        final Batch batch = new Batch(requests.size(), blocks.size());
+        for (final BlockTraces blockTraces : blocks) {
+            executor.submit(() -> {
+                try {
+                    traceBlock(blockTraces, batch);
+                } catch (RuntimeException e) {
+                    log.error("Error tracing paths", e);
+                } finally {
+                    batch.blockDone();
+                }
+            });
+        }
+        return batch;
+    }
+
+    /**
+     * Stops the worker threads, abandoning the traces that haven't started.
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private void traceBlock(BlockTraces blockTraces, Batch batch) {
+        if (batch.isCancelled()) {
+            return;
+        }
+        ZoomLevel zoomLevel = blockTraces.traces.get(0).corner1.getZoomLevel();
+        long loadStart = System.nanoTime();
+        Block block;
+        try {
+            block = volume.load(
+                    new ZoomedVoxelIndex(zoomLevel, blockTraces.min[0], blockTraces.min[1], blockTraces.min[2]),
+                    new ZoomedVoxelIndex(zoomLevel, blockTraces.max[0], blockTraces.max[1], blockTraces.max[2]));
+        } catch (RuntimeException e) {
+            log.error("Could not load image data for {} paths", blockTraces.traces.size(), e);
+            batch.failedCount.addAndGet(blockTraces.traces.size());
+            return;
+        } finally {
+            batch.loadNanos.addAndGet(System.nanoTime() - loadStart);
+        }
+        double[] voxelMicrometers = volume.getVoxelMicrometers();
+        for (Trace trace : blockTraces.traces) {
+            if (batch.isCancelled()) {
+                return;
+            }
+            long traceStart = System.nanoTime();
+            Block traceBlock = block.copy(trace.corner1, trace.corner2);
+            AStar astar = traceBlock.newAStar();
+            astar.setVoxelSizes(voxelMicrometers);
+            List<ZoomedVoxelIndex> path = astar.trace(trace.start, trace.goal, timeout);
+            batch.examinedVoxelCount.addAndGet(astar.getCheckedVoxelCount());
+            batch.traceNanos.addAndGet(System.nanoTime() - traceStart);
+            if (path == null) {
+                batch.failedCount.incrementAndGet();
+                continue;
+            }
+            List<VoxelPosition> reducedPath = PathTraceToParentWorker.reducePath(path);
+            List<Integer> intensities = new ArrayList<>();
+            for (VoxelPosition p : reducedPath) {
+                intensities.add(traceBlock.getIntensity(p));
+            }
+            batch.tracedCount.incrementAndGet();
+            if (pathTraceListener != null) {
+                pathTraceListener.pathTraced(trace.request.getNeuronGuid(),
+                        new TracedPathSegment(trace.request, reducedPath, intensities));
+            }
+        }
+    }
+
+}
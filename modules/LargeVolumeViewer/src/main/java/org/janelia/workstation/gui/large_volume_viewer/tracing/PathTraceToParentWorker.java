@@ -91,13 +91,7 @@ public class PathTraceToParentWorker extends BackgroundWorker {
             setStatus("Timed out");
         } else {
             //DEBUG System.out.println("Original path length: " + path.size());
-            final List<VoxelPosition> reducedPath = simplifyPath(path);
-            if (!reducedPath.contains(zviToVoxel(path.get(0)))) {
-                reducedPath.add(0, zviToVoxel(path.get(0)));
-            }
-            if (!reducedPath.contains(zviToVoxel(path.get(path.size() - 1)))) {
-                reducedPath.add(zviToVoxel(path.get(path.size() - 1)));
-            }
+            final List<VoxelPosition> reducedPath = reducePath(path);
             List<Integer> intensities = new ArrayList<>();
             for (VoxelPosition p : reducedPath) {
                 int intensity = subvolume.getIntensityGlobal(p, 0);
@@ -124,7 +118,7 @@ public class PathTraceToParentWorker extends BackgroundWorker {
         FrameworkAccess.handleException(error);
     }
 
-    private ZoomedVoxelIndex zoomedVoxelIndexForVoxelVec3(Vec3 vec3, TileFormat tileFormat, ZoomLevel zoomLevel) {
+    static ZoomedVoxelIndex zoomedVoxelIndexForVoxelVec3(Vec3 vec3, TileFormat tileFormat, ZoomLevel zoomLevel) {
         TileFormat.VoxelXyz vox = new TileFormat.VoxelXyz(vec3);
         ZoomedVoxelIndex zv = tileFormat.zoomedVoxelIndexForVoxelXyz(
                 vox, zoomLevel, CoordinateAxis.Z);
@@ -143,7 +137,22 @@ public class PathTraceToParentWorker extends BackgroundWorker {
         }
     }
 
-    private List<VoxelPosition> simplifyPath(Collection<ZoomedVoxelIndex> path) {
+    /**
+     * Drops the voxels in the middle of straight runs, keeping both ends;
+     * shared with PathTraceService.
+     */
+    static List<VoxelPosition> reducePath(List<ZoomedVoxelIndex> path) {
+        final List<VoxelPosition> reducedPath = simplifyPath(path);
+        if (!reducedPath.contains(zviToVoxel(path.get(0)))) {
+            reducedPath.add(0, zviToVoxel(path.get(0)));
+        }
+        if (!reducedPath.contains(zviToVoxel(path.get(path.size() - 1)))) {
+            reducedPath.add(zviToVoxel(path.get(path.size() - 1)));
+        }
+        return reducedPath;
+    }
+
+    private static List<VoxelPosition> simplifyPath(Collection<ZoomedVoxelIndex> path) {
         List<VoxelPosition> rtnVal = new ArrayList<>();
 
         // Doing checks: along same lines?
@@ -165,14 +174,14 @@ public class PathTraceToParentWorker extends BackgroundWorker {
         return rtnVal;
     }
 
-    private VoxelPosition zviToVoxel(ZoomedVoxelIndex zvi) {
+    private static VoxelPosition zviToVoxel(ZoomedVoxelIndex zvi) {
         if (zvi.getZoomLevel().getZoomOutFactor() != 1) {
             throw new IllegalArgumentException("Cannot deal with non-closest-zoom.");
         }
         return new VoxelPosition(zvi.getX(), zvi.getY(), zvi.getZ());
     }
 
-    private boolean sameLine(Vec3 prevNormal, Vec3 normal) {
+    private static boolean sameLine(Vec3 prevNormal, Vec3 normal) {
         boolean rtnVal = false;
         if (prevNormal == null) {
             rtnVal = false;
@@ -182,7 +191,7 @@ public class PathTraceToParentWorker extends BackgroundWorker {
         return rtnVal;
     }
 
-    private Vec3 calcDirection(ZoomedVoxelIndex prev, ZoomedVoxelIndex curr) {
+    private static Vec3 calcDirection(ZoomedVoxelIndex prev, ZoomedVoxelIndex curr) {
         double magnitude = 0;
         Vec3 prevVec = new Vec3(prev.getX(), prev.getY(), prev.getZ());
         Vec3 currVec = new Vec3(curr.getX(), curr.getY(), curr.getZ());
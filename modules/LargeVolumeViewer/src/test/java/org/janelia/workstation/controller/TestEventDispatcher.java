@@ -0,0 +1,175 @@
+package org.janelia.workstation.controller;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import com.google.common.eventbus.EventBus;
+import com.google.common.eventbus.Subscribe;
+import org.janelia.model.domain.tiledMicroscope.TmGeoAnnotation;
+import org.janelia.model.domain.tiledMicroscope.TmNeuronMetadata;
+import org.janelia.workstation.controller.eventbus.AnnotationCreateEvent;
+import org.janelia.workstation.controller.eventbus.AnnotationDeleteEvent;
+import org.janelia.workstation.controller.eventbus.AnnotationRadiusUpdateEvent;
+import org.janelia.workstation.controller.eventbus.NeuronUpdateEvent;
+import org.janelia.workstation.controller.eventbus.ViewerEvent;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestEventDispatcher {
+
+	private final List<Runnable> scheduled = new ArrayList<>();
+	private final List<ViewerEvent> received = new ArrayList<>();
+	private EventDispatcher dispatcher;
+
+	@Before
+	public void createDispatcher() {
+		EventBus eventBus = new EventBus();
+		eventBus.register(this);
+		// drains run only when the test says so, as if the EDT were busy until then
+		dispatcher = new EventDispatcher("test", eventBus, scheduled::add, true);
+	}
+
+	@Subscribe
+	public void receive(ViewerEvent event) {
+		received.add(event);
+	}
+
+	private void runScheduled() {
+		List<Runnable> drains = new ArrayList<>(scheduled);
+		scheduled.clear();
+		for (Runnable drain : drains) {
+			drain.run();
+		}
+	}
+
+	private static TmNeuronMetadata neuron(long id) {
+		TmNeuronMetadata neuron = new TmNeuronMetadata();
+		neuron.setId(id);
+		return neuron;
+	}
+
+	private static TmGeoAnnotation annotation(long id, long neuronId) {
+		return new TmGeoAnnotation(id, null, neuronId, 0, 0, 0, 1.0, new Date(), new Date());
+	}
+
+	private static AnnotationCreateEvent created(Object source, TmGeoAnnotation annotation, TmGeoAnnotation nextParent) {
+		return new AnnotationCreateEvent(source, Collections.singletonList(annotation), nextParent);
+	}
+
+	@Test
+	public void testCoalescesBurstIntoOneDrain() {
+		TmNeuronMetadata first = neuron(1);
+		TmNeuronMetadata second = neuron(2);
+		TmNeuronMetadata firstAgain = neuron(1);
+		for (TmNeuronMetadata neuron : Arrays.asList(first, second, firstAgain)) {
+			dispatcher.post(new NeuronUpdateEvent(this, Collections.singletonList(neuron)));
+		}
+		assertEquals(1, scheduled.size());
+		assertTrue(received.isEmpty());
+
+		runScheduled();
+		assertEquals(1, received.size());
+		NeuronUpdateEvent merged = (NeuronUpdateEvent) received.get(0);
+		// each neuron once, as its latest copy
+		assertEquals(Arrays.asList(firstAgain, second), new ArrayList<>(merged.getNeurons()));
+
+		EventMetrics metrics = dispatcher.getMetrics().iterator().next();
+		assertEquals(NeuronUpdateEvent.class, metrics.getEventType());
+		assertEquals(3, metrics.getPosted());
+		assertEquals(2, metrics.getCoalesced());
+		assertEquals(1, metrics.getDelivered());
+		assertEquals(0, metrics.getQueueDepth());
+		assertEquals(1, metrics.getMaxQueueDepth());
+	}
+
+	@Test
+	public void testKeepsOrderAcrossTypes() {
+		TmGeoAnnotation a = annotation(10, 1);
+		TmGeoAnnotation b = annotation(11, 1);
+		TmGeoAnnotation c = annotation(12, 1);
+		dispatcher.post(created(this, a, null));
+		dispatcher.post(new AnnotationDeleteEvent(this, Collections.singletonList(a), null));
+		dispatcher.post(created(this, b, null));
+		dispatcher.post(created(this, c, null));
+		runScheduled();
+
+		assertEquals(3, received.size());
+		assertTrue(received.get(0) instanceof AnnotationCreateEvent);
+		assertTrue(received.get(1) instanceof AnnotationDeleteEvent);
+		AnnotationCreateEvent merged = (AnnotationCreateEvent) received.get(2);
+		assertEquals(Arrays.asList(b, c), new ArrayList<>(merged.getAnnotations()));
+		// each lone create would have made its annotation the next parent; the last one stands
+		assertSame(c, merged.getRequestedNextParent());
+	}
+
+	@Test
+	public void testDoesNotMergeDifferentTargets() {
+		dispatcher.post(created(this, annotation(10, 1), null));
+		dispatcher.post(created(this, annotation(11, 2), null));
+		dispatcher.post(created("another source", annotation(12, 2), null));
+		dispatcher.post(new AnnotationRadiusUpdateEvent(this, Collections.singletonList(annotation(12, 2)), null));
+		dispatcher.post(new AnnotationRadiusUpdateEvent(this, Collections.singletonList(annotation(13, 2)), null));
+		runScheduled();
+		assertEquals(5, received.size());
+	}
+
+	@Test
+	public void testNextParentOfMergedCreates() {
+		TmGeoAnnotation a = annotation(10, 1);
+		TmGeoAnnotation b = annotation(11, 1);
+		TmGeoAnnotation c = annotation(12, 1);
+		TmGeoAnnotation requested = annotation(13, 1);
+		dispatcher.post(created(this, a, requested));
+		dispatcher.post(new AnnotationCreateEvent(this, Arrays.asList(b, c), null));
+		runScheduled();
+		assertEquals(1, received.size());
+		assertSame(requested, ((AnnotationCreateEvent) received.get(0)).getRequestedNextParent());
+
+		received.clear();
+		dispatcher.post(new AnnotationDeleteEvent(this, Collections.singletonList(a), requested));
+		dispatcher.post(new AnnotationDeleteEvent(this, Collections.singletonList(b), null));
+		runScheduled();
+		assertEquals(1, received.size());
+		// a delete without a next parent clears it
+		assertNull(((AnnotationDeleteEvent) received.get(0)).getRequestedNextParent());
+	}
+
+	@Test
+	public void testEventsPostedWhileDrainingGoInNextDrain() {
+		EventBus eventBus = new EventBus();
+		List<Object> delivered = new ArrayList<>();
+		EventDispatcher[] dispatchers = new EventDispatcher[1];
+		eventBus.register(new Object() {
+			@Subscribe
+			public void receive(NeuronUpdateEvent event) {
+				delivered.add(event);
+				if (delivered.size() == 1) {
+					dispatchers[0].post(new NeuronUpdateEvent(this, Collections.singletonList(neuron(2))));
+				}
+			}
+		});
+		dispatchers[0] = new EventDispatcher("test", eventBus, scheduled::add, true);
+		dispatchers[0].post(new NeuronUpdateEvent(this, Collections.singletonList(neuron(1))));
+		runScheduled();
+		assertEquals(1, delivered.size());
+		assertEquals(1, scheduled.size());
+		runScheduled();
+		assertEquals(2, delivered.size());
+	}
+
+	@Test
+	public void testWithoutCoalescing() {
+		EventBus eventBus = new EventBus();
+		eventBus.register(this);
+		EventDispatcher plain = new EventDispatcher("test", eventBus, Runnable::run, false);
+		plain.post(new NeuronUpdateEvent(this, Collections.singletonList(neuron(1))));
+		plain.post(new NeuronUpdateEvent(this, Collections.singletonList(neuron(1))));
+		assertEquals(2, received.size());
+	}
+
+}
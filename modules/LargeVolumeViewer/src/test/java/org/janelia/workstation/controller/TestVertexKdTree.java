@@ -0,0 +1,120 @@
+package org.janelia.workstation.controller;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class TestVertexKdTree {
+
+	private static float[] randomPoints(Random random, int count) {
+		float[] xyz = new float[3 * count];
+		for (int i = 0; i < xyz.length; ++i) {
+			// Coarse grid, so that many points coincide
+			xyz[i] = random.nextInt(40) * 0.5f;
+		}
+		return xyz;
+	}
+
+	private static List<Integer> ids(int count) {
+		List<Integer> ids = new ArrayList<>();
+		for (int i = 0; i < count; ++i) {
+			ids.add(i);
+		}
+		return ids;
+	}
+
+	private static double distanceSquared(float[] xyz, int i, float x, float y, float z) {
+		double dx = xyz[3 * i] - x;
+		double dy = xyz[3 * i + 1] - y;
+		double dz = xyz[3 * i + 2] - z;
+		return dx * dx + dy * dy + dz * dz;
+	}
+
+	@Test
+	public void testNearestMatchesBruteForce() {
+		Random random = new Random(42);
+		int count = 50000; // large enough to build in parallel
+		float[] xyz = randomPoints(random, count);
+		VertexKdTree<Integer> tree = new VertexKdTree<>();
+		tree.build(ids(count), xyz);
+		assertEquals(count, tree.size());
+		for (int q = 0; q < 50; ++q) {
+			float x = random.nextFloat() * 20, y = random.nextFloat() * 20, z = random.nextFloat() * 20;
+			List<Integer> nearest = tree.nearest(x, y, z, 5, null);
+			assertEquals(5, nearest.size());
+			List<Integer> expected = ids(count);
+			expected.sort(Comparator.comparingDouble(i -> distanceSquared(xyz, i, x, y, z)));
+			for (int k = 0; k < 5; ++k) {
+				assertEquals(distanceSquared(xyz, expected.get(k), x, y, z),
+						distanceSquared(xyz, nearest.get(k), x, y, z), 1e-9);
+			}
+		}
+	}
+
+	@Test
+	public void testDuplicatePointsAreKept() {
+		VertexKdTree<Integer> tree = new VertexKdTree<>();
+		tree.build(ids(20), new float[60]); // all at the origin
+		assertEquals(20, tree.size());
+		assertEquals(20, tree.nearest(0, 0, 0, 30, null).size());
+		assertEquals(20, tree.range(new float[] {0, 0, 0}, new float[] {0, 0, 0}).size());
+		List<Integer> odd = tree.nearest(1, 1, 1, 30, i -> i % 2 == 1);
+		assertEquals(10, odd.size());
+	}
+
+	@Test
+	public void testIncrementalEdits() {
+		Random random = new Random(7);
+		int count = 3000;
+		float[] xyz = randomPoints(random, count);
+		VertexKdTree<Integer> tree = new VertexKdTree<>();
+		tree.build(ids(1000), xyz);
+		// Insert the rest one at a time, enough to trigger rebuilds
+		for (int i = 1000; i < count; ++i) {
+			tree.insert(i, xyz[3 * i], xyz[3 * i + 1], xyz[3 * i + 2]);
+		}
+		assertEquals(count, tree.size());
+		// Remove every third point, and move every fifth far away
+		for (int i = 0; i < count; i += 3) {
+			assertTrue(tree.remove(i));
+		}
+		assertFalse(tree.remove(0));
+		for (int i = 1; i < count; i += 5) {
+			tree.insert(i, 100, 100, 100);
+		}
+
+		float[] min = {2, 3, 4};
+		float[] max = {12, 13, 14};
+		HashSet<Integer> expected = new HashSet<>();
+		for (int i = 0; i < count; ++i) {
+			if (i % 3 == 0 || i % 5 == 1) {
+				continue;
+			}
+			boolean inside = true;
+			for (int a = 0; a < 3; ++a) {
+				inside &= xyz[3 * i + a] >= min[a] && xyz[3 * i + a] <= max[a];
+			}
+			if (inside) {
+				expected.add(i);
+			}
+		}
+		assertEquals(expected, new HashSet<>(tree.range(min, max)));
+
+		List<Integer> far = tree.nearest(100, 100, 100, count, i -> true);
+		int moved = (count + 3) / 5; // including removed points, which are added back
+		assertEquals(2200, far.size()); // 2000 kept, plus 200 removed then moved
+		for (int i : far.subList(0, moved)) {
+			assertEquals(1, i % 5);
+		}
+		tree.clear();
+		assertEquals(0, tree.size());
+		assertTrue(tree.nearest(0, 0, 0, 1, null).isEmpty());
+	}
+
+}
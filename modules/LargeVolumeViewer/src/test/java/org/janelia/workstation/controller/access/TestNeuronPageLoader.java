@@ -0,0 +1,139 @@
+package org.janelia.workstation.controller.access;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestNeuronPageLoader {
+
+	private ExecutorService executor;
+
+	@Before
+	public void createExecutor() {
+		executor = Executors.newFixedThreadPool(4);
+	}
+
+	@After
+	public void shutdownExecutor() {
+		executor.shutdownNow();
+	}
+
+	/** Reads item i as the number i, and records the pages asked for. */
+	private static class RangeReader implements TiledMicroscopeDomainMgr.PageReader<Long> {
+		final List<long[]> pages = Collections.synchronizedList(new ArrayList<>());
+
+		@Override
+		public void readPage(long offset, int length, Consumer<Long> consumer) throws Exception {
+			pages.add(new long[] {offset, length});
+			for (long i = offset; i < offset + length; ++i) {
+				consumer.accept(i);
+			}
+		}
+	}
+
+	@Test
+	public void testEveryItemDeliveredOnceInBoundedBatches() throws Exception {
+		RangeReader reader = new RangeReader();
+		List<List<Long>> batches = Collections.synchronizedList(new ArrayList<>());
+		long loaded = TiledMicroscopeDomainMgr.loadPages(1234, 100, 30, executor, reader, batches::add);
+
+		assertEquals(1234, loaded);
+		Set<Long> seen = new HashSet<>();
+		for (List<Long> batch : batches) {
+			assertFalse(batch.isEmpty());
+			assertTrue(batch.size() <= 30);
+			for (Long item : batch) {
+				assertTrue("duplicate item " + item, seen.add(item));
+			}
+		}
+		assertEquals(1234, seen.size());
+	}
+
+	@Test
+	public void testPagesCoverTheRangeWithoutOverlap() throws Exception {
+		RangeReader reader = new RangeReader();
+		TiledMicroscopeDomainMgr.loadPages(250, 100, 500, executor, reader, batch -> {});
+
+		List<long[]> pages = new ArrayList<>(reader.pages);
+		pages.sort((a, b) -> Long.compare(a[0], b[0]));
+		assertEquals(3, pages.size());
+		assertArrayEquals(new long[] {0, 100}, pages.get(0));
+		assertArrayEquals(new long[] {100, 100}, pages.get(1));
+		assertArrayEquals(new long[] {200, 50}, pages.get(2));
+	}
+
+	@Test
+	public void testEmptyWorkspaceReadsNothing() throws Exception {
+		RangeReader reader = new RangeReader();
+		List<List<Long>> batches = new ArrayList<>();
+		assertEquals(0, TiledMicroscopeDomainMgr.loadPages(0, 100, 10, executor, reader, batches::add));
+		assertTrue(reader.pages.isEmpty());
+		assertTrue(batches.isEmpty());
+	}
+
+	@Test
+	public void testPageFailureIsRethrown() throws Exception {
+		TiledMicroscopeDomainMgr.PageReader<Long> reader = (offset, length, consumer) -> {
+			if (offset == 200) {
+				throw new IOException("page failed");
+			}
+			for (long i = offset; i < offset + length; ++i) {
+				consumer.accept(i);
+			}
+		};
+		try {
+			TiledMicroscopeDomainMgr.loadPages(500, 100, 10, executor, reader, batch -> {});
+			fail("expected the page failure");
+		} catch (IOException e) {
+			assertEquals("page failed", e.getMessage());
+		}
+	}
+
+	@Test
+	public void testUnknownSizeStopsAfterShortPage() throws Exception {
+		// 250 changed items behind a filter the reader applies itself
+		TiledMicroscopeDomainMgr.PageReader<Long> reader = (offset, length, consumer) -> {
+			for (long i = offset; i < Math.min(offset + length, 250); ++i) {
+				consumer.accept(i);
+			}
+		};
+		List<Integer> pageSizes = new ArrayList<>();
+		assertTrue(TiledMicroscopeDomainMgr.loadPagesUntilShort(100000, 100, reader, page -> pageSizes.add(page.size())));
+		assertEquals(Arrays.asList(100, 100, 50), pageSizes);
+	}
+
+	@Test
+	public void testUnknownSizeStopsWhenConsumerDeclines() throws Exception {
+		RangeReader reader = new RangeReader();
+		List<Long> items = new ArrayList<>();
+		assertFalse(TiledMicroscopeDomainMgr.loadPagesUntilShort(100000, 100, reader, page -> {
+			items.addAll(page);
+			return items.size() < 300;
+		}));
+		assertEquals(300, items.size());
+		assertEquals(3, reader.pages.size());
+	}
+
+	@Test
+	public void testUnknownSizeReadsAtMostMaxCount() throws Exception {
+		RangeReader reader = new RangeReader();
+		List<Long> items = new ArrayList<>();
+		assertTrue(TiledMicroscopeDomainMgr.loadPagesUntilShort(250, 100, reader, items::addAll));
+		assertEquals(250, items.size());
+		assertArrayEquals(new long[] {200, 50}, reader.pages.get(2));
+	}
+
+}
@@ -0,0 +1,132 @@
+package org.janelia.workstation.controller.access;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.janelia.workstation.controller.access.NeuronSnapshotStore.NeuronRecord;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestNeuronSnapshotStore {
+
+	private static final long WORKSPACE_ID = 42L;
+
+	private Path directory;
+	private NeuronSnapshotStore store;
+
+	@Before
+	public void createStore() throws IOException {
+		directory = Files.createTempDirectory("neuron-snapshots");
+		store = new NeuronSnapshotStore(directory);
+	}
+
+	@After
+	public void deleteDirectory() throws IOException {
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+			for (Path file : files) {
+				Files.deleteIfExists(file);
+			}
+		}
+		Files.deleteIfExists(directory);
+	}
+
+	private static NeuronRecord record(long neuronId, long updatedTime, String data) {
+		return new NeuronRecord(neuronId, updatedTime, data.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static String data(NeuronRecord record) {
+		return new String(record.getData(), StandardCharsets.UTF_8);
+	}
+
+	private static List<NeuronRecord> records(int count) {
+		List<NeuronRecord> records = new ArrayList<>();
+		for (int i = 0; i < count; ++i) {
+			records.add(record(i, 1000 + i, "neuron " + i));
+		}
+		return records;
+	}
+
+	@Test
+	public void testWriteAndRead() throws IOException {
+		assertNull(store.read(WORKSPACE_ID));
+		assertFalse(store.hasSnapshot(WORKSPACE_ID));
+
+		store.write(WORKSPACE_ID, 5000, records(1000));
+		assertTrue(store.hasSnapshot(WORKSPACE_ID));
+
+		NeuronSnapshotStore.Snapshot snapshot = store.read(WORKSPACE_ID);
+		assertNotNull(snapshot);
+		assertEquals(5000, snapshot.getSnapshotTime());
+		assertEquals(0, snapshot.getJournalRecordCount());
+		assertEquals(1000, snapshot.getNeurons().size());
+		NeuronRecord record = snapshot.getNeurons().get(123L);
+		assertEquals(1123, record.getUpdatedTime());
+		assertEquals("neuron 123", data(record));
+
+		// a snapshot is only found for its own workspace
+		assertNull(store.read(WORKSPACE_ID + 1));
+	}
+
+	@Test
+	public void testJournal() throws IOException {
+		// updates are only journaled for workspaces with a snapshot
+		store.recordUpdate(WORKSPACE_ID, record(1, 2000, "ignored"));
+		assertFalse(store.hasSnapshot(WORKSPACE_ID));
+
+		store.write(WORKSPACE_ID, 5000, records(10));
+		store.recordUpdate(WORKSPACE_ID, record(3, 6000, "neuron 3 edited"));
+		store.recordUpdate(WORKSPACE_ID, record(10, 6001, "neuron 10"));
+		store.recordDelete(WORKSPACE_ID, 5);
+		store.recordUpdate(WORKSPACE_ID, record(3, 6002, "neuron 3 edited again"));
+
+		NeuronSnapshotStore.Snapshot snapshot = store.read(WORKSPACE_ID);
+		assertEquals(4, snapshot.getJournalRecordCount());
+		assertEquals(10, snapshot.getNeurons().size());
+		assertEquals("neuron 3 edited again", data(snapshot.getNeurons().get(3L)));
+		assertEquals(6002, snapshot.getNeurons().get(3L).getUpdatedTime());
+		assertEquals("neuron 10", data(snapshot.getNeurons().get(10L)));
+		assertFalse(snapshot.getNeurons().containsKey(5L));
+
+		// writing a new snapshot starts a new journal
+		store.write(WORKSPACE_ID, 7000, snapshot.getNeurons().values());
+		snapshot = store.read(WORKSPACE_ID);
+		assertEquals(0, snapshot.getJournalRecordCount());
+		assertEquals(10, snapshot.getNeurons().size());
+		assertEquals("neuron 3 edited again", data(snapshot.getNeurons().get(3L)));
+	}
+
+	@Test
+	public void testTruncatedJournal() throws IOException {
+		store.write(WORKSPACE_ID, 5000, records(10));
+		store.recordUpdate(WORKSPACE_ID, record(3, 6000, "neuron 3 edited"));
+		store.recordUpdate(WORKSPACE_ID, record(4, 6001, "neuron 4 edited"));
+		// as if the client stopped partway through the second update
+		Path journal = directory.resolve(WORKSPACE_ID + ".journal");
+		byte[] bytes = Files.readAllBytes(journal);
+		Files.write(journal, Arrays.copyOf(bytes, bytes.length - 5));
+
+		NeuronSnapshotStore.Snapshot snapshot = store.read(WORKSPACE_ID);
+		assertEquals(1, snapshot.getJournalRecordCount());
+		assertEquals("neuron 3 edited", data(snapshot.getNeurons().get(3L)));
+		assertEquals("neuron 4", data(snapshot.getNeurons().get(4L)));
+	}
+
+	@Test
+	public void testCorruptSnapshotIsDiscarded() throws IOException {
+		store.write(WORKSPACE_ID, 5000, records(10));
+		Files.write(directory.resolve(WORKSPACE_ID + ".snapshot"), new byte[]{1, 2, 3, 4});
+
+		assertNull(store.read(WORKSPACE_ID));
+		assertFalse(store.hasSnapshot(WORKSPACE_ID));
+	}
+
+}
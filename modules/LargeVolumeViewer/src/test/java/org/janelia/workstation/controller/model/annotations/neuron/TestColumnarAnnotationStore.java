@@ -0,0 +1,193 @@
+package org.janelia.workstation.controller.model.annotations.neuron;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.janelia.model.domain.tiledMicroscope.TmGeoAnnotation;
+import org.janelia.model.domain.tiledMicroscope.TmNeuronMetadata;
+import org.junit.Test;
+
+public class TestColumnarAnnotationStore {
+
+	private static TmNeuronMetadata neuron(long id) {
+		TmNeuronMetadata neuron = new TmNeuronMetadata();
+		neuron.setId(id);
+		return neuron;
+	}
+
+	private static TmGeoAnnotation add(TmNeuronMetadata neuron, long id, TmGeoAnnotation parent, Double radius, Date modified) {
+		TmGeoAnnotation annotation = new TmGeoAnnotation(id, parent == null ? neuron.getId() : parent.getId(),
+				neuron.getId(), id * 1.5, id * 2.5, id * 3.5, radius, new Date(1000 * id), modified);
+		if (parent == null) {
+			neuron.addRootAnnotation(annotation);
+		} else {
+			parent.addChild(annotation);
+		}
+		neuron.getGeoAnnotationMap().put(id, annotation);
+		return annotation;
+	}
+
+	// a root with two branches, the later-added one first in the child order, and a second root
+	private static TmNeuronMetadata branchedNeuron(long neuronId) {
+		TmNeuronMetadata neuron = neuron(neuronId);
+		long base = 100 * neuronId;
+		TmGeoAnnotation root = add(neuron, base + 1, null, 1.25, null);
+		TmGeoAnnotation a = add(neuron, base + 2, root, null, new Date(5));
+		add(neuron, base + 3, a, 2.0, null);
+		TmGeoAnnotation b = add(neuron, base + 4, root, 0.1, null);
+		root.getChildIds().remove(b.getId());
+		root.getChildIds().add(0, b.getId());
+		add(neuron, base + 5, null, 3.0, null);
+		return neuron;
+	}
+
+	private static List<String> describe(TmNeuronMetadata neuron) {
+		List<String> lines = new ArrayList<>();
+		for (TmGeoAnnotation root : neuron.getRootAnnotations()) {
+			lines.add("root " + root.getId());
+		}
+		for (long id = 100 * neuron.getId() + 1; id <= 100 * neuron.getId() + 5; id++) {
+			TmGeoAnnotation annotation = neuron.getGeoAnnotationMap().get(id);
+			lines.add(annotation.getId() + " parent=" + annotation.getParentId() + " neuron=" + annotation.getNeuronId()
+					+ " at " + annotation.getX() + "," + annotation.getY() + "," + annotation.getZ()
+					+ " r=" + annotation.getRadius() + " created=" + annotation.getCreationDate()
+					+ " modified=" + annotation.getModificationDate() + " children=" + annotation.getChildIds());
+		}
+		return lines;
+	}
+
+	@Test
+	public void testRoundTrip() {
+		TmNeuronMetadata neuron = branchedNeuron(7);
+		List<String> before = describe(neuron);
+		ColumnarAnnotationStore store = new ColumnarAnnotationStore();
+
+		assertTrue(store.store(neuron));
+		assertTrue(store.contains(7L));
+		assertTrue(neuron.getGeoAnnotationMap().isEmpty());
+		assertTrue(neuron.getRootAnnotations().isEmpty());
+		assertEquals(5, store.getAnnotationCount());
+		assertFalse(store.store(neuron));
+
+		assertTrue(store.restore(neuron));
+		assertFalse(store.contains(7L));
+		assertEquals(0, store.getAnnotationCount());
+		assertEquals(before, describe(neuron));
+		assertFalse(store.restore(neuron));
+	}
+
+	@Test
+	public void testLocationsAndPathLength() {
+		TmNeuronMetadata neuron = neuron(1);
+		TmGeoAnnotation root = add(neuron, 101, null, 1.0, null);
+		add(neuron, 102, root, 1.0, null);
+		ColumnarAnnotationStore store = new ColumnarAnnotationStore();
+		assertNull(store.getLocations(1L));
+		store.store(neuron);
+
+		assertArrayEquals(new double[]{151.5, 252.5, 353.5, 153, 255, 357}, store.getLocations(1L), 0);
+		assertEquals(Math.sqrt(1.5 * 1.5 + 2.5 * 2.5 + 3.5 * 3.5), store.getPathLength(1L), 1e-9);
+		assertTrue(Double.isNaN(store.getPathLength(2L)));
+	}
+
+	@Test
+	public void testLeavesInconsistentNeuronsAlone() {
+		ColumnarAnnotationStore store = new ColumnarAnnotationStore();
+
+		// an annotation that no root reaches
+		TmNeuronMetadata orphaned = branchedNeuron(1);
+		orphaned.getGeoAnnotationMap().get(101L).getChildIds().remove(Long.valueOf(102));
+		assertFalse(store.store(orphaned));
+		assertEquals(5, orphaned.getGeoAnnotationMap().size());
+
+		// a child ID with no annotation
+		TmNeuronMetadata dangling = branchedNeuron(2);
+		dangling.getGeoAnnotationMap().get(201L).getChildIds().add(999L);
+		assertFalse(store.store(dangling));
+
+		assertFalse(store.store(neuron(3)));
+		assertEquals(0, store.getNeuronCount());
+	}
+
+	@Test
+	public void testRemoveAndReclaim() {
+		ColumnarAnnotationStore store = new ColumnarAnnotationStore();
+		List<TmNeuronMetadata> neurons = new ArrayList<>();
+		List<List<String>> expected = new ArrayList<>();
+		for (long id = 1; id <= 600; id++) {
+			TmNeuronMetadata neuron = branchedNeuron(id);
+			expected.add(describe(neuron));
+			neurons.add(neuron);
+			assertTrue(store.store(neuron));
+		}
+		// freeing most of the rows moves the rest down
+		for (int i = 0; i < 600; i++) {
+			if (i % 3 == 0) {
+				store.remove(neurons.get(i).getId());
+			} else if (i % 3 == 1) {
+				store.restore(neurons.get(i));
+			}
+		}
+		assertEquals(200, store.getNeuronCount());
+		assertEquals(1000, store.getAnnotationCount());
+		for (int i = 2; i < 600; i += 3) {
+			TmNeuronMetadata neuron = neurons.get(i);
+			assertTrue(store.restore(neuron));
+			assertEquals(expected.get(i), describe(neuron));
+		}
+		assertEquals(0, store.getNeuronCount());
+		assertEquals(Arrays.asList(), new ArrayList<>(neurons.get(0).getGeoAnnotationMap().values()));
+	}
+
+	@Test
+	public void testConcurrentRestoreRebuildsOnce() throws Exception {
+		ColumnarAnnotationStore store = new ColumnarAnnotationStore();
+		List<TmNeuronMetadata> neurons = new ArrayList<>();
+		List<List<String>> expected = new ArrayList<>();
+		for (long id = 1; id <= 200; id++) {
+			TmNeuronMetadata neuron = branchedNeuron(id);
+			expected.add(describe(neuron));
+			neurons.add(neuron);
+			assertTrue(store.store(neuron));
+		}
+		// lookups from several threads race to restore the same neurons, off the event thread
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		CountDownLatch start = new CountDownLatch(1);
+		List<Future<Integer>> results = new ArrayList<>();
+		try {
+			for (int t = 0; t < 4; t++) {
+				results.add(executor.submit(() -> {
+					start.await();
+					int restored = 0;
+					for (TmNeuronMetadata neuron : neurons) {
+						if (store.contains(neuron.getId()) && store.restore(neuron)) {
+							restored++;
+						}
+					}
+					return restored;
+				}));
+			}
+			start.countDown();
+			int restored = 0;
+			for (Future<Integer> result : results) {
+				restored += result.get();
+			}
+			assertEquals(200, restored);
+		} finally {
+			executor.shutdownNow();
+		}
+		assertEquals(0, store.getNeuronCount());
+		for (int i = 0; i < neurons.size(); i++) {
+			assertEquals(expected.get(i), describe(neurons.get(i)));
+		}
+	}
+
+}
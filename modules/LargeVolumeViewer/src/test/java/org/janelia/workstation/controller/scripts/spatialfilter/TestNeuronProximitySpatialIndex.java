@@ -0,0 +1,99 @@
+package org.janelia.workstation.controller.scripts.spatialfilter;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class TestNeuronProximitySpatialIndex {
+
+	private static final double CELL_SIZE = 100;
+
+	private static Set<Long> ids(Long... ids) {
+		return new HashSet<>(Arrays.asList(ids));
+	}
+
+	@Test
+	public void testRangeSearch() {
+		NeuronProximitySpatialIndex index = new NeuronProximitySpatialIndex(CELL_SIZE);
+		index.addToIndex(1L, new double[]{10, 10, 10, 20, 20, 20});
+		index.addToIndex(2L, new double[]{-150, 10, 10});
+		index.addToIndex(3L, new double[]{500, 500, 500, 900, 900, 900});
+		assertEquals(3, index.size());
+
+		assertEquals(ids(1L), index.getFragmentIdsInBoundingBox(new double[]{0, 0, 0}, new double[]{15, 15, 15}));
+		assertEquals(ids(1L, 2L), index.getFragmentIdsInBoundingBox(new double[]{-200, 0, 0}, new double[]{15, 15, 15}));
+		// the box of fragment 3 overlaps the search, but none of its points are in it
+		assertEquals(ids(), index.getFragmentIdsInBoundingBox(new double[]{600, 600, 600}, new double[]{800, 800, 800}));
+		assertEquals(ids(3L), index.getFragmentIdsInBoundingBox(new double[]{850, 850, 850}, new double[]{950, 950, 950}));
+	}
+
+	@Test
+	public void testReplaceAndRemove() {
+		NeuronProximitySpatialIndex index = new NeuronProximitySpatialIndex(CELL_SIZE);
+		index.addToIndex(1L, new double[]{10, 10, 10});
+		index.addToIndex(1L, new double[]{310, 10, 10});
+		assertEquals(1, index.size());
+		assertEquals(ids(), index.getFragmentIdsInBoundingBox(new double[]{0, 0, 0}, new double[]{20, 20, 20}));
+		assertEquals(ids(1L), index.getFragmentIdsInBoundingBox(new double[]{300, 0, 0}, new double[]{320, 20, 20}));
+
+		assertTrue(index.removeFromIndex(1L));
+		assertFalse(index.removeFromIndex(1L));
+		assertEquals(0, index.size());
+		assertEquals(ids(), index.getFragmentIdsInBoundingBox(new double[]{300, 0, 0}, new double[]{320, 20, 20}));
+	}
+
+	@Test
+	public void testLargeFragment() {
+		NeuronProximitySpatialIndex index = new NeuronProximitySpatialIndex(1);
+		index.addToIndex(1L, new double[]{0, 0, 0, 1000, 1000, 1000});
+		index.addToIndex(2L, new double[]{5, 5, 5});
+		assertEquals(ids(1L), index.getFragmentIdsInBoundingBox(new double[]{999, 999, 999}, new double[]{1001, 1001, 1001}));
+		assertTrue(index.removeFromIndex(1L));
+		assertEquals(Collections.emptySet(), index.getFragmentIdsInBoundingBox(new double[]{999, 999, 999}, new double[]{1001, 1001, 1001}));
+		assertEquals(ids(2L), index.getFragmentIdsInBoundingBox(new double[]{0, 0, 0}, new double[]{1001, 1001, 1001}));
+	}
+
+	@Test
+	public void testMatchesBruteForce() {
+		Random random = new Random(7);
+		int fragmentCount = 2000;
+		double[][] fragments = new double[fragmentCount][];
+		NeuronProximitySpatialIndex index = new NeuronProximitySpatialIndex(CELL_SIZE);
+		for (int f = 0; f < fragmentCount; f++) {
+			int points = 1 + random.nextInt(10);
+			double[] xyz = new double[3 * points];
+			double x = random.nextDouble() * 5000, y = random.nextDouble() * 5000, z = random.nextDouble() * 1000;
+			for (int i = 0; i < xyz.length; i += 3) {
+				xyz[i] = x += random.nextGaussian() * 20;
+				xyz[i + 1] = y += random.nextGaussian() * 20;
+				xyz[i + 2] = z += random.nextGaussian() * 5;
+			}
+			fragments[f] = xyz;
+			index.addToIndex(f, xyz);
+		}
+		for (int q = 0; q < 200; q++) {
+			double[] min = {random.nextDouble() * 5000, random.nextDouble() * 5000, random.nextDouble() * 1000};
+			double size = random.nextDouble() * 800;
+			double[] max = {min[0] + size, min[1] + size, min[2] + size / 4};
+			Set<Long> expected = new HashSet<>();
+			for (int f = 0; f < fragmentCount; f++) {
+				double[] xyz = fragments[f];
+				for (int i = 0; i < xyz.length; i += 3) {
+					if (xyz[i] >= min[0] && xyz[i] <= max[0] && xyz[i + 1] >= min[1] && xyz[i + 1] <= max[1]
+							&& xyz[i + 2] >= min[2] && xyz[i + 2] <= max[2]) {
+						expected.add((long) f);
+						break;
+					}
+				}
+			}
+			assertEquals(expected, index.getFragmentIdsInBoundingBox(min, max));
+		}
+	}
+
+}
@@ -0,0 +1,148 @@
+package org.janelia.workstation.controller.tileimagery;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestMappedTileStore {
+
+	private static final int SEGMENT_BYTES = 64 * 1024;
+	private static final int PAGE_BYTES = 10 * 1024;
+
+	private Path directory;
+
+	@Before
+	public void createDirectory() throws IOException {
+		directory = Files.createTempDirectory("mapped-tile-store");
+	}
+
+	@After
+	public void deleteDirectory() throws IOException {
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+			for (Path file : files) {
+				Files.deleteIfExists(file);
+			}
+		}
+		Files.deleteIfExists(directory);
+	}
+
+	private static ByteBuffer page(int seed) {
+		ByteBuffer page = ByteBuffer.allocate(PAGE_BYTES);
+		for (int i = 0; i < PAGE_BYTES; ++i) {
+			page.put(i, (byte) (seed + i));
+		}
+		return page;
+	}
+
+	@Test
+	public void testPagesAreReturnedAsMappedViews() throws IOException {
+		MappedTileStore store = MappedTileStore.open(directory, 10 * SEGMENT_BYTES, SEGMENT_BYTES);
+		store.put("volume/1/default.0.tif.3", page(3));
+		ByteBuffer cached = store.get("volume/1/default.0.tif.3");
+		assertNotNull(cached);
+		assertTrue(cached.isDirect());
+		assertTrue(cached.isReadOnly());
+		assertEquals(page(3), cached);
+		assertNull(store.get("volume/1/default.0.tif.4"));
+		assertEquals(1, store.getHitCount());
+		assertEquals(1, store.getMissCount());
+		store.close();
+	}
+
+	@Test
+	public void testPagesSurviveReopening() throws IOException {
+		MappedTileStore store = MappedTileStore.open(directory, 10 * SEGMENT_BYTES, SEGMENT_BYTES);
+		for (int i = 0; i < 8; ++i) {
+			store.put("page" + i, page(i));
+		}
+		store.remove("page2");
+		store.put("page5", page(50)); // replaced
+		store.close();
+
+		MappedTileStore reopened = MappedTileStore.open(directory, 10 * SEGMENT_BYTES, SEGMENT_BYTES);
+		assertEquals(7, reopened.size());
+		assertNull(reopened.get("page2"));
+		assertEquals(page(0), reopened.get("page0"));
+		assertEquals(page(50), reopened.get("page5"));
+		assertEquals(page(7), reopened.get("page7"));
+		reopened.close();
+	}
+
+	@Test
+	public void testBudgetIsEnforced() throws IOException {
+		long maxBytes = 3 * SEGMENT_BYTES;
+		MappedTileStore store = MappedTileStore.open(directory, maxBytes, SEGMENT_BYTES);
+		for (int i = 0; i < 40; ++i) {
+			store.put("page" + i, page(i));
+			store.get("page0"); // keep one page in use
+			assertTrue(store.getDiskBytes() <= maxBytes);
+		}
+		assertEquals(page(0), store.get("page0"));
+		assertEquals(page(39), store.get("page39"));
+		assertNull(store.get("page1"));
+		assertTrue(store.getLiveBytes() <= maxBytes);
+		store.close();
+
+		// Relocated pages are found again after reopening
+		MappedTileStore reopened = MappedTileStore.open(directory, maxBytes, SEGMENT_BYTES);
+		assertEquals(page(0), reopened.get("page0"));
+		assertEquals(page(39), reopened.get("page39"));
+		reopened.close();
+	}
+
+	@Test
+	public void testHandedOutPagesOutliveEviction() throws IOException {
+		long maxBytes = 3 * SEGMENT_BYTES;
+		MappedTileStore store = MappedTileStore.open(directory, maxBytes, SEGMENT_BYTES);
+		store.put("page0", page(0));
+		ByteBuffer cached = store.get("page0");
+		// evicts page0 and compacts its segment away
+		for (int i = 1; i < 40; ++i) {
+			store.put("page" + i, page(i));
+		}
+		assertNull(store.get("page0"));
+		assertEquals(page(0), cached);
+		store.close();
+	}
+
+	@Test
+	public void testPagesWrittenThisSessionAreChecked() throws IOException {
+		MappedTileStore store = MappedTileStore.open(directory, 10 * SEGMENT_BYTES, SEGMENT_BYTES);
+		store.put("page0", page(0));
+		assertEquals(page(0), store.get("page0"));
+		// another writer damages the page behind the store's back
+		try (FileChannel segment = FileChannel.open(directory.resolve("segment-000000.dat"), StandardOpenOption.WRITE)) {
+			segment.write(ByteBuffer.wrap(new byte[] {(byte) 0xff, (byte) 0xff}), 100);
+		}
+		assertNull(store.get("page0"));
+		assertEquals(0, store.size());
+		store.close();
+	}
+
+	@Test
+	public void testOnlyOneStorePerDirectory() throws IOException {
+		MappedTileStore store = MappedTileStore.open(directory, 10 * SEGMENT_BYTES, SEGMENT_BYTES);
+		try {
+			MappedTileStore.open(directory, 10 * SEGMENT_BYTES, SEGMENT_BYTES);
+			fail("a second store should not open while the first holds the directory");
+		} catch (IOException expected) {
+		}
+		store.put("page0", page(0));
+		store.close();
+
+		MappedTileStore reopened = MappedTileStore.open(directory, 10 * SEGMENT_BYTES, SEGMENT_BYTES);
+		assertEquals(page(0), reopened.get("page0"));
+		reopened.close();
+	}
+
+}
@@ -0,0 +1,240 @@
+package org.janelia.workstation.controller.tileimagery;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestOctreeSubvolumeExporter {
+
+	private static final int[] SIZE = {37, 23, 10};
+	private static final int CHANNELS = 2;
+
+	private Path directory;
+
+	@Before
+	public void createDirectory() throws IOException {
+		directory = Files.createTempDirectory("subvolume-export");
+	}
+
+	@After
+	public void deleteDirectory() throws IOException {
+		try (Stream<Path> files = Files.walk(directory)) {
+			for (Path file : files.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+				Files.deleteIfExists(file);
+			}
+		}
+	}
+
+	private static int intensity(int c, int x, int y, int z) {
+		return c * 10000 + x + 40 * y + 1000 * z;
+	}
+
+	/** A 16 bit, two channel region, four slices per block. */
+	private static class FakeSource implements OctreeSubvolumeExporter.SlabSource {
+		final AtomicInteger reads = new AtomicInteger();
+		int failAt = -1;
+		int incompleteAt = -1;
+		int[] size = SIZE;
+
+		@Override
+		public String describe() {
+			return "fake";
+		}
+
+		@Override
+		public int[] getSize() {
+			return size;
+		}
+
+		@Override
+		public int getChannelCount() {
+			return CHANNELS;
+		}
+
+		@Override
+		public int getBytesPerIntensity() {
+			return 2;
+		}
+
+		@Override
+		public double[] getVoxelMicrometers() {
+			return new double[] {0.25, 0.25, 1.0};
+		}
+
+		@Override
+		public int getBlockDepth() {
+			return 4;
+		}
+
+		@Override
+		public ByteBuffer readSlab(int z0, int depth) throws IOException {
+			if (z0 == failAt) {
+				throw new IllegalStateException("lost the tile server");
+			}
+			if (z0 == incompleteAt) {
+				throw new IOException("Could not load every tile of slices " + z0 + " to " + (z0 + depth - 1));
+			}
+			reads.incrementAndGet();
+			ByteBuffer slab = ByteBuffer.allocate(SIZE[0] * SIZE[1] * depth * CHANNELS * 2)
+					.order(ByteOrder.LITTLE_ENDIAN);
+			for (int z = z0; z < z0 + depth; z++) {
+				for (int y = 0; y < SIZE[1]; y++) {
+					for (int x = 0; x < SIZE[0]; x++) {
+						for (int c = 0; c < CHANNELS; c++) {
+							slab.putShort((short) intensity(c, x, y, z));
+						}
+					}
+				}
+			}
+			slab.flip();
+			return slab;
+		}
+	}
+
+	// follows the directory chain to a slice, then reads one sample of its strip
+	private static int tiffIntensity(ByteBuffer tiff, int c, int x, int y, int z) {
+		long directory = tiff.getLong(8);
+		for (int i = 0; i < z; i++) {
+			directory = tiff.getLong((int) directory + 8 + (int) tiff.getLong((int) directory) * 20);
+		}
+		int entries = (int) tiff.getLong((int) directory);
+		for (int e = 0; e < entries; e++) {
+			int entry = (int) directory + 8 + e * 20;
+			if (tiff.getShort(entry) == 273) {
+				long strip = tiff.getLong(entry + 12);
+				return tiff.getShort((int) strip + ((y * SIZE[0] + x) * CHANNELS + c) * 2) & 0xffff;
+			}
+		}
+		throw new AssertionError("no strip offset for slice " + z);
+	}
+
+	@Test
+	public void testBigTiff() throws Exception {
+		FakeSource source = new FakeSource();
+		OctreeSubvolumeExporter exporter = new OctreeSubvolumeExporter(source);
+		Path output = directory.resolve("region.tif");
+		assertEquals(3, exporter.export(output, OctreeSubvolumeExporter.Format.BIGTIFF));
+		assertEquals(3, source.reads.get());
+		assertFalse(Files.exists(directory.resolve("region.tif.progress")));
+
+		ByteBuffer tiff = ByteBuffer.wrap(Files.readAllBytes(output)).order(ByteOrder.LITTLE_ENDIAN);
+		assertEquals('I', tiff.get(0));
+		assertEquals(43, tiff.getShort(2));
+		assertEquals(intensity(0, 0, 0, 0), tiffIntensity(tiff, 0, 0, 0, 0));
+		assertEquals(intensity(1, 5, 6, 7), tiffIntensity(tiff, 1, 5, 6, 7));
+		assertEquals(intensity(1, 36, 22, 9), tiffIntensity(tiff, 1, 36, 22, 9));
+	}
+
+	@Test
+	public void testZarr() throws Exception {
+		OctreeSubvolumeExporter exporter = new OctreeSubvolumeExporter(new FakeSource());
+		Path output = directory.resolve("region.zarr");
+		assertEquals(3, exporter.export(output, OctreeSubvolumeExporter.Format.ZARR));
+
+		String zarray = new String(Files.readAllBytes(output.resolve("0/.zarray")), StandardCharsets.UTF_8);
+		assertTrue(zarray, zarray.contains("\"shape\": [2, 10, 23, 37]"));
+		assertTrue(zarray, zarray.contains("\"chunks\": [1, 4, 256, 256]"));
+		// channel 1, slices 4 to 7, padded to a full chunk
+		ByteBuffer chunk = ByteBuffer.wrap(Files.readAllBytes(output.resolve("0/1/1/0/0")))
+				.order(ByteOrder.LITTLE_ENDIAN);
+		assertEquals(2 * 4 * 256 * 256, chunk.capacity());
+		assertEquals(intensity(1, 5, 6, 5), chunk.getShort(2 * (256 * 256 + 256 * 6 + 5)));
+		assertEquals(0, chunk.getShort(2 * (256 * 6 + 37)));
+		assertTrue(Files.exists(output.resolve("0/0/2/0/0")));
+	}
+
+	@Test
+	public void testResume() throws Exception {
+		FakeSource failing = new FakeSource();
+		failing.failAt = 4;
+		OctreeSubvolumeExporter exporter = new OctreeSubvolumeExporter(failing);
+		exporter.setThreadCount(1);
+		Path output = directory.resolve("region.tif");
+		try {
+			exporter.export(output, OctreeSubvolumeExporter.Format.BIGTIFF);
+			fail("export should have failed");
+		} catch (IOException e) {
+			assertTrue(e.getCause() instanceof IllegalStateException);
+		}
+		List<String> progress = Files.readAllLines(directory.resolve("region.tif.progress"), StandardCharsets.UTF_8);
+		assertTrue(progress.contains("0"));
+		assertFalse(progress.contains("1"));
+
+		FakeSource source = new FakeSource();
+		int written = new OctreeSubvolumeExporter(source).export(output, OctreeSubvolumeExporter.Format.BIGTIFF);
+		assertEquals(3 - (progress.size() - 1), written);
+		assertEquals(written, source.reads.get());
+
+		Path fresh = directory.resolve("fresh.tif");
+		new OctreeSubvolumeExporter(new FakeSource()).export(fresh, OctreeSubvolumeExporter.Format.BIGTIFF);
+		assertArrayEquals(Files.readAllBytes(fresh), Files.readAllBytes(output));
+	}
+
+	@Test
+	public void testIncompleteSlabIsRetried() throws Exception {
+		FakeSource flaky = new FakeSource();
+		flaky.incompleteAt = 4;
+		OctreeSubvolumeExporter exporter = new OctreeSubvolumeExporter(flaky);
+		exporter.setThreadCount(1);
+		Path output = directory.resolve("region.tif");
+		try {
+			exporter.export(output, OctreeSubvolumeExporter.Format.BIGTIFF);
+			fail("export should have failed");
+		} catch (IOException e) {
+			assertTrue(e.getCause().getMessage(), e.getCause().getMessage().contains("slices 4 to 7"));
+		}
+		List<String> progress = Files.readAllLines(directory.resolve("region.tif.progress"), StandardCharsets.UTF_8);
+		assertTrue(progress.contains("0"));
+		assertFalse(progress.contains("1"));
+
+		// the slab that had failed tiles is read again
+		FakeSource source = new FakeSource();
+		new OctreeSubvolumeExporter(source).export(output, OctreeSubvolumeExporter.Format.BIGTIFF);
+		assertEquals(3 - (progress.size() - 1), source.reads.get());
+		Path fresh = directory.resolve("fresh.tif");
+		new OctreeSubvolumeExporter(new FakeSource()).export(fresh, OctreeSubvolumeExporter.Format.BIGTIFF);
+		assertArrayEquals(Files.readAllBytes(fresh), Files.readAllBytes(output));
+	}
+
+	@Test
+	public void testSlabsFitInABuffer() {
+		FakeSource source = new FakeSource();
+		source.size = new int[] {4000, 4000, 1000};
+		OctreeSubvolumeExporter exporter = new OctreeSubvolumeExporter(source);
+		// 64 MB slices, so the default depth of 4 is within the cap
+		assertEquals(4, exporter.getSlabDepth());
+		exporter.setSlabDepth(16);
+		assertEquals(16, exporter.getSlabDepth());
+		// 4 GB would overflow the slab buffer
+		exporter.setSlabDepth(64);
+		try {
+			exporter.getSlabDepth();
+			fail("a 64 slice slab should be rejected");
+		} catch (IllegalArgumentException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("4096000000 bytes"));
+		}
+
+		// even a single slice can be too large
+		source.size = new int[] {40000, 40000, 10};
+		try {
+			new OctreeSubvolumeExporter(source).getSlabDepth();
+			fail("a 6.4 GB slice should be rejected");
+		} catch (IllegalArgumentException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("A slab of 1 slices"));
+		}
+	}
+}
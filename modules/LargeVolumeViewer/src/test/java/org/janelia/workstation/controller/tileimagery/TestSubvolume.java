@@ -0,0 +1,123 @@
+package org.janelia.workstation.controller.tileimagery;
+
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.janelia.workstation.geom.CoordinateAxis;
+import org.junit.Test;
+
+public class TestSubvolume {
+
+	private static TileIndex tile(int x, int y, int z, int zoom) {
+		return new TileIndex(x, y, z, zoom, 5, TileIndex.IndexStyle.OCTREE, CoordinateAxis.Z);
+	}
+
+	private static List<Integer> slices(List<TileIndex> sliceRun) {
+		List<Integer> slices = new ArrayList<>();
+		for (TileIndex tileIx : sliceRun) {
+			slices.add(tileIx.getZ());
+		}
+		return slices;
+	}
+
+	@Test
+	public void testSliceRunsFollowBlocks() {
+		List<TileIndex> tiles = new ArrayList<>();
+		// blocks 4 deep: slices 2 to 9 of one tile column, and one slice of another
+		tiles.add(tile(0, 0, 3, 0));
+		tiles.add(tile(0, 0, 2, 0));
+		for (int z = 4; z <= 9; z++) {
+			tiles.add(tile(0, 0, z, 0));
+		}
+		tiles.add(tile(1, 0, 3, 0));
+		List<List<TileIndex>> sliceRuns = Subvolume.groupIntoSliceRuns(tiles, 4);
+		assertEquals(4, sliceRuns.size());
+		assertEquals(Arrays.asList(2, 3), slices(sliceRuns.get(0)));
+		assertEquals(Arrays.asList(4, 5, 6, 7), slices(sliceRuns.get(1)));
+		assertEquals(Arrays.asList(8, 9), slices(sliceRuns.get(2)));
+		assertEquals(1, sliceRuns.get(3).get(0).getX());
+	}
+
+	@Test
+	public void testSliceRunsBreakAtGapsAndLength() {
+		List<TileIndex> tiles = new ArrayList<>();
+		for (int z = 0; z < 40; z++) {
+			if (z != 5) {
+				tiles.add(tile(0, 0, z, 0));
+			}
+		}
+		List<List<TileIndex>> sliceRuns = Subvolume.groupIntoSliceRuns(tiles, 64);
+		assertEquals(4, sliceRuns.size());
+		assertEquals(5, sliceRuns.get(0).size());
+		assertEquals(16, sliceRuns.get(1).size());
+		assertEquals(6, (int) slices(sliceRuns.get(1)).get(0));
+		assertEquals(16, sliceRuns.get(2).size());
+		assertEquals(2, sliceRuns.get(3).size());
+	}
+
+	@Test
+	public void testSliceRunsAtCoarserZoom() {
+		// at zoom 1 every other slice is the next one
+		List<TileIndex> tiles = new ArrayList<>();
+		for (int z = 0; z < 8; z += 2) {
+			tiles.add(tile(0, 0, z, 1));
+		}
+		List<List<TileIndex>> sliceRuns = Subvolume.groupIntoSliceRuns(tiles, 2);
+		assertEquals(2, sliceRuns.size());
+		assertEquals(Arrays.asList(0, 2), slices(sliceRuns.get(0)));
+		assertEquals(Arrays.asList(4, 6), slices(sliceRuns.get(1)));
+	}
+
+	@Test
+	public void testCopyRows() {
+		// a 4x3 tile of 2 byte pixels, into a 5x4 raster at (1, 1)
+		ByteBuffer source = ByteBuffer.allocate(4 * 3 * 2);
+		for (int i = 0; i < source.capacity(); i++) {
+			source.put(i, (byte) (i + 1));
+		}
+		ByteBuffer destination = ByteBuffer.allocate(5 * 4 * 2);
+		source.position(3);
+		destination.limit(7);
+		Subvolume.copyRows(source, 2, 8, destination, (5 + 1) * 2, 10, 6, 3);
+
+		assertEquals(3, source.position());
+		assertEquals(0, destination.position());
+		assertEquals(7, destination.limit());
+		destination.clear();
+		for (int y = 0; y < 4; y++) {
+			for (int x = 0; x < 10; x++) {
+				int expected = 0;
+				if (y >= 1 && x >= 2 && x < 8) {
+					expected = 8 * (y - 1) + x + 1;
+				}
+				assertEquals("row " + y + ", byte " + x, expected, destination.get(10 * y + x));
+			}
+		}
+	}
+
+	@Test
+	public void testMissingSliceDoesNotCostTheRun() throws Exception {
+		TileIndex missing = tile(0, 0, 2, 0);
+		AbstractTextureLoadAdapter loadAdapter = new AbstractTextureLoadAdapter(null) {
+			@Override
+			public TextureData2d loadToRam(TileIndex tileIndex) throws MissingTileException {
+				if (tileIndex.equals(missing)) {
+					throw new MissingTileException();
+				}
+				TextureData2d slice = new TextureData2d();
+				slice.setPixels(ByteBuffer.allocate(tileIndex.getZ() + 1));
+				return slice;
+			}
+		};
+		List<TextureData2d> slices = loadAdapter.loadSlicesToRam(tile(0, 0, 0, 0), 4);
+		assertEquals(4, slices.size());
+		assertEquals(1, slices.get(0).getPixels().capacity());
+		assertEquals(2, slices.get(1).getPixels().capacity());
+		assertNull(slices.get(2));
+		assertEquals(4, slices.get(3).getPixels().capacity());
+	}
+}
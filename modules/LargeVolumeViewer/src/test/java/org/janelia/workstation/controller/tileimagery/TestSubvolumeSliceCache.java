@@ -0,0 +1,50 @@
+package org.janelia.workstation.controller.tileimagery;
+
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+
+import com.google.common.cache.Cache;
+import org.janelia.workstation.geom.CoordinateAxis;
+import org.junit.Test;
+
+public class TestSubvolumeSliceCache {
+
+	private static AbstractTextureLoadAdapter adapter() {
+		return new AbstractTextureLoadAdapter(null) {
+			@Override
+			public TextureData2d loadToRam(TileIndex tileIndex) {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	private static TextureData2d slice(int bytes) {
+		TextureData2d slice = new TextureData2d();
+		slice.setPixels(ByteBuffer.allocate(bytes));
+		return slice;
+	}
+
+	@Test
+	public void testSlicesKeptForTheSameAdapter() {
+		AbstractTextureLoadAdapter adapter = adapter();
+		TileIndex tileIx = new TileIndex(1, 2, 3, 0, 5, TileIndex.IndexStyle.OCTREE, CoordinateAxis.Z);
+		TextureData2d slice = slice(64);
+		SubvolumeSliceCache.forAdapter(adapter).put(tileIx, slice);
+
+		Cache<TileIndex, TextureData2d> slices = SubvolumeSliceCache.forAdapter(adapter);
+		assertSame(slice, slices.getIfPresent(
+				new TileIndex(1, 2, 3, 0, 5, TileIndex.IndexStyle.OCTREE, CoordinateAxis.Z)));
+		assertNull(slices.getIfPresent(tileIx.nextSlice()));
+	}
+
+	@Test
+	public void testAnotherAdapterDropsSlices() {
+		TileIndex tileIx = new TileIndex(0, 0, 0, 0, 5, TileIndex.IndexStyle.OCTREE, CoordinateAxis.Z);
+		SubvolumeSliceCache.forAdapter(adapter()).put(tileIx, slice(64));
+
+		Cache<TileIndex, TextureData2d> slices = SubvolumeSliceCache.forAdapter(adapter());
+		assertNull(slices.getIfPresent(tileIx));
+		assertEquals(0, slices.size());
+	}
+}
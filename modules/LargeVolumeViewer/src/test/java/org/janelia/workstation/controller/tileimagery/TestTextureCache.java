@@ -0,0 +1,115 @@
+package org.janelia.workstation.controller.tileimagery;
+
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+
+import org.janelia.workstation.geom.CoordinateAxis;
+import org.junit.Test;
+
+public class TestTextureCache {
+
+	private static final int TILE_BYTES = 1000;
+
+	private TileTexture createTexture(int x, int zoom) {
+		TileIndex index = new TileIndex(x, 0, 0, zoom, 3, TileIndex.IndexStyle.OCTREE, CoordinateAxis.Z);
+		TileTexture texture = new TileTexture(index, null);
+		TextureData2d data = new TextureData2d();
+		data.setWidth(10);
+		data.setUsedWidth(10);
+		data.setHeight(50);
+		data.setChannelCount(1);
+		data.setBitDepth(16);
+		ByteBuffer pixels = ByteBuffer.allocate(TILE_BYTES);
+		pixels.put(0, (byte) x);
+		data.setPixels(pixels);
+		texture.setTextureData(new TextureData2dGL(data));
+		texture.setLoadStatus(TileTexture.LoadStatus.RAM_LOADED);
+		return texture;
+	}
+
+	private long entryBytes() {
+		TextureCache cache = new TextureCache(Long.MAX_VALUE);
+		cache.add(createTexture(0, 0));
+		return cache.getByteSize();
+	}
+
+	@Test
+	public void testPixelsMoveOffHeap() {
+		TextureCache cache = new TextureCache(10 * entryBytes());
+		TileTexture texture = createTexture(7, 0);
+		cache.add(texture);
+		ByteBuffer pixels = texture.getTextureData().getPixels();
+		assertTrue(pixels.isDirect());
+		assertEquals(TILE_BYTES, pixels.capacity());
+		assertEquals(7, pixels.get(0));
+		assertEquals(entryBytes(), cache.getByteSize());
+	}
+
+	@Test
+	public void testByteBudgetIsEnforced() {
+		TextureCache cache = new TextureCache(3 * entryBytes());
+		for (int x = 0; x < 5; ++x) {
+			cache.add(createTexture(x, 0));
+		}
+		assertEquals(3, cache.size());
+		assertEquals(2, cache.getEvictionCount());
+		assertTrue(cache.getByteSize() <= cache.getMaxBytes());
+		// least recently used textures went first
+		assertNull(cache.get(createTexture(0, 0).getIndex()));
+		assertNotNull(cache.get(createTexture(4, 0).getIndex()));
+	}
+
+	@Test
+	public void testDisplayedTexturesOutliveFutureTextures() {
+		TextureCache cache = new TextureCache(3 * entryBytes());
+		TileTexture displayed = createTexture(0, 0);
+		cache.add(displayed);
+		assertTrue(cache.markHistorical(displayed));
+		cache.add(createTexture(1, 0));
+		cache.add(createTexture(2, 0));
+		cache.add(createTexture(3, 0));
+		assertSame(displayed, cache.get(displayed.getIndex()));
+		assertNull(cache.get(createTexture(1, 0).getIndex()));
+	}
+
+	@Test
+	public void testPersistentTexturesEvictedLast() {
+		TextureCache cache = new TextureCache(2 * entryBytes());
+		TileTexture lowRes = createTexture(0, 3);
+		cache.add(lowRes);
+		TileTexture displayed = createTexture(1, 0);
+		cache.add(displayed);
+		cache.markHistorical(displayed);
+		cache.add(createTexture(2, 0));
+		assertSame(lowRes, cache.get(lowRes.getIndex()));
+		assertNull(cache.get(displayed.getIndex()));
+	}
+
+	@Test
+	public void testHitAndMissCounts() {
+		TextureCache cache = new TextureCache(10 * entryBytes());
+		TileTexture texture = createTexture(0, 0);
+		cache.add(texture);
+		cache.get(texture.getIndex());
+		cache.get(createTexture(1, 0).getIndex());
+		assertEquals(1, cache.getHitCount());
+		assertEquals(1, cache.getMissCount());
+	}
+
+	@Test
+	public void testEvictedMemoryIsRecycled() {
+		TextureCache cache = new TextureCache(entryBytes());
+		TileTexture first = createTexture(0, 0);
+		cache.add(first);
+		ByteBuffer firstPixels = first.getTextureData().getPixels();
+		cache.add(createTexture(1, 0));
+		assertEquals(0, cache.popObsoleteTextureIds().length);
+		assertNull(first.getTextureData());
+		TileTexture third = createTexture(2, 0);
+		cache.add(third);
+		assertSame(firstPixels, third.getTextureData().getPixels());
+		assertEquals(2, third.getTextureData().getPixels().get(0));
+	}
+
+}
@@ -0,0 +1,113 @@
+package org.janelia.workstation.controller.tileimagery;
+
+import static org.junit.Assert.*;
+
+import java.awt.Transparency;
+import java.awt.color.ColorSpace;
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class TestTextureData2d {
+
+	private static BufferedImage createImage(int type, int width, int height) {
+		BufferedImage image = new BufferedImage(width, height, type);
+		fillRandom(image.getRaster());
+		return image;
+	}
+
+	// Two channel 16-bit image, like the multichannel octree tiles
+	private static BufferedImage createTwoChannelImage(int width, int height) {
+		ComponentColorModel colorModel = new ComponentColorModel(
+				ColorSpace.getInstance(ColorSpace.CS_GRAY), true, false,
+				Transparency.TRANSLUCENT, DataBuffer.TYPE_USHORT);
+		WritableRaster raster = colorModel.createCompatibleWritableRaster(width, height);
+		fillRandom(raster);
+		return new BufferedImage(colorModel, raster, false, null);
+	}
+
+	private static void fillRandom(WritableRaster raster) {
+		Random random = new Random(42);
+		int max = (1 << DataBuffer.getDataTypeSize(raster.getDataBuffer().getDataType())) - 1;
+		for (int y = 0; y < raster.getHeight(); ++y)
+			for (int x = 0; x < raster.getWidth(); ++x)
+				for (int b = 0; b < raster.getNumBands(); ++b)
+					raster.setSample(x, y, b, random.nextInt(max + 1));
+	}
+
+	// Pixel by pixel reference for the expected texture layout
+	private static void assertTextureMatches(BufferedImage image, TextureData2d texture) {
+		Raster raster = image.getRaster();
+		int channels = raster.getNumBands();
+		assertEquals(0, texture.getWidth() % 8);
+		assertEquals(image.getWidth(), texture.getUsedWidth());
+		ByteBuffer pixels = texture.getPixels().duplicate().order(ByteOrder.nativeOrder());
+		int[] pixel = new int[channels];
+		int index = 0;
+		for (int y = 0; y < image.getHeight(); ++y) {
+			for (int x = 0; x < texture.getWidth(); ++x) {
+				raster.getPixel(Math.min(x, image.getWidth() - 1), y, pixel);
+				for (int c = 0; c < channels; ++c) {
+					int actual;
+					if (texture.getBitDepth() == 16) {
+						actual = pixels.getShort(2 * index) & 0xffff;
+					} else {
+						actual = pixels.get(index) & 0xff;
+					}
+					assertEquals("pixel " + x + "," + y + " channel " + c, pixel[c], actual);
+					index += 1;
+				}
+			}
+		}
+	}
+
+	@Test
+	public void test8BitWithPadding() {
+		BufferedImage image = createImage(BufferedImage.TYPE_BYTE_GRAY, 13, 5);
+		TextureData2d texture = new TextureData2d();
+		texture.loadRenderedImage(image);
+		assertEquals(16, texture.getWidth());
+		assertEquals(8, texture.getBitDepth());
+		assertTextureMatches(image, texture);
+	}
+
+	@Test
+	public void test16BitWithoutPadding() {
+		BufferedImage image = createImage(BufferedImage.TYPE_USHORT_GRAY, 16, 4);
+		TextureData2d texture = new TextureData2d();
+		texture.loadRenderedImage(image);
+		assertEquals(16, texture.getWidth());
+		assertEquals(16, texture.getBitDepth());
+		assertTextureMatches(image, texture);
+	}
+
+	@Test
+	public void test16BitTwoChannels() {
+		BufferedImage image = createTwoChannelImage(21, 7);
+		TextureData2d texture = new TextureData2d();
+		texture.loadRenderedImage(image);
+		assertEquals(2, texture.getChannelCount());
+		assertEquals(24, texture.getWidth());
+		assertTextureMatches(image, texture);
+	}
+
+	@Test
+	public void testSerializedPixelsAreShared() {
+		BufferedImage image = createImage(BufferedImage.TYPE_USHORT_GRAY, 11, 3);
+		TextureData2d texture = new TextureData2d();
+		texture.loadRenderedImage(image);
+		TextureData2d copy = new TextureData2d(texture.copyToByteArray());
+		assertEquals(texture.getWidth(), copy.getWidth());
+		assertEquals(texture.getPixels().capacity(), copy.getPixels().capacity());
+		texture.getPixels().rewind();
+		assertEquals(texture.getPixels(), copy.getPixels());
+	}
+
+}
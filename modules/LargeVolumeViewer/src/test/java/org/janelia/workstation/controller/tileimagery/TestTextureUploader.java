@@ -0,0 +1,65 @@
+package org.janelia.workstation.controller.tileimagery;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class TestTextureUploader {
+
+	private static final TextureObjectPool.Key TILE_KEY = new TextureObjectPool.Key(1024, 1024, 1, 2, 3);
+	private static final TextureObjectPool.Key EDGE_KEY = new TextureObjectPool.Key(512, 1024, 1, 2, 3);
+
+	@Test
+	public void testTexturesAreReusedBySizeAndFormat() {
+		TextureObjectPool pool = new TextureObjectPool(10);
+		pool.register(7, TILE_KEY);
+		pool.register(8, EDGE_KEY);
+		assertTrue(pool.recycle(7));
+		assertTrue(pool.recycle(8));
+		assertFalse(pool.recycle(9)); // unknown texture
+		assertEquals(2, pool.getIdleCount());
+
+		assertEquals(7, pool.take(new TextureObjectPool.Key(1024, 1024, 1, 2, 3)));
+		assertEquals(0, pool.take(TILE_KEY));
+		assertEquals(0, pool.take(new TextureObjectPool.Key(512, 1024, 1, 2, 5)));
+		assertEquals(8, pool.take(EDGE_KEY));
+		assertEquals(2, pool.getReuseCount());
+	}
+
+	@Test
+	public void testIdleTexturesAreLimited() {
+		TextureObjectPool pool = new TextureObjectPool(2);
+		for (int id = 1; id <= 3; ++id) {
+			pool.register(id, TILE_KEY);
+		}
+		assertTrue(pool.recycle(1));
+		assertTrue(pool.recycle(2));
+		assertFalse(pool.recycle(3)); // pool is full; caller deletes it
+		int[] drained = pool.drain();
+		assertEquals(2, drained.length);
+		assertEquals(0, pool.getIdleCount());
+		assertFalse(pool.recycle(1)); // forgotten after draining
+	}
+
+	@Test
+	public void testRecycleReturnsTexturesToDelete() {
+		TextureUploader uploader = new TextureUploader(1000, 0, 1);
+		assertEquals(0, uploader.recycleTextures(new int[0]).length);
+		assertArrayEquals(new int[] {4, 5}, uploader.recycleTextures(new int[] {4, 5}));
+	}
+
+	@Test
+	public void testUploadBudgetIsPerFrame() {
+		TextureUploader uploader = new TextureUploader(1000, 0, 1);
+		assertTrue(uploader.reserve(5000)); // first upload of a frame always proceeds
+		assertFalse(uploader.reserve(10));
+		assertTrue(uploader.hasDeferredUploads());
+		assertEquals(1, uploader.getDeferredUploadCount());
+
+		uploader = new TextureUploader(1000, 0, 1);
+		assertTrue(uploader.reserve(400));
+		assertTrue(uploader.reserve(600));
+		assertFalse(uploader.reserve(1));
+	}
+
+}
@@ -0,0 +1,53 @@
+package org.janelia.workstation.controller.tileimagery;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class TestTileLoadMetrics {
+
+	private static final long MS = 1000000L;
+
+	@Test
+	public void testBucketsAreContiguous() {
+		for (int i = 1; i < 200; ++i) {
+			long lower = LatencyHistogram.bucketLowerBound(i);
+			assertEquals(i, LatencyHistogram.bucketIndex(lower));
+			assertEquals(i - 1, LatencyHistogram.bucketIndex(lower - 1));
+		}
+	}
+
+	@Test
+	public void testPercentilesAreApproximatelyRight() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (int i = 1; i <= 1000; ++i) {
+			histogram.recordNanos(i * MS);
+		}
+		assertEquals(1000, histogram.getCount());
+		assertEquals(500.5, histogram.getMeanMillis(), 0.01);
+		assertEquals(1000.0, histogram.getMaxMillis(), 0.01);
+		assertEquals(500, histogram.getPercentileMillis(50), 500 * 0.07);
+		assertEquals(950, histogram.getPercentileMillis(95), 950 * 0.07);
+		assertTrue(histogram.getPercentileMillis(100) <= 1000.0);
+		histogram.reset();
+		assertEquals(0, histogram.getCount());
+		assertEquals(0, histogram.getPercentileMillis(50), 0);
+	}
+
+	@Test
+	public void testCsv() {
+		TileLoadMetrics metrics = new TileLoadMetrics();
+		metrics.recordFetchDecode(40 * MS, 4096);
+		metrics.recordFetchDecode(15 * MS, 4096);
+		metrics.recordUpload(2 * MS, 2048);
+
+		String[] lines = metrics.toCsv().split("\n");
+		assertEquals(1 + TileLoadMetrics.Stage.values().length, lines.length);
+		assertEquals("stage,count,mean_ms,p50_ms,p95_ms,p99_ms,max_ms,bytes", lines[0]);
+		assertTrue(lines[2], lines[2].startsWith("fetch_decode,2,27.500,"));
+		assertTrue(lines[2], lines[2].endsWith(",8192"));
+		assertTrue(lines[3], lines[3].startsWith("upload,1,2.000,"));
+		assertTrue(lines[3], lines[3].endsWith(",2048"));
+	}
+
+}
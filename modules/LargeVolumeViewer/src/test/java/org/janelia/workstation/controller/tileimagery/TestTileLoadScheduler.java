@@ -0,0 +1,161 @@
+package org.janelia.workstation.controller.tileimagery;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.janelia.workstation.geom.CoordinateAxis;
+import org.junit.Test;
+
+public class TestTileLoadScheduler {
+
+	private final List<TileIndex> loaded = Collections.synchronizedList(new ArrayList<TileIndex>());
+
+	private static TileIndex tile(int x, int zoom) {
+		return new TileIndex(x, 0, 0, zoom, 3, TileIndex.IndexStyle.OCTREE, CoordinateAxis.Z);
+	}
+
+	private Runnable recordLoad(final TileIndex index, final CountDownLatch done) {
+		return new Runnable() {
+			@Override
+			public void run() {
+				loaded.add(index);
+				done.countDown();
+			}
+		};
+	}
+
+	// Occupies the only worker thread until the returned latch is released
+	private CountDownLatch blockWorker(TileLoadScheduler scheduler) throws InterruptedException {
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		scheduler.submit(tile(99, 0), TileLoadScheduler.Band.DISPLAY, new Runnable() {
+			@Override
+			public void run() {
+				started.countDown();
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		}, null);
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+		return release;
+	}
+
+	@Test
+	public void testBandsAndZoomLevelsAreOrdered() throws InterruptedException {
+		TileLoadScheduler scheduler = new TileLoadScheduler(1);
+		CountDownLatch release = blockWorker(scheduler);
+		CountDownLatch done = new CountDownLatch(4);
+		scheduler.submit(tile(1, 0), TileLoadScheduler.Band.PREFETCH, recordLoad(tile(1, 0), done), null);
+		scheduler.submit(tile(2, 3), TileLoadScheduler.Band.MIN_RES, recordLoad(tile(2, 3), done), null);
+		scheduler.submit(tile(3, 0), TileLoadScheduler.Band.DISPLAY, recordLoad(tile(3, 0), done), null);
+		scheduler.submit(tile(4, 2), TileLoadScheduler.Band.DISPLAY, recordLoad(tile(4, 2), done), null);
+		assertEquals(4, scheduler.getQueueDepth());
+		release.countDown();
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+		assertEquals(tile(4, 2), loaded.get(0)); // coarser display tile first
+		assertEquals(tile(3, 0), loaded.get(1));
+		assertEquals(tile(2, 3), loaded.get(2));
+		assertEquals(tile(1, 0), loaded.get(3));
+		scheduler.shutdown();
+	}
+
+	@Test
+	public void testDuplicateRequestsAreMerged() throws InterruptedException {
+		TileLoadScheduler scheduler = new TileLoadScheduler(1);
+		CountDownLatch release = blockWorker(scheduler);
+		final AtomicInteger loadCount = new AtomicInteger();
+		Runnable load = new Runnable() {
+			@Override
+			public void run() {
+				loadCount.incrementAndGet();
+			}
+		};
+		assertTrue(scheduler.submit(tile(1, 0), TileLoadScheduler.Band.PREFETCH, load, null));
+		assertFalse(scheduler.submit(tile(1, 0), TileLoadScheduler.Band.DISPLAY, load, null));
+		// A texture load replaces a queued volume cache load of the same tile
+		assertTrue(scheduler.submit(tile(2, 0), TileLoadScheduler.Band.RAM_CACHE, load, null));
+		assertTrue(scheduler.submit(tile(2, 0), TileLoadScheduler.Band.DISPLAY, load, null));
+		assertFalse(scheduler.submit(tile(2, 0), TileLoadScheduler.Band.RAM_CACHE, load, null));
+		assertEquals(2, scheduler.getQueueDepth());
+		CountDownLatch done = new CountDownLatch(1);
+		scheduler.submit(tile(3, 0), TileLoadScheduler.Band.RAM_CACHE, recordLoad(tile(3, 0), done), null);
+		release.countDown();
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+		assertEquals(2, loadCount.get());
+		scheduler.shutdown();
+	}
+
+	@Test
+	public void testUnwantedRequestsAreCancelled() throws InterruptedException {
+		TileLoadScheduler scheduler = new TileLoadScheduler(1);
+		CountDownLatch release = blockWorker(scheduler);
+		final AtomicInteger cancelCount = new AtomicInteger();
+		Runnable onCancel = new Runnable() {
+			@Override
+			public void run() {
+				cancelCount.incrementAndGet();
+			}
+		};
+		CountDownLatch done = new CountDownLatch(2);
+		scheduler.submit(tile(1, 0), TileLoadScheduler.Band.PREFETCH, recordLoad(tile(1, 0), done), onCancel);
+		scheduler.submit(tile(2, 0), TileLoadScheduler.Band.PREFETCH, recordLoad(tile(2, 0), done), onCancel);
+		scheduler.submit(tile(3, 0), TileLoadScheduler.Band.PREFETCH, recordLoad(tile(3, 0), done), onCancel);
+		// Still wanted by another band
+		scheduler.submit(tile(3, 0), TileLoadScheduler.Band.MIN_RES, recordLoad(tile(3, 0), done), onCancel);
+		scheduler.retainOnly(TileLoadScheduler.Band.PREFETCH, Collections.singleton(tile(2, 0)));
+		assertEquals(1, cancelCount.get());
+		assertEquals(2, scheduler.getQueueDepth());
+		release.countDown();
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+		assertFalse(loaded.contains(tile(1, 0)));
+		assertTrue(loaded.contains(tile(2, 0)));
+		assertTrue(loaded.contains(tile(3, 0)));
+		scheduler.shutdown();
+	}
+
+	@Test
+	public void testResubmitRaisesQueuedPriority() throws InterruptedException {
+		TileLoadScheduler scheduler = new TileLoadScheduler(1);
+		CountDownLatch release = blockWorker(scheduler);
+		CountDownLatch done = new CountDownLatch(2);
+		scheduler.submit(tile(1, 0), TileLoadScheduler.Band.PREFETCH, recordLoad(tile(1, 0), done), null);
+		scheduler.submit(tile(2, 0), TileLoadScheduler.Band.MIN_RES, recordLoad(tile(2, 0), done), null);
+		assertTrue(scheduler.resubmit(tile(1, 0), TileLoadScheduler.Band.DISPLAY));
+		assertTrue(scheduler.resubmit(tile(99, 0), TileLoadScheduler.Band.DISPLAY)); // running
+		assertFalse(scheduler.resubmit(tile(3, 0), TileLoadScheduler.Band.DISPLAY)); // never queued
+		assertEquals(2, scheduler.getQueueDepth());
+		// no longer wanted for pre-fetch, but still for display
+		scheduler.cancel(TileLoadScheduler.Band.PREFETCH);
+		release.countDown();
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+		assertEquals(tile(1, 0), loaded.get(0));
+		assertEquals(tile(2, 0), loaded.get(1));
+		scheduler.shutdown();
+	}
+
+	@Test
+	public void testShutdownDropsQueuedLoads() throws InterruptedException {
+		TileLoadScheduler scheduler = new TileLoadScheduler(1);
+		CountDownLatch release = blockWorker(scheduler);
+		CountDownLatch done = new CountDownLatch(1);
+		scheduler.submit(tile(1, 0), TileLoadScheduler.Band.DISPLAY, recordLoad(tile(1, 0), done), null);
+		scheduler.shutdown();
+		assertEquals(0, scheduler.getQueueDepth());
+		assertFalse(scheduler.submit(tile(2, 0), TileLoadScheduler.Band.DISPLAY, recordLoad(tile(2, 0), done), null));
+		// the running load finishes, and nothing starts after it
+		release.countDown();
+		assertFalse(done.await(200, TimeUnit.MILLISECONDS));
+		assertEquals(0, scheduler.getRunningCount());
+		assertTrue(loaded.isEmpty());
+	}
+
+}
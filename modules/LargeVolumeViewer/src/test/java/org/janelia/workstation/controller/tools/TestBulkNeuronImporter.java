@@ -0,0 +1,199 @@
+package org.janelia.workstation.controller.tools;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.janelia.model.domain.tiledMicroscope.TmNeuronMetadata;
+import org.janelia.workstation.controller.access.PartialCreateException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestBulkNeuronImporter {
+
+	private File directory;
+	private List<File> files;
+
+	@Before
+	public void createFiles() throws IOException {
+		directory = Files.createTempDirectory("bulk-import").toFile();
+		files = new ArrayList<>();
+		for (int f = 0; f < 23; f++) {
+			File swcFile = new File(directory, "neuron_" + f + ".swc");
+			Files.write(swcFile.toPath(), Arrays.asList("1 0 " + f + " 0 0 1 -1", "2 0 " + f + " 1 0 1 1"),
+					Charset.defaultCharset());
+			files.add(swcFile);
+		}
+	}
+
+	@After
+	public void deleteFiles() {
+		for (File file : directory.listFiles()) {
+			file.delete();
+		}
+		directory.delete();
+	}
+
+	private static TmNeuronMetadata neuronNamed(String name) {
+		TmNeuronMetadata neuron = new TmNeuronMetadata();
+		neuron.setName(name);
+		return neuron;
+	}
+
+	/**
+	 * stands in for the server: slow, and keeps track of how many batches it's creating at once
+	 */
+	private static class MockCreator implements BulkNeuronImporter.NeuronCreator {
+		final List<List<String>> batches = Collections.synchronizedList(new ArrayList<>());
+		final AtomicInteger inFlight = new AtomicInteger();
+		final AtomicInteger maxInFlight = new AtomicInteger();
+		int failOnBatch = -1;
+		boolean failPartly;
+
+		@Override
+		public List<TmNeuronMetadata> create(List<TmNeuronMetadata> neurons) throws Exception {
+			int current = inFlight.incrementAndGet();
+			maxInFlight.accumulateAndGet(current, Math::max);
+			try {
+				Thread.sleep(20);
+				List<String> names = new ArrayList<>();
+				for (TmNeuronMetadata neuron : neurons) {
+					names.add(neuron.getName());
+				}
+				int batch;
+				synchronized (batches) {
+					batch = batches.size();
+					batches.add(names);
+				}
+				if (batch == failOnBatch) {
+					if (failPartly) {
+						throw new PartialCreateException("server error", new IOException("server error"),
+								neurons.subList(0, 1));
+					}
+					throw new IOException("server error");
+				}
+				return neurons;
+			} finally {
+				inFlight.decrementAndGet();
+			}
+		}
+	}
+
+	@Test
+	public void testBatchesAllFiles() throws Exception {
+		MockCreator creator = new MockCreator();
+		BulkNeuronImporter importer = new BulkNeuronImporter(
+				(swcFile, swcData) -> neuronNamed(swcFile.getName() + ":" + swcData.getNodeList().size()),
+				creator, 4, 5, 2);
+		List<String> created = Collections.synchronizedList(new ArrayList<>());
+		AtomicInteger lastCount = new AtomicInteger();
+		int count = importer.importFiles(files, (neurons, createdCount, totalCount) -> {
+			for (TmNeuronMetadata neuron : neurons) {
+				created.add(neuron.getName());
+			}
+			lastCount.accumulateAndGet(createdCount, Math::max);
+			assertEquals(files.size(), totalCount);
+		});
+
+		assertEquals(files.size(), count);
+		assertEquals(files.size(), lastCount.get());
+		assertEquals(5, creator.batches.size());
+		assertTrue(creator.maxInFlight.get() <= 2);
+
+		// batches hold consecutive files, in order, whichever order they finish in
+		List<String> expected = new ArrayList<>();
+		for (File file : files) {
+			expected.add(file.getName() + ":2");
+		}
+		List<String> batched = new ArrayList<>();
+		List<List<String>> batches = new ArrayList<>(creator.batches);
+		batches.sort((a, b) -> expected.indexOf(a.get(0)) - expected.indexOf(b.get(0)));
+		for (List<String> batch : batches) {
+			assertTrue(batch.size() <= 5);
+			batched.addAll(batch);
+		}
+		assertEquals(expected, batched);
+		Collections.sort(created);
+		List<String> sortedExpected = new ArrayList<>(expected);
+		Collections.sort(sortedExpected);
+		assertEquals(sortedExpected, created);
+	}
+
+	@Test
+	public void testEmpty() throws Exception {
+		MockCreator creator = new MockCreator();
+		BulkNeuronImporter importer = new BulkNeuronImporter((swcFile, swcData) -> neuronNamed(swcFile.getName()),
+				creator, 2, 5, 2);
+		assertEquals(0, importer.importFiles(Collections.emptyList(),
+				(neurons, createdCount, totalCount) -> fail("nothing to create")));
+		assertTrue(creator.batches.isEmpty());
+	}
+
+	@Test
+	public void testCreateFailureStopsImport() throws Exception {
+		MockCreator creator = new MockCreator();
+		creator.failOnBatch = 0;
+		BulkNeuronImporter importer = new BulkNeuronImporter((swcFile, swcData) -> neuronNamed(swcFile.getName()),
+				creator, 2, 2, 1);
+		try {
+			importer.importFiles(files, (neurons, createdCount, totalCount) -> {
+			});
+			fail("expected an IOException");
+		} catch (IOException e) {
+			assertEquals("server error", e.getMessage());
+		}
+		// with one batch in flight, the import stops right after the failed batch
+		assertTrue(creator.batches.size() < 3);
+	}
+
+	@Test
+	public void testPartlyCreatedBatchIsReported() throws Exception {
+		MockCreator creator = new MockCreator();
+		creator.failOnBatch = 0;
+		creator.failPartly = true;
+		BulkNeuronImporter importer = new BulkNeuronImporter((swcFile, swcData) -> neuronNamed(swcFile.getName()),
+				creator, 2, 3, 1);
+		List<String> created = Collections.synchronizedList(new ArrayList<>());
+		try {
+			importer.importFiles(files, (neurons, createdCount, totalCount) -> {
+				for (TmNeuronMetadata neuron : neurons) {
+					created.add(neuron.getName());
+				}
+			});
+			fail("expected a PartialCreateException");
+		} catch (PartialCreateException e) {
+			assertEquals(1, e.getCreated().size());
+		}
+		// the one neuron the server did create still reaches the listener
+		assertEquals(Collections.singletonList(creator.batches.get(0).get(0)), created);
+	}
+
+	@Test
+	public void testBuildFailureStopsImport() throws Exception {
+		MockCreator creator = new MockCreator();
+		BulkNeuronImporter importer = new BulkNeuronImporter((swcFile, swcData) -> {
+			if (swcFile.equals(files.get(7))) {
+				throw new IllegalStateException("invalid file");
+			}
+			return neuronNamed(swcFile.getName());
+		}, creator, 2, 5, 2);
+		try {
+			importer.importFiles(files, (neurons, createdCount, totalCount) -> {
+			});
+			fail("expected an IllegalStateException");
+		} catch (IllegalStateException e) {
+			assertEquals("invalid file", e.getMessage());
+		}
+		assertEquals(1, creator.batches.size());
+	}
+
+}
@@ -0,0 +1,116 @@
+package org.janelia.workstation.geom;
+
+import static org.junit.Assert.*;
+
+import Jama.Matrix;
+import org.junit.Test;
+
+public class TestAffineTransform3d {
+
+	private static final Matrix VOX_TO_MICRON = new Matrix(new double[][]{
+			{0.25, 0.01, 0, 73500.0},
+			{0, 0.3, 0.02, 41000.0},
+			{0.05, 0, 1.0, 16900.0},
+			{0, 0, 0, 1},});
+
+	private static double[] jamaTransform(Matrix matrix, double x, double y, double z) {
+		Matrix result = matrix.times(new Matrix(new double[][]{{x,}, {y,}, {z,}, {1.0,},}));
+		return new double[]{result.get(0, 0), result.get(1, 0), result.get(2, 0)};
+	}
+
+	@Test
+	public void testMatchesJama() {
+		AffineTransform3d transform = AffineTransform3d.fromMatrix(VOX_TO_MICRON);
+		double[][] points = {{0, 0, 0}, {1, 2, 3}, {12345.5, 6789.25, 4321.0}, {-10, 20, -30}};
+		for (double[] point : points) {
+			double[] expected = jamaTransform(VOX_TO_MICRON, point[0], point[1], point[2]);
+			double[] actual = new double[3];
+			transform.transform(point[0], point[1], point[2], actual, 0);
+			assertArrayEquals(expected, actual, 1e-9);
+			float[] single = transform.transform(point[0], point[1], point[2]);
+			for (int i = 0; i < 3; i++) {
+				assertEquals((float) expected[i], single[i], 0);
+			}
+		}
+	}
+
+	@Test
+	public void testInverseRoundTrip() {
+		AffineTransform3d forward = AffineTransform3d.fromMatrix(VOX_TO_MICRON);
+		// 3x4 is accepted as well as 4x4
+		AffineTransform3d inverse = AffineTransform3d.fromMatrix(VOX_TO_MICRON.inverse().getMatrix(0, 2, 0, 3));
+		double[] point = new double[3];
+		forward.transform(100, 200, 300, point, 0);
+		inverse.transform(point[0], point[1], point[2], point, 0);
+		assertArrayEquals(new double[]{100, 200, 300}, point, 1e-6);
+	}
+
+	@Test
+	public void testBatchMatchesSingle() {
+		AffineTransform3d transform = AffineTransform3d.fromMatrix(VOX_TO_MICRON);
+		int count = 5;
+		double[] source = new double[3 * count + 2];
+		for (int i = 0; i < source.length; i++) {
+			source[i] = 17.5 * i;
+		}
+		float[] batch = new float[3 * count + 1];
+		transform.transform(source, 2, batch, 1, count);
+		float[] single = new float[3];
+		for (int i = 0; i < count; i++) {
+			transform.transform(source[2 + 3 * i], source[3 + 3 * i], source[4 + 3 * i], single, 0);
+			for (int j = 0; j < 3; j++) {
+				assertEquals(single[j], batch[1 + 3 * i + j], 0);
+			}
+		}
+	}
+
+	@Test
+	public void testBatchInPlace() {
+		AffineTransform3d transform = AffineTransform3d.fromMatrix(VOX_TO_MICRON);
+		float[] points = {1, 2, 3, 4, 5, 6};
+		float[] expected = new float[6];
+		transform.transform(points, 0, expected, 0, 2);
+		transform.transform(points, 0, points, 0, 2);
+		assertArrayEquals(expected, points, 0);
+
+		double[] doublePoints = {1, 2, 3, 4, 5, 6};
+		double[] expectedDoubles = new double[6];
+		transform.transform(doublePoints, 0, expectedDoubles, 0, 2);
+		transform.transform(doublePoints, 0, doublePoints, 0, 2);
+		assertArrayEquals(expectedDoubles, doublePoints, 0);
+	}
+
+	@Test
+	public void testBatchOutOfRange() {
+		AffineTransform3d transform = AffineTransform3d.fromMatrix(VOX_TO_MICRON);
+		float[] points = new float[6];
+		float[] destination = new float[6];
+		try {
+			transform.transform(points, 1, destination, 0, 2);
+			fail("source too short");
+		} catch (ArrayIndexOutOfBoundsException expected) {
+		}
+		// nothing written before the check fails
+		try {
+			transform.transform(new float[]{1, 1, 1, 1, 1, 1}, 0, destination, 3, 2);
+			fail("destination too short");
+		} catch (ArrayIndexOutOfBoundsException expected) {
+		}
+		assertArrayEquals(new float[6], destination, 0);
+	}
+
+	@Test
+	public void testRejectsWrongShape() {
+		try {
+			AffineTransform3d.fromMatrix(new Matrix(3, 3));
+			fail("3x3 matrix");
+		} catch (IllegalArgumentException expected) {
+		}
+		try {
+			new AffineTransform3d(new double[9]);
+			fail("9 coefficients");
+		} catch (IllegalArgumentException expected) {
+		}
+	}
+
+}
@@ -0,0 +1,160 @@
+package org.janelia.workstation.gui.large_volume_viewer.annotation;
+
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.janelia.workstation.controller.tileimagery.raster.VoxelIndex;
+import org.janelia.workstation.geom.Vec3;
+import org.junit.Test;
+
+public class TestPointRefiner {
+
+	private interface Intensity {
+		double at(int x, int y, int z);
+	}
+
+	/** A single channel volume computed voxel by voxel, counting loads. */
+	private static class FakeSource implements PointRefiner.NeighborhoodSource {
+		final Intensity intensity;
+		Object volumeKey = new Object();
+		boolean complete = true;
+		int loads;
+
+		FakeSource(Intensity intensity) {
+			this.intensity = intensity;
+		}
+
+		@Override
+		public Object getVolumeKey() {
+			return volumeKey;
+		}
+
+		@Override
+		public PointRefiner.Block load(int x0, int y0, int z0, int x1, int y1, int z1) {
+			loads++;
+			int width = x1 - x0 + 1;
+			int height = y1 - y0 + 1;
+			long[] power = new long[width * height * (z1 - z0 + 1)];
+			for (int z = z0; z <= z1; z++) {
+				for (int y = y0; y <= y1; y++) {
+					for (int x = x0; x <= x1; x++) {
+						long value = Math.round(intensity.at(x, y, z));
+						power[(x - x0) + width * ((y - y0) + height * (z - z0))] = value * value;
+					}
+				}
+			}
+			return new PointRefiner.Block(x0, y0, z0, x1, y1, z1, width, height, power, complete);
+		}
+	}
+
+	private static Intensity blob(double cx, double cy, double cz, double sigma, double background) {
+		return (x, y, z) -> background + 1000 * Math.exp(
+				-((x - cx) * (x - cx) + (y - cy) * (y - cy) + (z - cz) * (z - cz)) / (2 * sigma * sigma));
+	}
+
+	private static void assertNear(Vec3 expected, Vec3 actual, double tolerance) {
+		assertEquals(actual.toString(), expected.getX(), actual.getX(), tolerance);
+		assertEquals(actual.toString(), expected.getY(), actual.getY(), tolerance);
+		assertEquals(actual.toString(), expected.getZ(), actual.getZ(), tolerance);
+	}
+
+	@Test
+	public void testMaxIntensityZ() {
+		PointRefiner refiner = new PointRefiner(new FakeSource(blob(50, 60, 23, 2, 10)));
+		Vec3 refined = refiner.refine(new Vec3(50.2, 59.9, 20), PointRefiner.Algorithm.MAX_INTENSITY_Z);
+		assertNear(new Vec3(50.2, 59.9, 23), refined, 1e-9);
+	}
+
+	@Test
+	public void testNoiseKeepsClick() {
+		PointRefiner refiner = new PointRefiner(new FakeSource((x, y, z) -> 100 + ((x * 7 + y * 3 + z) % 3)));
+		Vec3 click = new Vec3(50, 60, 20);
+		for (PointRefiner.Algorithm algorithm : PointRefiner.Algorithm.values()) {
+			assertSame(algorithm.toString(), click, refiner.refine(click, algorithm));
+		}
+	}
+
+	@Test
+	public void testCentroid() {
+		PointRefiner refiner = new PointRefiner(new FakeSource(blob(51.4, 59.2, 21.6, 1.2, 10)));
+		Vec3 refined = refiner.refine(new Vec3(50, 60, 21), PointRefiner.Algorithm.CENTROID);
+		assertNear(new Vec3(51.4, 59.2, 21.6), refined, 0.3);
+	}
+
+	@Test
+	public void testGaussianFit() {
+		PointRefiner refiner = new PointRefiner(new FakeSource(blob(51.3, 59.8, 21.4, 1.5, 0)));
+		Vec3 refined = refiner.refine(new Vec3(50, 60, 21), PointRefiner.Algorithm.GAUSSIAN_FIT);
+		assertNear(new Vec3(51.3, 59.8, 21.4), refined, 0.1);
+	}
+
+	@Test
+	public void testRidge() {
+		// a neurite running along x
+		PointRefiner refiner = new PointRefiner(new FakeSource((x, y, z) ->
+				10 + 1000 * Math.exp(-((y - 64) * (y - 64) + (z - 24) * (z - 24)) / 8.0)));
+		Vec3 refined = refiner.refine(new Vec3(50, 60, 21), PointRefiner.Algorithm.RIDGE);
+		assertEquals(64, refined.getY(), 0);
+		assertEquals(24, refined.getZ(), 0);
+	}
+
+	@Test
+	public void testCachedBlocks() {
+		FakeSource source = new FakeSource(blob(50, 60, 23, 2, 10));
+		PointRefiner refiner = new PointRefiner(source);
+		refiner.refine(new Vec3(50, 60, 20));
+		refiner.refine(new Vec3(55, 62, 22));
+		assertEquals(1, source.loads);
+		assertEquals(1, refiner.getCacheHitCount());
+
+		refiner.refine(new Vec3(500, 60, 20));
+		assertEquals(2, source.loads);
+		// the first block is still cached
+		refiner.refine(new Vec3(52, 58, 21));
+		assertEquals(2, source.loads);
+
+		// another volume drops everything
+		source.volumeKey = new Object();
+		refiner.refine(new Vec3(52, 58, 21));
+		assertEquals(3, source.loads);
+		assertEquals(3, refiner.getCacheMissCount());
+		assertEquals(5, refiner.getLatencyHistogram().getCount());
+	}
+
+	@Test
+	public void testIncompleteBlocksAreNotCached() {
+		FakeSource source = new FakeSource(blob(50, 60, 23, 2, 10));
+		source.complete = false;
+		PointRefiner refiner = new PointRefiner(source);
+		Vec3 click = new Vec3(50.2, 59.9, 20);
+		assertNear(new Vec3(50.2, 59.9, 23), refiner.refine(click, PointRefiner.Algorithm.MAX_INTENSITY_Z), 1e-9);
+		refiner.refine(click);
+		assertEquals(2, source.loads);
+		assertEquals(0, refiner.getCacheHitCount());
+
+		// once the tiles arrive, the block is kept
+		source.complete = true;
+		refiner.refine(click);
+		refiner.refine(click);
+		assertEquals(3, source.loads);
+		assertEquals(1, refiner.getCacheHitCount());
+	}
+
+	@Test
+	public void testBlockFromRaster() {
+		// two channels, 16 bit, with the empty far faces a Subvolume has
+		VoxelIndex extent = new VoxelIndex(3, 2, 2);
+		ByteBuffer raster = ByteBuffer.allocateDirect(3 * 2 * 2 * 2 * 2).order(ByteOrder.nativeOrder());
+		// voxel x = 1 holds 3 and 4, voxel x = 0 an intensity above the signed range
+		raster.putShort(4, (short) 3);
+		raster.putShort(6, (short) 4);
+		raster.putShort(0, (short) 40000);
+		PointRefiner.Block block = PointRefiner.Block.fromRaster(10, 20, 30, 11, 20, 30, extent, raster, 2, 2, true);
+		assertEquals(25, block.power[block.index(11, 20, 30)]);
+		assertEquals(40000L * 40000L, block.power[block.index(10, 20, 30)]);
+		assertTrue(block.contains(10, 20, 30, 11, 20, 30));
+		assertFalse(block.contains(10, 20, 30, 12, 20, 30));
+	}
+}
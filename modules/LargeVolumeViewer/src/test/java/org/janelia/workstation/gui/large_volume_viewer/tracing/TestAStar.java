@@ -4,9 +4,12 @@ import static org.junit.Assert.*;
 
 import java.io.File;
 import java.net.MalformedURLException;
+import java.nio.ByteBuffer;
 import java.util.List;
+import java.util.Random;
 import org.janelia.workstation.controller.tileimagery.SharedVolumeImage;
 import org.janelia.workstation.controller.tileimagery.Subvolume;
+import org.janelia.workstation.controller.tileimagery.raster.VoxelIndex;
 import org.janelia.workstation.octree.ZoomLevel;
 import org.janelia.workstation.octree.ZoomedVoxelIndex;
 import org.janelia.it.jacs.model.TestCategories;
@@ -15,6 +18,85 @@ import org.junit.experimental.categories.Category;
 
 public class TestAStar {
 
+    private static final ZoomLevel ZOOM = new ZoomLevel(0);
+    private static final ZoomedVoxelIndex ORIGIN = new ZoomedVoxelIndex(ZOOM, 1000, 2000, 3000);
+    private static final int SX = 40, SY = 30, SZ = 20;
+
+    // A dim, noisy 8-bit volume with a bright tube bending around a corner:
+    // along x from (5, 5, 10) to (30, 5, 10), then along y to (30, 25, 10)
+    private static AStar bentTube() {
+        Random random = new Random(3);
+        ByteBuffer raster = ByteBuffer.allocate(SX * SY * SZ);
+        for (int i = 0; i < raster.capacity(); i++) {
+            raster.put(i, (byte) (10 + random.nextInt(30)));
+        }
+        for (int x = 5; x <= 30; x++) {
+            raster.put(x + SX * (5 + SY * 10), (byte) 250);
+        }
+        for (int y = 5; y <= 25; y++) {
+            raster.put(30 + SX * (y + SY * 10), (byte) 250);
+        }
+        return new AStar(raster, 1, 1, new VoxelIndex(SX, SY, SZ), ORIGIN);
+    }
+
+    private static ZoomedVoxelIndex local(int x, int y, int z) {
+        return new ZoomedVoxelIndex(ZOOM, ORIGIN.getX() + x, ORIGIN.getY() + y, ORIGIN.getZ() + z);
+    }
+
+    private static void assertFollowsTube(List<ZoomedVoxelIndex> path) {
+        assertNotNull(path);
+        assertEquals(local(5, 5, 10), path.get(0));
+        assertEquals(local(30, 25, 10), path.get(path.size() - 1));
+        for (int i = 1; i < path.size(); i++) {
+            ZoomedVoxelIndex a = path.get(i - 1);
+            ZoomedVoxelIndex b = path.get(i);
+            int step = Math.max(Math.abs(a.getX() - b.getX()),
+                    Math.max(Math.abs(a.getY() - b.getY()), Math.abs(a.getZ() - b.getZ())));
+            assertEquals("step " + i, 1, step);
+        }
+        for (ZoomedVoxelIndex p : path) {
+            int x = p.getX() - ORIGIN.getX();
+            int y = p.getY() - ORIGIN.getY();
+            assertEquals(10, p.getZ() - ORIGIN.getZ());
+            assertTrue(p.toString(), (y == 5 && x <= 30) || (x == 30 && y >= 5));
+        }
+    }
+
+    @Test
+    public void testTracesSyntheticTube() {
+        AStar astar = bentTube();
+        List<ZoomedVoxelIndex> path = astar.trace(local(5, 5, 10), local(30, 25, 10), 10.0);
+        assertFollowsTube(path);
+        assertTrue(astar.getCheckedVoxelCount() > 0);
+        assertTrue(astar.getCheckedVoxelCount() < SX * SY * SZ);
+    }
+
+    @Test
+    public void testBidirectionalFindsEquallyCheapPath() {
+        AStar astar = bentTube();
+        List<ZoomedVoxelIndex> path = astar.trace(local(5, 5, 10), local(30, 25, 10), 10.0);
+        double cost = astar.pathCost(path);
+
+        astar.setBidirectional(true);
+        List<ZoomedVoxelIndex> bidirectionalPath = astar.trace(local(5, 5, 10), local(30, 25, 10), 10.0);
+        assertFollowsTube(bidirectionalPath);
+        assertEquals(cost, astar.pathCost(bidirectionalPath), cost * 1e-9);
+    }
+
+    @Test
+    public void testEndpoints() {
+        AStar astar = bentTube();
+        List<ZoomedVoxelIndex> path = astar.trace(local(7, 5, 10), local(7, 5, 10), 10.0);
+        assertEquals(1, path.size());
+        assertEquals(local(7, 5, 10), path.get(0));
+        // off the edge of the subvolume
+        assertNull(astar.trace(local(7, 5, 10), local(SX, 5, 10), 10.0));
+        // the far corner is reachable
+        path = astar.trace(local(0, 0, 0), local(SX - 1, SY - 1, SZ - 1), 10.0);
+        assertEquals(local(SX - 1, SY - 1, SZ - 1), path.get(path.size() - 1));
+    }
+
+
     @Test
     @Category(TestCategories.PrototypeTests.class) // mark this as prototype until octree folder can be properly setup
     public void testTracePath() {
@@ -0,0 +1,200 @@
+package org.janelia.workstation.gui.large_volume_viewer.tracing;
+
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.janelia.model.domain.tiledMicroscope.TmGeoAnnotation;
+import org.janelia.model.domain.tiledMicroscope.TmNeuronMetadata;
+import org.janelia.workstation.controller.tileimagery.VoxelPosition;
+import org.janelia.workstation.controller.tileimagery.raster.VoxelIndex;
+import org.janelia.workstation.geom.Vec3;
+import org.janelia.workstation.octree.ZoomLevel;
+import org.janelia.workstation.octree.ZoomedVoxelIndex;
+import org.junit.Test;
+
+public class TestPathTraceService {
+
+	private static final int SIZE_X = 96;
+	private static final int SIZE_Y = 96;
+	private static final int SIZE_Z = 24;
+	private static final ZoomLevel ZOOM = new ZoomLevel(0);
+
+	// serves the tube phantom, dark outside it, and counts loads
+	private static class PhantomSource implements PathTraceService.VolumeSource {
+		final PathTraceService.Block phantom = new PathTraceService.Block(
+				MeasureAStarTime.tubePhantom(new Random(1), SIZE_X, SIZE_Y, SIZE_Z, new int[2][]), 2, 1,
+				new VoxelIndex(SIZE_X, SIZE_Y, SIZE_Z), new ZoomedVoxelIndex(ZOOM, 0, 0, 0));
+		final AtomicInteger loads = new AtomicInteger();
+
+		@Override
+		public ZoomedVoxelIndex voxelFor(Vec3 xyz) {
+			return new ZoomedVoxelIndex(ZOOM, (int) xyz.getX(), (int) xyz.getY(), (int) xyz.getZ());
+		}
+
+		@Override
+		public double[] getVoxelMicrometers() {
+			return new double[]{0.3, 0.3, 1.0};
+		}
+
+		@Override
+		public PathTraceService.Block load(ZoomedVoxelIndex corner1, ZoomedVoxelIndex corner2) {
+			loads.incrementAndGet();
+			VoxelIndex extent = new VoxelIndex(corner2.getX() - corner1.getX() + 1,
+					corner2.getY() - corner1.getY() + 1, corner2.getZ() - corner1.getZ() + 1);
+			ByteBuffer raster = ByteBuffer.allocate(2 * extent.getX() * extent.getY() * extent.getZ())
+					.order(phantom.raster.order());
+			int i = 0;
+			for (int z = corner1.getZ(); z <= corner2.getZ(); z++) {
+				for (int y = corner1.getY(); y <= corner2.getY(); y++) {
+					for (int x = corner1.getX(); x <= corner2.getX(); x++, i++) {
+						if (x >= 0 && y >= 0 && z >= 0 && x < SIZE_X && y < SIZE_Y && z < SIZE_Z) {
+							raster.putShort(2 * i, (short) phantom.getIntensity(new VoxelPosition(x, y, z)));
+						}
+					}
+				}
+			}
+			return new PathTraceService.Block(raster, 2, 1, extent, corner1);
+		}
+	}
+
+	// the center of the phantom's tube, from 0 to 1 along it
+	private static Vec3 alongTube(double t) {
+		return new Vec3(
+				Math.round(SIZE_X * (0.1 + 0.8 * t)),
+				Math.round(SIZE_Y * (0.5 + 0.3 * Math.sin(4 * Math.PI * t))),
+				Math.round(SIZE_Z * (0.5 + 0.3 * Math.cos(3 * Math.PI * t))));
+	}
+
+	private static TmGeoAnnotation add(TmNeuronMetadata neuron, long id, TmGeoAnnotation parent, Vec3 xyz) {
+		TmGeoAnnotation annotation = new TmGeoAnnotation(id, parent == null ? neuron.getId() : parent.getId(),
+				neuron.getId(), xyz.getX(), xyz.getY(), xyz.getZ(), null, null, null);
+		if (parent == null) {
+			neuron.addRootAnnotation(annotation);
+		} else {
+			parent.addChild(annotation);
+		}
+		neuron.getGeoAnnotationMap().put(id, annotation);
+		return annotation;
+	}
+
+	private static Map<Long, TracedPathSegment> collect(PathTraceService service) {
+		Map<Long, TracedPathSegment> segments = Collections.synchronizedMap(new HashMap<>());
+		service.setPathTraceListener((neuronId, path) -> {
+			TracedPathSegment segment = (TracedPathSegment) path;
+			assertNull(segments.put(segment.getRequest().getAnchor1Guid(), segment));
+		});
+		return segments;
+	}
+
+	private static VoxelPosition voxel(Vec3 xyz) {
+		return new VoxelPosition((int) xyz.getX(), (int) xyz.getY(), (int) xyz.getZ());
+	}
+
+	@Test
+	public void testTracesNeuron() throws InterruptedException {
+		// anchors along the tube, with a short branch off the third
+		TmNeuronMetadata neuron = new TmNeuronMetadata();
+		neuron.setId(1L);
+		TmGeoAnnotation parent = null;
+		List<TmGeoAnnotation> anchors = new ArrayList<>();
+		for (int i = 0; i <= 8; i++) {
+			parent = add(neuron, 10 + i, parent, alongTube(i / 8.0));
+			anchors.add(parent);
+		}
+		Vec3 third = alongTube(2 / 8.0);
+		add(neuron, 30, anchors.get(2), new Vec3(third.getX(), third.getY() + 5, third.getZ()));
+
+		PhantomSource source = new PhantomSource();
+		PathTraceService service = new PathTraceService(source, 2);
+		Map<Long, TracedPathSegment> segments = collect(service);
+		PathTraceService.Batch batch = service.traceNeuron(neuron);
+		assertTrue(batch.awaitCompletion(60, TimeUnit.SECONDS));
+		service.shutdown();
+
+		assertEquals(9, batch.getRequestCount());
+		assertEquals(9, batch.getTracedCount());
+		assertEquals(0, batch.getFailedCount());
+		assertTrue(batch.getExaminedVoxelCount() > 0);
+		assertTrue(batch.isDone());
+		assertTrue("loads shared: " + source.loads, source.loads.get() < 9);
+		assertEquals(9, segments.size());
+		for (TmGeoAnnotation anchor : neuron.getGeoAnnotationMap().values()) {
+			TmGeoAnnotation anchorParent = neuron.getParentOf(anchor);
+			TracedPathSegment segment = segments.get(anchor.getId());
+			if (anchorParent == null) {
+				assertNull(segment);
+				continue;
+			}
+			assertEquals(anchorParent.getId().longValue(), segment.getRequest().getAnchor2Guid());
+			assertEquals(Long.valueOf(1), segment.getNeuronID());
+			List<VoxelPosition> path = segment.getPath();
+			assertEquals(voxel(new Vec3(anchor.getX(), anchor.getY(), anchor.getZ())), path.get(0));
+			assertEquals(voxel(new Vec3(anchorParent.getX(), anchorParent.getY(), anchorParent.getZ())),
+					path.get(path.size() - 1));
+			assertEquals(path.size(), segment.getIntensities().size());
+		}
+
+		// the same path as tracing the segment on its own, as the worker does
+		Vec3 from = alongTube(4 / 8.0);
+		Vec3 to = alongTube(3 / 8.0);
+		ZoomedVoxelIndex start = source.voxelFor(from);
+		ZoomedVoxelIndex goal = source.voxelFor(to);
+		AStar astar = source.load(
+				new ZoomedVoxelIndex(ZOOM, Math.min(start.getX(), goal.getX()) - 10,
+						Math.min(start.getY(), goal.getY()) - 10, Math.min(start.getZ(), goal.getZ()) - 10),
+				new ZoomedVoxelIndex(ZOOM, Math.max(start.getX(), goal.getX()) + 10,
+						Math.max(start.getY(), goal.getY()) + 10, Math.max(start.getZ(), goal.getZ()) + 10))
+				.newAStar();
+		astar.setVoxelSizes(source.getVoxelMicrometers());
+		assertEquals(PathTraceToParentWorker.reducePath(astar.trace(start, goal, 60)), segments.get(14L).getPath());
+	}
+
+	@Test
+	public void testSeparatesDistantTracesAndCountsFailures() throws InterruptedException {
+		PhantomSource source = new PhantomSource() {
+			@Override
+			public PathTraceService.Block load(ZoomedVoxelIndex corner1, ZoomedVoxelIndex corner2) {
+				if (corner1.getX() > SIZE_X) {
+					loads.incrementAndGet();
+					throw new IllegalStateException("no data out here");
+				}
+				return super.load(corner1, corner2);
+			}
+		};
+		PathTraceService service = new PathTraceService(source, 1);
+		Map<Long, TracedPathSegment> segments = collect(service);
+		PathTraceService.Batch batch = service.trace(Arrays.asList(
+				new PathTraceRequest(alongTube(0), alongTube(0.05), 1L, 1L, 2L),
+				new PathTraceRequest(new Vec3(500, 10, 10), new Vec3(505, 10, 10), 1L, 3L, 4L),
+				new PathTraceRequest(alongTube(0.9), alongTube(1), 1L, 5L, 6L)));
+		assertTrue(batch.awaitCompletion(60, TimeUnit.SECONDS));
+		service.shutdown();
+
+		assertEquals(3, source.loads.get());
+		assertEquals(2, batch.getTracedCount());
+		assertEquals(1, batch.getFailedCount());
+		assertEquals(new HashSet<>(Arrays.asList(1L, 5L)), segments.keySet());
+		assertTrue(batch.toString(), batch.toString().startsWith("2 of 3 paths traced, 1 failed"));
+		// throughput counts only the traces that succeeded
+		assertEquals(2 / batch.getElapsedSeconds(), batch.getTracedPerSecond(), 1e-9);
+		assertEquals(1 / batch.getElapsedSeconds(), batch.getFailedPerSecond(), 1e-9);
+
+		PathTraceService idle = new PathTraceService(source, 1);
+		PathTraceService.Batch empty = idle.trace(Collections.emptyList());
+		idle.shutdown();
+		assertTrue(empty.isDone());
+		assertEquals(0, empty.getRequestCount());
+	}
+
+}
@@ -0,0 +1,214 @@
+package org.janelia.workstation.swc;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestSWCCodec {
+
+	private File directory;
+
+	@Before
+	public void createDirectory() throws IOException {
+		directory = Files.createTempDirectory("swc-codec").toFile();
+	}
+
+	@After
+	public void deleteDirectory() {
+		for (File file : directory.listFiles()) {
+			file.delete();
+		}
+		directory.delete();
+	}
+
+	private static String fixed(double value) {
+		StringBuilder builder = new StringBuilder();
+		SWCCodec.appendFixed(builder, value);
+		return builder.toString();
+	}
+
+	private static double parse(String text) {
+		return SWCCodec.parseDouble(text.toCharArray(), 0, text.length());
+	}
+
+	@Test
+	public void testFixedMatchesFormat() {
+		double[] values = {0, -0.0, 1, -1, 0.5, 1e-7, -1e-7, 5e-7, 0.0000005, 1.0000005, 2.5e-6, 123.4565, 99999.9999995,
+				9999999.999999, 1e7, 1e300, Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY};
+		for (double value : values) {
+			assertEquals(String.valueOf(value), String.format(Locale.ROOT, "%f", value), fixed(value));
+		}
+		Random random = new Random(3);
+		for (int i = 0; i < 200000; i++) {
+			double value = (random.nextDouble() - 0.5) * Math.pow(10, random.nextInt(9) - 2);
+			assertEquals(String.format(Locale.ROOT, "%f", value), fixed(value));
+			// values already rounded to six places, as in files we wrote
+			double rounded = Math.round(value * 1e6) / 1e6;
+			assertEquals(String.format(Locale.ROOT, "%f", rounded), fixed(rounded));
+		}
+	}
+
+	@Test
+	public void testParseMatchesJdk() {
+		String[] texts = {"0", "-0", "1", "+2.5", "-3.25", ".5", "7.", "0.000001", "12345.678901", "1e3", "-2.5E-3",
+				"123456789012345678901234567890", "0.1234567890123456789", "NaN", "Infinity"};
+		for (String text : texts) {
+			assertEquals(text, Double.doubleToLongBits(Double.parseDouble(text)), Double.doubleToLongBits(parse(text)));
+		}
+		Random random = new Random(5);
+		for (int i = 0; i < 200000; i++) {
+			String text = String.format(Locale.ROOT, "%." + random.nextInt(10) + "f",
+					(random.nextDouble() - 0.5) * Math.pow(10, random.nextInt(12)));
+			assertEquals(text, Double.doubleToLongBits(Double.parseDouble(text)), Double.doubleToLongBits(parse(text)));
+		}
+	}
+
+	@Test(expected = NumberFormatException.class)
+	public void testParseRejectsGarbage() {
+		parse("1.2.3");
+	}
+
+	@Test
+	public void testRead() throws IOException {
+		String text = "# NAME test\r\n\r\n  # COLOR 1,0,0  \r\n1 1 10.5 20 30 2.0 -1\r\n2\t3  11.5 21 31 1.0 1\r\n3 0 1e1 2 3 1 2";
+		List<String> headers = new ArrayList<>();
+		List<SWCNode> nodes = new ArrayList<>();
+		SWCCodec.read(new StringReader(text), new SWCCodec.Handler() {
+			@Override
+			public void header(String line) {
+				headers.add(line);
+			}
+
+			@Override
+			public void node(SWCNode node) {
+				nodes.add(node);
+			}
+		});
+		assertEquals(Arrays.asList("# NAME test", "# COLOR 1,0,0"), headers);
+		assertEquals(3, nodes.size());
+		assertEquals(SWCNode.SegmentType.soma, nodes.get(0).getSegmentType());
+		assertEquals(-1, nodes.get(0).getParentIndex());
+		assertEquals(SWCNode.SegmentType.dendrite, nodes.get(1).getSegmentType());
+		assertEquals(11.5, nodes.get(1).getX(), 0);
+		assertEquals(10.0, nodes.get(2).getX(), 0);
+		assertEquals(2, nodes.get(2).getParentIndex());
+	}
+
+	@Test
+	public void testReadRejectsBadNode() {
+		try {
+			SWCCodec.read(new StringReader("1 1 1 2 3 1 -1\n2 1 1 2 3 1\n"), new SWCCodec.Handler() {
+				@Override
+				public void header(String line) {
+				}
+
+				@Override
+				public void node(SWCNode node) {
+				}
+			});
+			fail("expected an IOException");
+		} catch (IOException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("line 2"));
+		}
+	}
+
+	@Test
+	public void testWriteAndReadFile() throws Exception {
+		// enough nodes, and a long enough header, to cross buffer boundaries
+		StringBuilder longHeader = new StringBuilder("# NOTE");
+		for (int i = 0; i < 20000; i++) {
+			longHeader.append(" x");
+		}
+		List<String> headers = Arrays.asList("# ORIGINAL_SOURCE test", longHeader.toString());
+		List<SWCNode> nodes = new ArrayList<>();
+		Random random = new Random(7);
+		for (int i = 1; i <= 20000; i++) {
+			nodes.add(new SWCNode(i, SWCNode.SegmentType.axon, 50000 * random.nextDouble(), 30000 * random.nextDouble(),
+					10000 * random.nextDouble(), 1 + random.nextDouble(), i - 1 == 0 ? -1 : i - 1));
+		}
+		File swcFile = new File(directory, "test.swc");
+		new SWCData(nodes, headers).write(swcFile);
+
+		List<String> lines = Files.readAllLines(swcFile.toPath(), Charset.defaultCharset());
+		assertEquals(headers.size() + nodes.size(), lines.size());
+		SWCNode node = nodes.get(123);
+		assertEquals(String.format(Locale.ROOT, "%d %d %f %f %f %f %d", node.getIndex(), node.getSegmentType().decode(),
+				node.getX(), node.getY(), node.getZ(), node.getRadius(), node.getParentIndex()), lines.get(125));
+
+		SWCData swcData = SWCData.read(swcFile);
+		assertEquals(headers, swcData.getHeaderList());
+		assertEquals(nodes.size(), swcData.getNodeList().size());
+		assertTrue(swcData.isValid());
+		SWCNode read = swcData.getNodeList().get(123);
+		assertEquals(node.getX(), read.getX(), 1e-6);
+		assertEquals(node.getRadius(), read.getRadius(), 1e-6);
+		assertEquals(node.getParentIndex(), read.getParentIndex());
+	}
+
+	@Test
+	public void testBreakOutByRoots() throws IOException {
+		File swcFile = new File(directory, "roots.swc");
+		Files.write(swcFile.toPath(), Arrays.asList("# HEADER", "1 1 0 0 0 1 -1", "2 1 1 0 0 1 1",
+				"3 1 5 5 5 1 -1", "4 1 6 5 5 1 3", "5 1 7 5 5 1 4"), Charset.defaultCharset());
+		List<File> files = new SWCData().breakOutByRoots(swcFile);
+		try {
+			assertEquals(2, files.size());
+			assertEquals(Arrays.asList("# HEADER", "1 1 0 0 0 1 -1", "2 1 1 0 0 1 1"),
+					Files.readAllLines(files.get(0).toPath(), Charset.defaultCharset()));
+			assertEquals(Arrays.asList("# HEADER", "1 1 5 5 5 1 -1", "2 1 6 5 5 1 1", "3 1 7 5 5 1 2"),
+					Files.readAllLines(files.get(1).toPath(), Charset.defaultCharset()));
+		} finally {
+			for (File file : files) {
+				file.delete();
+			}
+			files.get(0).getParentFile().delete();
+		}
+
+		File singleRoot = new File(directory, "single.swc");
+		Files.write(singleRoot.toPath(), Arrays.asList("1 1 0 0 0 1 -1", "2 1 1 0 0 1 1"), Charset.defaultCharset());
+		assertEquals(Arrays.asList(singleRoot), new SWCData().breakOutByRoots(singleRoot));
+	}
+
+	@Test
+	public void testReadInParallel() throws Exception {
+		List<File> files = new ArrayList<>();
+		for (int f = 0; f < 50; f++) {
+			File swcFile = new File(directory, "neuron_" + f + ".swc");
+			List<String> lines = new ArrayList<>();
+			for (int i = 1; i <= f + 1; i++) {
+				lines.add(i + " 0 " + f + " 0 0 1 " + (i == 1 ? -1 : i - 1));
+			}
+			Files.write(swcFile.toPath(), lines, Charset.defaultCharset());
+			files.add(swcFile);
+		}
+		List<File> handled = new ArrayList<>();
+		SWCData.readInParallel(files, 4, 3, (swcFile, swcData) -> {
+			assertEquals(handled.size() + 1, swcData.getNodeList().size());
+			handled.add(swcFile);
+		});
+		assertEquals(files, handled);
+
+		Files.write(files.get(10).toPath(), Arrays.asList("not a node"), Charset.defaultCharset());
+		handled.clear();
+		try {
+			SWCData.readInParallel(files, 4, 3, (swcFile, swcData) -> handled.add(swcFile));
+			fail("expected an IOException");
+		} catch (IOException e) {
+			assertEquals(10, handled.size());
+		}
+	}
+
+}
@@ -0,0 +1,128 @@
+package org.janelia.workstation.geom;
+
+import Jama.Matrix;
+
+/**
+ * An affine transform of 3D points, eg, between voxel and micrometer
+ * coordinates, with the coefficients of a 4x4 (or 3x4) homogeneous matrix
+ * pulled out once.  Points are transformed one at a time into caller-owned
+ * arrays, or in batches of packed xyz triples, without allocating per point
+ * the way multiplying by a Jama.Matrix column does.
+ *
+ * Instances are immutable and thread safe.
+ */
+public final class AffineTransform3d {
+
+    private final double m00, m01, m02, m03;
+    private final double m10, m11, m12, m13;
+    private final double m20, m21, m22, m23;
+
+    /**
+     * @param affine the first three rows of the homogeneous matrix, row major
+     */
+    public AffineTransform3d(double[] affine) {
+        if (affine.length != 12) {
+            throw new IllegalArgumentException("expected 12 coefficients, got " + affine.length);
+        }
+        m00 = affine[0]; m01 = affine[1]; m02 = affine[2]; m03 = affine[3];
+        m10 = affine[4]; m11 = affine[5]; m12 = affine[6]; m13 = affine[7];
+        m20 = affine[8]; m21 = affine[9]; m22 = affine[10]; m23 = affine[11];
+    }
+
+    /**
+     * @param matrix a 4x4 homogeneous matrix, or its top 3x4 part; the
+     * bottom row is assumed to be 0 0 0 1
+     */
+    public static AffineTransform3d fromMatrix(Matrix matrix) {
+        if (matrix.getRowDimension() < 3 || matrix.getColumnDimension() != 4) {
+            throw new IllegalArgumentException("expected a 3x4 or 4x4 matrix, got "
+                    + matrix.getRowDimension() + "x" + matrix.getColumnDimension());
+        }
+        double[] affine = new double[12];
+        for (int r = 0; r < 3; r++) {
+            for (int c = 0; c < 4; c++) {
+                affine[4 * r + c] = matrix.get(r, c);
+            }
+        }
+        return new AffineTransform3d(affine);
+    }
+
+    public float[] transform(double x, double y, double z) {
+        float[] result = new float[3];
+        transform(x, y, z, result, 0);
+        return result;
+    }
+
+    public void transform(double x, double y, double z, float[] result, int offset) {
+        result[offset] = (float) (m00 * x + m01 * y + m02 * z + m03);
+        result[offset + 1] = (float) (m10 * x + m11 * y + m12 * z + m13);
+        result[offset + 2] = (float) (m20 * x + m21 * y + m22 * z + m23);
+    }
+
+    public void transform(double x, double y, double z, double[] result, int offset) {
+        result[offset] = m00 * x + m01 * y + m02 * z + m03;
+        result[offset + 1] = m10 * x + m11 * y + m12 * z + m13;
+        result[offset + 2] = m20 * x + m21 * y + m22 * z + m23;
+    }
+
+    /**
+     * transform count points, packed as xyz triples; source and destination
+     * may be the same array, at the same offset
+     */
+    public void transform(float[] source, int sourceOffset, float[] destination, int destinationOffset, int count) {
+        checkRange(source.length, sourceOffset, count);
+        checkRange(destination.length, destinationOffset, count);
+        int s = sourceOffset;
+        int d = destinationOffset;
+        for (int i = 0; i < count; i++, s += 3, d += 3) {
+            double x = source[s];
+            double y = source[s + 1];
+            double z = source[s + 2];
+            destination[d] = (float) (m00 * x + m01 * y + m02 * z + m03);
+            destination[d + 1] = (float) (m10 * x + m11 * y + m12 * z + m13);
+            destination[d + 2] = (float) (m20 * x + m21 * y + m22 * z + m23);
+        }
+    }
+
+    /**
+     * as above, for double precision source points, eg, annotation locations
+     */
+    public void transform(double[] source, int sourceOffset, float[] destination, int destinationOffset, int count) {
+        checkRange(source.length, sourceOffset, count);
+        checkRange(destination.length, destinationOffset, count);
+        int s = sourceOffset;
+        int d = destinationOffset;
+        for (int i = 0; i < count; i++, s += 3, d += 3) {
+            double x = source[s];
+            double y = source[s + 1];
+            double z = source[s + 2];
+            destination[d] = (float) (m00 * x + m01 * y + m02 * z + m03);
+            destination[d + 1] = (float) (m10 * x + m11 * y + m12 * z + m13);
+            destination[d + 2] = (float) (m20 * x + m21 * y + m22 * z + m23);
+        }
+    }
+
+    public void transform(double[] source, int sourceOffset, double[] destination, int destinationOffset, int count) {
+        checkRange(source.length, sourceOffset, count);
+        checkRange(destination.length, destinationOffset, count);
+        int s = sourceOffset;
+        int d = destinationOffset;
+        for (int i = 0; i < count; i++, s += 3, d += 3) {
+            double x = source[s];
+            double y = source[s + 1];
+            double z = source[s + 2];
+            destination[d] = m00 * x + m01 * y + m02 * z + m03;
+            destination[d + 1] = m10 * x + m11 * y + m12 * z + m13;
+            destination[d + 2] = m20 * x + m21 * y + m22 * z + m23;
+        }
+    }
+
+    // one check up front lets the loops run without per-element bounds
+    //  failures part way through a batch
+    private static void checkRange(int length, int offset, int count) {
+        if (offset < 0 || count < 0 || offset + 3L * count > length) {
+            throw new ArrayIndexOutOfBoundsException("points " + offset + "+" + count + "*3 outside array of " + length);
+        }
+    }
+
+}
@@ -0,0 +1,71 @@
+package org.janelia.workstation.geom;
+
+import java.util.Random;
+
+import Jama.Matrix;
+
+/**
+ * Times converting a large batch of voxel locations to micrometers with a
+ * Jama.Matrix multiply per point, against AffineTransform3d one point at a
+ * time and over the whole packed batch.
+ *
+ * Usage: MeasureAffineTransformTime [pointCount]
+ */
+public class MeasureAffineTransformTime {
+
+    public static void main(String[] args) {
+        int pointCount = args.length > 0 ? Integer.parseInt(args[0]) : 10000000;
+
+        // voxel size and origin like a typical sample
+        Matrix voxToMicronMatrix = new Matrix(new double[][]{
+                {0.25, 0, 0, 73500.0},
+                {0, 0.25, 0, 41000.0},
+                {0, 0, 1.0, 16900.0},
+                {0, 0, 0, 1},});
+        AffineTransform3d voxToMicron = AffineTransform3d.fromMatrix(voxToMicronMatrix);
+
+        Random random = new Random(1);
+        double[] voxels = new double[3 * pointCount];
+        for (int i = 0; i < voxels.length; i++) {
+            voxels[i] = 100000 * random.nextDouble();
+        }
+        float[] micrometers = new float[3 * pointCount];
+        System.out.println(String.format("%d points", pointCount));
+
+        for (int pass = 0; pass < 3; pass++) {
+            System.out.println("Pass " + pass + ":");
+
+            long start = System.nanoTime();
+            for (int i = 0, p = 0; i < pointCount; i++, p += 3) {
+                Matrix voxLoc = new Matrix(new double[][]{
+                        {voxels[p],},
+                        {voxels[p + 1],},
+                        {voxels[p + 2],},
+                        {1.0,},});
+                Matrix micLoc = voxToMicronMatrix.times(voxLoc);
+                micrometers[p] = (float) micLoc.get(0, 0);
+                micrometers[p + 1] = (float) micLoc.get(1, 0);
+                micrometers[p + 2] = (float) micLoc.get(2, 0);
+            }
+            report("  Jama per point", start, pointCount, micrometers);
+
+            start = System.nanoTime();
+            for (int i = 0, p = 0; i < pointCount; i++, p += 3) {
+                voxToMicron.transform(voxels[p], voxels[p + 1], voxels[p + 2], micrometers, p);
+            }
+            report("  transform per point", start, pointCount, micrometers);
+
+            start = System.nanoTime();
+            voxToMicron.transform(voxels, 0, micrometers, 0, pointCount);
+            report("  transform batch", start, pointCount, micrometers);
+        }
+    }
+
+    private static void report(String label, long startNanos, int points, float[] result) {
+        double ms = (System.nanoTime() - startNanos) / 1e6;
+        // print a result so the work can't be optimized away
+        System.out.println(String.format("%s: %.1f ms, %.2f M points/s (last x %.2f)",
+                label, ms, points / ms / 1e3, result[result.length - 3]));
+    }
+
+}
@@ -1,54 +1,41 @@
 package org.janelia.workstation.swc;
 
 import Jama.Matrix;
+import org.janelia.workstation.geom.AffineTransform3d;
 
 /**
  * Uses matrices (based on JAMA package), to convert between internal and
- * external SWC coordinate systems.
+ * external SWC coordinate systems.  The matrices' coefficients are pulled
+ * out once, so converting a point doesn't allocate matrices.
  * 
  * @author fosterl
  */
 public class MatrixDrivenSWCExchanger implements ImportExportSWCExchanger {
     public static final int EXPECTED_ARRAY_SIZE = 3;
-    private Matrix micronToVoxMatrix;
-    private Matrix voxToMicronMatrix;
+    private AffineTransform3d micronToVox;
+    private AffineTransform3d voxToMicron;
     
     public MatrixDrivenSWCExchanger( Matrix micronToVoxMatrix, Matrix voxToMicronMatrix ) {
-        this.micronToVoxMatrix = micronToVoxMatrix;
-        this.voxToMicronMatrix = voxToMicronMatrix;
+        this.micronToVox = AffineTransform3d.fromMatrix(micronToVoxMatrix);
+        this.voxToMicron = AffineTransform3d.fromMatrix(voxToMicronMatrix);
     }
 
     @Override
     public double[] getInternal(double[] external) {
-        Matrix externalMatrix = inputMatrix(external);
-        Matrix internalMatrix = micronToVoxMatrix.times(externalMatrix);
-        return outputMatrix(internalMatrix);
+        return transform(micronToVox, external);
     }
 
     @Override
     public double[] getExternal(double[] internal) {
-        Matrix internalMatrix = inputMatrix(internal);
-        Matrix externalMatrix = voxToMicronMatrix.times(internalMatrix);
-        return outputMatrix(externalMatrix);
+        return transform(voxToMicron, internal);
     }
     
-    private Matrix inputMatrix( double[] input ) {
+    private double[] transform( AffineTransform3d transform, double[] input ) {
         if (input.length != 3) {
             throw new IllegalArgumentException("Very specific matrix requirements.");
         }
-        Matrix matrix = new Matrix( EXPECTED_ARRAY_SIZE + 1, 1 );
-        for (int i = 0; i < input.length; i++) {
-            matrix.set(i, 0, input[i]);
-        }
-        matrix.set(EXPECTED_ARRAY_SIZE, 0, 1.0);
-        return matrix;
-    }
-    
-    private double[] outputMatrix( Matrix output ) {
         double[] result = new double[EXPECTED_ARRAY_SIZE];
-        for (int i = 0; i < result.length; i++ ) {
-            result[i] = output.get(i, 0);
-        }
+        transform.transform(input[0], input[1], input[2], result, 0);
         return result;
     }
     
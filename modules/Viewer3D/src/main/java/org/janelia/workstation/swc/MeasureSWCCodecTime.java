@@ -0,0 +1,131 @@
+package org.janelia.workstation.swc;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Times reading and writing a synthetic SWC file with SWCCodec, against the
+ * String.split / String.format line handling it replaced, and reading a
+ * directory of SWC files serially and with SWCData.readInParallel.
+ *
+ * Usage: MeasureSWCCodecTime [nodeCount [fileCount [threads]]]
+ */
+public class MeasureSWCCodecTime {
+
+    public static void main(String[] args) throws Exception {
+        int nodeCount = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        int fileCount = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+
+        File directory = Files.createTempDirectory("swc-codec").toFile();
+        List<SWCNode> nodes = syntheticNodes(new Random(1), nodeCount);
+        List<String> headers = Collections.singletonList("# ORIGINAL_SOURCE MeasureSWCCodecTime");
+        File swcFile = new File(directory, "large.swc");
+        try (Writer writer = new BufferedWriter(new FileWriter(swcFile))) {
+            SWCCodec.write(writer, headers, nodes);
+        }
+        System.out.println(String.format("%d nodes, %.1f MB", nodeCount, swcFile.length() / 1e6));
+
+        List<File> smallFiles = new ArrayList<>();
+        for (int f = 0; f < fileCount; f++) {
+            File smallFile = new File(directory, "small_" + f + ".swc");
+            try (Writer writer = new BufferedWriter(new FileWriter(smallFile))) {
+                SWCCodec.write(writer, headers, syntheticNodes(new Random(f), Math.max(1, nodeCount / fileCount)));
+            }
+            smallFiles.add(smallFile);
+        }
+
+        for (int pass = 0; pass < 3; pass++) {
+            System.out.println("Pass " + pass + ":");
+
+            long start = System.nanoTime();
+            List<SWCNode> parsed = new ArrayList<>();
+            for (String line : Files.readAllLines(swcFile.toPath(), Charset.defaultCharset())) {
+                line = line.trim();
+                if (line.length() > 0 && !line.startsWith("#")) {
+                    parsed.add(splitParse(line));
+                }
+            }
+            report("  read, split", start, parsed.size());
+
+            start = System.nanoTime();
+            SWCData swcData = SWCData.read(swcFile);
+            report("  read, codec", start, swcData.getNodeList().size());
+
+            File outFile = new File(directory, "out.swc");
+            start = System.nanoTime();
+            try (BufferedWriter writer = new BufferedWriter(new FileWriter(outFile))) {
+                for (SWCNode node : nodes) {
+                    writer.write(String.format("%d %d %f %f %f %f %d", node.getIndex(), node.getSegmentType().decode(),
+                            node.getX(), node.getY(), node.getZ(), node.getRadius(), node.getParentIndex()));
+                    writer.newLine();
+                }
+            }
+            report("  write, String.format", start, nodes.size());
+
+            start = System.nanoTime();
+            try (Writer writer = new BufferedWriter(new FileWriter(outFile))) {
+                SWCCodec.write(writer, headers, nodes);
+            }
+            report("  write, codec", start, nodes.size());
+
+            start = System.nanoTime();
+            int read = 0;
+            for (File smallFile : smallFiles) {
+                read += SWCData.read(smallFile).getNodeList().size();
+            }
+            report("  read " + fileCount + " files, serial", start, read);
+
+            start = System.nanoTime();
+            int[] readInParallel = {0};
+            SWCData.readInParallel(smallFiles, threads, 2 * threads,
+                    (file, data) -> readInParallel[0] += data.getNodeList().size());
+            report("  read " + fileCount + " files, " + threads + " threads", start, readInParallel[0]);
+        }
+
+        for (File file : directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+    }
+
+    private static SWCNode splitParse(String line) {
+        String[] items = line.split("\\s+");
+        return new SWCNode(
+                Integer.parseInt(items[0]),
+                SWCNode.segmentTypeFor(Integer.parseInt(items[1])),
+                Double.parseDouble(items[2]),
+                Double.parseDouble(items[3]),
+                Double.parseDouble(items[4]),
+                Double.parseDouble(items[5]),
+                Integer.parseInt(items[6]));
+    }
+
+    private static void report(String label, long startNanos, int nodes) {
+        double ms = (System.nanoTime() - startNanos) / 1e6;
+        System.out.println(String.format("%s: %.1f ms, %.2f M nodes/s", label, ms, nodes / ms / 1e3));
+    }
+
+    // random walks, branching now and then, like a traced neuron
+    private static List<SWCNode> syntheticNodes(Random random, int nodeCount) {
+        List<SWCNode> nodes = new ArrayList<>(nodeCount);
+        double x = 50000 * random.nextDouble(), y = 30000 * random.nextDouble(), z = 10000 * random.nextDouble();
+        for (int i = 1; i <= nodeCount; i++) {
+            int parent = i == 1 ? -1 : (random.nextInt(50) == 0 ? 1 + random.nextInt(i - 1) : i - 1);
+            x += random.nextGaussian();
+            y += random.nextGaussian();
+            z += random.nextGaussian() / 3;
+            nodes.add(new SWCNode(i, SWCNode.SegmentType.undefined, x, y, z, 1.0, parent));
+        }
+        return nodes;
+    }
+
+}
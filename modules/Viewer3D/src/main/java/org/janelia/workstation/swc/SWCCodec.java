@@ -0,0 +1,304 @@
+package org.janelia.workstation.swc;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * reads and writes SWC text without the per-line garbage of String.split,
+ * Double.parseDouble on substrings and String.format; lines are scanned in
+ * place in a reusable char buffer, and numbers are parsed from and formatted
+ * into that buffer directly
+ *
+ * the output is the same as SWCNode's original String.format("%d %d %f ...")
+ * rendering, except that the decimal separator is always '.', whatever the
+ * default locale; numbers the fast paths can't handle exactly (exponents,
+ * very long mantissas, values too large for the fixed-point formatter, or
+ * values that fall right on a rounding tie) go through the JDK instead
+ */
+public class SWCCodec {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int WRITE_CHUNK_SIZE = 64 * 1024;
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+    // values at or above this go through String.format, since their
+    //  micro-units are too coarse to round reliably
+    private static final double MAX_FIXED_VALUE = 1e7;
+    private static final double FIXED_SCALE = 1e6;
+
+    /**
+     * receives the contents of an SWC file as it's read
+     */
+    public interface Handler {
+        /**
+         * a header line, trimmed, including its leading #
+         */
+        void header(String line);
+
+        void node(SWCNode node);
+    }
+
+    /**
+     * parse SWC text; blank lines are skipped, lines starting with # are
+     * headers, and everything else must be a node line
+     *
+     * @throws IOException on read errors, or if a node line can't be parsed
+     */
+    public static void read(Reader reader, Handler handler) throws IOException {
+        char[] buffer = new char[BUFFER_SIZE];
+        int start = 0;  // start of the current line
+        int limit = 0;  // end of valid data in the buffer
+        int lineNumber = 0;
+        boolean eof = false;
+        while (true) {
+            // find the end of the current line, reading more as needed
+            int end = -1;
+            int scan = start;
+            while (end < 0) {
+                while (scan < limit && buffer[scan] != '\n') {
+                    scan++;
+                }
+                if (scan < limit) {
+                    end = scan;
+                } else if (eof) {
+                    end = limit;
+                } else {
+                    if (start > 0) {
+                        System.arraycopy(buffer, start, buffer, 0, limit - start);
+                        scan -= start;
+                        limit -= start;
+                        start = 0;
+                    }
+                    if (limit == buffer.length) {
+                        char[] larger = new char[buffer.length * 2];
+                        System.arraycopy(buffer, 0, larger, 0, limit);
+                        buffer = larger;
+                    }
+                    int n = reader.read(buffer, limit, buffer.length - limit);
+                    if (n < 0) {
+                        eof = true;
+                    } else {
+                        limit += n;
+                    }
+                }
+            }
+            if (eof && start >= limit) {
+                return;
+            }
+            lineNumber++;
+
+            int lineStart = start;
+            int lineEnd = end;
+            while (lineStart < lineEnd && Character.isWhitespace(buffer[lineStart])) {
+                lineStart++;
+            }
+            while (lineEnd > lineStart && Character.isWhitespace(buffer[lineEnd - 1])) {
+                lineEnd--;
+            }
+            if (lineStart < lineEnd) {
+                if (buffer[lineStart] == '#') {
+                    handler.header(new String(buffer, lineStart, lineEnd - lineStart));
+                } else {
+                    SWCNode node;
+                    try {
+                        node = parseNode(buffer, lineStart, lineEnd);
+                    } catch (NumberFormatException e) {
+                        node = null;
+                    }
+                    if (node == null) {
+                        throw new IOException(String.format("line %d is not a valid SWC node: %s",
+                                lineNumber, new String(buffer, lineStart, lineEnd - lineStart)));
+                    }
+                    handler.node(node);
+                }
+            }
+            start = end + 1;
+        }
+    }
+
+    /**
+     * parse one node line; null if it doesn't have the seven fields of a node
+     *
+     * @throws NumberFormatException if a field isn't a number
+     */
+    public static SWCNode parseNode(char[] line, int start, int end) {
+        int[] bounds = new int[14];
+        int fields = 0;
+        int pos = start;
+        while (pos < end) {
+            while (pos < end && Character.isWhitespace(line[pos])) {
+                pos++;
+            }
+            if (pos == end) {
+                break;
+            }
+            if (fields == 7) {
+                return null;
+            }
+            bounds[2 * fields] = pos;
+            while (pos < end && !Character.isWhitespace(line[pos])) {
+                pos++;
+            }
+            bounds[2 * fields + 1] = pos;
+            fields++;
+        }
+        if (fields != 7) {
+            return null;
+        }
+        return new SWCNode(
+                parseInt(line, bounds[0], bounds[1]),
+                SWCNode.segmentTypeFor(parseInt(line, bounds[2], bounds[3])),
+                parseDouble(line, bounds[4], bounds[5]),
+                parseDouble(line, bounds[6], bounds[7]),
+                parseDouble(line, bounds[8], bounds[9]),
+                parseDouble(line, bounds[10], bounds[11]),
+                parseInt(line, bounds[12], bounds[13])
+        );
+    }
+
+    public static int parseInt(char[] chars, int start, int end) {
+        int pos = start;
+        boolean negative = false;
+        if (pos < end && (chars[pos] == '-' || chars[pos] == '+')) {
+            negative = chars[pos] == '-';
+            pos++;
+        }
+        if (pos == end || end - pos > 9) {
+            // empty, or possibly out of range; let the JDK decide
+            return Integer.parseInt(new String(chars, start, end - start));
+        }
+        int value = 0;
+        for (; pos < end; pos++) {
+            int digit = chars[pos] - '0';
+            if (digit < 0 || digit > 9) {
+                throw new NumberFormatException("For input string: \"" + new String(chars, start, end - start) + "\"");
+            }
+            value = 10 * value + digit;
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * parses plain decimals ([sign]digits[.digits]) exactly, as long as the
+     * digits fit in a double's mantissa; anything else goes to Double.parseDouble
+     */
+    public static double parseDouble(char[] chars, int start, int end) {
+        int pos = start;
+        boolean negative = false;
+        if (pos < end && (chars[pos] == '-' || chars[pos] == '+')) {
+            negative = chars[pos] == '-';
+            pos++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int fractionDigits = 0;
+        boolean point = false;
+        for (; pos < end; pos++) {
+            char c = chars[pos];
+            if (c >= '0' && c <= '9') {
+                if (mantissa >= MAX_EXACT_MANTISSA / 10) {
+                    return Double.parseDouble(new String(chars, start, end - start));
+                }
+                mantissa = 10 * mantissa + (c - '0');
+                digits++;
+                if (point) {
+                    fractionDigits++;
+                }
+            } else if (c == '.' && !point) {
+                point = true;
+            } else {
+                return Double.parseDouble(new String(chars, start, end - start));
+            }
+        }
+        if (digits == 0 || fractionDigits >= POWERS_OF_TEN.length) {
+            return Double.parseDouble(new String(chars, start, end - start));
+        }
+        // both operands are exact, so the one division is correctly rounded
+        double value = mantissa / POWERS_OF_TEN[fractionDigits];
+        return negative ? -value : value;
+    }
+
+    /**
+     * append the node as a line of SWC, without line separator
+     */
+    public static void appendNode(StringBuilder builder, SWCNode node) {
+        builder.append(node.getIndex()).append(' ')
+                .append(node.getSegmentType().decode()).append(' ');
+        appendFixed(builder, node.getX());
+        builder.append(' ');
+        appendFixed(builder, node.getY());
+        builder.append(' ');
+        appendFixed(builder, node.getZ());
+        builder.append(' ');
+        appendFixed(builder, node.getRadius());
+        builder.append(' ').append(node.getParentIndex());
+    }
+
+    /**
+     * append the value the way "%f" formats it, but always with '.'
+     */
+    public static void appendFixed(StringBuilder builder, double value) {
+        double magnitude = Math.abs(value);
+        if (!(magnitude < MAX_FIXED_VALUE)) {
+            // too big, infinite or NaN
+            builder.append(String.format(Locale.ROOT, "%f", value));
+            return;
+        }
+        double scaled = magnitude * FIXED_SCALE;
+        double floor = Math.floor(scaled);
+        double fraction = scaled - floor;
+        // %f rounds half up from the shortest decimal representation of the
+        //  value; anything close enough to a tie that scaling could have
+        //  moved it across goes the slow way
+        if (Math.abs(fraction - 0.5) < 1e-9 + scaled * 1e-15) {
+            builder.append(String.format(Locale.ROOT, "%f", value));
+            return;
+        }
+        long units = (long) floor + (fraction > 0.5 ? 1 : 0);
+        if (value < 0 || (value == 0 && Double.doubleToRawLongBits(value) != 0)) {
+            builder.append('-');
+        }
+        long whole = units / 1000000;
+        long micros = units % 1000000;
+        builder.append(whole).append('.');
+        for (long place = 100000; place > micros && place > 1; place /= 10) {
+            builder.append('0');
+        }
+        builder.append(micros);
+    }
+
+    public static String formatNode(SWCNode node) {
+        StringBuilder builder = new StringBuilder(64);
+        appendNode(builder, node);
+        return builder.toString();
+    }
+
+    /**
+     * write header lines, then node lines; the writer is not closed
+     */
+    public static void write(Writer writer, List<String> headerList, List<SWCNode> nodeList) throws IOException {
+        StringBuilder builder = new StringBuilder(WRITE_CHUNK_SIZE + 256);
+        for (String line: headerList) {
+            builder.append(line).append(LINE_SEPARATOR);
+        }
+        for (SWCNode node: nodeList) {
+            appendNode(builder, node);
+            builder.append(LINE_SEPARATOR);
+            if (builder.length() >= WRITE_CHUNK_SIZE) {
+                writer.append(builder);
+                builder.setLength(0);
+            }
+        }
+        writer.append(builder);
+    }
+
+}
@@ -6,15 +6,24 @@ import java.io.File;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
-import java.io.PrintWriter;
+import java.io.Reader;
 import java.io.Writer;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -97,20 +106,68 @@ public class SWCData {
     }
 
     private void readParseFile() throws IOException {
-        List<String> lines = Files.readAllLines(swcFile.toPath(), Charset.defaultCharset());
+        try (Reader reader = new InputStreamReader(Files.newInputStream(swcFile.toPath()), Charset.defaultCharset())) {
+            SWCCodec.read(reader, new SWCCodec.Handler() {
+                @Override
+                public void header(String line) {
+                    headerList.add(line);
+                }
 
-        for (String line: lines) {
-            line = line.trim();
+                @Override
+                public void node(SWCNode node) {
+                    nodeList.add(node);
+                }
+            });
+        }
+    }
 
-            if (line.length() == 0) {
-                // if blank, skip--do nothing
-            } else if (line.startsWith("#")) {
-                // if starts with #, into header list
-                headerList.add(line);
-            } else {
-                // if not, create SWCNode; put into node list
-                nodeList.add(SWCNode.parseLine(line));
+    /**
+     * receives files read by readInParallel, in the order they were given
+     */
+    public interface FileHandler {
+        void handle(File swcFile, SWCData swcData) throws Exception;
+    }
+
+    /**
+     * Read many files on a pool of threads, handing each to the handler on
+     * the calling thread in the order given.  At most readAhead files are
+     * parsed but not yet handled at any time, so memory stays bounded however
+     * many files there are.  Reading stops at the first failure, whose cause
+     * is rethrown.
+     *
+     * @param threads number of files to parse at once.
+     * @param readAhead how many parsed files may wait for the handler.
+     */
+    public static void readInParallel(List<File> swcFiles, int threads, int readAhead, FileHandler handler) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threads), new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "SWCReader-" + count.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
             }
+        });
+        try {
+            Deque<Future<SWCData>> pending = new ArrayDeque<>();
+            int submitted = 0;
+            for (File swcFile: swcFiles) {
+                while (submitted < swcFiles.size() && pending.size() < Math.max(1, readAhead)) {
+                    File next = swcFiles.get(submitted++);
+                    pending.add(executor.submit(() -> read(next)));
+                }
+                SWCData swcData;
+                try {
+                    swcData = pending.remove().get();
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    throw cause instanceof Exception ? (Exception) cause : e;
+                }
+                handler.handle(swcFile, swcData);
+            }
+        } finally {
+            executor.shutdownNow();
         }
     }
 
@@ -124,40 +181,11 @@ public class SWCData {
     public void write(File swcFile, int offset) throws Exception {
         if (isValid()) {
             if (offset != -1) {
-                // we're exporting a bunch of swc to a dir, and the dir is named like the
-                //  given "all neurons" filename; if the original neuron has the expected
-                //  .swc extension, remove it and use that for the dir name; if not, append
-                //  "dir" to the name instead
-                String swcFileName = swcFile.getName();
-                String parentDirName;
-                if (swcFileName.endsWith(STD_SWC_EXTENSION)) {
-                    parentDirName = swcFileName.substring(0, swcFileName.length() - STD_SWC_EXTENSION.length());
-                } else {
-                    parentDirName = swcFileName + "-dir";
-                }
-                File parentDir = new File(swcFile.getParent(), parentDirName);
-                // If anyone ever made a file of the name we wish to call our
-                // directory, we'll make an alternative with unique name.
-                if (parentDir.exists()  &&  !parentDir.isDirectory()) {
-                    parentDir = new File(parentDir.getParentFile(), parentDirName + "_" + new java.util.Date().getTime());                    
-                }
-                if (! parentDir.exists() ) {
-                    parentDir.mkdirs();
-                }
-
-                // use neuron name for the file name, but increment if it's
-                // in use already (we allow multiple neurons with the same name)
-                if (parseName() != "") {
-                    swcFile = getUniqueSWCFile(parentDir, parseName());
-                } else {
-                    // I don't think this will ever be used now...but if
-                    //  the neuron doesn't have a name, we have a fallback
-                    String newName = getIteratedName(swcFileName, offset);
-                    swcFile = new File(parentDir, newName);
-                }
+                swcFile = reserveSWCFile(swcFile, offset);
+            }
+            try (FileWriter writer = new FileWriter(swcFile)) {
+                writeSwcFile(writer);
             }
-            FileWriter writer = new FileWriter(swcFile);
-            writeSwcFile(writer);
             this.swcFile = swcFile;
         }
         else {
@@ -166,6 +194,49 @@ public class SWCData {
 
     }
 
+    /**
+     * Pick the file for one of a set of neurons exported to a directory, and
+     * create it empty, so that neurons written in parallel never pick the same
+     * name.
+     */
+    private File reserveSWCFile(File swcFile, int offset) throws IOException {
+        synchronized (SWCData.class) {
+            // we're exporting a bunch of swc to a dir, and the dir is named like the
+            //  given "all neurons" filename; if the original neuron has the expected
+            //  .swc extension, remove it and use that for the dir name; if not, append
+            //  "dir" to the name instead
+            String swcFileName = swcFile.getName();
+            String parentDirName;
+            if (swcFileName.endsWith(STD_SWC_EXTENSION)) {
+                parentDirName = swcFileName.substring(0, swcFileName.length() - STD_SWC_EXTENSION.length());
+            } else {
+                parentDirName = swcFileName + "-dir";
+            }
+            File parentDir = new File(swcFile.getParent(), parentDirName);
+            // If anyone ever made a file of the name we wish to call our
+            // directory, we'll make an alternative with unique name.
+            if (parentDir.exists()  &&  !parentDir.isDirectory()) {
+                parentDir = new File(parentDir.getParentFile(), parentDirName + "_" + new java.util.Date().getTime());                    
+            }
+            if (! parentDir.exists() ) {
+                parentDir.mkdirs();
+            }
+
+            // use neuron name for the file name, but increment if it's
+            // in use already (we allow multiple neurons with the same name)
+            if (parseName() != "") {
+                swcFile = getUniqueSWCFile(parentDir, parseName());
+            } else {
+                // I don't think this will ever be used now...but if
+                //  the neuron doesn't have a name, we have a fallback
+                String newName = getIteratedName(swcFileName, offset);
+                swcFile = new File(parentDir, newName);
+            }
+            swcFile.createNewFile();
+            return swcFile;
+        }
+    }
+
     /**
      * Given some filename, return an 'iterated' version, containing a counter
      * offset.  In this fashion, 'sub names' iterated over a count can be
@@ -220,60 +291,71 @@ public class SWCData {
     public List<File> breakOutByRoots(File infile) throws IOException {
         List<File> rtnVal = new ArrayList<>();        
         String lineTerm = System.getProperty("line.separator");
+        // each root's lines are streamed straight to its own file, so only
+        //  the header lines are held in memory
+        File tempDir = new File(System.getProperty("java.io.tmpdir"), "SWCData_" + new java.util.Date().getTime());
+        Writer currentWriter = null;
         try (BufferedReader br = new BufferedReader( new FileReader( infile ) )) {
             String inline = null;
             List<String> headerLines = new ArrayList<>();
-            List<StringBuilder> newFileText = new ArrayList<>();
-            StringBuilder currentBuilder = null;
             int rootNodeNum = -1;
             while (null != (inline = br.readLine())) {
                 if (inline.startsWith("#")) {
                     headerLines.add(inline);                    
                 }
+                else if (inline.trim().isEmpty()) {
+                    // skip blank lines
+                }
                 else if (inline.endsWith("-1")) {
                     int afterDigits = findFirstNonDigitPosition(inline);
                     rootNodeNum = Integer.parseInt(inline.substring(0, afterDigits)) - 1;
-                    
-                    currentBuilder = new StringBuilder();
-                    newFileText.add(currentBuilder);
+
+                    if (currentWriter != null) {
+                        currentWriter.close();
+                    }
+                    else {
+                        tempDir.mkdirs();
+                        tempDir.deleteOnExit();
+                    }
+                    File newFile = new File(tempDir, getIteratedName(infile.getName(), rtnVal.size() + 1));
+                    newFile.deleteOnExit();
+                    rtnVal.add(newFile);
+                    currentWriter = new BufferedWriter(new FileWriter(newFile));
                     for (String headerLine: headerLines) {
-                        currentBuilder.append(headerLine);
-                        currentBuilder.append(lineTerm);
+                        currentWriter.write(headerLine);
+                        currentWriter.write(lineTerm);
                     }
-                    currentBuilder.append(1);
-                    currentBuilder.append(inline.substring(afterDigits));
-                    currentBuilder.append(lineTerm);
+                    currentWriter.write('1');
+                    currentWriter.write(inline, afterDigits, inline.length() - afterDigits);
+                    currentWriter.write(lineTerm);
+                }
+                else if (currentWriter == null) {
+                    throw new IOException("node line before any root in " + infile + ": " + inline);
                 }
                 else {
-                    currentBuilder.append(reorder(inline, rootNodeNum));
-                    currentBuilder.append(lineTerm);
+                    currentWriter.write(reorder(inline, rootNodeNum));
+                    currentWriter.write(lineTerm);
                 }
             }
-            
-            if (newFileText.size() <= 1) {
-                // We just wasted time scanning the input file.  Oh well.
-                rtnVal.add(infile);
+        }
+        finally {
+            if (currentWriter != null) {
+                currentWriter.close();
             }
-            else {
-                int fileNum = 1;
-
-                File tempDir = new File(System.getProperty("java.io.tmpdir"), "SWCData_" + new java.util.Date().getTime());                
-                tempDir.mkdirs();
-                tempDir.deleteOnExit();
-                logger.info("Making file {}", tempDir.toString());
-                for (StringBuilder builder : newFileText) {
-                    File newFile = new File(tempDir, getIteratedName(infile.getName(), fileNum));
-                    newFile.deleteOnExit();
-                    
-                    try ( PrintWriter pw = new PrintWriter( new FileWriter( newFile ) ) ) {
-                        pw.print(builder.toString());
-                    }
-                    
-                    rtnVal.add(newFile);
-                    fileNum++;
-                }
+        }
+
+        if (rtnVal.size() <= 1) {
+            // We just wasted time scanning the input file.  Oh well.
+            for (File file: rtnVal) {
+                file.delete();
             }
-        }        
+            tempDir.delete();
+            rtnVal.clear();
+            rtnVal.add(infile);
+        }
+        else {
+            logger.info("Made {} files in {}", rtnVal.size(), tempDir);
+        }
         return rtnVal;
     }
 
@@ -526,15 +608,7 @@ public class SWCData {
      */
     private void writeSwcFile(Writer writer) throws IOException {
         try (BufferedWriter bufferedWriter = new BufferedWriter(writer)) {
-            for (String line: getHeaderList()) {
-                bufferedWriter.write(line);
-                bufferedWriter.newLine();
-            }
-            
-            for (SWCNode node: getNodeList()) {
-                bufferedWriter.write(node.toSWCline());
-                bufferedWriter.newLine();
-            }
+            SWCCodec.write(bufferedWriter, getHeaderList(), getNodeList());
         }
 
     }
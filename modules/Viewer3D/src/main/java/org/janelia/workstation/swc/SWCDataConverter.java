@@ -87,6 +87,21 @@ public class SWCDataConverter {
         return new SWCData(nodeList, headerList, externalizedCenter);
     }
 
+    /**
+     * convert one of a set of neurons being exported together, all offset
+     * from the same center, adding the given extra header lines
+     */
+    public SWCData fromTmNeuron(TmNeuronMetadata neuron, double[] externalizedCenter, List<String> extraHeaders, int downsampleModulo) {
+        final SWCData neuronData = fromTmNeuron(neuron, externalizedCenter, downsampleModulo);
+        for (String header: extraHeaders) {
+            if (! header.startsWith("#")) {
+                header = "# " + header;
+            }
+            neuronData.getHeaderList().add(header);
+        }
+        return neuronData;
+    }
+
     public List<SWCData> fromTmNeuron(Collection<TmNeuronMetadata> neuronList, Map<Long,List<String>> extraHeaders, int downsampleModulo) {
         List<SWCData> rtnList = new ArrayList<>();
         double[] com = neuronCenterOfMass(neuronList);
@@ -95,15 +110,7 @@ public class SWCDataConverter {
         for (TmNeuronMetadata neuron : neuronList) {
             if (neuron != null && neuron.getGeoAnnotationMap().size() > 0) {
                 log.debug("Creating SWCData for neuron{} (id={})",neuron.getName(),neuron.getId());
-                final SWCData neuronData = fromTmNeuron(neuron, com, downsampleModulo);
-                List<String> headers = extraHeaders.get( neuron.getId() );
-                for (String header: headers) {
-                    if (! header.startsWith("#")) {
-                        header = "# " + header;
-                    }
-                    neuronData.getHeaderList().add(header);
-                }
-                dataList.add(neuronData);
+                dataList.add(fromTmNeuron(neuron, com, extraHeaders.get(neuron.getId()), downsampleModulo));
             }
             else {
                 log.trace("Skipping empty neuron "+neuron);
@@ -50,20 +50,22 @@ public class SWCNode {
             return null;
         }
 
-        String [] items = line.split("\\s+");
-        if (items.length != 7) {
-            return null;
-        }
+        char[] chars = line.toCharArray();
+        return SWCCodec.parseNode(chars, 0, chars.length);
+    }
 
-        return new SWCNode(
-                Integer.parseInt(items[0]),
-                decodeToSegment.get(Integer.parseInt(items[1])),
-                Double.parseDouble(items[2]),
-                Double.parseDouble(items[3]),
-                Double.parseDouble(items[4]),
-                Double.parseDouble(items[5]),
-                Integer.parseInt(items[6])
-        );
+    /**
+     * the segment type with the given SWC code; null if there isn't one
+     */
+    public static SegmentType segmentTypeFor(int code) {
+        // the codes are registered as the enum initializes, so look them
+        //  up through it rather than straight from the map
+        for (SegmentType segmentType: SegmentType.values()) {
+            if (segmentType.decode() == code) {
+                return segmentType;
+            }
+        }
+        return null;
     }
 
     /**
@@ -112,12 +114,7 @@ public class SWCNode {
      * (we will import any number of whitespace as separator)
      */
     public String toSWCline () {
-        return String.format("%d %d %f %f %f %f %d",
-                index,
-                segmentType.decode(),
-                x, y, z,
-                radius,
-                parentIndex);
+        return SWCCodec.formatNode(this);
     }
 
     public int getIndex() {
@@ -0,0 +1,100 @@
+package org.janelia.workstation.controller;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.eventbus.EventBus;
+import org.janelia.workstation.controller.eventbus.ViewerEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Delivers events to an EventBus from a queue that's drained on an executor,
+ * eg, the EDT.  One drain is scheduled however many events are posted before
+ * it runs, and while an event waits, the next one posted is merged into it if
+ * the two can be (see ViewerEvent.coalesce), so a burst of small updates
+ * reaches subscribers as a few large ones.  Only neighboring events are
+ * merged, so subscribers still see changes in the order they were made.
+ */
+class EventDispatcher {
+
+    private static final Logger log = LoggerFactory.getLogger(EventDispatcher.class);
+
+    private static final long SLOW_HANDLER_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final String name;
+    private final EventBus eventBus;
+    private final Executor executor;
+    private final boolean coalesce;
+    private final ArrayDeque<Object> pending = new ArrayDeque<>();
+    private boolean drainScheduled;
+    private final Map<Class<?>, EventMetrics> metrics = new ConcurrentHashMap<>();
+
+    EventDispatcher(String name, EventBus eventBus, Executor executor, boolean coalesce) {
+        this.name = name;
+        this.eventBus = eventBus;
+        this.executor = executor;
+        this.coalesce = coalesce;
+    }
+
+    void post(Object event) {
+        boolean schedule;
+        synchronized (pending) {
+            Object last = pending.peekLast();
+            ViewerEvent merged = null;
+            if (coalesce && last instanceof ViewerEvent && event instanceof ViewerEvent) {
+                merged = ((ViewerEvent) last).coalesce((ViewerEvent) event);
+            }
+            if (merged != null) {
+                pending.pollLast();
+                pending.addLast(merged);
+                metricsFor(event).merged();
+            } else {
+                pending.addLast(event);
+                metricsFor(event).queued();
+            }
+            schedule = !drainScheduled;
+            drainScheduled = true;
+        }
+        if (schedule) {
+            executor.execute(this::drain);
+        }
+    }
+
+    private void drain() {
+        List<Object> events;
+        synchronized (pending) {
+            events = new ArrayList<>(pending);
+            pending.clear();
+            drainScheduled = false;
+        }
+        // events posted by subscribers from here on go in the next drain
+        for (Object event: events) {
+            EventMetrics eventMetrics = metricsFor(event);
+            eventMetrics.dequeued();
+            long start = System.nanoTime();
+            eventBus.post(event);
+            long elapsed = System.nanoTime() - start;
+            eventMetrics.delivered(elapsed);
+            if (elapsed > SLOW_HANDLER_NANOS) {
+                log.debug("{} subscribers took {} ms to handle {}", name,
+                        TimeUnit.NANOSECONDS.toMillis(elapsed), event.getClass().getSimpleName());
+            }
+        }
+    }
+
+    private EventMetrics metricsFor(Object event) {
+        return metrics.computeIfAbsent(event.getClass(), eventType -> new EventMetrics(name, eventType));
+    }
+
+    Collection<EventMetrics> getMetrics() {
+        return metrics.values();
+    }
+
+}
@@ -0,0 +1,98 @@
+package org.janelia.workstation.controller;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters for one event type on one ViewerEventBus delivery queue: how many
+ * events were posted, how many of those were merged into an event already
+ * waiting, how deep the queue is, and how long subscribers take to handle
+ * each delivered event.
+ */
+public class EventMetrics {
+
+    private final String delivery;
+    private final Class<?> eventType;
+    private final AtomicLong posted = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong delivered = new AtomicLong();
+    private final AtomicLong queueDepth = new AtomicLong();
+    private final AtomicLong maxQueueDepth = new AtomicLong();
+    private final AtomicLong totalHandlerNanos = new AtomicLong();
+    private final AtomicLong maxHandlerNanos = new AtomicLong();
+
+    EventMetrics(String delivery, Class<?> eventType) {
+        this.delivery = delivery;
+        this.eventType = eventType;
+    }
+
+    void queued() {
+        posted.incrementAndGet();
+        maxQueueDepth.accumulateAndGet(queueDepth.incrementAndGet(), Math::max);
+    }
+
+    void merged() {
+        posted.incrementAndGet();
+        coalesced.incrementAndGet();
+    }
+
+    void dequeued() {
+        queueDepth.decrementAndGet();
+    }
+
+    void delivered(long handlerNanos) {
+        delivered.incrementAndGet();
+        totalHandlerNanos.addAndGet(handlerNanos);
+        maxHandlerNanos.accumulateAndGet(handlerNanos, Math::max);
+    }
+
+    /**
+     * "EDT" or "background"
+     */
+    public String getDelivery() {
+        return delivery;
+    }
+
+    public Class<?> getEventType() {
+        return eventType;
+    }
+
+    public long getPosted() {
+        return posted.get();
+    }
+
+    public long getCoalesced() {
+        return coalesced.get();
+    }
+
+    public long getDelivered() {
+        return delivered.get();
+    }
+
+    public long getQueueDepth() {
+        return queueDepth.get();
+    }
+
+    public long getMaxQueueDepth() {
+        return maxQueueDepth.get();
+    }
+
+    /**
+     * time for all subscribers to handle one event, averaged over delivered events
+     */
+    public double getMeanHandlerMillis() {
+        long count = delivered.get();
+        return count == 0 ? 0 : totalHandlerNanos.get() / (double) count / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    public double getMaxHandlerMillis() {
+        return maxHandlerNanos.get() / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s %s: posted=%d coalesced=%d delivered=%d queue=%d (max %d) handlers=%.2f ms mean, %.2f ms max",
+                delivery, eventType.getSimpleName(), getPosted(), getCoalesced(), getDelivered(),
+                getQueueDepth(), getMaxQueueDepth(), getMeanHandlerMillis(), getMaxHandlerMillis());
+    }
+}
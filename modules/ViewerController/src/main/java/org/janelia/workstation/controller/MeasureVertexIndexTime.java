@@ -0,0 +1,107 @@
+package org.janelia.workstation.controller;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import edu.wlu.cs.levy.CG.KDTree;
+
+/**
+ * Times building and querying the vertex KD-tree on synthetic neurons, next to the generic
+ * KD-tree that the neuron vertex index used before.
+ *
+ * Usage: MeasureVertexIndexTime [vertexCount [queryCount]]
+ */
+public class MeasureVertexIndexTime {
+
+    public static void main(String[] args) throws Exception {
+        int vertexCount = args.length > 0 ? Integer.parseInt(args[0]) : 2000000;
+        int queryCount = args.length > 1 ? Integer.parseInt(args[1]) : 100000;
+
+        float[] xyz = syntheticNeurons(new Random(1), vertexCount);
+        List<Integer> vertices = new ArrayList<>(vertexCount);
+        for (int i = 0; i < vertexCount; i++) {
+            vertices.add(i);
+        }
+        float[][] queries = new float[queryCount][];
+        Random random = new Random(2);
+        for (int q = 0; q < queryCount; q++) {
+            int v = random.nextInt(vertexCount);
+            queries[q] = new float[]{xyz[3 * v] + random.nextFloat(), xyz[3 * v + 1] + random.nextFloat(), xyz[3 * v + 2]};
+        }
+
+        for (int pass = 0; pass < 3; pass++) {
+            System.out.println("Pass " + pass + ", " + vertexCount + " vertices:");
+
+            long start = System.nanoTime();
+            VertexKdTree<Integer> tree = new VertexKdTree<>();
+            tree.build(vertices, xyz);
+            report("  VertexKdTree build", start, 1);
+
+            start = System.nanoTime();
+            long found = 0;
+            for (float[] q : queries) {
+                found += tree.nearest(q[0], q[1], q[2], 3, null).size();
+            }
+            report("  VertexKdTree nearest 3", start, queryCount);
+
+            start = System.nanoTime();
+            for (float[] q : queries) {
+                found += tree.range(new float[]{q[0] - 20, q[1] - 20, q[2] - 5}, new float[]{q[0] + 20, q[1] + 20, q[2] + 5}).size();
+            }
+            report("  VertexKdTree range", start, queryCount);
+
+            start = System.nanoTime();
+            KDTree<Integer> levy = new KDTree<>(3);
+            for (int i = 0; i < vertexCount; i++) {
+                // The old index fuzzed keys, because it could not hold duplicate points
+                levy.insert(new double[]{xyz[3 * i] + 1e-4 * random.nextDouble(), xyz[3 * i + 1], xyz[3 * i + 2]}, i);
+            }
+            report("  KDTree build", start, 1);
+
+            start = System.nanoTime();
+            for (float[] q : queries) {
+                found += levy.nearest(new double[]{q[0], q[1], q[2]}, 3).size();
+            }
+            report("  KDTree nearest 3", start, queryCount);
+
+            start = System.nanoTime();
+            for (float[] q : queries) {
+                found += levy.range(new double[]{q[0] - 20, q[1] - 20, q[2] - 5}, new double[]{q[0] + 20, q[1] + 20, q[2] + 5}).size();
+            }
+            report("  KDTree range", start, queryCount);
+            System.out.println("  (" + found + " results)");
+        }
+    }
+
+    private static void report(String label, long startNanos, int count) {
+        double millis = (System.nanoTime() - startNanos) / 1e6;
+        if (count == 1) {
+            System.out.println(String.format("%s: %.1f ms", label, millis));
+        } else {
+            System.out.println(String.format("%s: %.1f ms, %.2f us each", label, millis, 1000 * millis / count));
+        }
+    }
+
+    // Random walks on a 0.4 um grid, like traced neurites, with some duplicate points
+    private static float[] syntheticNeurons(Random random, int vertexCount) {
+        float[] xyz = new float[3 * vertexCount];
+        float x = 0, y = 0, z = 0;
+        for (int i = 0; i < vertexCount; i++) {
+            if (i % 5000 == 0) {
+                x = random.nextInt(20000) * 0.4f;
+                y = random.nextInt(20000) * 0.4f;
+                z = random.nextInt(5000) * 1.0f;
+            } else if (random.nextInt(20) != 0) {
+                x += (random.nextInt(7) - 3) * 0.4f;
+                y += (random.nextInt(7) - 3) * 0.4f;
+                z += random.nextInt(3) - 1;
+            }
+            xyz[3 * i] = x;
+            xyz[3 * i + 1] = y;
+            xyz[3 * i + 2] = z;
+        }
+        return xyz;
+    }
+
+}
@@ -7,6 +7,11 @@ import java.io.IOException;
 import java.nio.file.Path;
 import java.util.*;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -19,6 +24,7 @@ import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.google.common.base.Stopwatch;
 
 import com.google.common.eventbus.Subscribe;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.apache.commons.io.FilenameUtils;
 import org.janelia.workstation.controller.model.DefaultNeuron;
 import org.janelia.model.domain.DomainConstants;
@@ -41,6 +47,7 @@ import org.janelia.workstation.controller.model.annotations.neuron.PredefinedNot
 import org.janelia.workstation.controller.scripts.spatialfilter.NeuronMessageConstants;
 import org.janelia.workstation.controller.scripts.spatialfilter.NeuronSpatialFilter;
 import org.janelia.workstation.controller.scripts.spatialfilter.NeuronUpdates;
+import org.janelia.workstation.controller.tools.BulkNeuronImporter;
 import org.janelia.workstation.controller.tools.NoteExporter;
 import org.janelia.workstation.core.api.AccessManager;
 import org.janelia.workstation.core.events.Events;
@@ -91,6 +98,10 @@ public class NeuronManager implements DomainObjectSelectionSupport {
     private static final String NEURON_TAG_VISIBILITY = "hidden";
 
     private static final int NUMBER_FRAGMENTS_THRESHOLD = 1000;
+    private static final int SWC_EXPORT_THREADS = ConsoleProperties.getInt("console.lvv.swcExportThreads", 4);
+    private static final int SWC_IMPORT_THREADS = ConsoleProperties.getInt("console.lvv.swcImportThreads", 4);
+    private static final int SWC_IMPORT_BATCH_SIZE = ConsoleProperties.getInt("console.lvv.swcImportBatchSize", 50);
+    private static final int SWC_IMPORT_BATCHES_IN_FLIGHT = ConsoleProperties.getInt("console.lvv.swcImportBatchesInFlight", 2);
     private final TiledMicroscopeDomainMgr tmDomainMgr;
     private SWCDataConverter swcDataConverter;
 
@@ -1955,57 +1966,69 @@ public class NeuronManager implements DomainObjectSelectionSupport {
 
         progress.setStatus("Exporting neuron files");
 
-        // get swcdata via converter, then write; conversion from TmNeurons is done
-        //  all at once so all neurons are off set from the same center of mass
-        // First write one file per neuron.
-        List<SWCData> swcDatas = getSwcDataConverter().fromTmNeuron(neuronList, neuronHeaders, downsampleModulo);
-        // there's one swc and one note file per neuron, plus aggregate; note how
-        //  we set progress; i only increments per neuron, but we show progress over
-        //  all files
-        int total = 1;
-        if (swcDatas != null && !swcDatas.isEmpty()) {
-            if (exportNotes) {
-                total = 2 * (swcDatas.size() + 1);
-            } else {
-                total = swcDatas.size() + 1;
+        // conversion from TmNeurons is done per neuron, but all neurons are offset
+        //  from the same center of mass; each neuron is converted and written on
+        //  the export pool, so only as many neurons as there are threads are
+        //  held as SWC at once
+        SWCDataConverter converter = getSwcDataConverter();
+        double[] center = converter.neuronCenterOfMass(neuronList);
+        List<TmNeuronMetadata> exportList = new ArrayList<>();
+        for (TmNeuronMetadata neuron: neuronList) {
+            if (neuron != null && neuron.getGeoAnnotationMap().size() > 0) {
+                exportList.add(neuron);
             }
-            int i = 0;
-            for (SWCData swcData: swcDatas) {
-                progress.setStatus("Exporting neuron file " + (i + 1));
-                if (swcDatas.size() == 1) {
-                    swcData.write(swcFile, -1);
-                }
-                else {
-                    swcData.write(swcFile, i);
-                }
-                progress.setProgress(2 * i, total);
-
-                if (exportNotes) {
-                    progress.setStatus("Exporting notes file " + (i + 1));
-                    NoteExporter.exportNotes(swcData.getPath(), modelManager.getCurrentWorkspace().getId(), swcData.getNeuronCenter(),
-                        neuronList.get(i), getSwcDataConverter());
-                    progress.setProgress(2 * i + 1, total);
-                }
+        }
+        if (exportList.isEmpty()) {
+            progress.setProgress(1, 1);
+            progress.setStatus("No data retrieved!");
+            return;
+        }
 
-                i++;
-                // for reasons that are not clear but may involve modification of the workspace
-                //  while a long export is happening (particularly now in the shared workspace era),
-                //  the number of items processed can occasionally exceed the total, causing an
-                //  error in the progress widget; adjust for that
-                if (2 * i + 1 >= total) {
-                    total = 2 * i + 1;
+        // there's one swc and one note file per neuron, plus aggregate
+        int total = exportNotes ? 2 * (exportList.size() + 1) : exportList.size() + 1;
+        int filesPerNeuron = exportNotes ? 2 : 1;
+        Long workspaceId = modelManager.getCurrentWorkspace().getId();
+        AtomicInteger filesWritten = new AtomicInteger();
+        ExecutorService exportExecutor = Executors.newFixedThreadPool(SWC_EXPORT_THREADS, new ThreadFactoryBuilder()
+                .setNameFormat("SWCExport-%d")
+                .setDaemon(true)
+                .build());
+        try {
+            List<Future<?>> exports = new ArrayList<>();
+            for (int i = 0; i < exportList.size(); i++) {
+                final int offset = exportList.size() == 1 ? -1 : i;
+                final TmNeuronMetadata neuron = exportList.get(i);
+                exports.add(exportExecutor.submit(() -> {
+                    SWCData swcData = converter.fromTmNeuron(neuron, center, neuronHeaders.get(neuron.getId()), downsampleModulo);
+                    swcData.write(swcFile, offset);
+                    if (exportNotes) {
+                        NoteExporter.exportNotes(swcData.getPath(), workspaceId, swcData.getNeuronCenter(),
+                            neuron, converter);
+                    }
+                    int written = filesWritten.addAndGet(filesPerNeuron);
+                    synchronized (progress) {
+                        progress.setStatus("Exported " + written / filesPerNeuron + " of " + exportList.size() + " neurons");
+                        progress.setProgress(written, total);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> export: exports) {
+                try {
+                    export.get();
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    throw cause instanceof Exception ? (Exception) cause : e;
                 }
             }
-        } else {
-            progress.setProgress(total, total);
-            progress.setStatus("No data retrieved!");
-            return;
+        } finally {
+            exportExecutor.shutdownNow();
         }
 
 
         // Next write one file containing all neurons, if there are more than one.
-        if (swcDatas != null  &&  swcDatas.size() > 1) {
-            SWCData swcData = getSwcDataConverter().fromAllTmNeuron(neuronList, downsampleModulo);
+        if (exportList.size() > 1) {
+            SWCData swcData = converter.fromAllTmNeuron(neuronList, downsampleModulo);
             if (swcData != null) {
                 swcData.write(swcFile);
                 progress.setStatus("Exporting combined neuron file");
@@ -2013,8 +2036,8 @@ public class NeuronManager implements DomainObjectSelectionSupport {
 
                 if (exportNotes) {
                     progress.setStatus("Exporting combined notes file");
-                    NoteExporter.exportNotes(swcData.getPath(),  modelManager.getCurrentWorkspace().getId(), swcData.getNeuronCenter(),
-                        neuronList, getSwcDataConverter());
+                    NoteExporter.exportNotes(swcData.getPath(), workspaceId, swcData.getNeuronCenter(),
+                        neuronList, converter);
                 }
             }
         }
@@ -2028,20 +2051,21 @@ public class NeuronManager implements DomainObjectSelectionSupport {
         log.info("Importing neuron from SWC file {}",swcFile);
 
         // the constructor also triggers the parsing, but not the validation
-        SWCData swcData = SWCData.read(swcFile);
+        importBulkSWCData(swcFile, SWCData.read(swcFile), tmWorkspace);
+    }
+
+    /**
+     * import a neuron from an SWC file that has already been read, eg, by
+     * SWCData.readInParallel
+     */
+    public synchronized void importBulkSWCData(final File swcFile, SWCData swcData, TmWorkspace tmWorkspace) throws Exception {
         if (!swcData.isValid()) {
             throw new Exception(String.format("invalid SWC file %s; reason: %s",
                     swcFile.getName(), swcData.getInvalidReason()));
         }
 
-        // create one neuron for the file; take name from the filename (strip extension)
-        String neuronName = swcData.parseName();
-        if (neuronName == null) {
-            neuronName = swcFile.getName();
-        }
-        if (neuronName.endsWith(SWCData.STD_SWC_EXTENSION)) {
-            neuronName = neuronName.substring(0, neuronName.length() - SWCData.STD_SWC_EXTENSION.length());
-        }
+        // create one neuron for the file
+        String neuronName = neuronNameFor(swcFile, swcData);
         Map<String,Object> parameters = new HashMap<String,Object>();
         parameters.put("swc", swcData);
         parameters.put("file", swcFile);
@@ -2053,6 +2077,82 @@ public class NeuronManager implements DomainObjectSelectionSupport {
         finishBulkSWCData(parameters);
     }
 
+    /**
+     * import one neuron from each of many SWC files; the files are parsed in
+     * parallel, and each neuron is built completely locally, with its notes,
+     * then created on the server in batches, instead of one create and one or
+     * two saves per file; neurons appear in the UI batch by batch
+     *
+     * @return the number of neurons imported
+     */
+    public int importBulkSWCData(List<File> swcFiles, TmWorkspace tmWorkspace, Progress progress) throws Exception {
+        log.info("Importing {} neurons from SWC files", swcFiles.size());
+        BulkNeuronImporter importer = new BulkNeuronImporter(
+                (swcFile, swcData) -> buildNeuronFromSWC(swcFile, swcData, tmWorkspace),
+                tmDomainMgr::createWithIds,
+                SWC_IMPORT_THREADS, SWC_IMPORT_BATCH_SIZE, SWC_IMPORT_BATCHES_IN_FLIGHT);
+        return importer.importFiles(swcFiles, (neurons, createdCount, totalCount) -> {
+            for (TmNeuronMetadata neuron: neurons) {
+                neuron.initNeuronData();
+                neuronModel.addNeuron(neuron);
+            }
+            progress.setStatus("Imported " + createdCount + " of " + totalCount + " neurons");
+            progress.setProgress(createdCount, totalCount);
+            SwingUtilities.invokeLater(() -> {
+                if (applyFilter) {
+                    for (TmNeuronMetadata neuron: neurons) {
+                        NeuronUpdates updates = neuronFilter.addNeuron(neuron);
+                        updateFrags(updates);
+                    }
+                }
+                ViewerEventBus.postEvent(new NeuronCreateEvent(this, neurons));
+            });
+        });
+    }
+
+    /**
+     * build a complete neuron from SWC data, without creating it on the
+     * server; IDs for the neuron and its annotations come from the local
+     * ID source, so notes can be attached before the neuron is created
+     */
+    private TmNeuronMetadata buildNeuronFromSWC(File swcFile, SWCData swcData, TmWorkspace tmWorkspace) throws Exception {
+        if (!swcData.isValid()) {
+            throw new Exception(String.format("invalid SWC file %s; reason: %s",
+                    swcFile.getName(), swcData.getInvalidReason()));
+        }
+        TmNeuronMetadata neuron = new TmNeuronMetadata();
+        neuron.setId(neuronModel.nextId());
+        neuron.setOwnerKey(AccessManager.getSubjectKey());
+        neuron.setWorkspaceRef(Reference.createFor(TmWorkspace.class, tmWorkspace.getId()));
+        neuron.setName(neuronNameFor(swcFile, swcData));
+        neuron.getReaders().add(ConsoleProperties.getInstance().getProperty("console.LVVHorta.tracersgroup"));
+        neuron.setColor(neuronColors[(int) (neuron.getId() % neuronColors.length)]);
+        addSWCAnnotations(neuron, swcData);
+
+        File notesFile = findNotesFile(swcFile);
+        if (notesFile.exists()) {
+            Map<Vec3, String> notes = parseNotesFile(notesFile);
+            if (notes.size() > 0) {
+                addNotes(neuron, notes);
+            }
+        }
+        return neuron;
+    }
+
+    /**
+     * neuron name from the SWC header, or else the filename (without extension)
+     */
+    private String neuronNameFor(File swcFile, SWCData swcData) {
+        String neuronName = swcData.parseName();
+        if (neuronName == null) {
+            neuronName = swcFile.getName();
+        }
+        if (neuronName.endsWith(SWCData.STD_SWC_EXTENSION)) {
+            neuronName = neuronName.substring(0, neuronName.length() - SWCData.STD_SWC_EXTENSION.length());
+        }
+        return neuronName;
+    }
+
     public synchronized void finishBulkSWCData(Map<String,Object> neuronData) {
         TmNeuronMetadata neuron = (TmNeuronMetadata)neuronData.get("neuron");
         if (neuron==null)
@@ -2063,6 +2163,60 @@ public class NeuronManager implements DomainObjectSelectionSupport {
             return;
 
         File swcFile = (File)neuronData.get("file");
+        addSWCAnnotations(neuron, swcData);
+
+        try {
+            // need to save neuron now; notes have to be attached to the final
+            //  annotation IDs, not the placeholders that exist before the save
+            neuronModel.saveNeuronData(neuron);
+
+            // check for corresponding notes file; if present, import notes
+            // find file; read and parse it
+            File notesFile = findNotesFile(swcFile);
+            if (notesFile.exists()) {
+                // read and parse
+                Map<Vec3, String> notes = parseNotesFile(notesFile);
+                if (notes.size() > 0) {
+                    // add notes to neuron; get a fresh copy that has updated ann IDs
+                    neuron = neuronModel.getNeuronById(neuron.getId());
+                    if (neuron == null) {
+                        // this should really never happen...neuron was just imported, should never had any opportunity
+                        //  for a user to do anything with it...but if so, can't import notes; log warning
+                        log.warn("could not retrieve neuron ID {} while attaching notes during import", neuron.getId());
+
+                    } else {
+                        // unfortunately, the only way to associate the notes with the nodes
+                        //  is through a brute-force search; we need to associate the locations
+                        //  with the annotation ID, but those IDs are changed during the save,
+                        //  and we can't track the mapping; the spatial index is built later
+                        //  and asynchronously, so we don't have access to it now
+                        // later testing: added a few random notes to a neuron with 28k nodes;
+                        //  import took ~1s with or without notes
+                        addNotes(neuron, notes);
+                        // now save again, with the note data
+                        neuronModel.saveNeuronData(neuron);
+
+                        if (applyFilter) {
+                            NeuronUpdates updates = neuronFilter.updateNeuron(neuron);
+                            updateFrags(updates);
+                        }
+                        fireNeuronChanged(neuron);
+                        fireNeuronSelected(neuron);
+                    }
+                }
+            }
+
+            postWorkspaceUpdate(neuron);
+        } catch (Exception e) {
+            log.info("Error saving neurons", e);
+        }
+    }
+
+    /**
+     * add the nodes of the SWC data to the neuron as annotations, with new IDs,
+     * and take the neuron color from the SWC header if there is one
+     */
+    private void addSWCAnnotations(TmNeuronMetadata neuron, SWCData swcData) {
         // note from CB, July 2013: Vaa3d can't handle large coordinates in swc files,
         //  so he added an OFFSET header and recentered on zero when exporting
         // therefore, if that header is present, respect it
@@ -2111,63 +2265,23 @@ public class NeuronManager implements DomainObjectSelectionSupport {
             Color color = new Color(colorArr[0], colorArr[1], colorArr[2]);
             neuron.setColor(color);
         }
+    }
 
-        try {
-            // need to save neuron now; notes have to be attached to the final
-            //  annotation IDs, not the placeholders that exist before the save
-            neuronModel.saveNeuronData(neuron);
-
-            // check for corresponding notes file; if present, import notes
-            // find file; read and parse it
-            File notesFile = findNotesFile(swcFile);
-            if (notesFile.exists()) {
-                // read and parse
-                Map<Vec3, String> notes = parseNotesFile(notesFile);
-                if (notes.size() > 0) {
-                    // add notes to neuron; get a fresh copy that has updated ann IDs
-                    neuron = neuronModel.getNeuronById(neuron.getId());
-                    if (neuron == null) {
-                        // this should really never happen...neuron was just imported, should never had any opportunity
-                        //  for a user to do anything with it...but if so, can't import notes; log warning
-                        log.warn("could not retrieve neuron ID {} while attaching notes during import", neuron.getId());
-
-                    } else {
-                        ObjectMapper mapper = new ObjectMapper();
-
-                        // unfortunately, the only way to associate the notes with the nodes
-                        //  is through a brute-force search; we need to associate the locations
-                        //  with the annotation ID, but those IDs are changed during the save,
-                        //  and we can't track the mapping; the spatial index is built later
-                        //  and asynchronously, so we don't have access to it now
-                        // later testing: added a few random notes to a neuron with 28k nodes;
-                        //  import took ~1s with or without notes
-                        for (TmGeoAnnotation root : neuron.getRootAnnotations()) {
-                            for (TmGeoAnnotation ann : neuron.getSubTreeList(root)) {
-                                Vec3 loc = new Vec3(ann.getX(), ann.getY(), ann.getZ());
-                                if (notes.containsKey(loc)) {
-                                    // fortunately, we only need the simplest case seen in setNotes():
-                                    ObjectNode node = mapper.createObjectNode();
-                                    node.put("note", notes.get(loc));
-                                    neuronModel.addStructuredTextAnnotation(neuron, ann.getId(), mapper.writeValueAsString(node));
-                                }
-                            }
-                        }
-                        // now save again, with the note data
-                        neuronModel.saveNeuronData(neuron);
-
-                        if (applyFilter) {
-                            NeuronUpdates updates = neuronFilter.updateNeuron(neuron);
-                            updateFrags(updates);
-                        }
-                        fireNeuronChanged(neuron);
-                        fireNeuronSelected(neuron);
-                    }
+    /**
+     * attach imported notes to the neuron's annotations at the notes' locations
+     */
+    private void addNotes(TmNeuronMetadata neuron, Map<Vec3, String> notes) throws Exception {
+        ObjectMapper mapper = new ObjectMapper();
+        for (TmGeoAnnotation root : neuron.getRootAnnotations()) {
+            for (TmGeoAnnotation ann : neuron.getSubTreeList(root)) {
+                Vec3 loc = new Vec3(ann.getX(), ann.getY(), ann.getZ());
+                if (notes.containsKey(loc)) {
+                    // fortunately, we only need the simplest case seen in setNotes():
+                    ObjectNode node = mapper.createObjectNode();
+                    node.put("note", notes.get(loc));
+                    neuronModel.addStructuredTextAnnotation(neuron, ann.getId(), mapper.writeValueAsString(node));
                 }
             }
-
-            postWorkspaceUpdate(neuron);
-        } catch (Exception e) {
-            log.info("Error saving neurons", e);
         }
     }
 
@@ -2548,6 +2662,10 @@ public class NeuronManager implements DomainObjectSelectionSupport {
 
     public void setNeuronFiltering(boolean filtering) {
         applyFilter = filtering;
+        if (!filtering) {
+            // every neuron is shown, so none can stay in the columnar store
+            neuronModel.restoreStoredFragments();
+        }
     }
 
     public NeuronSpatialFilter getFilterStrategy() {
@@ -1,11 +1,11 @@
 package org.janelia.workstation.controller;
 
 import com.google.common.eventbus.Subscribe;
-import edu.wlu.cs.levy.CG.Checker;
 import org.janelia.model.domain.tiledMicroscope.TmGeoAnnotation;
 import org.janelia.model.domain.tiledMicroscope.TmNeuronMetadata;
 import org.janelia.workstation.controller.eventbus.*;
 import java.util.List;
+import java.util.function.Predicate;
 
 public class SpatialIndexManager {
     private final NeuronVertexSpatialIndex spatialIndex;
@@ -32,7 +32,7 @@ public class SpatialIndexManager {
         return spatialIndex.getAnchorClosestToMicronLocation(voxelXYZ);
     }
 
-    public List<TmGeoAnnotation> getAnchorClosestToMicronLocation(double[] micronXYZ, int n, final Checker<TmGeoAnnotation> filter) {
+    public List<TmGeoAnnotation> getAnchorClosestToMicronLocation(double[] micronXYZ, int n, final Predicate<TmGeoAnnotation> filter) {
         return spatialIndex.getAnchorClosestToMicronLocation(micronXYZ, n, filter);
     }
 
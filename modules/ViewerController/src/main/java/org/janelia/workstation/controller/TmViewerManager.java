@@ -254,13 +254,6 @@ public class TmViewerManager implements GlobalViewerController {
             if (neuron.getColor() == null) {
                 neuron.setColor(TmViewState.generateNewColor(neuron.getId()));
             }
-            for (TmGeoAnnotation ann : neuron.getGeoAnnotationMap().values()) {
-                if (ann.getRadius() == null) {
-                    Date modDate = ann.getModificationDate();
-                    ann.setRadius(1.0);
-                    ann.setModificationDate(modDate);
-                }
-            }
         }
         if (nFragments >= NUMBER_FRAGMENTS_THRESHOLD) {
             modelManager.getCurrentView().setFilter(true);
@@ -0,0 +1,429 @@
+package org.janelia.workstation.controller;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Predicate;
+
+/**
+ * KD-tree of 3D points, with coordinates kept in flat float arrays rather than boxed keys.
+ *
+ * The bulk of the points live in a balanced, implicit tree that is built in parallel.
+ * Points inserted afterwards go to a small unsorted buffer that queries scan linearly,
+ * and removed points are left as holes in the tree. Once the buffer or the holes grow
+ * too large, the tree is rebuilt. Duplicate points are allowed; items are identified by
+ * equals(), so each item can be in the tree only once.
+ *
+ * Not thread safe; callers must synchronize.
+ *
+ * @param <T> item stored at each point
+ */
+public class VertexKdTree<T> {
+
+    private static final int LEAF_SIZE = 8;
+    // Ranges larger than this are split between threads while building
+    private static final int PARALLEL_BUILD_SIZE = 32 * 1024;
+    private static final int MIN_PENDING_BEFORE_REBUILD = 1024;
+
+    // Tree points, in tree order: xyz of each point, the item (null once removed), and the split axis of each node
+    private float[] coords = new float[0];
+    private Object[] items = new Object[0];
+    private byte[] axes = new byte[0];
+    private int removedCount = 0;
+
+    // Points inserted since the last build
+    private float[] pendingCoords = new float[3 * 64];
+    private Object[] pendingItems = new Object[64];
+    private int pendingCount = 0;
+
+    // Position of each item: tree slot, or -(pending slot + 1)
+    private Map<T, Integer> slots = new HashMap<>();
+
+    /**
+     * Replace the contents of the tree.
+     *
+     * @param newItems items to store
+     * @param newCoords xyz of each item, 3 floats per item
+     */
+    public void build(List<T> newItems, float[] newCoords) {
+        int n = newItems.size();
+        if (newCoords.length < 3 * n) {
+            throw new IllegalArgumentException("expected " + 3 * n + " coordinates, got " + newCoords.length);
+        }
+        // Points are sorted in place, with the coordinates themselves moved, so the build reads memory in sequence
+        float[] xyz = Arrays.copyOf(newCoords, 3 * n);
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        byte[] newAxes = new byte[n];
+        if (n > PARALLEL_BUILD_SIZE) {
+            ForkJoinPool.commonPool().invoke(new BuildTask(xyz, order, newAxes, 0, n));
+        } else {
+            buildRange(xyz, order, newAxes, 0, n);
+        }
+        Object[] newTreeItems = new Object[n];
+        Map<T, Integer> newSlots = new HashMap<>(2 * n);
+        int newRemovedCount = 0;
+        for (int i = 0; i < n; i++) {
+            T item = newItems.get(order[i]);
+            newTreeItems[i] = item;
+            Integer previous = newSlots.put(item, i);
+            if (previous != null) {
+                // Listed twice; keep the last copy
+                newTreeItems[previous] = null;
+                newRemovedCount++;
+            }
+        }
+        coords = xyz;
+        items = newTreeItems;
+        axes = newAxes;
+        removedCount = newRemovedCount;
+        pendingCount = 0;
+        Arrays.fill(pendingItems, null);
+        slots = newSlots;
+    }
+
+    private static class BuildTask extends RecursiveAction {
+        private final float[] xyz;
+        private final int[] order;
+        private final byte[] splitAxes;
+        private final int start;
+        private final int end;
+
+        private BuildTask(float[] xyz, int[] order, byte[] splitAxes, int start, int end) {
+            this.xyz = xyz;
+            this.order = order;
+            this.splitAxes = splitAxes;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - start <= PARALLEL_BUILD_SIZE) {
+                buildRange(xyz, order, splitAxes, start, end);
+                return;
+            }
+            int middle = split(xyz, order, splitAxes, start, end);
+            invokeAll(new BuildTask(xyz, order, splitAxes, start, middle),
+                    new BuildTask(xyz, order, splitAxes, middle + 1, end));
+        }
+    }
+
+    private static void buildRange(float[] xyz, int[] order, byte[] splitAxes, int start, int end) {
+        if (end - start <= LEAF_SIZE) {
+            return;
+        }
+        int middle = split(xyz, order, splitAxes, start, end);
+        buildRange(xyz, order, splitAxes, start, middle);
+        buildRange(xyz, order, splitAxes, middle + 1, end);
+    }
+
+    // Puts the median along the widest axis in the middle of the range, and returns its position
+    private static int split(float[] xyz, int[] order, byte[] splitAxes, int start, int end) {
+        float minX = Float.POSITIVE_INFINITY, minY = Float.POSITIVE_INFINITY, minZ = Float.POSITIVE_INFINITY;
+        float maxX = Float.NEGATIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY, maxZ = Float.NEGATIVE_INFINITY;
+        for (int i = 3 * start; i < 3 * end; i += 3) {
+            minX = Math.min(minX, xyz[i]);
+            maxX = Math.max(maxX, xyz[i]);
+            minY = Math.min(minY, xyz[i + 1]);
+            maxY = Math.max(maxY, xyz[i + 1]);
+            minZ = Math.min(minZ, xyz[i + 2]);
+            maxZ = Math.max(maxZ, xyz[i + 2]);
+        }
+        int axis = 0;
+        float extent = maxX - minX;
+        if (maxY - minY > extent) {
+            axis = 1;
+            extent = maxY - minY;
+        }
+        if (maxZ - minZ > extent) {
+            axis = 2;
+        }
+        int middle = (start + end) >>> 1;
+        select(xyz, order, start, end - 1, middle, axis);
+        splitAxes[middle] = (byte) axis;
+        return middle;
+    }
+
+    // Partially sorts points left..right so that point k has the k-th smallest coordinate along the axis
+    private static void select(float[] xyz, int[] order, int left, int right, int k, int axis) {
+        while (left < right) {
+            float pivot = xyz[3 * ((left + right) >>> 1) + axis];
+            int i = left;
+            int j = right;
+            while (i <= j) {
+                while (xyz[3 * i + axis] < pivot) {
+                    i++;
+                }
+                while (xyz[3 * j + axis] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(xyz, order, i, j);
+                    i++;
+                    j--;
+                }
+            }
+            if (k <= j) {
+                right = j;
+            } else if (k >= i) {
+                left = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    private static void swap(float[] xyz, int[] order, int i, int j) {
+        int t = order[i];
+        order[i] = order[j];
+        order[j] = t;
+        for (int a = 0; a < 3; a++) {
+            float v = xyz[3 * i + a];
+            xyz[3 * i + a] = xyz[3 * j + a];
+            xyz[3 * j + a] = v;
+        }
+    }
+
+    public int size() {
+        return slots.size();
+    }
+
+    public boolean contains(T item) {
+        return slots.containsKey(item);
+    }
+
+    /**
+     * Add an item, or move it if it is already in the tree.
+     */
+    public void insert(T item, float x, float y, float z) {
+        remove(item);
+        if (pendingCount == pendingItems.length) {
+            pendingItems = Arrays.copyOf(pendingItems, 2 * pendingCount);
+            pendingCoords = Arrays.copyOf(pendingCoords, 6 * pendingCount);
+        }
+        pendingCoords[3 * pendingCount] = x;
+        pendingCoords[3 * pendingCount + 1] = y;
+        pendingCoords[3 * pendingCount + 2] = z;
+        pendingItems[pendingCount] = item;
+        slots.put(item, -(pendingCount + 1));
+        pendingCount++;
+        if (pendingCount > Math.max(MIN_PENDING_BEFORE_REBUILD, items.length / 8)) {
+            rebuild();
+        }
+    }
+
+    /**
+     * @return false if the item was not in the tree
+     */
+    public boolean remove(T item) {
+        Integer slot = slots.remove(item);
+        if (slot == null) {
+            return false;
+        }
+        removeAt(slot);
+        if (removedCount > Math.max(MIN_PENDING_BEFORE_REBUILD, items.length / 4)) {
+            rebuild();
+        }
+        return true;
+    }
+
+    private void removeAt(int slot) {
+        if (slot >= 0) {
+            items[slot] = null;
+            removedCount++;
+            return;
+        }
+        // Fill the hole in the pending buffer with its last point
+        int p = -slot - 1;
+        int last = pendingCount - 1;
+        if (p != last) {
+            System.arraycopy(pendingCoords, 3 * last, pendingCoords, 3 * p, 3);
+            pendingItems[p] = pendingItems[last];
+            @SuppressWarnings("unchecked")
+            T moved = (T) pendingItems[p];
+            slots.put(moved, -(p + 1));
+        }
+        pendingItems[last] = null;
+        pendingCount = last;
+    }
+
+    /**
+     * Rebuild the balanced tree from all current points.
+     */
+    public void rebuild() {
+        int n = slots.size();
+        List<T> allItems = new ArrayList<>(n);
+        float[] allCoords = new float[3 * n];
+        for (int i = 0; i < items.length; i++) {
+            if (items[i] != null) {
+                System.arraycopy(coords, 3 * i, allCoords, 3 * allItems.size(), 3);
+                @SuppressWarnings("unchecked")
+                T item = (T) items[i];
+                allItems.add(item);
+            }
+        }
+        for (int i = 0; i < pendingCount; i++) {
+            System.arraycopy(pendingCoords, 3 * i, allCoords, 3 * allItems.size(), 3);
+            @SuppressWarnings("unchecked")
+            T item = (T) pendingItems[i];
+            allItems.add(item);
+        }
+        build(allItems, allCoords);
+    }
+
+    /**
+     * @param filter items to consider; may be null to accept all
+     * @return up to count items nearest to xyz, nearest first
+     */
+    public List<T> nearest(float x, float y, float z, int count, Predicate<? super T> filter) {
+        if (count <= 0 || slots.isEmpty()) {
+            return Collections.emptyList();
+        }
+        // Max-heap of the best candidates found so far
+        PriorityQueue<Candidate> best = new PriorityQueue<>(count + 1, Collections.reverseOrder());
+        if (items.length > 0) {
+            searchNearest(0, items.length, x, y, z, count, filter, best);
+        }
+        for (int i = 0; i < pendingCount; i++) {
+            offer(pendingItems[i], pendingCoords, i, x, y, z, count, filter, best);
+        }
+        List<Candidate> sorted = new ArrayList<>(best);
+        Collections.sort(sorted);
+        List<T> result = new ArrayList<>(sorted.size());
+        for (Candidate candidate : sorted) {
+            @SuppressWarnings("unchecked")
+            T item = (T) candidate.item;
+            result.add(item);
+        }
+        return result;
+    }
+
+    private void searchNearest(int start, int end, float x, float y, float z, int count,
+                               Predicate<? super T> filter, PriorityQueue<Candidate> best) {
+        if (end - start <= LEAF_SIZE) {
+            for (int i = start; i < end; i++) {
+                offer(items[i], coords, i, x, y, z, count, filter, best);
+            }
+            return;
+        }
+        int middle = (start + end) >>> 1;
+        int axis = axes[middle];
+        float d = (axis == 0 ? x : axis == 1 ? y : z) - coords[3 * middle + axis];
+        // Visit the side of the query point first
+        if (d < 0) {
+            searchNearest(start, middle, x, y, z, count, filter, best);
+        } else {
+            searchNearest(middle + 1, end, x, y, z, count, filter, best);
+        }
+        offer(items[middle], coords, middle, x, y, z, count, filter, best);
+        if (best.size() < count || (double) d * d < best.peek().distanceSquared) {
+            if (d < 0) {
+                searchNearest(middle + 1, end, x, y, z, count, filter, best);
+            } else {
+                searchNearest(start, middle, x, y, z, count, filter, best);
+            }
+        }
+    }
+
+    private void offer(Object item, float[] xyz, int i, float x, float y, float z, int count,
+                       Predicate<? super T> filter, PriorityQueue<Candidate> best) {
+        if (item == null) {
+            return; // removed
+        }
+        double dx = xyz[3 * i] - x;
+        double dy = xyz[3 * i + 1] - y;
+        double dz = xyz[3 * i + 2] - z;
+        double d2 = dx * dx + dy * dy + dz * dz;
+        if (best.size() >= count && d2 >= best.peek().distanceSquared) {
+            return;
+        }
+        if (filter != null) {
+            @SuppressWarnings("unchecked")
+            T t = (T) item;
+            if (!filter.test(t)) {
+                return;
+            }
+        }
+        if (best.size() >= count) {
+            best.poll();
+        }
+        best.add(new Candidate(item, d2));
+    }
+
+    /**
+     * @return items inside the box between the two corners, inclusive, in no particular order
+     */
+    public List<T> range(float[] min, float[] max) {
+        List<T> result = new ArrayList<>();
+        if (items.length > 0) {
+            searchRange(0, items.length, min, max, result);
+        }
+        for (int i = 0; i < pendingCount; i++) {
+            addIfInside(pendingItems[i], pendingCoords, i, min, max, result);
+        }
+        return result;
+    }
+
+    private void searchRange(int start, int end, float[] min, float[] max, List<T> result) {
+        if (end - start <= LEAF_SIZE) {
+            for (int i = start; i < end; i++) {
+                addIfInside(items[i], coords, i, min, max, result);
+            }
+            return;
+        }
+        int middle = (start + end) >>> 1;
+        int axis = axes[middle];
+        float v = coords[3 * middle + axis];
+        addIfInside(items[middle], coords, middle, min, max, result);
+        if (min[axis] <= v) {
+            searchRange(start, middle, min, max, result);
+        }
+        if (max[axis] >= v) {
+            searchRange(middle + 1, end, min, max, result);
+        }
+    }
+
+    private void addIfInside(Object item, float[] xyz, int i, float[] min, float[] max, List<T> result) {
+        if (item == null) {
+            return;
+        }
+        for (int a = 0; a < 3; a++) {
+            float v = xyz[3 * i + a];
+            if (v < min[a] || v > max[a]) {
+                return;
+            }
+        }
+        @SuppressWarnings("unchecked")
+        T t = (T) item;
+        result.add(t);
+    }
+
+    public void clear() {
+        build(Collections.<T>emptyList(), new float[0]);
+    }
+
+    private static class Candidate implements Comparable<Candidate> {
+        private final Object item;
+        private final double distanceSquared;
+
+        private Candidate(Object item, double distanceSquared) {
+            this.item = item;
+            this.distanceSquared = distanceSquared;
+        }
+
+        @Override
+        public int compareTo(Candidate other) {
+            return Double.compare(distanceSquared, other.distanceSquared);
+        }
+    }
+
+}
@@ -1,14 +1,41 @@
 package org.janelia.workstation.controller;
 
 import com.google.common.eventbus.EventBus;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.janelia.workstation.core.util.ConsoleProperties;
 
 import javax.swing.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * Viewer events are queued and delivered in batches: to most subscribers on
+ * the EDT, and to subscribers registered for background events, in order, on
+ * a thread of their own.  Events of the same type and target that pile up
+ * while a queue waits are merged into one (see ViewerEvent.coalesce).
+ */
 public class ViewerEventBus {
+    private static final boolean COALESCE_EVENTS = ConsoleProperties.getBoolean("console.viewer.coalesceEvents", true);
+
     private static final EventBus viewerbus = new EventBus();
+    private static final EventBus backgroundbus = new EventBus("background");
+    private static final EventDispatcher edtDispatcher = new EventDispatcher("EDT", viewerbus,
+            SwingUtilities::invokeLater, COALESCE_EVENTS);
+    private static final EventDispatcher backgroundDispatcher = new EventDispatcher("background", backgroundbus,
+            Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+                    .setNameFormat("ViewerEventBus-background")
+                    .setDaemon(true)
+                    .build()),
+            COALESCE_EVENTS);
+    private static final AtomicInteger backgroundListeners = new AtomicInteger();
 
     public static void postEvent(Object event) {
-        SwingUtilities.invokeLater(()->viewerbus.post(event));
+        edtDispatcher.post(event);
+        if (backgroundListeners.get() > 0) {
+            backgroundDispatcher.post(event);
+        }
     }
     public static void unregisterForEvents(Object listener) {
         viewerbus.unregister(listener);
@@ -16,4 +43,27 @@ public class ViewerEventBus {
     public static void registerForEvents(Object listener) {
         viewerbus.register(listener);
     }
+
+    /**
+     * the listener's subscribers are called on the background event thread
+     * rather than the EDT; for work like indexing that shouldn't hold up the
+     * UI, and doesn't touch Swing
+     */
+    public static void registerForBackgroundEvents(Object listener) {
+        backgroundbus.register(listener);
+        backgroundListeners.incrementAndGet();
+    }
+    public static void unregisterForBackgroundEvents(Object listener) {
+        backgroundbus.unregister(listener);
+        backgroundListeners.decrementAndGet();
+    }
+
+    /**
+     * queue depth, merge and handler time counters, per event type and delivery thread
+     */
+    public static List<EventMetrics> getMetrics() {
+        List<EventMetrics> metrics = new ArrayList<>(edtDispatcher.getMetrics());
+        metrics.addAll(backgroundDispatcher.getMetrics());
+        return metrics;
+    }
 }
@@ -0,0 +1,345 @@
+package org.janelia.workstation.controller.access;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.janelia.workstation.core.util.ConsoleProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Local copy of the neurons of recently opened workspaces, so that re-opening a workspace
+ * only needs to fetch the neurons that changed since it was last open.
+ *
+ * Each workspace has a compressed snapshot file with every neuron, serialized, as of the
+ * snapshot time, and an append-only journal of the neuron updates and deletions that
+ * arrived over the message stream since then. Both are sequences of length-prefixed
+ * records. Reading a snapshot replays its journal on top of it.
+ */
+public class NeuronSnapshotStore {
+
+    private static final Logger LOG = LoggerFactory.getLogger(NeuronSnapshotStore.class);
+
+    private static final boolean ENABLED = ConsoleProperties.getBoolean("console.lvv.neuronSnapshots", false);
+
+    private static final int MAGIC = 0x4e534e50; // "NSNP"
+    private static final int VERSION = 1;
+    private static final byte PUT_RECORD = 1;
+    private static final byte REMOVE_RECORD = 2;
+    private static final int MAX_RECORD_BYTES = 1 << 30;
+
+    private static NeuronSnapshotStore instance;
+    private static boolean instanceOpened = false;
+
+    /**
+     * @return the store, or null if snapshots are disabled or the store could not be opened
+     */
+    public static synchronized NeuronSnapshotStore getInstance() {
+        if (!instanceOpened) {
+            instanceOpened = true;
+            if (ENABLED) {
+                Path directory = Paths.get(ConsoleProperties.getNeuronSnapshotDir());
+                try {
+                    instance = new NeuronSnapshotStore(directory);
+                } catch (IOException e) {
+                    LOG.warn("Could not open neuron snapshot store in {}; workspaces will always be loaded in full", directory, e);
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * One serialized neuron.
+     */
+    public static class NeuronRecord {
+        private final long neuronId;
+        private final long updatedTime;
+        private final byte[] data;
+
+        public NeuronRecord(long neuronId, long updatedTime, byte[] data) {
+            this.neuronId = neuronId;
+            this.updatedTime = updatedTime;
+            this.data = data;
+        }
+
+        public long getNeuronId() {
+            return neuronId;
+        }
+
+        /**
+         * @return the neuron's last update on the server, in milliseconds since the epoch
+         */
+        public long getUpdatedTime() {
+            return updatedTime;
+        }
+
+        public byte[] getData() {
+            return data;
+        }
+    }
+
+    public static class Snapshot {
+        private final long snapshotTime;
+        private final Map<Long, NeuronRecord> neurons;
+        private final int journalRecordCount;
+
+        private Snapshot(long snapshotTime, Map<Long, NeuronRecord> neurons, int journalRecordCount) {
+            this.snapshotTime = snapshotTime;
+            this.neurons = neurons;
+            this.journalRecordCount = journalRecordCount;
+        }
+
+        /**
+         * @return the time of the newest update in the snapshot, by the server's clock
+         */
+        public long getSnapshotTime() {
+            return snapshotTime;
+        }
+
+        /**
+         * @return the neurons by ID, with the journal applied
+         */
+        public Map<Long, NeuronRecord> getNeurons() {
+            return neurons;
+        }
+
+        /**
+         * @return how many journal records were applied to the snapshot
+         */
+        public int getJournalRecordCount() {
+            return journalRecordCount;
+        }
+    }
+
+    private final Path directory;
+
+    public NeuronSnapshotStore(Path directory) throws IOException {
+        this.directory = directory;
+        Files.createDirectories(directory);
+    }
+
+    private Path snapshotPath(long workspaceId) {
+        return directory.resolve(workspaceId + ".snapshot");
+    }
+
+    private Path journalPath(long workspaceId) {
+        return directory.resolve(workspaceId + ".journal");
+    }
+
+    public synchronized boolean hasSnapshot(long workspaceId) {
+        return Files.exists(snapshotPath(workspaceId));
+    }
+
+    /**
+     * @return the workspace's snapshot with its journal applied, or null if there is none
+     * or it could not be read
+     */
+    public synchronized Snapshot read(long workspaceId) {
+        Path snapshotPath = snapshotPath(workspaceId);
+        Path journalPath = journalPath(workspaceId);
+        if (!Files.exists(snapshotPath)) {
+            return null;
+        }
+        try {
+            long snapshotTime;
+            Map<Long, NeuronRecord> neurons;
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                    new GZIPInputStream(Files.newInputStream(snapshotPath), 64 * 1024)))) {
+                if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                    throw new IOException("Not a version " + VERSION + " neuron snapshot");
+                }
+                if (in.readLong() != workspaceId) {
+                    throw new IOException("Snapshot is for another workspace");
+                }
+                snapshotTime = in.readLong();
+                int count = in.readInt();
+                neurons = new LinkedHashMap<>(count * 4 / 3 + 1);
+                for (int i = 0; i < count; i++) {
+                    NeuronRecord record = readRecord(in);
+                    neurons.put(record.getNeuronId(), record);
+                }
+            }
+            int journalRecordCount = 0;
+            if (Files.exists(journalPath)) {
+                try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(journalPath)))) {
+                    while (true) {
+                        byte type;
+                        try {
+                            type = in.readByte();
+                            if (type == PUT_RECORD) {
+                                NeuronRecord record = readRecord(in);
+                                neurons.put(record.getNeuronId(), record);
+                            } else if (type == REMOVE_RECORD) {
+                                neurons.remove(in.readLong());
+                            } else {
+                                throw new IOException("Unknown journal record type " + type);
+                            }
+                            journalRecordCount++;
+                        } catch (EOFException e) {
+                            break; // end of journal, or a record cut short by a crash
+                        }
+                    }
+                }
+            }
+            LOG.info("Read snapshot of {} neurons with {} journal records for workspace {}",
+                    neurons.size(), journalRecordCount, workspaceId);
+            return new Snapshot(snapshotTime, neurons, journalRecordCount);
+        } catch (IOException e) {
+            LOG.warn("Could not read neuron snapshot for workspace {}; discarding it", workspaceId, e);
+            delete(workspaceId);
+            return null;
+        }
+    }
+
+    /**
+     * Replaces the workspace's snapshot.  Journal records that were appended while the
+     * snapshot was being written are kept, and are replayed on top of it.
+     *
+     * @param snapshotTime time of the newest update among the neurons, by the server's clock
+     */
+    public void write(long workspaceId, long snapshotTime, Collection<NeuronRecord> neurons) throws IOException {
+        Path snapshotPath = snapshotPath(workspaceId);
+        Path journalPath = journalPath(workspaceId);
+        long journalStart;
+        synchronized (this) {
+            journalStart = Files.exists(journalPath) ? Files.size(journalPath) : 0;
+        }
+        Path tempPath = Files.createTempFile(directory, workspaceId + "-", ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    new GZIPOutputStream(Files.newOutputStream(tempPath), 64 * 1024)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(workspaceId);
+                out.writeLong(snapshotTime);
+                out.writeInt(neurons.size());
+                for (NeuronRecord record : neurons) {
+                    writeRecord(out, record);
+                }
+            }
+            synchronized (this) {
+                Path journalTail = null;
+                if (Files.exists(journalPath) && Files.size(journalPath) > journalStart) {
+                    journalTail = Files.createTempFile(directory, workspaceId + "-", ".tmp");
+                    try (InputStream in = Files.newInputStream(journalPath);
+                         OutputStream out = Files.newOutputStream(journalTail)) {
+                        skipFully(in, journalStart);
+                        copy(in, out);
+                    }
+                }
+                Files.move(tempPath, snapshotPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                if (journalTail != null) {
+                    Files.move(journalTail, journalPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } else {
+                    Files.deleteIfExists(journalPath);
+                }
+            }
+            LOG.info("Wrote snapshot of {} neurons for workspace {}", neurons.size(), workspaceId);
+        } finally {
+            Files.deleteIfExists(tempPath);
+        }
+    }
+
+    /**
+     * Journals a neuron update, if the workspace has a snapshot.
+     */
+    public synchronized void recordUpdate(long workspaceId, NeuronRecord record) {
+        if (!hasSnapshot(workspaceId)) {
+            return;
+        }
+        try (DataOutputStream out = openJournal(workspaceId)) {
+            out.writeByte(PUT_RECORD);
+            writeRecord(out, record);
+        } catch (IOException e) {
+            LOG.warn("Could not journal update of neuron {}; discarding snapshot of workspace {}",
+                    record.getNeuronId(), workspaceId, e);
+            delete(workspaceId);
+        }
+    }
+
+    /**
+     * Journals a neuron deletion, if the workspace has a snapshot.
+     */
+    public synchronized void recordDelete(long workspaceId, long neuronId) {
+        if (!hasSnapshot(workspaceId)) {
+            return;
+        }
+        try (DataOutputStream out = openJournal(workspaceId)) {
+            out.writeByte(REMOVE_RECORD);
+            out.writeLong(neuronId);
+        } catch (IOException e) {
+            LOG.warn("Could not journal deletion of neuron {}; discarding snapshot of workspace {}",
+                    neuronId, workspaceId, e);
+            delete(workspaceId);
+        }
+    }
+
+    public synchronized void delete(long workspaceId) {
+        try {
+            Files.deleteIfExists(snapshotPath(workspaceId));
+            Files.deleteIfExists(journalPath(workspaceId));
+        } catch (IOException e) {
+            LOG.warn("Could not delete neuron snapshot for workspace {}", workspaceId, e);
+        }
+    }
+
+    private DataOutputStream openJournal(long workspaceId) throws IOException {
+        return new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(journalPath(workspaceId),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)));
+    }
+
+    private static NeuronRecord readRecord(DataInputStream in) throws IOException {
+        long neuronId = in.readLong();
+        long updatedTime = in.readLong();
+        int length = in.readInt();
+        if (length < 0 || length > MAX_RECORD_BYTES) {
+            throw new IOException("Bad record length " + length);
+        }
+        byte[] data = new byte[length];
+        in.readFully(data);
+        return new NeuronRecord(neuronId, updatedTime, data);
+    }
+
+    private static void writeRecord(DataOutputStream out, NeuronRecord record) throws IOException {
+        out.writeLong(record.getNeuronId());
+        out.writeLong(record.getUpdatedTime());
+        out.writeInt(record.getData().length);
+        out.write(record.getData());
+    }
+
+    private static void skipFully(InputStream in, long count) throws IOException {
+        while (count > 0) {
+            long skipped = in.skip(count);
+            if (skipped <= 0) {
+                throw new EOFException();
+            }
+            count -= skipped;
+        }
+    }
+
+    private static void copy(InputStream in, OutputStream out) throws IOException {
+        byte[] buffer = new byte[64 * 1024];
+        int n;
+        while ((n = in.read(buffer)) > 0) {
+            out.write(buffer, 0, n);
+        }
+    }
+
+}
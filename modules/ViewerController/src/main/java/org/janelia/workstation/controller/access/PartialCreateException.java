@@ -0,0 +1,28 @@
+package org.janelia.workstation.controller.access;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.janelia.model.domain.tiledMicroscope.TmNeuronMetadata;
+import org.janelia.workstation.core.api.exceptions.RemoteServiceException;
+
+/**
+ * Thrown when only part of a batch of neurons could be created.  The neurons that were
+ * created on the server are carried along, so callers can still add them to the model.
+ */
+public class PartialCreateException extends RemoteServiceException {
+
+    private final List<TmNeuronMetadata> created;
+
+    public PartialCreateException(String message, Throwable cause, List<TmNeuronMetadata> created) {
+        super(message, cause);
+        this.created = Collections.unmodifiableList(created);
+    }
+
+    /**
+     * @return the neurons that were created before or despite the failure
+     */
+    public List<TmNeuronMetadata> getCreated() {
+        return created;
+    }
+}
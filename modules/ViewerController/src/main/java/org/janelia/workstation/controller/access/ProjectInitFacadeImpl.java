@@ -10,6 +10,7 @@ import org.janelia.rendering.utils.ClientProxy;
 import org.janelia.workstation.controller.TmViewerManager;
 import org.janelia.workstation.controller.ViewerEventBus;
 import org.janelia.workstation.controller.eventbus.LoadMetadataEvent;
+import org.janelia.workstation.controller.eventbus.LoadNeuronsBatchEvent;
 import org.janelia.workstation.controller.eventbus.LoadProjectEvent;
 import org.janelia.workstation.controller.eventbus.UnloadProjectEvent;
 import org.janelia.workstation.controller.model.TmModelManager;
@@ -36,6 +37,7 @@ import java.net.URI;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class ProjectInitFacadeImpl implements ProjectInitFacade {
     private final Logger log = LoggerFactory.getLogger(TmViewerManager.class);
@@ -95,7 +97,8 @@ public class ProjectInitFacadeImpl implements ProjectInitFacade {
                     @Override
                     public BlockTiffOctreeLoadAdapter createLoadAdapter(String baseURI) {
                         return TileStackCacheController.createInstance(
-                                new TileStackOctreeLoadAdapter(tileFormat, URI.create(baseURI), concurrency));
+                                new TileStackOctreeLoadAdapter(tileFormat, URI.create(baseURI), concurrency),
+                                tileServer.getLoadScheduler());
                     }
                 });
                 sharedVolumeImage.loadURL(url);
@@ -173,12 +176,26 @@ public class ProjectInitFacadeImpl implements ProjectInitFacade {
                 // for now, just assume neuron toolset
 
                 // Neurons need to be loaded en masse from raw data from server.
+                // Viewers are sent each batch as it arrives, until there are enough
+                // fragments that the spatial filter below will hide most of them
+                String systemNeuron = ConsoleProperties.getInstance().getProperty("console.LVVHorta.tracersgroup").trim();
+                AtomicInteger nLoadedFragments = new AtomicInteger();
                 NeuronModel manager = modelManager.getNeuronModel();
                 log.info("Loading neurons for workspace {}", workspace.getId());
-                manager.loadWorkspaceNeurons(workspace);
+                manager.loadWorkspaceNeurons(workspace, batch -> {
+                    int batchFragments = 0;
+                    for (TmNeuronMetadata neuron: batch) {
+                        if (systemNeuron.equals(neuron.getOwnerKey())) {
+                            batchFragments++;
+                        }
+                    }
+                    if (nLoadedFragments.addAndGet(batchFragments) < NUMBER_FRAGMENTS_THRESHOLD) {
+                        progress2.progress("Loaded " + manager.getNeurons().size() + " neurons");
+                        ViewerEventBus.postEvent(new LoadNeuronsBatchEvent(this, workspace, batch));
+                    }
+                });
 
                 // if workspace contains more system-owned fragments than a threshold , enable filter
-                String systemNeuron = ConsoleProperties.getInstance().getProperty("console.LVVHorta.tracersgroup").trim();
                 boolean applyFilter = false;
                 modelManager.getCurrentView().setFilter(applyFilter);
                 int nFragments = 0;
@@ -199,6 +216,8 @@ public class ProjectInitFacadeImpl implements ProjectInitFacade {
                 NeuronSpatialFilter neuronFilter = modelManager.getCurrentView().getSpatialFilter();
                 if (applyFilter) {
                     neuronFilter.initFilter(modelManager.getNeuronModel().getNeurons());
+                    // the fragments the filter hides can be held compactly until they're shown
+                    manager.storeHiddenFragments(neuronFilter.filterNeurons(), systemNeuron);
                 }
                 //  fireNeuronSpatialFilterUpdated(applyFilter, neuronFilter);
 
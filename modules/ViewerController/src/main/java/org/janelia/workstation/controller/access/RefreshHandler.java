@@ -187,6 +187,7 @@ public class RefreshHandler implements MessageHandler {
             String user = MessagingUtils.getHeaderAsString(msgHeaders, NeuronMessageConstants.Headers.USER);
 
             Long workspace = MessagingUtils.getHeaderAsLong(msgHeaders, NeuronMessageConstants.Headers.WORKSPACE);
+            updateSnapshot(workspace, action, msgBody);
 
             // flag to suppress shared updates
             if (!receiveUpdates && !freezeUpdates && !user.equals(AccessManager.getSubjectKey())) {
@@ -299,6 +300,36 @@ public class RefreshHandler implements MessageHandler {
         }
     }
 
+    /**
+     * Keeps the local snapshot of the workspace's neurons current, whether or not the
+     * workspace is open.
+     */
+    private void updateSnapshot(Long workspace, NeuronMessageConstants.MessageType action, byte[] msgBody) {
+        NeuronSnapshotStore snapshotStore = NeuronSnapshotStore.getInstance();
+        if (workspace == null || snapshotStore == null || !snapshotStore.hasSnapshot(workspace)) {
+            return;
+        }
+        if (action != NeuronMessageConstants.MessageType.NEURON_CREATE
+                && action != NeuronMessageConstants.MessageType.NEURON_SAVE_NEURONDATA
+                && action != NeuronMessageConstants.MessageType.NEURON_DELETE) {
+            return;
+        }
+        try {
+            ObjectMapper mapper = new ObjectMapper();
+            TmNeuronMetadata neuron = mapper.readValue(msgBody, TmNeuronMetadata.class);
+            if (action == NeuronMessageConstants.MessageType.NEURON_DELETE) {
+                snapshotStore.recordDelete(workspace, neuron.getId());
+            } else {
+                long updatedTime = neuron.getUpdatedDate() == null ? 0 : neuron.getUpdatedDate().getTime();
+                snapshotStore.recordUpdate(workspace, new NeuronSnapshotStore.NeuronRecord(neuron.getId(), updatedTime, msgBody));
+            }
+        } catch (Exception e) {
+            // the snapshot may have missed this update, so don't trust it any more
+            log.warn("Problem recording update in neuron snapshot; discarding snapshot of workspace {}", workspace, e);
+            snapshotStore.delete(workspace);
+        }
+    }
+
     private void handleNeuronCreate(TmNeuronMetadata neuron, Consumer<TmNeuronMetadata> neuronAction) {
         try {
             log.info("remote processing create neuron " + neuron.getName());
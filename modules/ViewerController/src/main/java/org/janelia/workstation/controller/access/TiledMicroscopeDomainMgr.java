@@ -3,11 +3,18 @@ package org.janelia.workstation.controller.access;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Date;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ForkJoinPool;
-import java.util.concurrent.RecursiveTask;
-import java.util.stream.Stream;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 import org.janelia.it.jacs.model.user_data.tiledMicroscope.CoordinateToRawTransform;
 import org.janelia.model.domain.DomainConstants;
@@ -24,6 +31,7 @@ import org.janelia.model.domain.workspace.TreeNode;
 import org.janelia.workstation.core.api.AccessManager;
 import org.janelia.workstation.core.api.DomainMgr;
 import org.janelia.workstation.core.api.DomainModel;
+import org.janelia.workstation.core.util.ConsoleProperties;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -33,7 +41,9 @@ import org.slf4j.LoggerFactory;
  * @author <a href="mailto:rokickik@janelia.hhmi.org">Konrad Rokicki</a>
  */
 public class TiledMicroscopeDomainMgr {
-    private final int NUM_PARALLEL_NEURONSTREAMS = 4;
+    private static final int NUM_PARALLEL_NEURONSTREAMS = ConsoleProperties.getInt("console.lvv.neuronLoadThreads", 4);
+    private static final int NEURON_PAGE_SIZE = ConsoleProperties.getInt("console.lvv.neuronLoadPageSize", 5000);
+    private static final int NEURON_BATCH_SIZE = ConsoleProperties.getInt("console.lvv.neuronLoadBatchSize", 500);
     private static final Logger LOG = LoggerFactory.getLogger(TiledMicroscopeDomainMgr.class);
 
     // Singleton
@@ -202,56 +212,135 @@ public class TiledMicroscopeDomainMgr {
         LOG.debug("remove({})", workspace);
         TiledMicroscopeRestClient client = new TiledMicroscopeRestClient();
         client.remove(workspace);
+        NeuronSnapshotStore snapshotStore = NeuronSnapshotStore.getInstance();
+        if (snapshotStore != null) {
+            snapshotStore.delete(workspace.getId());
+        }
         getModel().notifyDomainObjectRemoved(workspace);
     }
 
-    class RetrieveNeuronsTask extends RecursiveTask<Stream<TmNeuronMetadata>> {
-        double defaultLength = 50000.0;
-        int start;
-        int end;
-        long workspaceId;
-
-        RetrieveNeuronsTask(long workspaceId,
-                                 int start, int end) {
-            this.start = start;
-            this.end = end;
-            this.workspaceId = workspaceId;
+    /**
+     * Loads the workspace's neurons a page at a time, with several pages in flight at once.
+     * Each page is parsed as it streams in, and its neurons are handed to the consumer in
+     * batches, on the loader threads, so the consumer must be thread safe.
+     *
+     * @return the number of neurons loaded
+     */
+    public long loadWorkspaceNeurons(Long workspaceId, long maxNeurons,
+                                     Consumer<List<TmNeuronMetadata>> batchConsumer) throws Exception {
+        LOG.debug("loadWorkspaceNeurons(workspaceId={})",workspaceId);
+        TiledMicroscopeRestClient client = new TiledMicroscopeRestClient();
+        long neuronCount = Math.min(client.getWorkspaceNeuronCount(workspaceId), maxNeurons);
+        ExecutorService executor = Executors.newFixedThreadPool(NUM_PARALLEL_NEURONSTREAMS,
+                new ThreadFactoryBuilder().setNameFormat("NeuronLoader-%d").setDaemon(true).build());
+        try {
+            return loadPages(neuronCount, NEURON_PAGE_SIZE, NEURON_BATCH_SIZE, executor,
+                    (offset, length, consumer) -> new TiledMicroscopeRestClient()
+                            .getWorkspaceNeurons(workspaceId, offset, length, null, consumer),
+                    batchConsumer);
+        } finally {
+            // stops the remaining pages if one of them failed
+            executor.shutdownNow();
         }
+    }
+
+    /**
+     * Reads one page of items, handing each to the consumer as it is read.
+     */
+    interface PageReader<T> {
+        void readPage(long offset, int length, Consumer<T> consumer) throws Exception;
+    }
 
-        @Override
-        public Stream<TmNeuronMetadata> compute() {
-            if ((end-start)>defaultLength) {
-                List<RetrieveNeuronsTask> tasks = new ArrayList<>();
-                // break up into defaultLength chunks
-                int numChunks = (int)Math.ceil((end-start)/defaultLength);
-                for (int i=0; i<numChunks; i++) {
-                    int newStart = i*(int)defaultLength;
-                    int newEnd = newStart + (int)defaultLength;
-                    if ((newStart+defaultLength)>end) {
-                        newEnd = end;
+    /**
+     * Reads count items in pages of pageSize, one executor task per page, and hands them to
+     * the consumer in batches of at most batchSize.  Waits for every page, and rethrows the
+     * first page failure.
+     *
+     * @return the number of items read
+     */
+    static <T> long loadPages(long count, int pageSize, int batchSize, ExecutorService executor,
+                              PageReader<T> reader, Consumer<List<T>> batchConsumer) throws Exception {
+        AtomicLong loadedCount = new AtomicLong();
+        List<Future<?>> pages = new ArrayList<>();
+        for (long offset = 0; offset < count; offset += pageSize) {
+            long pageOffset = offset;
+            int pageLength = (int) Math.min(pageSize, count - offset);
+            pages.add(executor.submit(() -> {
+                LOG.info("Retrieving results - Neuron block: {} - {}", pageOffset, pageOffset + pageLength);
+                List<T> batch = new ArrayList<>();
+                reader.readPage(pageOffset, pageLength, item -> {
+                    batch.add(item);
+                    if (batch.size() >= batchSize) {
+                        batchConsumer.accept(new ArrayList<>(batch));
+                        loadedCount.addAndGet(batch.size());
+                        batch.clear();
                     }
-                    RetrieveNeuronsTask task = new RetrieveNeuronsTask(workspaceId, newStart,
-                            newEnd);
-                    tasks.add(task);
-                    task.fork();
+                });
+                if (!batch.isEmpty()) {
+                    batchConsumer.accept(batch);
+                    loadedCount.addAndGet(batch.size());
                 }
-
-                return tasks.stream().flatMap(subtask -> subtask.join());
-            } else {
-                LOG.info("Retrieving results - Neuron block: {} - {}", start, end);
-                TiledMicroscopeRestClient client = new TiledMicroscopeRestClient();
-                return client.getWorkspaceNeurons(workspaceId, start, end - start).stream();
+                return null;
+            }));
+        }
+        for (Future<?> page : pages) {
+            try {
+                page.get();
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof Exception) {
+                    throw (Exception) e.getCause();
+                }
+                throw e;
             }
         }
+        return loadedCount.get();
     }
-    
-    public Stream<TmNeuronMetadata> streamWorkspaceNeurons(Long workspaceId) {
-        LOG.debug("getWorkspaceNeurons(workspaceId={})",workspaceId);
+
+    public long getWorkspaceNeuronCount(Long workspaceId) {
+        LOG.debug("getWorkspaceNeuronCount(workspaceId={})",workspaceId);
         TiledMicroscopeRestClient client = new TiledMicroscopeRestClient();
-        long neuronCount = client.getWorkspaceNeuronCount(workspaceId);
-        ForkJoinPool pool = new ForkJoinPool(NUM_PARALLEL_NEURONSTREAMS);
-        Stream<TmNeuronMetadata> neurons = pool.invoke(new RetrieveNeuronsTask(workspaceId, 0, (int)neuronCount));
-        return neurons;
+        return client.getWorkspaceNeuronCount(workspaceId);
+    }
+
+    /**
+     * Loads the workspace's neurons that were updated after the given time, a page at a time,
+     * handing each page to the consumer, until a page comes back short or the consumer
+     * returns false.  A server that cannot filter by update time sends every neuron instead,
+     * so callers should merge what they receive rather than append it, and stop the load
+     * once it's clear they are getting the whole workspace.
+     *
+     * @return false if the consumer stopped the load
+     */
+    public boolean loadWorkspaceNeuronsModifiedSince(Long workspaceId, Date modifiedSince, long maxNeurons,
+                                                     Predicate<List<TmNeuronMetadata>> pageConsumer) throws Exception {
+        LOG.debug("loadWorkspaceNeuronsModifiedSince(workspaceId={}, modifiedSince={})",workspaceId,modifiedSince);
+        TiledMicroscopeRestClient client = new TiledMicroscopeRestClient();
+        return loadPagesUntilShort(maxNeurons, NEURON_PAGE_SIZE,
+                (offset, length, consumer) -> client.getWorkspaceNeurons(workspaceId, offset, length, modifiedSince, consumer),
+                pageConsumer);
+    }
+
+    /**
+     * Reads up to maxCount items, of a set whose size isn't known in advance, in pages of
+     * pageSize, one after another.  Stops after the first page that comes back short, or
+     * when the consumer returns false.
+     *
+     * @return false if the consumer stopped the load
+     */
+    static <T> boolean loadPagesUntilShort(long maxCount, int pageSize, PageReader<T> reader,
+                                           Predicate<List<T>> pageConsumer) throws Exception {
+        for (long offset = 0; offset < maxCount; offset += pageSize) {
+            int pageLength = (int) Math.min(pageSize, maxCount - offset);
+            List<T> page = new ArrayList<>();
+            reader.readPage(offset, pageLength, page::add);
+            if (!pageConsumer.test(page)) {
+                return false;
+            }
+            if (page.size() < pageLength) {
+                break;
+            }
+        }
+        return true;
     }
 
     public TmNeuronMetadata saveMetadata(TmNeuronMetadata neuronMetadata) throws Exception {
@@ -293,6 +382,29 @@ public class TiledMicroscopeDomainMgr {
         return savedMetadata;
     }
     
+    /**
+     * Creates complete neurons, that already have IDs, in one batch.  If only part of the
+     * batch is created, the neurons that were are still announced, and are carried on the
+     * PartialCreateException that is thrown.
+     */
+    public List<TmNeuronMetadata> createWithIds(List<TmNeuronMetadata> neuronList) throws Exception {
+        LOG.debug("createWithIds({})", neuronList);
+        TiledMicroscopeRestClient client = new TiledMicroscopeRestClient();
+        List<TmNeuronMetadata> savedMetadata;
+        try {
+            savedMetadata = client.create(neuronList);
+        } catch (PartialCreateException e) {
+            for (TmNeuronMetadata tmNeuronMetadata : e.getCreated()) {
+                getModel().notifyDomainObjectCreated(tmNeuronMetadata);
+            }
+            throw e;
+        }
+        for (TmNeuronMetadata tmNeuronMetadata : savedMetadata) {
+            getModel().notifyDomainObjectCreated(tmNeuronMetadata);
+        }
+        return savedMetadata;
+    }
+
     public TmNeuronMetadata save(TmNeuronMetadata neuronMetadata) throws Exception {
         LOG.debug("save({})", neuronMetadata);
         TmNeuronMetadata savedMetadata;
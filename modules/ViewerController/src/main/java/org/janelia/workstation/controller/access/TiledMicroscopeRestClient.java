@@ -3,6 +3,9 @@ package org.janelia.workstation.controller.access;
 import java.io.InputStream;
 import java.net.URI;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
 
 import javax.ws.rs.client.Client;
 import javax.ws.rs.client.Entity;
@@ -216,25 +219,36 @@ public class TiledMicroscopeRestClient extends RESTClientBase {
     }
 
     Collection<TmNeuronMetadata> getWorkspaceNeurons(Long workspaceId, long offset, int length) {
-        try {
-            List<TmNeuronMetadata> neuronList = new ArrayList<>();
-            WebTarget target = getMouselightDataEndpoint("/workspace/neuron")
-                    .queryParam("workspaceId", workspaceId)
-                    .queryParam("offset", offset)
-                    .queryParam("length", length);
-            ObjectMapper mapper = new ObjectMapper();
-            InputStream is = target
-                    .request("application/octet-stream")
-                    .get(InputStream.class);
-            JsonFactory factory = new JsonFactory();
-            factory.setCodec(mapper);
-            JsonParser parser  = factory.createParser(is);
+        List<TmNeuronMetadata> neuronList = new ArrayList<>();
+        getWorkspaceNeurons(workspaceId, offset, length, null, neuronList::add);
+        return neuronList;
+    }
+
+    /**
+     * Streams a page of the workspace's neurons, handing each one to the consumer as soon as
+     * it has been parsed rather than after the whole page has arrived.
+     *
+     * @param modifiedSince if not null, asks for only the neurons updated after this time
+     */
+    void getWorkspaceNeurons(Long workspaceId, long offset, int length, Date modifiedSince, Consumer<TmNeuronMetadata> consumer) {
+        WebTarget target = getMouselightDataEndpoint("/workspace/neuron")
+                .queryParam("workspaceId", workspaceId)
+                .queryParam("offset", offset)
+                .queryParam("length", length);
+        if (modifiedSince != null) {
+            target = target.queryParam("modifiedSince", modifiedSince.getTime());
+        }
+        ObjectMapper mapper = new ObjectMapper();
+        JsonFactory factory = new JsonFactory();
+        factory.setCodec(mapper);
+        try (InputStream is = target
+                .request("application/octet-stream")
+                .get(InputStream.class);
+             JsonParser parser = factory.createParser(is)) {
             Iterator<TmNeuronMetadata> neurons = parser.readValuesAs(TmNeuronMetadata.class);
-            while(neurons.hasNext()) {
-                neuronList.add(neurons.next());
+            while (neurons.hasNext()) {
+                consumer.accept(neurons.next());
             }
-            return neuronList;
-
         } catch (Exception e) {
             FrameworkAccess.handleException(e);
             LOG.error ("Problems parsing the neuron stream from the server for workspace id {}",workspaceId);
@@ -254,6 +268,78 @@ public class TiledMicroscopeRestClient extends RESTClientBase {
         return response.readEntity(TmNeuronMetadata.class);
     }
 
+    /**
+     * Creates a batch of complete neurons, annotations and all.  The service has no bulk create,
+     * so the batch goes out as concurrent single creates on the shared connection pool; the
+     * created neurons are returned in the order given.
+     */
+    public List<TmNeuronMetadata> create(Collection<TmNeuronMetadata> neurons) {
+        if (neurons.isEmpty()) return Collections.emptyList();
+        StopWatch w = new StopWatch();
+        WebTarget target = getMouselightDataEndpoint("/workspace/neuron");
+        List<Future<Response>> responses = new ArrayList<>();
+        for (TmNeuronMetadata neuronMetadata : neurons) {
+            DomainQuery query = new DomainQuery();
+            query.setSubjectKey(AccessManager.getSubjectKey());
+            query.setDomainObject(neuronMetadata);
+            responses.add(target
+                    .request()
+                    .async()
+                    .put(Entity.json(query)));
+        }
+        // every response is read, even after a failure, so neurons the server did create are
+        //  still returned to the caller, on the exception
+        List<TmNeuronMetadata> created = new ArrayList<>();
+        Throwable failure = null;
+        int next = 0;
+        try {
+            for (; next < responses.size(); next++) {
+                Response response;
+                try {
+                    response = responses.get(next).get();
+                } catch (ExecutionException e) {
+                    if (failure == null) failure = e.getCause();
+                    continue;
+                }
+                try {
+                    checkBadResponse(target, response);
+                    created.add(response.readEntity(TmNeuronMetadata.class));
+                } catch (RuntimeException e) {
+                    if (failure == null) failure = e;
+                } finally {
+                    response.close();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failure = e;
+        } finally {
+            // close responses that were never read, and cancel requests still running
+            for (int i = next; i < responses.size(); i++) {
+                Future<Response> future = responses.get(i);
+                if (!future.cancel(true)) {
+                    closeQuietly(future);
+                }
+            }
+        }
+        if (failure != null) {
+            LOG.error("Created only {} of {} neurons", created.size(), neurons.size(), failure);
+            String message = failure instanceof InterruptedException
+                    ? "Interrupted while creating neurons" : "Problems creating neurons";
+            throw new PartialCreateException(message, failure, created);
+        }
+        LOG.info("Created {} neurons in {} ms", created.size(), w.getElapsedTime());
+        return created;
+    }
+
+    private static void closeQuietly(Future<Response> future) {
+        try {
+            future.get().close();
+        } catch (Exception e) {
+            // the request failed, so there's no response to close
+        }
+    }
+
     public TmNeuronMetadata update(TmNeuronMetadata neuronMetadata) {
        List<TmNeuronMetadata> list = update(Arrays.asList(neuronMetadata));
        if (list.isEmpty()) return null;
@@ -1,6 +1,5 @@
 package org.janelia.workstation.controller.action;
 
-import Jama.Matrix;
 import org.janelia.workstation.controller.ViewerEventBus;
 import org.janelia.workstation.controller.eventbus.ViewEvent;
 import org.janelia.workstation.controller.model.TmModelManager;
@@ -81,18 +80,9 @@ public class GoToLocationAction extends AbstractAction {
                 newLocation.getZ(),
                 500, null, false);
 
-        Matrix m2v = TmModelManager.getInstance().getMicronToVoxMatrix();
-        Jama.Matrix micLoc = new Jama.Matrix(new double[][]{
-                {newLocation.getX(),},
-                {newLocation.getY(),},
-                {newLocation.getZ(),},
-                {1.0,},});
-        // NeuronVertex API requires coordinates in micrometers
-        Jama.Matrix voxLoc = m2v.times(micLoc);
-        Vec3 voxelXyz = new Vec3(
-                (float) voxLoc.get(0, 0),
-                (float) voxLoc.get(1, 0),
-                (float) voxLoc.get(2, 0));
+        float[] voxLoc = TmModelManager.getInstance().getMicronToVoxTransform().transform(
+                newLocation.getX(), newLocation.getY(), newLocation.getZ());
+        Vec3 voxelXyz = new Vec3(voxLoc[0], voxLoc[1], voxLoc[2]);
         TmViewState currView = TmModelManager.getInstance().getCurrentView();
         currView.setCameraFocusX(voxelXyz.getX());
         currView.setCameraFocusY(voxelXyz.getY());
@@ -13,4 +13,28 @@ public class AnnotationCreateEvent extends AnnotationEvent {
         this.annotations = annotations;
         this.requestedNextParent = nextParent;
     }
+
+    @Override
+    public ViewerEvent coalesce(ViewerEvent next) {
+        if (!canCoalesce(next, AnnotationCreateEvent.class)) {
+            return null;
+        }
+        // when no next parent is requested, a lone new annotation becomes the
+        //  next parent; the merged event requests whichever one the pair
+        //  would have left selected
+        AnnotationCreateEvent later = (AnnotationCreateEvent) next;
+        return merge(later,
+                (mergedAnnotations, nextParent) -> new AnnotationCreateEvent(sourceClass, mergedAnnotations, nextParent),
+                later.resultingNextParent(resultingNextParent(null)));
+    }
+
+    private TmGeoAnnotation resultingNextParent(TmGeoAnnotation previous) {
+        if (requestedNextParent != null) {
+            return requestedNextParent;
+        } else if (annotations.size() == 1) {
+            return annotations.iterator().next();
+        } else {
+            return previous;
+        }
+    }
 }
@@ -11,5 +11,17 @@ public class AnnotationDeleteEvent extends AnnotationEvent {
         this.annotations = annotations;
         this.requestedNextParent = nextParent;
     }
+
+    @Override
+    public ViewerEvent coalesce(ViewerEvent next) {
+        if (!canCoalesce(next, AnnotationDeleteEvent.class)) {
+            return null;
+        }
+        // each delete sets or clears the next parent, so the later one wins
+        AnnotationDeleteEvent later = (AnnotationDeleteEvent) next;
+        return merge(later,
+                (mergedAnnotations, nextParent) -> new AnnotationDeleteEvent(sourceClass, mergedAnnotations, nextParent),
+                later.getRequestedNextParent());
+    }
 }
 
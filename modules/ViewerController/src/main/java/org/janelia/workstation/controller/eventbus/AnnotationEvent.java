@@ -1,12 +1,21 @@
 package org.janelia.workstation.controller.eventbus;
 
 import org.janelia.model.domain.tiledMicroscope.TmGeoAnnotation;
+
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.function.BiFunction;
 
 abstract public class AnnotationEvent extends ViewerEvent {
     protected Collection<TmGeoAnnotation> annotations;
     protected TmGeoAnnotation requestedNextParent;
 
+    // set on events made by merging; they own their annotation list, and
+    //  take further events in place
+    private boolean coalesced;
+    private boolean targetKnown;
+    private Long targetNeuronId;
+
     public AnnotationEvent(Object sourceClass) {
         super(sourceClass);
     }
@@ -22,4 +31,58 @@ abstract public class AnnotationEvent extends ViewerEvent {
     public boolean hasRequestedNextParent() {
         return requestedNextParent != null;
     }
+
+    /**
+     * @return the ID of the neuron all of this event's annotations belong to;
+     * null if there are none, or they're in more than one neuron
+     */
+    public Long getTargetNeuronId() {
+        if (!targetKnown) {
+            targetNeuronId = null;
+            if (annotations != null) {
+                for (TmGeoAnnotation annotation: annotations) {
+                    Long neuronId = annotation.getNeuronId();
+                    if (neuronId == null || (targetNeuronId != null && !targetNeuronId.equals(neuronId))) {
+                        targetNeuronId = null;
+                        break;
+                    }
+                    targetNeuronId = neuronId;
+                }
+            }
+            targetKnown = true;
+        }
+        return targetNeuronId;
+    }
+
+    /**
+     * only events of exactly the given type, from the same source, for
+     * annotations in the same neuron, are merged
+     */
+    protected boolean canCoalesce(ViewerEvent next, Class<? extends AnnotationEvent> type) {
+        if (getClass() != type || next.getClass() != type || next.getSourceClass() != sourceClass) {
+            return false;
+        }
+        Long neuronId = getTargetNeuronId();
+        return neuronId != null && neuronId.equals(((AnnotationEvent) next).getTargetNeuronId());
+    }
+
+    /**
+     * merge the next event's annotations into this event, or into a new one
+     * made by newEvent if this event isn't already a merged one; the result
+     * requests the given next parent
+     */
+    protected AnnotationEvent merge(AnnotationEvent next,
+                                    BiFunction<Collection<TmGeoAnnotation>, TmGeoAnnotation, AnnotationEvent> newEvent,
+                                    TmGeoAnnotation nextParent) {
+        AnnotationEvent merged = this;
+        if (!coalesced) {
+            merged = newEvent.apply(new ArrayList<>(annotations), nextParent);
+            merged.coalesced = true;
+            merged.targetNeuronId = targetNeuronId;
+            merged.targetKnown = true;
+        }
+        merged.annotations.addAll(next.annotations);
+        merged.requestedNextParent = nextParent;
+        return merged;
+    }
 }
@@ -15,5 +15,17 @@ public class AnnotationUpdateEvent extends AnnotationEvent {
     public Collection<TmGeoAnnotation> getAnnotations() {
         return annotations;
     }
+
+    @Override
+    public ViewerEvent coalesce(ViewerEvent next) {
+        if (!canCoalesce(next, AnnotationUpdateEvent.class)) {
+            return null;
+        }
+        // the next parent only changes when one is requested
+        AnnotationUpdateEvent later = (AnnotationUpdateEvent) next;
+        return merge(later,
+                (mergedAnnotations, nextParent) -> new AnnotationUpdateEvent(sourceClass, mergedAnnotations, nextParent),
+                later.hasRequestedNextParent() ? later.getRequestedNextParent() : requestedNextParent);
+    }
 }
 
@@ -0,0 +1,25 @@
+package org.janelia.workstation.controller.eventbus;
+
+import org.janelia.model.domain.tiledMicroscope.TmNeuronMetadata;
+import org.janelia.model.domain.tiledMicroscope.TmWorkspace;
+
+import java.util.Collection;
+
+/**
+ * Some of a workspace's neurons, posted while the workspace is still loading so that
+ * viewers can show them early.  A LoadNeuronsEvent follows once loading is complete.
+ */
+public class LoadNeuronsBatchEvent extends NeuronEvent {
+    private TmWorkspace workspace;
+
+    public LoadNeuronsBatchEvent(Object source,
+                                 TmWorkspace workspace,
+                                 Collection<TmNeuronMetadata> neurons) {
+        super(source, neurons);
+        this.workspace = workspace;
+    }
+
+    public TmWorkspace getWorkspace() {
+        return workspace;
+    }
+}
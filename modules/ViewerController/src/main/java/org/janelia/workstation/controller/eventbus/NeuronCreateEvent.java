@@ -9,4 +9,12 @@ public class NeuronCreateEvent extends NeuronEvent {
                              Collection<TmNeuronMetadata> neurons) {
         super(source, neurons);
     }
+
+    @Override
+    public ViewerEvent coalesce(ViewerEvent next) {
+        if (!canCoalesce(next, NeuronCreateEvent.class)) {
+            return null;
+        }
+        return merge((NeuronEvent) next, mergedNeurons -> new NeuronCreateEvent(sourceClass, mergedNeurons));
+    }
 }
@@ -9,5 +9,13 @@ public class NeuronDeleteEvent extends NeuronEvent {
                              Collection<TmNeuronMetadata> neurons) {
         super(source, neurons);
     }
+
+    @Override
+    public ViewerEvent coalesce(ViewerEvent next) {
+        if (!canCoalesce(next, NeuronDeleteEvent.class)) {
+            return null;
+        }
+        return merge((NeuronEvent) next, mergedNeurons -> new NeuronDeleteEvent(sourceClass, mergedNeurons));
+    }
 }
 
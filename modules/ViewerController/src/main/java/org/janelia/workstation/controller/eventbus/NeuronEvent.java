@@ -4,6 +4,9 @@ import org.janelia.model.domain.tiledMicroscope.TmNeuronMetadata;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
 
 public class NeuronEvent extends ViewerEvent {
     public NeuronEvent(Object source,
@@ -20,4 +23,39 @@ public class NeuronEvent extends ViewerEvent {
     }
 
     protected Collection<TmNeuronMetadata> neurons;
+
+    // set on events made by merging; they own their neurons, keyed by ID,
+    //  and take further events in place
+    private Map<Object, TmNeuronMetadata> coalescedNeurons;
+
+    /**
+     * only events of exactly the given type, from the same source, are merged
+     */
+    protected boolean canCoalesce(ViewerEvent next, Class<? extends NeuronEvent> type) {
+        return getClass() == type && next.getClass() == type && next.getSourceClass() == sourceClass;
+    }
+
+    /**
+     * merge the next event's neurons into this event, or into a new one made
+     * by newEvent if this event isn't already a merged one; a neuron in both
+     * events appears once, as the later copy
+     */
+    protected NeuronEvent merge(NeuronEvent next, Function<Collection<TmNeuronMetadata>, NeuronEvent> newEvent) {
+        NeuronEvent merged = this;
+        if (coalescedNeurons == null) {
+            Map<Object, TmNeuronMetadata> neuronMap = new LinkedHashMap<>();
+            putNeurons(neuronMap, neurons);
+            merged = newEvent.apply(neuronMap.values());
+            merged.coalescedNeurons = neuronMap;
+        }
+        putNeurons(merged.coalescedNeurons, next.neurons);
+        return merged;
+    }
+
+    private static void putNeurons(Map<Object, TmNeuronMetadata> neuronMap, Collection<TmNeuronMetadata> neurons) {
+        for (TmNeuronMetadata neuron: neurons) {
+            // neurons without an ID can't be matched, so they're all kept
+            neuronMap.put(neuron.getId() != null ? neuron.getId() : neuron, neuron);
+        }
+    }
 }
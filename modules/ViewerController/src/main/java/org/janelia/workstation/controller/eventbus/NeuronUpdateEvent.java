@@ -9,5 +9,13 @@ public class NeuronUpdateEvent extends NeuronEvent {
                              Collection<TmNeuronMetadata> neurons) {
         super(source, neurons);
     }
+
+    @Override
+    public ViewerEvent coalesce(ViewerEvent next) {
+        if (!canCoalesce(next, NeuronUpdateEvent.class)) {
+            return null;
+        }
+        return merge((NeuronEvent) next, mergedNeurons -> new NeuronUpdateEvent(sourceClass, mergedNeurons));
+    }
 }
 
@@ -18,4 +18,15 @@ public class ViewerEvent {
     public ViewerEvent (Object sourceClass) {
         this.sourceClass = sourceClass;
     }
+
+    /**
+     * merge this event with the next one posted, if both can be delivered as
+     * one event without subscribers seeing a difference; ViewerEventBus uses
+     * this to batch bursts of small updates
+     *
+     * @return the merged event, or null if these events can't be merged
+     */
+    public ViewerEvent coalesce(ViewerEvent next) {
+        return null;
+    }
 }
@@ -27,7 +27,7 @@ public class IdSource implements Iterator<Long> {
     }
     
     @Override
-    public Long next() {
+    public synchronized Long next() {
         if (positionInList >= blockSize) {
             refreshIdList();
         }
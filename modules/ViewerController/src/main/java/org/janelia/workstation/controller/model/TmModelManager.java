@@ -14,6 +14,7 @@ import org.janelia.workstation.controller.tileimagery.TileLoader;
 import org.janelia.workstation.controller.tileimagery.TileServer;
 import org.janelia.workstation.core.api.AccessManager;
 import org.janelia.workstation.core.util.ConsoleProperties;
+import org.janelia.workstation.geom.AffineTransform3d;
 import org.janelia.workstation.geom.BoundingBox3d;
 import org.janelia.workstation.geom.Vec3;
 import org.janelia.workstation.integration.util.FrameworkAccess;
@@ -47,6 +48,8 @@ public class TmModelManager {
 
     private Jama.Matrix voxToMicronMatrix;
     private Jama.Matrix micronToVoxMatrix;
+    private AffineTransform3d voxToMicronTransform;
+    private AffineTransform3d micronToVoxTransform;
     private NeuronModel neuronModel;
     private final TiledMicroscopeDomainMgr tmDomainMgr;
     private TileLoader tileLoader;
@@ -84,40 +87,30 @@ public class TmModelManager {
         return voxToMicronMatrix;
     }
 
+    /**
+     * the voxel to micrometer matrix as a transform that converts points, or
+     * whole arrays of them, without allocating per point; null until a
+     * sample is loaded
+     */
+    public AffineTransform3d getVoxToMicronTransform() {
+        return voxToMicronTransform;
+    }
+
+    public AffineTransform3d getMicronToVoxTransform() {
+        return micronToVoxTransform;
+    }
+
     public float[] getLocationInMicrometers(double x, double y, double z)
     {
         // Convert from image voxel coordinates to Cartesian micrometers
         // TmGeoAnnotation is in voxel coordinates
-        Jama.Matrix voxLoc = new Jama.Matrix(new double[][] {
-                {x, },
-                {y, },
-                {z, },
-                {1.0, },
-        });
-        // NeuronVertex API requires coordinates in micrometers
-        Jama.Matrix micLoc = getVoxToMicronMatrix().times(voxLoc);
-        return new float[] {
-                (float) micLoc.get(0, 0),
-                (float) micLoc.get(1, 0),
-                (float) micLoc.get(2, 0)};
+        return voxToMicronTransform.transform(x, y, z);
     }
 
     public float[] convertLocationToVoxels(float x, float y, float z)
     {
         // Convert from Cartesian micrometers to image voxel coordinates
-        // TmGeoAnnotation is in voxel coordinates
-        Jama.Matrix voxLoc = new Jama.Matrix(new double[][] {
-                {x, },
-                {y, },
-                {z, },
-                {1.0, },
-        });
-        // NeuronVertex API requires coordinates in micrometers
-        Jama.Matrix micLoc = getVoxToMicronMatrix().times(voxLoc);
-        return new float[] {
-                (float) micLoc.get(0, 0),
-                (float) micLoc.get(1, 0),
-                (float) micLoc.get(2, 0)};
+        return micronToVoxTransform.transform(x, y, z);
     }
 
     public Jama.Matrix getMicronToVoxMatrix() {
@@ -134,6 +127,7 @@ public class TmModelManager {
             return;
         }
         voxToMicronMatrix = MatrixUtilities.deserializeMatrix(serializedVoxToMicronMatrix, "voxToMicronMatrix");
+        voxToMicronTransform = AffineTransform3d.fromMatrix(voxToMicronMatrix);
 
         String serializedMicronToVoxMatrix = currentSample.getMicronToVoxMatrix();
         if (serializedMicronToVoxMatrix == null) {
@@ -141,6 +135,7 @@ public class TmModelManager {
             return;
         }
         micronToVoxMatrix = MatrixUtilities.deserializeMatrix(serializedMicronToVoxMatrix, "micronToVoxMatrix");
+        micronToVoxTransform = AffineTransform3d.fromMatrix(micronToVoxMatrix);
     }
 
     public void setCurrentSample(TmSample currentSample) {
@@ -238,6 +233,9 @@ public class TmModelManager {
     }
 
     public void setTileServer(TileServer tileServer) {
+        if (this.tileServer != null && this.tileServer != tileServer) {
+            this.tileServer.shutdown(); // the previous volume is being replaced
+        }
         this.tileServer = tileServer;
     }
 
@@ -0,0 +1,311 @@
+package org.janelia.workstation.controller.model.annotations.neuron;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.janelia.model.domain.tiledMicroscope.TmGeoAnnotation;
+import org.janelia.model.domain.tiledMicroscope.TmNeuronMetadata;
+
+/**
+ * Holds the annotations of neurons that are loaded but not being looked at or edited, eg,
+ * the fragments hidden by the spatial filter, in parallel primitive arrays instead of as
+ * TmGeoAnnotation objects.  A stored neuron keeps its metadata, but its annotation map and
+ * roots are emptied until it's restored.
+ *
+ * Each neuron's annotations are a run of consecutive rows, in depth first order from its
+ * roots, with each row's parent given as a row number within the run (-1 for a root), so
+ * restoring a neuron rebuilds the same trees with children in the same order.  Rows freed
+ * by restored or removed neurons are reclaimed when they outnumber the rows in use.
+ */
+public class ColumnarAnnotationStore {
+
+    private static final int INITIAL_ROWS = 1024;
+    private static final long NO_DATE = Long.MIN_VALUE;
+
+    /**
+     * A stored neuron's run of rows.
+     */
+    private static class Run {
+        final int start;
+        final int count;
+
+        Run(int start, int count) {
+            this.start = start;
+            this.count = count;
+        }
+    }
+
+    // read without locking, so checking whether a neuron is stored is cheap
+    private final Map<Long, Run> runs = new ConcurrentHashMap<>();
+
+    private long[] ids = new long[0];
+    private double[] xyz = new double[0]; // packed x, y, z of each row
+    private double[] radii = new double[0]; // NaN if none
+    private int[] parents = new int[0];
+    private long[] created = new long[0];
+    private long[] modified = new long[0];
+    private int rowCount;
+    private int liveRowCount;
+
+    public boolean contains(Long neuronId) {
+        return neuronId != null && runs.containsKey(neuronId);
+    }
+
+    public int getNeuronCount() {
+        return runs.size();
+    }
+
+    /**
+     * number of annotations held, over all stored neurons
+     */
+    public synchronized int getAnnotationCount() {
+        return liveRowCount;
+    }
+
+    /**
+     * Moves the neuron's annotations into the store, and empties its annotation map and
+     * root list.  Neurons whose annotations aren't all reachable from their roots, or
+     * whose roots aren't parented by the neuron, are left as they are.
+     *
+     * @return true if the neuron was stored
+     */
+    public synchronized boolean store(TmNeuronMetadata neuron) {
+        Long neuronId = neuron.getId();
+        if (neuronId == null || runs.containsKey(neuronId)) {
+            return false;
+        }
+        Map<Long, TmGeoAnnotation> annotations = neuron.getGeoAnnotationMap();
+        List<TmGeoAnnotation> roots = neuron.getRootAnnotations();
+        if (annotations.isEmpty()) {
+            return false;
+        }
+
+        // lay out the rows depth first, remembering each one's parent row
+        List<TmGeoAnnotation> order = new ArrayList<>(annotations.size());
+        int[] parentRows = new int[annotations.size()];
+        Map<Long, Integer> rowOf = new HashMap<>();
+        Deque<TmGeoAnnotation> stack = new ArrayDeque<>();
+        for (TmGeoAnnotation root: roots) {
+            if (!neuronId.equals(root.getParentId()) || annotations.get(root.getId()) != root) {
+                return false;
+            }
+            stack.push(root);
+            while (!stack.isEmpty()) {
+                TmGeoAnnotation annotation = stack.pop();
+                if (order.size() == parentRows.length || rowOf.containsKey(annotation.getId())) {
+                    return false;
+                }
+                Integer parentRow = rowOf.get(annotation.getParentId());
+                parentRows[order.size()] = annotation == root ? -1 : parentRow;
+                rowOf.put(annotation.getId(), order.size());
+                order.add(annotation);
+                List<Long> childIds = annotation.getChildIds();
+                for (int i = childIds.size() - 1; i >= 0; i--) {
+                    TmGeoAnnotation child = annotations.get(childIds.get(i));
+                    if (child == null || !annotation.getId().equals(child.getParentId())) {
+                        return false;
+                    }
+                    stack.push(child);
+                }
+            }
+        }
+        if (order.size() != annotations.size()) {
+            return false;
+        }
+
+        ensureCapacity(rowCount + order.size());
+        int start = rowCount;
+        for (int i = 0; i < order.size(); i++) {
+            TmGeoAnnotation annotation = order.get(i);
+            int row = start + i;
+            ids[row] = annotation.getId();
+            xyz[3 * row] = annotation.getX();
+            xyz[3 * row + 1] = annotation.getY();
+            xyz[3 * row + 2] = annotation.getZ();
+            radii[row] = annotation.getRadius() == null ? Double.NaN : annotation.getRadius();
+            parents[row] = parentRows[i];
+            created[row] = toMillis(annotation.getCreationDate());
+            modified[row] = toMillis(annotation.getModificationDate());
+        }
+        rowCount += order.size();
+        liveRowCount += order.size();
+        runs.put(neuronId, new Run(start, order.size()));
+
+        for (TmGeoAnnotation root: new ArrayList<>(roots)) {
+            neuron.removeRootAnnotation(root);
+        }
+        annotations.clear();
+        return true;
+    }
+
+    /**
+     * Rebuilds the neuron's annotations from the store, and drops them from it.  Safe to
+     * call from any thread: a stored neuron is hidden, so no viewer is reading its maps,
+     * and the neuron stays stored until its maps are rebuilt, so a concurrent lookup waits
+     * here on the store's lock rather than seeing it half restored.
+     *
+     * @return true if the neuron was stored
+     */
+    public synchronized boolean restore(TmNeuronMetadata neuron) {
+        Run run = runs.get(neuron.getId());
+        if (run == null) {
+            return false;
+        }
+        Long neuronId = neuron.getId();
+        Map<Long, TmGeoAnnotation> annotations = neuron.getGeoAnnotationMap();
+        TmGeoAnnotation[] built = new TmGeoAnnotation[run.count];
+        for (int i = 0; i < run.count; i++) {
+            int row = run.start + i;
+            int parentRow = parents[row];
+            TmGeoAnnotation annotation = new TmGeoAnnotation(ids[row],
+                    parentRow < 0 ? neuronId : built[parentRow].getId(), neuronId,
+                    xyz[3 * row], xyz[3 * row + 1], xyz[3 * row + 2],
+                    Double.isNaN(radii[row]) ? null : radii[row],
+                    toDate(created[row]), toDate(modified[row]));
+            built[i] = annotation;
+            annotations.put(annotation.getId(), annotation);
+            if (parentRow < 0) {
+                neuron.addRootAnnotation(annotation);
+            } else {
+                built[parentRow].addChild(annotation);
+            }
+        }
+        drop(neuronId, run);
+        return true;
+    }
+
+    /**
+     * Forgets the neuron's stored annotations, eg, when it's deleted or replaced by a
+     * newer copy.
+     */
+    public synchronized void remove(Long neuronId) {
+        Run run = neuronId == null ? null : runs.get(neuronId);
+        if (run != null) {
+            drop(neuronId, run);
+        }
+    }
+
+    public synchronized void clear() {
+        runs.clear();
+        ids = new long[0];
+        xyz = new double[0];
+        radii = new double[0];
+        parents = new int[0];
+        created = new long[0];
+        modified = new long[0];
+        rowCount = 0;
+        liveRowCount = 0;
+    }
+
+    /**
+     * @return packed x, y, z of each of the stored neuron's annotations, or null if it
+     * isn't stored
+     */
+    public synchronized double[] getLocations(Long neuronId) {
+        Run run = neuronId == null ? null : runs.get(neuronId);
+        if (run == null) {
+            return null;
+        }
+        return Arrays.copyOfRange(xyz, 3 * run.start, 3 * (run.start + run.count));
+    }
+
+    /**
+     * Sums the lengths of the stored neuron's edges, walking its rows the way code walks
+     * an annotation map to its parents; NaN if it isn't stored.
+     */
+    public synchronized double getPathLength(Long neuronId) {
+        Run run = neuronId == null ? null : runs.get(neuronId);
+        if (run == null) {
+            return Double.NaN;
+        }
+        double length = 0;
+        for (int row = run.start; row < run.start + run.count; row++) {
+            int parentRow = parents[row];
+            if (parentRow >= 0) {
+                int p = 3 * (run.start + parentRow);
+                double dx = xyz[3 * row] - xyz[p];
+                double dy = xyz[3 * row + 1] - xyz[p + 1];
+                double dz = xyz[3 * row + 2] - xyz[p + 2];
+                length += Math.sqrt(dx * dx + dy * dy + dz * dz);
+            }
+        }
+        return length;
+    }
+
+    /**
+     * approximate heap used by the arrays, in bytes
+     */
+    public synchronized long getArrayBytes() {
+        return 8L * ids.length + 8L * xyz.length + 8L * radii.length + 4L * parents.length
+                + 8L * created.length + 8L * modified.length;
+    }
+
+    private void drop(Long neuronId, Run run) {
+        runs.remove(neuronId);
+        liveRowCount -= run.count;
+        if (run.start + run.count == rowCount) {
+            rowCount = run.start;
+        }
+        if (liveRowCount == 0) {
+            rowCount = 0;
+        } else if (rowCount - liveRowCount > Math.max(liveRowCount, INITIAL_ROWS)) {
+            reclaim();
+        }
+    }
+
+    // moves the runs still in use to the front, in their current order
+    private void reclaim() {
+        List<Map.Entry<Long, Run>> entries = new ArrayList<>(runs.entrySet());
+        entries.sort((a, b) -> Integer.compare(a.getValue().start, b.getValue().start));
+        int next = 0;
+        for (Map.Entry<Long, Run> entry: entries) {
+            Run run = entry.getValue();
+            if (run.start != next) {
+                System.arraycopy(ids, run.start, ids, next, run.count);
+                System.arraycopy(xyz, 3 * run.start, xyz, 3 * next, 3 * run.count);
+                System.arraycopy(radii, run.start, radii, next, run.count);
+                System.arraycopy(parents, run.start, parents, next, run.count);
+                System.arraycopy(created, run.start, created, next, run.count);
+                System.arraycopy(modified, run.start, modified, next, run.count);
+                runs.put(entry.getKey(), new Run(next, run.count));
+            }
+            next += run.count;
+        }
+        rowCount = next;
+        resize(Math.max(INITIAL_ROWS, rowCount + rowCount / 2));
+    }
+
+    private void ensureCapacity(int rows) {
+        if (rows > ids.length) {
+            resize(Math.max(rows, Math.max(INITIAL_ROWS, ids.length + ids.length / 2)));
+        }
+    }
+
+    private void resize(int rows) {
+        if (rows == ids.length) {
+            return;
+        }
+        ids = Arrays.copyOf(ids, rows);
+        xyz = Arrays.copyOf(xyz, 3 * rows);
+        radii = Arrays.copyOf(radii, rows);
+        parents = Arrays.copyOf(parents, rows);
+        created = Arrays.copyOf(created, rows);
+        modified = Arrays.copyOf(modified, rows);
+    }
+
+    private static long toMillis(Date date) {
+        return date == null ? NO_DATE : date.getTime();
+    }
+
+    private static Date toDate(long millis) {
+        return millis == NO_DATE ? null : new Date(millis);
+    }
+
+}
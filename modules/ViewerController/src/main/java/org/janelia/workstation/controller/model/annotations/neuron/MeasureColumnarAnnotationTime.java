@@ -0,0 +1,129 @@
+package org.janelia.workstation.controller.model.annotations.neuron;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+import org.janelia.model.domain.tiledMicroscope.TmGeoAnnotation;
+import org.janelia.model.domain.tiledMicroscope.TmNeuronMetadata;
+import org.janelia.model.domain.tiledMicroscope.TmWorkspace;
+
+/**
+ * Measures the heap held by a synthetic workspace of fragments as annotation objects and
+ * in a ColumnarAnnotationStore, and times summing the fragments' path lengths each way,
+ * storing them, and restoring them.  Heap figures come from Runtime after a few
+ * System.gc() calls, so they're approximate; run with a fixed -Xms/-Xmx.
+ *
+ * Usage: MeasureColumnarAnnotationTime [fragmentCount [annotationsPerFragment]]
+ */
+public class MeasureColumnarAnnotationTime {
+
+    public static void main(String[] args) {
+        int fragmentCount = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        int annotationsPerFragment = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+
+        long baseline = usedHeap();
+        List<TmNeuronMetadata> fragments = syntheticFragments(new Random(1), fragmentCount, annotationsPerFragment);
+        long objectBytes = usedHeap() - baseline;
+        long annotationCount = (long) fragmentCount * annotationsPerFragment;
+        System.out.println(String.format("%d fragments, %d annotations", fragmentCount, annotationCount));
+        System.out.println(String.format("  as objects: %.1f MB, %.0f bytes per annotation",
+                objectBytes / 1e6, objectBytes / (double) annotationCount));
+
+        ColumnarAnnotationStore store = new ColumnarAnnotationStore();
+        for (int pass = 0; pass < 3; pass++) {
+            System.out.println("Pass " + pass + ":");
+
+            long start = System.nanoTime();
+            double length = 0;
+            for (TmNeuronMetadata fragment : fragments) {
+                length += objectPathLength(fragment);
+            }
+            report("  traverse objects", start, length);
+
+            start = System.nanoTime();
+            for (TmNeuronMetadata fragment : fragments) {
+                store.store(fragment);
+            }
+            report("  store", start, store.getAnnotationCount());
+            if (pass == 0) {
+                long columnarBytes = usedHeap() - baseline;
+                System.out.println(String.format("  stored: %.1f MB, %.0f bytes per annotation (arrays %.1f MB)",
+                        columnarBytes / 1e6, columnarBytes / (double) annotationCount, store.getArrayBytes() / 1e6));
+            }
+
+            start = System.nanoTime();
+            length = 0;
+            for (TmNeuronMetadata fragment : fragments) {
+                length += store.getPathLength(fragment.getId());
+            }
+            report("  traverse columns", start, length);
+
+            start = System.nanoTime();
+            for (TmNeuronMetadata fragment : fragments) {
+                store.restore(fragment);
+            }
+            report("  restore", start, store.getAnnotationCount());
+        }
+    }
+
+    private static double objectPathLength(TmNeuronMetadata neuron) {
+        double length = 0;
+        for (TmGeoAnnotation annotation : neuron.getGeoAnnotationMap().values()) {
+            if (!annotation.isRoot()) {
+                TmGeoAnnotation parent = neuron.getParentOf(annotation);
+                double dx = annotation.getX() - parent.getX();
+                double dy = annotation.getY() - parent.getY();
+                double dz = annotation.getZ() - parent.getZ();
+                length += Math.sqrt(dx * dx + dy * dy + dz * dz);
+            }
+        }
+        return length;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 4; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static void report(String label, long startNanos, double result) {
+        System.out.println(String.format("%s: %.1f ms (%.0f)", label, (System.nanoTime() - startNanos) / 1e6, result));
+    }
+
+    // Random walks that branch now and then, like the fragments of an automatic reconstruction
+    private static List<TmNeuronMetadata> syntheticFragments(Random random, int fragmentCount, int annotationsPerFragment) {
+        TmWorkspace workspace = new TmWorkspace();
+        workspace.setId(1L);
+        Date created = new Date();
+        List<TmNeuronMetadata> fragments = new ArrayList<>(fragmentCount);
+        long annotationId = 1000000000L;
+        for (int f = 0; f < fragmentCount; f++) {
+            TmNeuronMetadata neuron = new TmNeuronMetadata(workspace, "fragment " + f);
+            neuron.setId((long) f);
+            double x = random.nextDouble() * 50000, y = random.nextDouble() * 30000, z = random.nextDouble() * 10000;
+            List<TmGeoAnnotation> placed = new ArrayList<>(annotationsPerFragment);
+            for (int a = 0; a < annotationsPerFragment; a++) {
+                TmGeoAnnotation parent = placed.isEmpty() ? null
+                        : random.nextInt(20) == 0 ? placed.get(random.nextInt(placed.size())) : placed.get(placed.size() - 1);
+                TmGeoAnnotation annotation = new TmGeoAnnotation(annotationId++,
+                        parent == null ? neuron.getId() : parent.getId(), neuron.getId(),
+                        x += random.nextGaussian() * 3, y += random.nextGaussian() * 3, z += random.nextGaussian(),
+                        1.0, created, created);
+                if (parent == null) {
+                    neuron.addRootAnnotation(annotation);
+                } else {
+                    parent.addChild(annotation);
+                }
+                neuron.getGeoAnnotationMap().put(annotation.getId(), annotation);
+                placed.add(annotation);
+            }
+            fragments.add(neuron);
+        }
+        return fragments;
+    }
+
+}
@@ -0,0 +1,167 @@
+package org.janelia.workstation.controller.model.annotations.neuron;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.Lists;
+
+import org.janelia.model.domain.tiledMicroscope.TmGeoAnnotation;
+import org.janelia.model.domain.tiledMicroscope.TmNeuronMetadata;
+import org.janelia.model.domain.tiledMicroscope.TmWorkspace;
+import org.janelia.workstation.controller.access.NeuronSnapshotStore;
+import org.janelia.workstation.controller.access.NeuronSnapshotStore.NeuronRecord;
+
+/**
+ * Times opening a synthetic workspace of traced fragments cold, by parsing the neuron stream
+ * as the server sends it, and warm, from a local snapshot plus a stream of changed neurons.
+ * Network time is not included, so the cold times are a lower bound.
+ *
+ * Usage: MeasureNeuronSnapshotTime [fragmentCount [annotationsPerFragment [changedPercent]]]
+ */
+public class MeasureNeuronSnapshotTime {
+
+    private static final long WORKSPACE_ID = 1L;
+
+    public static void main(String[] args) throws Exception {
+        int fragmentCount = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        int annotationsPerFragment = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        double changedPercent = args.length > 2 ? Double.parseDouble(args[2]) : 1.0;
+
+        Path directory = Files.createTempDirectory("neuron-snapshots");
+        Path fullStream = directory.resolve("full.json");
+        Path changedStream = directory.resolve("changed.json");
+        System.out.println("Writing " + fragmentCount + " fragments of " + annotationsPerFragment + " annotations to " + directory);
+        List<TmNeuronMetadata> fragments = syntheticFragments(new Random(1), fragmentCount, annotationsPerFragment, 0);
+        writeStream(fullStream, fragments);
+        int changedCount = (int) (fragmentCount * changedPercent / 100);
+        writeStream(changedStream, syntheticFragments(new Random(2), changedCount, annotationsPerFragment, 1000));
+        System.out.println(String.format("  stream is %.1f MB", Files.size(fullStream) / 1e6));
+
+        NeuronSnapshotStore store = new NeuronSnapshotStore(directory);
+        for (int pass = 0; pass < 3; pass++) {
+            System.out.println("Pass " + pass + ":");
+            store.delete(WORKSPACE_ID);
+
+            long start = System.nanoTime();
+            List<NeuronRecord> records = new ArrayList<>();
+            readStream(fullStream, neuron -> {
+                records.add(NeuronModelAdapter.toRecord(neuron));
+                neuron.initNeuronData();
+            });
+            report("  cold open", start);
+
+            start = System.nanoTime();
+            store.write(WORKSPACE_ID, System.currentTimeMillis(), records);
+            report("  snapshot write", start);
+            System.out.println(String.format("  snapshot is %.1f MB", Files.size(directory.resolve(WORKSPACE_ID + ".snapshot")) / 1e6));
+
+            start = System.nanoTime();
+            NeuronSnapshotStore.Snapshot snapshot = store.read(WORKSPACE_ID);
+            Map<Long, NeuronRecord> merged = snapshot.getNeurons();
+            Map<Long, TmNeuronMetadata> changed = new HashMap<>();
+            readStream(changedStream, neuron -> {
+                merged.put(neuron.getId(), NeuronModelAdapter.toRecord(neuron));
+                changed.put(neuron.getId(), neuron);
+            });
+            List<NeuronRecord> unchanged = new ArrayList<>(merged.size());
+            for (NeuronRecord record : merged.values()) {
+                if (!changed.containsKey(record.getNeuronId())) {
+                    unchanged.add(record);
+                }
+            }
+            Lists.partition(unchanged, 500).parallelStream().forEach(chunk -> {
+                for (NeuronRecord record : chunk) {
+                    NeuronModelAdapter.fromRecord(record).initNeuronData();
+                }
+            });
+            for (TmNeuronMetadata neuron : changed.values()) {
+                neuron.initNeuronData();
+            }
+            report("  warm open, " + changed.size() + " changed", start);
+        }
+        store.delete(WORKSPACE_ID);
+    }
+
+    private interface NeuronHandler {
+        void handle(TmNeuronMetadata neuron);
+    }
+
+    private static void readStream(Path path, NeuronHandler handler) throws IOException {
+        ObjectMapper mapper = new ObjectMapper();
+        JsonFactory factory = new JsonFactory();
+        factory.setCodec(mapper);
+        try (InputStream is = Files.newInputStream(path);
+             JsonParser parser = factory.createParser(is)) {
+            Iterator<TmNeuronMetadata> neurons = parser.readValuesAs(TmNeuronMetadata.class);
+            while (neurons.hasNext()) {
+                handler.handle(neurons.next());
+            }
+        }
+    }
+
+    private static void writeStream(Path path, List<TmNeuronMetadata> neurons) throws IOException {
+        ObjectMapper mapper = new ObjectMapper();
+        try (OutputStream out = Files.newOutputStream(path)) {
+            for (TmNeuronMetadata neuron : neurons) {
+                out.write(mapper.writeValueAsBytes(neuron));
+                out.write('\n');
+            }
+        }
+    }
+
+    private static void report(String label, long startNanos) {
+        System.out.println(String.format("%s: %.1f ms", label, (System.nanoTime() - startNanos) / 1e6));
+    }
+
+    // Unbranched random walks, like the fragments of an automatic reconstruction
+    private static List<TmNeuronMetadata> syntheticFragments(Random random, int fragmentCount, int annotationsPerFragment,
+                                                             long minutesLater) {
+        TmWorkspace workspace = new TmWorkspace();
+        workspace.setId(WORKSPACE_ID);
+        Date updated = new Date(System.currentTimeMillis() + minutesLater * 60 * 1000);
+        List<TmNeuronMetadata> fragments = new ArrayList<>(fragmentCount);
+        long annotationId = 1000000000L;
+        for (int f = 0; f < fragmentCount; f++) {
+            TmNeuronMetadata neuron = new TmNeuronMetadata(workspace, "fragment " + f);
+            neuron.setId((long) f);
+            neuron.setUpdatedDate(updated);
+            double x = random.nextDouble() * 50000, y = random.nextDouble() * 30000, z = random.nextDouble() * 10000;
+            TmGeoAnnotation parent = null;
+            for (int a = 0; a < annotationsPerFragment; a++) {
+                TmGeoAnnotation annotation = new TmGeoAnnotation();
+                annotation.setId(annotationId++);
+                annotation.setNeuronId(neuron.getId());
+                annotation.setX(x += random.nextGaussian() * 3);
+                annotation.setY(y += random.nextGaussian() * 3);
+                annotation.setZ(z += random.nextGaussian());
+                annotation.setRadius(1.0);
+                annotation.setCreationDate(updated);
+                if (parent == null) {
+                    annotation.setParentId(neuron.getId());
+                    neuron.addRootAnnotation(annotation);
+                } else {
+                    annotation.setParentId(parent.getId());
+                    parent.addChild(annotation);
+                }
+                neuron.getGeoAnnotationMap().put(annotation.getId(), annotation);
+                parent = annotation;
+            }
+            fragments.add(neuron);
+        }
+        return fragments;
+    }
+
+}
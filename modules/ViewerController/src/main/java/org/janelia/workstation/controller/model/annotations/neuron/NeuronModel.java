@@ -3,7 +3,7 @@ package org.janelia.workstation.controller.model.annotations.neuron;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.stream.Collectors;
+import java.util.function.Consumer;
 
 import org.janelia.model.domain.tiledMicroscope.TmAnchoredPath;
 import org.janelia.model.domain.tiledMicroscope.TmAnchoredPathEndpoints;
@@ -13,15 +13,20 @@ import org.janelia.model.domain.tiledMicroscope.TmStructuredTextAnnotation;
 import org.janelia.model.domain.tiledMicroscope.TmWorkspace;
 import org.janelia.model.util.TmNeuronUtils;
 import org.janelia.workstation.controller.model.IdSource;
+import org.janelia.workstation.core.util.ConsoleProperties;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 public class NeuronModel {
 
     private static final Logger LOG = LoggerFactory.getLogger(NeuronModel.class);
+    private static final boolean COLUMNAR_FRAGMENTS = ConsoleProperties.getBoolean("console.lvv.columnarFragments", false);
     private final NeuronModelAdapter neuronModelAdapter = new NeuronModelAdapter();
     private final IdSource idSource = new IdSource();
     private Map<Long, TmNeuronMetadata> neuronMap;
+    private final ColumnarAnnotationStore columnarStore = new ColumnarAnnotationStore();
+    // neurons saved from this client since the workspace was loaded
+    private final Set<Long> editedNeuronIds = ConcurrentHashMap.newKeySet();
     private CompletableFuture<Boolean> ownershipRequest;
     private CompletableFuture<TmNeuronMetadata> createNeuronRequest;
     static NeuronModel modelInstance;
@@ -42,23 +47,107 @@ public class NeuronModel {
     }
 
     public void addNeuron(TmNeuronMetadata neuron) {
+        // the new copy replaces any stored annotations of the old one
+        columnarStore.remove(neuron.getId());
         neuronMap.put(neuron.getId(), neuron);
     }
 
     public TmNeuronMetadata removeNeuron(TmNeuronMetadata neuron) {
+        columnarStore.remove(neuron.getId());
         return neuronMap.remove(neuron.getId());
     }
 
+    /**
+     * Neurons whose annotations are in the columnar store are restored to full
+     * annotation objects first, so callers can always read and edit what they get.
+     * The restore runs on the caller's thread, under the columnar store's lock, so it
+     * never waits on the event dispatch thread; see ColumnarAnnotationStore.restore.
+     */
     public TmNeuronMetadata getNeuronById(Long id) {
         if (id != null) {
-            return neuronMap.get(id);
+            TmNeuronMetadata neuron = neuronMap.get(id);
+            if (neuron != null && columnarStore.contains(id)) {
+                columnarStore.restore(neuron);
+            }
+            return neuron;
         } else {
             return null;
         }
     }
 
+    /**
+     * Moves the annotations of loaded fragments that aren't in the given set (eg, those the
+     * spatial filter shows), and that haven't been edited here, into the columnar store.
+     * They come back as annotation objects as soon as they're looked up by ID.  Does
+     * nothing unless console.lvv.columnarFragments is set.
+     *
+     * @return the number of fragments stored
+     */
+    public int storeHiddenFragments(Set<Long> shownNeuronIds, String fragmentOwnerKey) {
+        if (!COLUMNAR_FRAGMENTS) {
+            return 0;
+        }
+        int stored = 0;
+        for (TmNeuronMetadata neuron: neuronMap.values()) {
+            if (fragmentOwnerKey.equals(neuron.getOwnerKey()) && !shownNeuronIds.contains(neuron.getId())
+                    && !editedNeuronIds.contains(neuron.getId()) && columnarStore.store(neuron)) {
+                stored++;
+            }
+        }
+        LOG.info("storeHiddenFragments() stored {} annotations of {} fragments in {} MB of arrays",
+                columnarStore.getAnnotationCount(), columnarStore.getNeuronCount(),
+                columnarStore.getArrayBytes() / (1024 * 1024));
+        return stored;
+    }
+
+    /**
+     * Restores every neuron in the columnar store to annotation objects, eg, when the
+     * spatial filter is turned off and all neurons are shown.
+     */
+    public void restoreStoredFragments() {
+        if (columnarStore.getNeuronCount() == 0) {
+            return;
+        }
+        for (TmNeuronMetadata neuron: neuronMap.values()) {
+            columnarStore.restore(neuron);
+        }
+    }
+
+    /**
+     * @return packed x, y, z of each of the neuron's annotations, whether or not they're
+     * in the columnar store
+     */
+    public double[] getAnnotationLocations(TmNeuronMetadata neuron) {
+        double[] xyz = columnarStore.getLocations(neuron.getId());
+        if (xyz == null) {
+            Collection<TmGeoAnnotation> annotations = neuron.getGeoAnnotationMap().values();
+            xyz = new double[3 * annotations.size()];
+            int i = 0;
+            for (TmGeoAnnotation annotation: annotations) {
+                xyz[i++] = annotation.getX();
+                xyz[i++] = annotation.getY();
+                xyz[i++] = annotation.getZ();
+            }
+        }
+        return xyz;
+    }
+
+    public ColumnarAnnotationStore getColumnarStore() {
+        return columnarStore;
+    }
+
+    /**
+     * a new ID, for domain objects that are built locally before they're created
+     */
+    public Long nextId() {
+        return idSource.next();
+    }
+
     public void clearMap() {
-        neuronMap = new HashMap<>();
+        // neurons are added from several threads while a workspace loads
+        neuronMap = new ConcurrentHashMap<>();
+        columnarStore.clear();
+        editedNeuronIds.clear();
     }
 
     /**
@@ -208,14 +297,41 @@ public class NeuronModel {
      * one which happens to be on the server.
      */
     public void loadWorkspaceNeurons(TmWorkspace workspace) throws Exception {
+        loadWorkspaceNeurons(workspace, batch -> {});
+    }
+
+    /**
+     * Loads the workspace's neurons as above, adding each batch to the model as it arrives
+     * and then passing it to the listener.  The listener is called from loader threads.
+     */
+    public void loadWorkspaceNeurons(TmWorkspace workspace, Consumer<Collection<TmNeuronMetadata>> batchListener) throws Exception {
         neuronMap.clear();
-        // addNeurons() must be done serially, so flatten the stream:
-        for (TmNeuronMetadata n: neuronModelAdapter.loadNeurons(workspace).collect(Collectors.toList())) {
-            addNeuron(n);
-        }
+        columnarStore.clear();
+        editedNeuronIds.clear();
+        neuronModelAdapter.loadNeurons(workspace, batch -> {
+            for (TmNeuronMetadata n: batch) {
+                setDefaultRadii(n);
+                addNeuron(n);
+            }
+            batchListener.accept(Collections.unmodifiableList(batch));
+        });
         LOG.info("loadWorkspaceNeurons() loaded {} neurons", neuronMap.size());
     }
 
+    /**
+     * Gives annotations saved without a radius the default one, keeping their modification
+     * dates.  Done as neurons load, before hidden fragments go into the columnar store.
+     */
+    private static void setDefaultRadii(TmNeuronMetadata neuron) {
+        for (TmGeoAnnotation ann : neuron.getGeoAnnotationMap().values()) {
+            if (ann.getRadius() == null) {
+                Date modDate = ann.getModificationDate();
+                ann.setRadius(1.0);
+                ann.setModificationDate(modDate);
+            }
+        }
+    }
+
     /**
      * Makes a new neuron.
      *
@@ -468,12 +584,19 @@ public class NeuronModel {
     }
 
     public void saveNeuronData(TmNeuronMetadata neuron) throws Exception {
+        // never save a neuron whose annotations are stored away
+        if (columnarStore.contains(neuron.getId())) {
+            columnarStore.restore(neuron);
+        }
+        editedNeuronIds.add(neuron.getId());
         // save historical event data for undo/redo
         neuronModelAdapter.asyncSaveNeuron(neuron, null);
     }
 
     public void restoreNeuronFromHistory(TmNeuronMetadata neuron) throws Exception {
         TmNeuronMetadata oldNeuron = neuronMap.get(neuron.getId());
+        columnarStore.remove(neuron.getId());
+        editedNeuronIds.add(neuron.getId());
         oldNeuron.setNeuronData(neuron.getNeuronData());
         oldNeuron.setColor(neuron.getColor());
         oldNeuron.setName(neuron.getName());
@@ -484,6 +607,7 @@ public class NeuronModel {
 
     public void refreshNeuronFromShared (TmNeuronMetadata neuron) throws Exception {
         TmNeuronMetadata oldNeuron = neuronMap.get(neuron.getId());
+        columnarStore.remove(neuron.getId());
         oldNeuron.setNeuronData(neuron.getNeuronData());
         oldNeuron.initNeuronData();
         oldNeuron.setColor(neuron.getColor());
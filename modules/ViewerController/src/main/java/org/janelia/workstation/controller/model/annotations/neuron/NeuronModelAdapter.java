@@ -1,10 +1,19 @@
 package org.janelia.workstation.controller.model.annotations.neuron;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
-import java.util.stream.Stream;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 import org.janelia.messaging.core.ConnectionManager;
 import org.janelia.messaging.core.MessageConnection;
@@ -19,6 +28,8 @@ import org.janelia.workstation.controller.scripts.spatialfilter.NeuronMessageCon
 import org.janelia.workstation.core.api.AccessManager;
 import org.janelia.workstation.core.api.ClientDomainUtils;
 import org.janelia.workstation.core.util.ConsoleProperties;
+import org.janelia.workstation.controller.access.NeuronSnapshotStore;
+import org.janelia.workstation.controller.access.NeuronSnapshotStore.NeuronRecord;
 import org.janelia.workstation.controller.access.TiledMicroscopeDomainMgr;
 //import org.janelia.workstation.gui.large_volume_viewer.options.ApplicationPanel;
 import org.perf4j.StopWatch;
@@ -40,46 +51,193 @@ import org.slf4j.LoggerFactory;
 class NeuronModelAdapter {
 
     private static final int MAX_NEURONS = 1000000;
+    private static final int NEURON_BATCH_SIZE = ConsoleProperties.getInt("console.lvv.neuronLoadBatchSize", 500);
+    // Neurons updated shortly before a snapshot was taken are fetched again, in case
+    // their updates were committed out of order
+    private static final long SNAPSHOT_OVERLAP_MS = 10 * 60 * 1000;
+    // A snapshot only pays off if few neurons changed; past this fraction of the workspace,
+    // or if the server ignores the update time, the full parallel load is faster
+    private static final double SNAPSHOT_MAX_MODIFIED_FRACTION = 0.25;
+    private static final ObjectMapper SNAPSHOT_MAPPER = new ObjectMapper();
+    private static final ExecutorService SNAPSHOT_WRITER = Executors.newSingleThreadExecutor(
+            new ThreadFactoryBuilder().setNameFormat("NeuronSnapshotWriter").setDaemon(true).build());
     private static Logger LOG = LoggerFactory.getLogger(NeuronModelAdapter.class);
 
     private TiledMicroscopeDomainMgr tmDomainMgr = TiledMicroscopeDomainMgr.getDomainMgr();
     private MessageSender messageSender;
 
-    Stream<TmNeuronMetadata> loadNeurons(TmWorkspace workspace) {
+    /**
+     * Loads the workspace's neurons, handing them to the consumer in batches from several
+     * loader threads as they arrive.  If the workspace has a local snapshot, only the neurons
+     * that changed since it was taken are fetched from the server.
+     *
+     * @return the number of neurons loaded
+     */
+    long loadNeurons(TmWorkspace workspace, Consumer<List<TmNeuronMetadata>> batchConsumer) throws Exception {
         LOG.info("Loading neurons for workspace: {}", workspace);
         StopWatch stopWatch = new StopWatch();
-        try {
-            return tmDomainMgr.streamWorkspaceNeurons(workspace.getId())
-                    .limit(MAX_NEURONS)
-                    .map(neuron -> {
-                        if (ClientDomainUtils.hasWriteAccess(workspace)) {
-                          /*  if (ApplicationPanel.isVerifyNeurons()) {
-                                LOG.info("Checking neuron data consistency");
-                                // check neuron consistency and repair (some) problems
-                                LOG.debug("Checking neuron data for TmNeuronMetadata#{}", neuron.getId());
-                                List<String> results = neuron.checkRepairNeuron();
-                                if (results.size() > 0) {
-                                    // save results, then output to LOG; this is unfortunately
-                                    //  not visible to the user; we aren't in a place in the
-                                    //  code where we can pop a dialog
-                                    for (String s : results) {
-                                        LOG.warn(s);
-                                    }
-                                    try {
-                                        return tmDomainMgr.save(neuron);
-                                    } catch (Exception e) {
-                                        throw new IllegalStateException(e);
-                                    }
-                                }
-                            }*/
+        NeuronSnapshotStore snapshotStore = NeuronSnapshotStore.getInstance();
+        if (snapshotStore != null) {
+            long neuronCount = loadNeuronsFromSnapshot(snapshotStore, workspace, batchConsumer);
+            if (neuronCount >= 0) {
+                LOG.info("Loading {} neurons from snapshot took {} ms", neuronCount, stopWatch.getElapsedTime());
+                return neuronCount;
+            }
+        }
+        Queue<NeuronRecord> records = new ConcurrentLinkedQueue<>();
+        AtomicBoolean snapshotFailed = new AtomicBoolean(snapshotStore == null);
+        long neuronCount = tmDomainMgr.loadWorkspaceNeurons(workspace.getId(), MAX_NEURONS, batch -> {
+            for (TmNeuronMetadata neuron : batch) {
+                if (ClientDomainUtils.hasWriteAccess(workspace)) {
+                  /*  if (ApplicationPanel.isVerifyNeurons()) {
+                        LOG.info("Checking neuron data consistency");
+                        // check neuron consistency and repair (some) problems
+                        LOG.debug("Checking neuron data for TmNeuronMetadata#{}", neuron.getId());
+                        List<String> results = neuron.checkRepairNeuron();
+                        if (results.size() > 0) {
+                            // save results, then output to LOG; this is unfortunately
+                            //  not visible to the user; we aren't in a place in the
+                            //  code where we can pop a dialog
+                            for (String s : results) {
+                                LOG.warn(s);
+                            }
+                            try {
+                                neuron = tmDomainMgr.save(neuron);
+                            } catch (Exception e) {
+                                throw new IllegalStateException(e);
+                            }
                         }
-                        // make sure to initialize cross references
-                        neuron.initNeuronData();
-                        return neuron;
-                    })
-                    ;
-        } finally {
-            LOG.info("Getting neurons stream took {} ms", stopWatch.getElapsedTime());
+                    }*/
+                }
+                if (!snapshotFailed.get()) {
+                    try {
+                        records.add(toRecord(neuron));
+                    } catch (IllegalStateException e) {
+                        LOG.warn("Not keeping a snapshot of workspace {}", workspace.getId(), e);
+                        snapshotFailed.set(true);
+                    }
+                }
+                // make sure to initialize cross references
+                neuron.initNeuronData();
+            }
+            batchConsumer.accept(batch);
+        });
+        LOG.info("Loading {} neurons took {} ms", neuronCount, stopWatch.getElapsedTime());
+        if (!snapshotFailed.get()) {
+            writeSnapshot(snapshotStore, workspace.getId(), records);
+        }
+        return neuronCount;
+    }
+
+    /**
+     * Loads the workspace's neurons from its local snapshot, after fetching the ones that
+     * changed since the snapshot was taken.
+     *
+     * @return the number of neurons loaded, or -1 if there is no usable snapshot
+     */
+    private long loadNeuronsFromSnapshot(NeuronSnapshotStore snapshotStore, TmWorkspace workspace,
+                                         Consumer<List<TmNeuronMetadata>> batchConsumer) {
+        Long workspaceId = workspace.getId();
+        NeuronSnapshotStore.Snapshot snapshot = snapshotStore.read(workspaceId);
+        if (snapshot == null) {
+            return -1;
+        }
+        try {
+            long serverCount = tmDomainMgr.getWorkspaceNeuronCount(workspaceId);
+            Map<Long, NeuronRecord> records = snapshot.getNeurons();
+            Map<Long, TmNeuronMetadata> modified = new LinkedHashMap<>();
+            Date modifiedSince = new Date(snapshot.getSnapshotTime() - SNAPSHOT_OVERLAP_MS);
+            long maxModified = (long) (serverCount * SNAPSHOT_MAX_MODIFIED_FRACTION);
+            boolean fewModified = tmDomainMgr.loadWorkspaceNeuronsModifiedSince(workspaceId, modifiedSince, MAX_NEURONS, page -> {
+                for (TmNeuronMetadata neuron : page) {
+                    modified.put(neuron.getId(), neuron);
+                }
+                return modified.size() <= maxModified;
+            });
+            if (!fewModified) {
+                LOG.info("More than {} of the {} neurons in workspace {} changed since {}; loading in full",
+                        maxModified, serverCount, workspaceId, modifiedSince);
+                return -1;
+            }
+            for (TmNeuronMetadata neuron : modified.values()) {
+                records.put(neuron.getId(), toRecord(neuron));
+            }
+            // deletions are not sent, but any that the journal missed show up in the count
+            if (records.size() != serverCount) {
+                LOG.info("Snapshot of workspace {} has {} neurons, but the server has {}; loading in full",
+                        workspaceId, records.size(), serverCount);
+                return -1;
+            }
+            LOG.info("Merged {} neurons changed since {} into snapshot of workspace {}",
+                    modified.size(), modifiedSince, workspaceId);
+
+            List<NeuronRecord> unchanged = new ArrayList<>(records.size());
+            for (NeuronRecord record : records.values()) {
+                if (!modified.containsKey(record.getNeuronId())) {
+                    unchanged.add(record);
+                }
+            }
+            Lists.partition(unchanged, NEURON_BATCH_SIZE).parallelStream().forEach(chunk -> {
+                List<TmNeuronMetadata> batch = new ArrayList<>(chunk.size());
+                for (NeuronRecord record : chunk) {
+                    TmNeuronMetadata neuron = fromRecord(record);
+                    neuron.initNeuronData();
+                    batch.add(neuron);
+                }
+                batchConsumer.accept(batch);
+            });
+            Lists.partition(new ArrayList<>(modified.values()), NEURON_BATCH_SIZE).forEach(chunk -> {
+                List<TmNeuronMetadata> batch = new ArrayList<>(chunk);
+                for (TmNeuronMetadata neuron : batch) {
+                    neuron.initNeuronData();
+                }
+                batchConsumer.accept(batch);
+            });
+
+            if (!modified.isEmpty() || snapshot.getJournalRecordCount() > 0) {
+                writeSnapshot(snapshotStore, workspaceId, records.values());
+            }
+            return records.size();
+        } catch (UncheckedIOException | IllegalStateException e) {
+            LOG.warn("Could not load workspace {} from its snapshot; loading in full", workspaceId, e);
+            snapshotStore.delete(workspaceId);
+            return -1;
+        } catch (Exception e) {
+            LOG.warn("Could not load the neurons of workspace {} changed since its snapshot; loading in full", workspaceId, e);
+            return -1;
+        }
+    }
+
+    private void writeSnapshot(NeuronSnapshotStore snapshotStore, Long workspaceId, Collection<NeuronRecord> records) {
+        List<NeuronRecord> snapshotRecords = new ArrayList<>(records);
+        SNAPSHOT_WRITER.execute(() -> {
+            long snapshotTime = 0;
+            for (NeuronRecord record : snapshotRecords) {
+                snapshotTime = Math.max(snapshotTime, record.getUpdatedTime());
+            }
+            try {
+                snapshotStore.write(workspaceId, snapshotTime, snapshotRecords);
+            } catch (IOException e) {
+                LOG.warn("Could not write neuron snapshot for workspace {}", workspaceId, e);
+            }
+        });
+    }
+
+    static NeuronRecord toRecord(TmNeuronMetadata neuron) {
+        try {
+            Date updatedDate = neuron.getUpdatedDate();
+            return new NeuronRecord(neuron.getId(), updatedDate == null ? 0 : updatedDate.getTime(),
+                    SNAPSHOT_MAPPER.writeValueAsBytes(neuron));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not serialize neuron " + neuron.getId(), e);
+        }
+    }
+
+    static TmNeuronMetadata fromRecord(NeuronRecord record) {
+        try {
+            return SNAPSHOT_MAPPER.readValue(record.getData(), TmNeuronMetadata.class);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read neuron " + record.getNeuronId() + " from snapshot", e);
         }
     }
 
@@ -1,6 +1,7 @@
 package org.janelia.workstation.controller.scripts.spatialfilter;
 
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -9,13 +10,18 @@ import java.util.Set;
 import java.util.Map;
 import java.util.Iterator;
 
-import com.google.common.collect.Sets;
 import org.janelia.workstation.core.util.ConsoleProperties;
 import org.janelia.model.domain.tiledMicroscope.TmGeoAnnotation;
 import org.janelia.model.domain.tiledMicroscope.TmNeuronMetadata;
 import org.janelia.workstation.geom.BoundingBox3d;
 import org.janelia.workstation.geom.Vec3;
 
+/**
+ * Shows the user's neurons and the fragments near them.  Each fragment keeps a count of the
+ * user neurons whose bounding boxes it falls in, so that adding, editing or deleting a neuron
+ * only touches the fragments near that neuron, rather than re-deriving the visible set from
+ * every user neuron.
+ */
 public class NeuronProximitySpatialFilter implements NeuronSpatialFilter {
     NeuronProximitySpatialIndex index;
     Map<Long, BoundingBox3d> spatialRegions;
@@ -24,21 +30,21 @@ public class NeuronProximitySpatialFilter implements NeuronSpatialFilter {
     boolean upToDate = false;
     int numTotalNeurons;
 
+    // number of user neurons each visible fragment is near
+    private Map<Long, Integer> proximityCounts = new HashMap<>();
+
     private double distance = 200; // distance from the neuron to include for proximity
 
     @Override
     // return a union of all individual proximities
     public synchronized Set<Long> filterNeurons() {
-        Set<Long> neuronFrags = new HashSet<>();
-        for (Set<Long> fragSet: proximalFragments.values()) {
-            neuronFrags.addAll(fragSet);
-        }
+        Set<Long> neuronFrags = new HashSet<>(proximityCounts.keySet());
         neuronFrags.addAll(userNeuronIds);
         return neuronFrags;
     }
 
     @Override
-    public void initFilter(Collection<TmNeuronMetadata> neuronList) {
+    public synchronized void initFilter(Collection<TmNeuronMetadata> neuronList) {
         numTotalNeurons = neuronList.size();
         // load all the neuron points into the index
         index = new NeuronProximitySpatialIndex();
@@ -56,16 +62,52 @@ public class NeuronProximitySpatialFilter implements NeuronSpatialFilter {
         // and perform a range search on all relevant bounding boxes
         spatialRegions = new HashMap<>();
         proximalFragments = new HashMap<>();
-        if (userNeurons.size()>0) {
-            for (TmNeuronMetadata neuron : userNeurons) {
-                userNeuronIds.add(neuron.getId());
-                BoundingBox3d box = calcBoundingBox(neuron);
-                spatialRegions.put(neuron.getId(),box);
-                double[] boxMin = new double[]{box.getMinX(),box.getMinY(),box.getMinZ()};
-                double[] boxMax = new double[]{box.getMaxX(),box.getMaxY(),box.getMaxZ()};
-                Set<Long> frags = index.getFragmentIdsInBoundingBox(boxMin, boxMax);
-                if (frags!=null) {
-                    proximalFragments.put(neuron.getId(),frags);
+        proximityCounts = new HashMap<>();
+        for (TmNeuronMetadata neuron : userNeurons) {
+            userNeuronIds.add(neuron.getId());
+        }
+        for (TmNeuronMetadata neuron : userNeurons) {
+            setProximalFragments(neuron.getId(), findProximalFragments(neuron), new HashSet<>(), new HashSet<>());
+        }
+    }
+
+    /**
+     * Finds the fragments within the neuron's bounding box, and records the box.
+     */
+    private Set<Long> findProximalFragments(TmNeuronMetadata neuron) {
+        BoundingBox3d box = calcBoundingBox(neuron);
+        spatialRegions.put(neuron.getId(), box);
+        double[] boxMin = new double[]{box.getMinX(),box.getMinY(),box.getMinZ()};
+        double[] boxMax = new double[]{box.getMaxX(),box.getMaxY(),box.getMaxZ()};
+        return index.getFragmentIdsInBoundingBox(boxMin, boxMax);
+    }
+
+    /**
+     * Replaces the fragments near a user neuron, adjusting the counts of only those fragments
+     * that were near it before or after, and collecting the ones that became visible or hidden.
+     */
+    private void setProximalFragments(Long neuronId, Set<Long> newFrags, Set<Long> addSet, Set<Long> delSet) {
+        Set<Long> oldFrags = newFrags.isEmpty() ? proximalFragments.remove(neuronId)
+                : proximalFragments.put(neuronId, newFrags);
+        if (oldFrags == null) {
+            oldFrags = Collections.emptySet();
+        }
+        for (Long frag: newFrags) {
+            if (!oldFrags.contains(frag) && proximityCounts.merge(frag, 1, Integer::sum) == 1
+                    && !userNeuronIds.contains(frag)) {
+                addSet.add(frag);
+            }
+        }
+        for (Long frag: oldFrags) {
+            if (!newFrags.contains(frag)) {
+                Integer count = proximityCounts.get(frag);
+                if (count == null || count <= 1) {
+                    proximityCounts.remove(frag);
+                    if (!userNeuronIds.contains(frag)) {
+                        delSet.add(frag);
+                    }
+                } else {
+                    proximityCounts.put(frag, count - 1);
                 }
             }
         }
@@ -117,66 +159,31 @@ public class NeuronProximitySpatialFilter implements NeuronSpatialFilter {
     // remove bounding box and fragments in vicinity
     public synchronized NeuronUpdates deleteNeuron(TmNeuronMetadata neuron) {
         userNeuronIds.remove(neuron.getId());
-        NeuronUpdates updates = new NeuronUpdates();
+        index.removeFromIndex(neuron);
         spatialRegions.remove(neuron.getId());
-        Set<Long> neuronFrags = proximalFragments.get(neuron.getId());
-        proximalFragments.remove(neuron.getId());
 
         // check which frags need to removed from the visible list
-        if (neuronFrags!=null) {
-            Set<Long> totalFrags = filterNeurons();
-            Set<Long> deleteFrags = Sets.difference(neuronFrags, totalFrags);
-            if (deleteFrags.size()>0)
-                updates.setDeletedNeurons(deleteFrags);
-        }
+        Set<Long> delSet = new HashSet<>();
+        setProximalFragments(neuron.getId(), Collections.emptySet(), new HashSet<>(), delSet);
+        NeuronUpdates updates = new NeuronUpdates();
+        updates.setDeletedNeurons(delSet);
         return updates;
     }
 
     @Override
     // calculate single bounding box and return fragments in vicinity
     public synchronized NeuronUpdates addNeuron(TmNeuronMetadata neuron) {
-        userNeuronIds.add(neuron.getId());
-        BoundingBox3d box = calcBoundingBox(neuron);       
-        spatialRegions.put(neuron.getId(),box);
-        double[] boxMin = new double[]{box.getMinX(),box.getMinY(),box.getMinZ()};
-        double[] boxMax = new double[]{box.getMaxX(),box.getMaxY(),box.getMaxZ()};
-        Set<Long> frags = index.getFragmentIdsInBoundingBox(boxMin, boxMax);
-        proximalFragments.put(neuron.getId(), frags);
-        NeuronUpdates updates = new NeuronUpdates();
-        updates.setAddedNeurons(frags);
-        return updates;
+        return updateNeuron(neuron);
     }
 
     @Override
     // update the bounding box for this neuron
     public synchronized NeuronUpdates updateNeuron(TmNeuronMetadata neuron) {
         userNeuronIds.add(neuron.getId());
-        Set<Long> oldFrags = proximalFragments.get(neuron.getId());  
-        if (oldFrags==null)
-            oldFrags = new HashSet<Long>();
-        BoundingBox3d newBox = calcBoundingBox(neuron);
-        double[] boxMin = new double[]{newBox.getMinX(),newBox.getMinY(),newBox.getMinZ()};
-        double[] boxMax = new double[]{newBox.getMaxX(),newBox.getMaxY(),newBox.getMaxZ()};
-        Set<Long> newFrags = index.getFragmentIdsInBoundingBox(boxMin, boxMax);
-
-        Set<Long> totalFrags = filterNeurons();
-        spatialRegions.put(neuron.getId(),newBox);
-        proximalFragments.put(neuron.getId(),newFrags);
-        Iterator<Long> newFragIter = newFrags.iterator();
+        index.addToIndex(neuron);
         Set<Long> addSet = new HashSet<>();
         Set<Long> delSet = new HashSet<>();
-        while (newFragIter.hasNext()) {
-            Long frag = newFragIter.next();
-            if (!totalFrags.contains(frag))
-                addSet.add(frag);
-        }
-        totalFrags = filterNeurons();
-        Iterator<Long> oldFragIter = oldFrags.iterator();
-        while (oldFragIter.hasNext()) {
-            Long frag = oldFragIter.next();
-            if (!totalFrags.contains(frag))
-                delSet.add(frag);
-        }
+        setProximalFragments(neuron.getId(), findProximalFragments(neuron), addSet, delSet);
 
         NeuronUpdates updates = new NeuronUpdates();
         updates.setAddedNeurons(addSet);
@@ -190,10 +197,11 @@ public class NeuronProximitySpatialFilter implements NeuronSpatialFilter {
     }
 
     @Override
-    public void clearFilter() {
+    public synchronized void clearFilter() {
         index.clear();
         spatialRegions = new HashMap<>();
         proximalFragments = new HashMap<>();
+        proximityCounts = new HashMap<>();
     }
 
     public double getDistance() {
@@ -1,16 +1,17 @@
 package org.janelia.workstation.controller.scripts.spatialfilter;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicBoolean;
 
-import edu.wlu.cs.levy.CG.KDTree;
-import edu.wlu.cs.levy.CG.KeyDuplicateException;
-import edu.wlu.cs.levy.CG.KeyMissingException;
-import edu.wlu.cs.levy.CG.KeySizeException;
 import org.janelia.model.domain.tiledMicroscope.TmGeoAnnotation;
 import org.janelia.model.domain.tiledMicroscope.TmNeuronMetadata;
+import org.janelia.workstation.controller.model.annotations.neuron.NeuronModel;
+import org.janelia.workstation.core.util.ConsoleProperties;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -18,6 +19,11 @@ import org.slf4j.LoggerFactory;
  * Spatial index for doing range searches to find fragments that are within a certain distance
  * from other neurons
  *
+ * Fragments are indexed by their bounding boxes in a uniform grid of cells, so a range search
+ * only looks at the fragments whose boxes share a cell with the search box, and only tests the
+ * points of those whose boxes actually overlap it.  Fragments that span too many cells to be
+ * worth registering in each are kept aside and tested on every search.
+ *
  * @author David Schauder
  * @author <a href="mailto:schauderd@janelia.hhmi.org">David Schauder</a>
  */
@@ -25,38 +31,125 @@ public class NeuronProximitySpatialIndex {
 
     private final Logger log = LoggerFactory.getLogger(this.getClass());
 
-    private KDTree<TmGeoAnnotation> index;
+    private static final double DEFAULT_CELL_SIZE = ConsoleProperties.getDouble("console.lvv.proximityFilter.cellSize", 500);
+    private static final int MAX_CELLS_PER_FRAGMENT = 4096;
+
+    private static final int CELL_BITS = 21;
+    private static final int CELL_MASK = (1 << CELL_BITS) - 1;
+    private static final int MAX_CELL = (1 << (CELL_BITS - 1)) - 1;
+
+    private static class Fragment {
+        private final long id;
+        private final double[] min = new double[3];
+        private final double[] max = new double[3];
+        private final double[] xyz; // packed x, y, z of each point
+
+        Fragment(long id, double[] xyz) {
+            this.id = id;
+            this.xyz = xyz;
+            for (int d = 0; d < 3; d++) {
+                min[d] = Double.POSITIVE_INFINITY;
+                max[d] = Double.NEGATIVE_INFINITY;
+            }
+            for (int i = 0; i < xyz.length; i += 3) {
+                for (int d = 0; d < 3; d++) {
+                    min[d] = Math.min(min[d], xyz[i + d]);
+                    max[d] = Math.max(max[d], xyz[i + d]);
+                }
+            }
+        }
+
+        boolean overlaps(double[] minXYZ, double[] maxXYZ) {
+            for (int d = 0; d < 3; d++) {
+                if (max[d] < minXYZ[d] || min[d] > maxXYZ[d]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        boolean hasPointIn(double[] minXYZ, double[] maxXYZ) {
+            for (int i = 0; i < xyz.length; i += 3) {
+                if (xyz[i] >= minXYZ[0] && xyz[i] <= maxXYZ[0]
+                        && xyz[i + 1] >= minXYZ[1] && xyz[i + 1] <= maxXYZ[1]
+                        && xyz[i + 2] >= minXYZ[2] && xyz[i + 2] <= maxXYZ[2]) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private final double cellSize;
+    private Map<Long, Fragment> fragments;
+    private Map<Long, List<Fragment>> cells;
+    private Set<Fragment> largeFragments;
 
     // Is the index currently in a valid, usable state?
     private AtomicBoolean valid = new AtomicBoolean(false);
 
 
     public NeuronProximitySpatialIndex() {
-        this.index = new KDTree<>(3);
+        this(DEFAULT_CELL_SIZE);
+    }
+
+    public NeuronProximitySpatialIndex(double cellSize) {
+        this.cellSize = cellSize;
+        clear();
         log.trace("Creating spatial index");
     }
 
     /**
-     * Returns all TmGeoAnnotations within the bounding box
+     * Returns the IDs of all fragments with a point within the bounding box
      * @param minXYZ minimums for the bounding box
      * @param maxXYZ maximums for the bounding box
      * @return
      */
     public Set<Long> getFragmentIdsInBoundingBox(double[] minXYZ, double[] maxXYZ) {
-        if (index==null) return null;
-        try {
-            List<TmGeoAnnotation> points = index.range(minXYZ, maxXYZ);
-            Set<Long> fragments = new HashSet<>();
-            if (points!=null && points.size()>0) {
-                for (TmGeoAnnotation point: points) {
-                    fragments.add(point.getNeuronId());
+        Set<Long> found = new HashSet<>();
+        if (fragments.isEmpty()) {
+            return found;
+        }
+        int[] minCell = cellOf(minXYZ);
+        int[] maxCell = cellOf(maxXYZ);
+        double cellCount = 1;
+        for (int d = 0; d < 3; d++) {
+            cellCount *= Math.max(0, (double) maxCell[d] - minCell[d] + 1);
+        }
+
+        if (cellCount > cells.size()) {
+            // the box covers more cells than are occupied
+            for (Fragment fragment : fragments.values()) {
+                test(fragment, minXYZ, maxXYZ, found);
+            }
+            return found;
+        }
+
+        Set<Fragment> checked = new HashSet<>();
+        for (int x = minCell[0]; x <= maxCell[0]; x++) {
+            for (int y = minCell[1]; y <= maxCell[1]; y++) {
+                for (int z = minCell[2]; z <= maxCell[2]; z++) {
+                    List<Fragment> cell = cells.get(cellKey(x, y, z));
+                    if (cell == null) {
+                        continue;
+                    }
+                    for (Fragment fragment : cell) {
+                        if (checked.add(fragment)) {
+                            test(fragment, minXYZ, maxXYZ, found);
+                        }
+                    }
                 }
             }
-            return fragments;
-        } 
-        catch (KeySizeException ex) {
-            log.warn("Exception while finding fragments in spatial index", ex);
-            return null;
+        }
+        for (Fragment fragment : largeFragments) {
+            test(fragment, minXYZ, maxXYZ, found);
+        }
+        return found;
+    }
+
+    private static void test(Fragment fragment, double[] minXYZ, double[] maxXYZ, Set<Long> found) {
+        if (fragment.overlaps(minXYZ, maxXYZ) && fragment.hasPointIn(minXYZ, maxXYZ)) {
+            found.add(fragment.id);
         }
     }
 
@@ -64,37 +157,105 @@ public class NeuronProximitySpatialIndex {
         return new NeuronUpdates();
     }
 
+    /**
+     * Indexes the neuron's points as they are now, replacing any earlier entry for it.
+     * Fragments whose annotations are in the neuron model's columnar store are indexed
+     * from there.
+     */
     public boolean addToIndex(TmNeuronMetadata neuron) {
-        try {
-            for (TmGeoAnnotation annotation: neuron.getGeoAnnotationMap().values()) {
-                double[] key = new double[]{annotation.getX(), annotation.getY(), annotation.getZ()};
-                index.insert(key, annotation);
-            }
-        }
-        catch (KeySizeException | KeyDuplicateException ex) {
+        return addToIndex(neuron.getId(), NeuronModel.getInstance().getAnnotationLocations(neuron));
+    }
+
+    /**
+     * @param xyz packed x, y, z of each of the fragment's points
+     */
+    public boolean addToIndex(long fragmentId, double[] xyz) {
+        removeFromIndex(fragmentId);
+        if (xyz.length == 0) {
             return false;
         }
+        Fragment fragment = new Fragment(fragmentId, xyz);
+        fragments.put(fragmentId, fragment);
+        if (isLarge(fragment)) {
+            largeFragments.add(fragment);
+        } else {
+            forEachCell(fragment, (key) -> cells.computeIfAbsent(key, k -> new ArrayList<>(4)).add(fragment));
+        }
         return true;
     }
 
     public boolean removeFromIndex(TmNeuronMetadata neuron) {
-        try {
-            for (TmGeoAnnotation annotation: neuron.getGeoAnnotationMap().values()) {
-                double[] key = new double[]{annotation.getX(), annotation.getY(), annotation.getZ()};
-                index.delete(key);
-            }
-        }
-        catch (KeySizeException | KeyMissingException ex) {
+        return removeFromIndex(neuron.getId());
+    }
+
+    public boolean removeFromIndex(long fragmentId) {
+        Fragment fragment = fragments.remove(fragmentId);
+        if (fragment == null) {
             return false;
         }
+        if (!largeFragments.remove(fragment)) {
+            forEachCell(fragment, (key) -> {
+                List<Fragment> cell = cells.get(key);
+                cell.remove(fragment);
+                if (cell.isEmpty()) {
+                    cells.remove(key);
+                }
+            });
+        }
         return true;
     }
 
+    private interface CellVisitor {
+        void visit(long key);
+    }
+
+    private boolean isLarge(Fragment fragment) {
+        int[] minCell = cellOf(fragment.min);
+        int[] maxCell = cellOf(fragment.max);
+        double cellCount = 1;
+        for (int d = 0; d < 3; d++) {
+            cellCount *= (double) maxCell[d] - minCell[d] + 1;
+        }
+        return cellCount > MAX_CELLS_PER_FRAGMENT;
+    }
+
+    private void forEachCell(Fragment fragment, CellVisitor visitor) {
+        int[] minCell = cellOf(fragment.min);
+        int[] maxCell = cellOf(fragment.max);
+        for (int x = minCell[0]; x <= maxCell[0]; x++) {
+            for (int y = minCell[1]; y <= maxCell[1]; y++) {
+                for (int z = minCell[2]; z <= maxCell[2]; z++) {
+                    visitor.visit(cellKey(x, y, z));
+                }
+            }
+        }
+    }
+
+    private int[] cellOf(double[] xyz) {
+        return new int[]{cellOf(xyz[0]), cellOf(xyz[1]), cellOf(xyz[2])};
+    }
+
+    private int cellOf(double coordinate) {
+        // clamped so that every cell has its own key
+        double cell = Math.floor(coordinate / cellSize);
+        return (int) Math.max(-MAX_CELL, Math.min(MAX_CELL, cell));
+    }
+
+    private static long cellKey(int x, int y, int z) {
+        return ((long) (x & CELL_MASK) << (2 * CELL_BITS)) | ((long) (y & CELL_MASK) << CELL_BITS) | (z & CELL_MASK);
+    }
+
+    public int size() {
+        return fragments.size();
+    }
+
     public boolean isValid() {
         return valid.get();
     }
-    
+
     public void clear() {
-        this.index = new KDTree<>(3);
+        this.fragments = new HashMap<>();
+        this.cells = new HashMap<>();
+        this.largeFragments = new HashSet<>();
     }
 }
@@ -1,5 +1,8 @@
 package org.janelia.workstation.controller.tileimagery;
 
+import java.util.ArrayList;
+import java.util.List;
+
 public abstract class AbstractTextureLoadAdapter {
 
 	public static class MissingTileException extends Exception {
@@ -32,6 +35,30 @@ public abstract class AbstractTextureLoadAdapter {
 	public abstract TextureData2d loadToRam(TileIndex tileIndex)
 		throws TileLoadError, MissingTileException;
 
+	/**
+	 * Loads sliceCount consecutive slices, starting from firstSlice, with
+	 * null for any that have no data.  Adapters that can read a range of
+	 * pages of an octree block in one request should override this; by
+	 * default, loads one slice at a time.
+	 */
+	public List<TextureData2d> loadSlicesToRam(TileIndex firstSlice, int sliceCount)
+		throws TileLoadError, MissingTileException
+	{
+		List<TextureData2d> slices = new ArrayList<>(sliceCount);
+		TileIndex slice = firstSlice;
+		for (int i = 0; i < sliceCount; ++i) {
+			try {
+				slices.add(loadToRam(slice));
+			} catch (MissingTileException e) {
+				// one absent tile, such as at the edge of the volume, must
+				// not cost the rest of the run
+				slices.add(null);
+			}
+			slice = slice.nextSlice();
+		}
+		return slices;
+	}
+
 	public TileFormat getTileFormat() {
 		return tileFormat;
 	}
@@ -0,0 +1,143 @@
+package org.janelia.workstation.controller.tileimagery;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes an uncompressed BigTIFF stack, one strip per slice.  The image
+ * directories all go at the front of the file, so every slice has a fixed
+ * place after them, and slabs can be written in any order, from any thread.
+ */
+class BigTiffSlabWriter implements OctreeSubvolumeExporter.SlabWriter {
+
+    private static final int HEADER_BYTES = 16;
+    private static final int ENTRY_BYTES = 20;
+    // directories written per batch, to bound the buffer for deep stacks
+    private static final int DIRECTORIES_PER_WRITE = 1024;
+
+    private static final short SHORT = 3;
+    private static final short LONG = 4;
+    private static final short LONG8 = 16;
+
+    private final FileChannel channel;
+    private final int[] size;
+    private final int channelCount;
+    private final int bytesPerIntensity;
+    private final long sliceBytes;
+    private final long directoryBytes;
+    private final long dataStart;
+
+    /**
+     * @param create whether to start a new file, or to open one that an
+     * earlier export of the same region started
+     */
+    BigTiffSlabWriter(Path path, int[] size, int channelCount, int bytesPerIntensity, boolean create) throws IOException {
+        if (channelCount > 4) {
+            throw new IllegalArgumentException("Cannot write " + channelCount + " channels to TIFF");
+        }
+        this.size = size;
+        this.channelCount = channelCount;
+        this.bytesPerIntensity = bytesPerIntensity;
+        this.sliceBytes = (long) size[0] * size[1] * channelCount * bytesPerIntensity;
+        this.directoryBytes = 8 + getEntryCount() * ENTRY_BYTES + 8;
+        this.dataStart = HEADER_BYTES + directoryBytes * size[2];
+        if (create) {
+            channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.READ, StandardOpenOption.TRUNCATE_EXISTING);
+            writeDirectories();
+        } else {
+            channel = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.READ);
+            if (channel.size() != getFileBytes()) {
+                channel.close();
+                throw new IOException(path + " is not the size of this export");
+            }
+        }
+    }
+
+    long getFileBytes() {
+        return dataStart + sliceBytes * size[2];
+    }
+
+    @Override
+    public void writeSlab(int z0, int depth, ByteBuffer slab) throws IOException {
+        ByteBuffer data = slab.duplicate();
+        long position = dataStart + sliceBytes * z0;
+        while (data.hasRemaining()) {
+            position += channel.write(data, position);
+        }
+    }
+
+    @Override
+    public void sync() throws IOException {
+        channel.force(false);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private int getEntryCount() {
+        return channelCount > 1 ? 12 : 11;
+    }
+
+    private void writeDirectories() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        header.put((byte) 'I').put((byte) 'I').putShort((short) 43).putShort((short) 8).putShort((short) 0)
+                .putLong(HEADER_BYTES);
+        header.flip();
+        writeFully(header, 0);
+        ByteBuffer directories = ByteBuffer
+                .allocate((int) (directoryBytes * Math.min(size[2], DIRECTORIES_PER_WRITE)))
+                .order(ByteOrder.LITTLE_ENDIAN);
+        for (int z = 0; z < size[2]; z++) {
+            long position = HEADER_BYTES + directoryBytes * z;
+            directories.putLong(getEntryCount());
+            entry(directories, 256, LONG, 1, size[0]); // image width
+            entry(directories, 257, LONG, 1, size[1]); // image length
+            entry(directories, 258, SHORT, channelCount, repeatShort(8 * bytesPerIntensity)); // bits per sample
+            entry(directories, 259, SHORT, 1, 1); // no compression
+            entry(directories, 262, SHORT, 1, 1); // black is zero
+            entry(directories, 273, LONG8, 1, dataStart + sliceBytes * z); // strip offset
+            entry(directories, 277, SHORT, 1, channelCount); // samples per pixel
+            entry(directories, 278, LONG, 1, size[1]); // rows per strip
+            entry(directories, 279, LONG8, 1, sliceBytes); // strip byte count
+            entry(directories, 284, SHORT, 1, 1); // samples interleaved
+            if (channelCount > 1) {
+                entry(directories, 338, SHORT, channelCount - 1, 0); // extra samples, unspecified
+            }
+            entry(directories, 339, SHORT, channelCount, repeatShort(1)); // unsigned samples
+            directories.putLong(z + 1 < size[2] ? position + directoryBytes : 0);
+            if (!directories.hasRemaining() || z + 1 == size[2]) {
+                directories.flip();
+                writeFully(directories, position + directoryBytes - directories.remaining());
+                directories.clear();
+            }
+        }
+        // sets the size, without writing the pixels
+        writeFully(ByteBuffer.allocate(1), getFileBytes() - 1);
+    }
+
+    // one short value for each channel, packed for a value field
+    private long repeatShort(int value) {
+        long packed = 0;
+        for (int c = 0; c < channelCount; c++) {
+            packed |= (long) value << (16 * c);
+        }
+        return packed;
+    }
+
+    private void entry(ByteBuffer directories, int tag, short type, long count, long value) {
+        directories.putShort((short) tag).putShort(type).putLong(count).putLong(value);
+    }
+
+    private void writeFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+}
@@ -4,7 +4,6 @@ import java.util.Collection;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Optional;
-import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
@@ -26,7 +25,7 @@ public class CachedBlockTiffOctreeLoadAdapter extends BlockTiffOctreeLoadAdapter
     private static final int MAX_CACHE_SIZE = ConsoleProperties.getInt("console.lvv.tileCacheSize", 300);
     private final static Logger LOG = LoggerFactory.getLogger(CachedBlockTiffOctreeLoadAdapter.class);
 
-    private final ScheduledThreadPoolExecutor tileLoadThreadPool;
+    private final TileLoadScheduler loadScheduler;
     private final LoadingCache<TileIndex, Optional<TextureData2d>> tileCache;
 
     private final TextureData2dCacheLoader tileCacheLoader;
@@ -38,7 +37,7 @@ public class CachedBlockTiffOctreeLoadAdapter extends BlockTiffOctreeLoadAdapter
     private Double zoom;
     private Vec3 focus;
 
-    CachedBlockTiffOctreeLoadAdapter(BlockTiffOctreeLoadAdapter tileLoader) {
+    CachedBlockTiffOctreeLoadAdapter(BlockTiffOctreeLoadAdapter tileLoader, TileLoadScheduler loadScheduler) {
         super(tileLoader.getTileFormat(), tileLoader.getVolumeBaseURI());
         this.tileLoader = tileLoader;
         this.tileCacheLoader = new TextureData2dCacheLoader(tileLoader);
@@ -46,7 +45,7 @@ public class CachedBlockTiffOctreeLoadAdapter extends BlockTiffOctreeLoadAdapter
                 .maximumSize(MAX_CACHE_SIZE)
                 .build(tileCacheLoader);
         this.tileCachingMap = new LinkedHashMap<>();
-        this.tileLoadThreadPool = new ScheduledThreadPoolExecutor(4);
+        this.loadScheduler = loadScheduler;
     }
 
     @Override
@@ -106,8 +105,6 @@ public class CachedBlockTiffOctreeLoadAdapter extends BlockTiffOctreeLoadAdapter
                     tileLoader.getTileFormat().getIndexStyle(),
                     CoordinateAxis.Z
             );
-            tileLoadThreadPool.getQueue().clear();
-            tileCache.getUnchecked(focusTileIndex);
             tileCachingMap.clear();
             Stream.of(
                     generateOffsets(0, 0, 0), // focus tile
@@ -126,12 +123,15 @@ public class CachedBlockTiffOctreeLoadAdapter extends BlockTiffOctreeLoadAdapter
                         int[] offsets = tileWithOffsets.getRight();
                         tileCachingMap.put(ti, offsets);
                         submitCacheTileRequest(ti);
-                    });    
+                    });
+            // Tiles that left the neighbourhood before their turn came are no longer needed
+            loadScheduler.retainOnly(TileLoadScheduler.Band.RAM_CACHE, tileCachingMap.keySet());
         }
     }
 
     private void submitCacheTileRequest(TileIndex tileIndex) {
-       tileLoadThreadPool.schedule(() -> tileCache.getUnchecked(tileIndex), 100, TimeUnit.MILLISECONDS);
+        // Nearest tiles load first, and tiles already being loaded for display are not loaded twice
+        loadScheduler.submit(tileIndex, TileLoadScheduler.Band.RAM_CACHE, () -> tileCache.getUnchecked(tileIndex), null);
     }
 
     private Stream<int[]> generateOffsets(int from, int to, int zOffset) {
@@ -6,6 +6,7 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
+import java.nio.ByteBuffer;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -32,12 +33,23 @@ public class CachedRenderedVolumeLocation implements RenderedVolumeLocation {
 
     private final RenderedVolumeLocation delegate;
     private final LocalFileCache<RenderedVolumeFileKey> renderedVolumeFileCache;
+    @Nullable
+    private final MappedTileStore mappedTileStore; // holds textured pages instead of the file cache when set
 
     public CachedRenderedVolumeLocation(RenderedVolumeLocation delegate,
                                         LocalFileCacheStorage localFileCacheStorage,
                                         int cacheConcurrency,
                                         ExecutorService localCachedFileWriteExecutor) {
+        this(delegate, localFileCacheStorage, cacheConcurrency, localCachedFileWriteExecutor, MappedTileStore.getInstance());
+    }
+
+    CachedRenderedVolumeLocation(RenderedVolumeLocation delegate,
+                                 LocalFileCacheStorage localFileCacheStorage,
+                                 int cacheConcurrency,
+                                 ExecutorService localCachedFileWriteExecutor,
+                                 @Nullable MappedTileStore mappedTileStore) {
         this.delegate = delegate;
+        this.mappedTileStore = mappedTileStore;
         renderedVolumeFileCache = new LocalFileCache<>(
                 localFileCacheStorage,
                 cacheConcurrency,
@@ -152,6 +164,9 @@ public class CachedRenderedVolumeLocation implements RenderedVolumeLocation {
 
     @Override
     public Streamable<byte[]> readTiffPageAsTexturedBytes(String imageRelativePath, List<String> channelImageNames, int pageNumber) {
+        if (mappedTileStore != null) {
+            return readTiffPageFromMappedTileStore(imageRelativePath, channelImageNames, pageNumber);
+        }
         RenderedVolumeFileKey fileKey = new RenderedVolumeFileKeyBuilder(getBaseDataStoragePath())
                 .withRelativePath(imageRelativePath)
                 .withChannelImageNames(channelImageNames)
@@ -184,6 +199,33 @@ public class CachedRenderedVolumeLocation implements RenderedVolumeLocation {
                 false);
    }
 
+    /**
+     * Pages found in the mapped tile store are copied once out of the mapping, into the
+     * array that RenderedVolumeLoader requires, which saves opening and streaming a cache
+     * file but not the copy; others are fetched and stored on the way through.
+     */
+    private Streamable<byte[]> readTiffPageFromMappedTileStore(String imageRelativePath, List<String> channelImageNames, int pageNumber) {
+        String storeKey = new RenderedVolumeFileKeyBuilder(getBaseDataStoragePath())
+                .withRelativePath(imageRelativePath)
+                .withChannelImageNames(channelImageNames)
+                .withPageNumber(pageNumber)
+                .build(null)
+                .getLocalName();
+        ByteBuffer cachedPage = mappedTileStore.get(storeKey);
+        if (cachedPage != null) {
+            byte[] bytes = new byte[cachedPage.remaining()];
+            cachedPage.get(bytes);
+            return Streamable.of(bytes, (long) bytes.length);
+        }
+        Streamable<byte[]> texturedPage = delegate.readTiffPageAsTexturedBytes(imageRelativePath, channelImageNames, pageNumber);
+        byte[] bytes = texturedPage.getContent();
+        if (bytes == null) {
+            return Streamable.empty();
+        }
+        mappedTileStore.put(storeKey, ByteBuffer.wrap(bytes));
+        return texturedPage;
+    }
+
     @Override
     public Streamable<byte[]> readTiffImageROIPixels(String imagePath, int xCenter, int yCenter, int zCenter, int dimx, int dimy, int dimz) {
         return delegate.readTiffImageROIPixels(imagePath, xCenter, yCenter, zCenter, dimx, dimy, dimz);
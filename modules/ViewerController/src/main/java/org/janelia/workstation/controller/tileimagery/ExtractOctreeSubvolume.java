@@ -13,17 +13,23 @@ import com.sun.media.jai.codec.ImageCodec;
 import com.sun.media.jai.codec.ImageEncoder;
 import com.sun.media.jai.codec.TIFFEncodeParam;
 import org.janelia.workstation.geom.Vec3;
-import org.janelia.workstation.integration.util.FrameworkAccess;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 public class ExtractOctreeSubvolume {
 
+	private static final Logger log = LoggerFactory.getLogger(ExtractOctreeSubvolume.class);
+
 	/**
-	 * Creates a tiff file of a subvolume from an octree on-disk volume.
+	 * Creates a tiff file, or an OME-Zarr folder, of a subvolume from an
+	 * octree on-disk volume.  Streams BigTIFF or OME-Zarr output slab by
+	 * slab, and picks up an interrupted export where it left off; "--format
+	 * tiff" builds a classic TIFF in memory, as before.
 	 * 
 	 * @param args
 	 */
 	public static void main(String[] args) {
-		if (args.length != 9) {
+		if (args.length < 9) {
 			usage(args);
 			System.exit(1);
 		}
@@ -37,16 +43,48 @@ public class ExtractOctreeSubvolume {
 				Double.parseDouble(args[5]));
 		double resolutionMicrometers = Double.parseDouble(args[6]);
 		File inputOctreeFolder = new File(args[7]);
-		File outputTiff = new File(args[8]);
+		File output = new File(args[8]);
+		String format = output.getName().endsWith(".zarr") ? "zarr" : "bigtiff";
+		int threadCount = 0;
+		int slabDepth = 0;
+		boolean resume = true;
+		for (int i = 9; i < args.length; i++) {
+			if (args[i].equals("--format") && i + 1 < args.length) {
+				format = args[++i];
+			} else if (args[i].equals("--threads") && i + 1 < args.length) {
+				threadCount = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("--slab-depth") && i + 1 < args.length) {
+				slabDepth = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("--restart")) {
+				resume = false;
+			} else {
+				usage(args);
+				System.exit(1);
+			}
+		}
 		try {
-			extractSubvolume(corner1, corner2, resolutionMicrometers,
-					inputOctreeFolder, outputTiff);
-		} catch (MalformedURLException e) {
+			if (format.equals("tiff")) {
+				extractSubvolume(corner1, corner2, resolutionMicrometers,
+						inputOctreeFolder, output);
+			} else {
+				SharedVolumeImage wholeImage = new SharedVolumeImage();
+				wholeImage.loadURL(inputOctreeFolder.toURI().toURL());
+				OctreeSubvolumeExporter exporter = new OctreeSubvolumeExporter(
+						wholeImage, corner1, corner2, resolutionMicrometers);
+				if (threadCount > 0) exporter.setThreadCount(threadCount);
+				if (slabDepth > 0) exporter.setSlabDepth(slabDepth);
+				exporter.setResume(resume);
+				exporter.export(output.toPath(),
+						OctreeSubvolumeExporter.Format.valueOf(format.toUpperCase()));
+			}
+		} catch (MalformedURLException | IllegalArgumentException e) {
 			System.err.println(e.getMessage());
 			usage(args);
 			System.exit(1);
-		} catch (IOException e) {
-			FrameworkAccess.handleException(e);
+		} catch (IOException | InterruptedException e) {
+			// headless, so no dialog
+			log.error("Could not extract subvolume to {}", output, e);
+			System.exit(1);
 		}
 	}
 	
@@ -79,6 +117,9 @@ public class ExtractOctreeSubvolume {
 	private static void usage(String [] args) {
 		System.err.println("Usage:\n"
 				+" java -jar ExtractOctreeSubvolume.jar <x1>"
-				+" <y1> <z1> <x2> <y2> <z2> <res> <octreeFolder> <outputTiff>");
+				+" <y1> <z1> <x2> <y2> <z2> <res> <octreeFolder> <output>\n"
+				+"   [--format bigtiff|zarr|tiff] [--threads <n>] [--slab-depth <slices>] [--restart]\n"
+				+" Output ending in .zarr is written as OME-Zarr, otherwise as BigTIFF.\n"
+				+" An interrupted export resumes when run again, unless --restart is given.");
 	}
 }
@@ -68,9 +68,15 @@ public class FileBasedBlockTiffOctreeLoadAdapter extends BlockTiffOctreeLoadAdap
                 tileInfo);
         LOG.debug("Load tile {} using key {} -> {}", tileIndex, tileKey, renderedVolumeMetadata.getRelativeTilePath(tileKey));
         try {
+            long startTime = System.nanoTime();
             byte[] textureBytes = renderedVolumeLoader.loadSlice(renderedVolumeLocation, renderedVolumeMetadata, tileKey)
                     .getContent();
-            return textureBytes != null ? new TextureData2d(textureBytes) : null;
+            if (textureBytes == null) {
+                return null;
+            }
+            // the rendering library reads and converts the page in one call
+            TileLoadMetrics.getInstance().recordFetchDecode(System.nanoTime() - startTime, textureBytes.length);
+            return new TextureData2d(textureBytes);
         } catch (Exception ex) {
             LOG.error("Error getting sample 2d tile {} based on tileIndex {} using path based on {}", tileKey, tileIndex, renderedVolumeMetadata.getDataStorageURI(), ex);
             throw new TileLoadError(ex);
@@ -0,0 +1,533 @@
+package org.janelia.workstation.controller.tileimagery;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+import org.janelia.workstation.core.util.ConsoleProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Local store for textured tile pages, packed into large memory-mapped segment files.
+ *
+ * The store is off unless console.lvv.mappedTileStoreMB gives it a budget.
+ *
+ * Entries are looked up by the local name of their RenderedVolumeFileKey, and a hit is
+ * a read-only slice of the mapping, so reading a cached page costs no file open. Every
+ * read is checked against the page's CRC, outside the store's lock; pages are never
+ * overwritten in place, so a slice keeps its content after it is handed out. The index is kept in an append-only journal
+ * next to the segments, so pages cached in an earlier session are found again when the
+ * same octree is re-opened; the journal is flushed in batches, so a crash may forget the
+ * last few pages, which then only cost dead space until compaction.
+ *
+ * Only one process can use a store directory at a time; it is held with a file lock, and
+ * a viewer that finds the lock taken runs without the store.
+ *
+ * Disk usage is bounded by a byte budget. When it is exceeded, least recently used entries
+ * are dropped, and segments that are mostly dead are compacted by moving their remaining
+ * entries into the current write segment.
+ */
+class MappedTileStore {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MappedTileStore.class);
+
+    private static final long MB = 1024 * 1024;
+    private static final long MAX_BYTES = ConsoleProperties.getLong("console.lvv.mappedTileStoreMB", 0) * MB;
+    private static final int SEGMENT_BYTES = (int) (ConsoleProperties.getInt("console.lvv.mappedTileStoreSegmentMB", 128) * MB);
+    // Segments with less than this fraction of live bytes are rewritten during compaction
+    private static final double COMPACTION_THRESHOLD = 0.5;
+    // After eviction, live bytes are brought down to this fraction of the budget
+    private static final double EVICTION_TARGET = 0.8;
+
+    private static final String JOURNAL_NAME = "index.journal";
+    private static final String LOCK_NAME = "store.lock";
+    // Journal records buffered before they are flushed
+    private static final int JOURNAL_FLUSH_RECORDS = 256;
+    private static final Pattern SEGMENT_NAME = Pattern.compile("segment-(\\d+)\\.dat");
+    private static final byte PUT_RECORD = 1;
+    private static final byte REMOVE_RECORD = 2;
+
+    private static MappedTileStore instance;
+    private static boolean instanceOpened = false;
+
+    /**
+     * @return the store shared by all volume locations, or null if it is disabled or could not be opened
+     */
+    static synchronized MappedTileStore getInstance() {
+        if (!instanceOpened) {
+            instanceOpened = true;
+            if (MAX_BYTES > 0) {
+                Path directory = Paths.get(ConsoleProperties.getMappedTileStoreDir());
+                try {
+                    instance = open(directory, MAX_BYTES, SEGMENT_BYTES);
+                    Runtime.getRuntime().addShutdownHook(new Thread(instance::close, "MappedTileStoreClose"));
+                } catch (IOException e) {
+                    LOG.warn("Could not open mapped tile store in {}; tiles will only use the file cache", directory, e);
+                }
+            }
+        }
+        return instance;
+    }
+
+    private static class Entry {
+        private final int segmentId;
+        private final int offset;
+        private final int length;
+        private final int crc;
+
+        private Entry(int segmentId, int offset, int length, int crc) {
+            this.segmentId = segmentId;
+            this.offset = offset;
+            this.length = length;
+            this.crc = crc;
+        }
+    }
+
+    private static class Segment {
+        private final int id;
+        private final Path path;
+        private final MappedByteBuffer buffer;
+        private long liveBytes = 0;
+
+        private Segment(int id, Path path, MappedByteBuffer buffer) {
+            this.id = id;
+            this.path = path;
+            this.buffer = buffer;
+        }
+    }
+
+    private final Path directory;
+    private final long maxBytes;
+    private final int segmentBytes;
+    private final Map<String, Entry> index = new LinkedHashMap<>(1024, 0.75f, true); // LRU order
+    private final TreeMap<Integer, Segment> segments = new TreeMap<>();
+    // Deleting a file that is still mapped fails on some platforms, so those are retried later
+    private final List<Path> pendingDeletes = new ArrayList<>();
+    private Segment writeSegment;
+    private int writePosition;
+    private int nextSegmentId = 0;
+    private DataOutputStream journal;
+    private int unflushedRecords = 0;
+    private FileChannel lockChannel;
+    private FileLock lock;
+    private long liveBytes = 0;
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+
+    private MappedTileStore(Path directory, long maxBytes, int segmentBytes) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        this.segmentBytes = segmentBytes;
+    }
+
+    static MappedTileStore open(Path directory, long maxBytes, int segmentBytes) throws IOException {
+        MappedTileStore store = new MappedTileStore(directory, maxBytes, segmentBytes);
+        Files.createDirectories(directory);
+        store.lock();
+        try {
+            store.loadSegments();
+            store.replayJournal();
+            store.rewriteJournal();
+            store.compact();
+        } catch (IOException | RuntimeException e) {
+            store.close();
+            throw e;
+        }
+        LOG.info("Opened mapped tile store in {} with {} pages in {} segments",
+                directory, store.index.size(), store.segments.size());
+        return store;
+    }
+
+    /**
+     * @return a read-only view of the stored page, or null if it is not in the store
+     */
+    ByteBuffer get(String key) {
+        Entry entry;
+        ByteBuffer content;
+        synchronized (this) {
+            entry = index.get(key);
+            if (entry == null) {
+                missCount.increment();
+                return null;
+            }
+            content = slice(entry);
+        }
+        if (checksum(content.duplicate()) != entry.crc) {
+            LOG.warn("Dropping corrupt page {} from mapped tile store", key);
+            synchronized (this) {
+                // unless it was replaced while being checked
+                if (index.get(key) == entry) {
+                    remove(key);
+                }
+            }
+            missCount.increment();
+            return null;
+        }
+        hitCount.increment();
+        return content;
+    }
+
+    synchronized boolean containsKey(String key) {
+        return index.containsKey(key);
+    }
+
+    /**
+     * Copy a page into the store. Pages larger than a segment are not stored.
+     */
+    synchronized void put(String key, ByteBuffer content) {
+        int length = content.remaining();
+        if (length > segmentBytes) {
+            return;
+        }
+        try {
+            remove(key);
+            Entry entry = append(content.duplicate(), checksum(content.duplicate()));
+            addEntry(key, entry);
+            writeRecord(PUT_RECORD, key, entry);
+            if (getDiskBytes() > maxBytes) {
+                enforceBudget();
+            }
+        } catch (IOException e) {
+            LOG.warn("Could not store page {} in mapped tile store", key, e);
+        }
+    }
+
+    synchronized void remove(String key) {
+        Entry entry = index.remove(key);
+        if (entry == null) {
+            return;
+        }
+        removeLiveBytes(entry);
+        try {
+            writeRecord(REMOVE_RECORD, key, entry);
+        } catch (IOException e) {
+            LOG.warn("Could not record removal of page {} from mapped tile store", key, e);
+        }
+    }
+
+    synchronized int size() {
+        return index.size();
+    }
+
+    /**
+     * @return bytes held by pages that are still in the store
+     */
+    synchronized long getLiveBytes() {
+        return liveBytes;
+    }
+
+    /**
+     * @return bytes used on disk by segment files, including dead space
+     */
+    synchronized long getDiskBytes() {
+        return (long) segments.size() * segmentBytes;
+    }
+
+    long getHitCount() {
+        return hitCount.sum();
+    }
+
+    long getMissCount() {
+        return missCount.sum();
+    }
+
+    synchronized void close() {
+        closeJournal();
+        try {
+            if (lock != null) {
+                lock.release();
+                lock = null;
+            }
+            if (lockChannel != null) {
+                lockChannel.close();
+                lockChannel = null;
+            }
+        } catch (IOException e) {
+            LOG.warn("Error releasing mapped tile store lock", e);
+        }
+    }
+
+    private void closeJournal() {
+        try {
+            if (journal != null) {
+                journal.close();
+                journal = null;
+            }
+        } catch (IOException e) {
+            LOG.warn("Error closing mapped tile store journal", e);
+        }
+    }
+
+    private void lock() throws IOException {
+        lockChannel = FileChannel.open(directory.resolve(LOCK_NAME),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        try {
+            lock = lockChannel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            lock = null; // held by another store in this process
+        }
+        if (lock == null) {
+            lockChannel.close();
+            lockChannel = null;
+            throw new IOException("Mapped tile store in " + directory + " is in use by another process");
+        }
+    }
+
+    /**
+     * Delete segments without live pages, and move the pages of mostly dead segments into
+     * the current write segment so that their files can be deleted as well.
+     */
+    synchronized void compact() throws IOException {
+        retryPendingDeletes();
+        Set<Integer> candidates = new HashSet<>();
+        for (Segment segment : segments.values()) {
+            if (segment != writeSegment && segment.liveBytes < COMPACTION_THRESHOLD * segmentBytes) {
+                candidates.add(segment.id);
+            }
+        }
+        compact(candidates);
+    }
+
+    private void compact(Set<Integer> candidates) throws IOException {
+        if (candidates.isEmpty()) {
+            return;
+        }
+        // Relocate pages in LRU order, so related pages stay together
+        List<Map.Entry<String, Entry>> moved = new ArrayList<>();
+        for (Map.Entry<String, Entry> e : index.entrySet()) {
+            if (candidates.contains(e.getValue().segmentId)) {
+                moved.add(e);
+            }
+        }
+        for (Map.Entry<String, Entry> e : moved) {
+            Entry entry = e.getValue();
+            Entry relocated = append(slice(entry), entry.crc);
+            removeLiveBytes(entry);
+            e.setValue(relocated);
+            addLiveBytes(relocated);
+        }
+        for (Integer id : candidates) {
+            delete(segments.remove(id).path);
+        }
+        rewriteJournal();
+        LOG.debug("Compacted {} segments of mapped tile store, moving {} pages", candidates.size(), moved.size());
+    }
+
+    private void enforceBudget() throws IOException {
+        // Leave room for the write segment, which is always mapped at full size
+        long target = Math.max(0, (long) (EVICTION_TARGET * maxBytes) - segmentBytes);
+        Iterator<Map.Entry<String, Entry>> it = index.entrySet().iterator();
+        int evicted = 0;
+        while (liveBytes > target && it.hasNext()) {
+            Map.Entry<String, Entry> e = it.next();
+            it.remove();
+            removeLiveBytes(e.getValue());
+            writeRecord(REMOVE_RECORD, e.getKey(), e.getValue());
+            evicted += 1;
+        }
+        LOG.debug("Evicted {} pages from mapped tile store", evicted);
+        compact();
+        // Live pages may be spread thinly over many segments; pack the emptiest ones
+        for (int attempts = segments.size(); attempts > 0 && getDiskBytes() > maxBytes; --attempts) {
+            Segment emptiest = null;
+            for (Segment segment : segments.values()) {
+                if (segment != writeSegment && (emptiest == null || segment.liveBytes < emptiest.liveBytes)) {
+                    emptiest = segment;
+                }
+            }
+            if (emptiest == null) {
+                break;
+            }
+            Set<Integer> candidates = new HashSet<>();
+            candidates.add(emptiest.id);
+            compact(candidates);
+        }
+    }
+
+    private ByteBuffer slice(Entry entry) {
+        ByteBuffer content = segments.get(entry.segmentId).buffer.duplicate();
+        content.position(entry.offset);
+        content.limit(entry.offset + entry.length);
+        return content.slice().asReadOnlyBuffer();
+    }
+
+    private Entry append(ByteBuffer content, int crc) throws IOException {
+        int length = content.remaining();
+        if (writeSegment == null || writePosition + length > segmentBytes) {
+            writeSegment = createSegment(nextSegmentId++);
+            writePosition = 0;
+        }
+        ByteBuffer target = writeSegment.buffer.duplicate();
+        target.position(writePosition);
+        target.put(content);
+        Entry entry = new Entry(writeSegment.id, writePosition, length, crc);
+        writePosition += length;
+        return entry;
+    }
+
+    private void addEntry(String key, Entry entry) {
+        index.put(key, entry);
+        addLiveBytes(entry);
+    }
+
+    private void addLiveBytes(Entry entry) {
+        segments.get(entry.segmentId).liveBytes += entry.length;
+        liveBytes += entry.length;
+    }
+
+    private void removeLiveBytes(Entry entry) {
+        Segment segment = segments.get(entry.segmentId);
+        if (segment != null) {
+            segment.liveBytes -= entry.length;
+        }
+        liveBytes -= entry.length;
+    }
+
+    private Segment createSegment(int id) throws IOException {
+        Path path = directory.resolve(String.format("segment-%06d.dat", id));
+        Segment segment = new Segment(id, path, map(path));
+        segments.put(id, segment);
+        return segment;
+    }
+
+    private MappedByteBuffer map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // The mapping stays valid after the channel is closed
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+        }
+    }
+
+    private void loadSegments() throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "segment-*.dat")) {
+            for (Path path : files) {
+                Matcher matcher = SEGMENT_NAME.matcher(path.getFileName().toString());
+                if (!matcher.matches()) {
+                    continue;
+                }
+                if (Files.size(path) != segmentBytes) {
+                    delete(path); // written with a different segment size
+                    continue;
+                }
+                int id = Integer.parseInt(matcher.group(1));
+                segments.put(id, new Segment(id, path, map(path)));
+                nextSegmentId = Math.max(nextSegmentId, id + 1);
+            }
+        }
+    }
+
+    private void replayJournal() throws IOException {
+        Path journalPath = directory.resolve(JOURNAL_NAME);
+        if (!Files.exists(journalPath)) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(journalPath)))) {
+            while (true) {
+                byte type = in.readByte();
+                String key = in.readUTF();
+                Entry entry = new Entry(in.readInt(), in.readInt(), in.readInt(), in.readInt());
+                Entry previous = index.remove(key);
+                if (previous != null) {
+                    removeLiveBytes(previous);
+                }
+                if (type == PUT_RECORD && isValid(entry)) {
+                    addEntry(key, entry);
+                }
+            }
+        } catch (EOFException e) {
+            // end of journal, or a record cut short by a crash
+        }
+    }
+
+    private boolean isValid(Entry entry) {
+        return segments.containsKey(entry.segmentId)
+                && entry.offset >= 0
+                && entry.length >= 0
+                && (long) entry.offset + entry.length <= segmentBytes;
+    }
+
+    // Replace the journal with a snapshot of the index, in LRU order
+    private void rewriteJournal() throws IOException {
+        closeJournal();
+        Path journalPath = directory.resolve(JOURNAL_NAME);
+        Path tempPath = directory.resolve(JOURNAL_NAME + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempPath)))) {
+            for (Map.Entry<String, Entry> e : index.entrySet()) {
+                writeRecord(out, PUT_RECORD, e.getKey(), e.getValue());
+            }
+        }
+        Files.move(tempPath, journalPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        OutputStream journalStream = Files.newOutputStream(journalPath, StandardOpenOption.APPEND);
+        journal = new DataOutputStream(new BufferedOutputStream(journalStream));
+        unflushedRecords = 0;
+    }
+
+    private void writeRecord(byte type, String key, Entry entry) throws IOException {
+        writeRecord(journal, type, key, entry);
+        if (++unflushedRecords >= JOURNAL_FLUSH_RECORDS) {
+            journal.flush();
+            unflushedRecords = 0;
+        }
+    }
+
+    private static void writeRecord(DataOutputStream out, byte type, String key, Entry entry) throws IOException {
+        out.writeByte(type);
+        out.writeUTF(key);
+        out.writeInt(entry.segmentId);
+        out.writeInt(entry.offset);
+        out.writeInt(entry.length);
+        out.writeInt(entry.crc);
+    }
+
+    private static int checksum(ByteBuffer content) {
+        CRC32 crc = new CRC32();
+        crc.update(content);
+        return (int) crc.getValue();
+    }
+
+    private void delete(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            LOG.debug("Could not delete {} yet", path, e);
+            pendingDeletes.add(path);
+        }
+    }
+
+    private void retryPendingDeletes() {
+        List<Path> paths = new ArrayList<>(pendingDeletes);
+        pendingDeletes.clear();
+        for (Path path : paths) {
+            delete(path);
+        }
+    }
+
+}
@@ -0,0 +1,106 @@
+package org.janelia.workstation.controller.tileimagery;
+
+import java.awt.Transparency;
+import java.awt.color.ColorSpace;
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.util.Random;
+
+/**
+ * Times TextureData2d.loadRenderedImage, which copies whole rows, against the
+ * pixel at a time Raster.getPixel copy it replaced, on two channel 16-bit
+ * tiles like the multichannel octree ones, and on the same tiles with a width
+ * that needs padding to a multiple of 8.  Checks that both give the same
+ * texture bytes.
+ *
+ * Usage: MeasureTextureDecodeTime [width height [tiles [passes]]]
+ */
+public class MeasureTextureDecodeTime {
+
+    public static void main(String[] args) {
+        int width = args.length > 1 ? Integer.parseInt(args[0]) : 512;
+        int height = args.length > 1 ? Integer.parseInt(args[1]) : 512;
+        int tileCount = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+        int passes = args.length > 3 ? Integer.parseInt(args[3]) : 5;
+
+        for (int tileWidth : new int[] {width, width - 3}) {
+            BufferedImage image = createTwoChannelImage(tileWidth, height);
+            System.out.println(String.format("%dx%dx2 16-bit tiles, %d per pass", tileWidth, height, tileCount));
+            TextureData2d bulk = new TextureData2d();
+            TextureData2d perPixel = new TextureData2d();
+            for (int pass = 0; pass < passes; pass++) {
+                System.out.println("Pass " + pass + ":");
+                long start = System.nanoTime();
+                for (int t = 0; t < tileCount; t++) {
+                    loadPerPixel(perPixel, image);
+                }
+                report("  per pixel", start, tileCount, perPixel);
+
+                start = System.nanoTime();
+                for (int t = 0; t < tileCount; t++) {
+                    bulk.loadRenderedImage(image);
+                }
+                report("  row copy", start, tileCount, bulk);
+            }
+            System.out.println("Same texture bytes: " + bulk.getPixels().equals(perPixel.getPixels()));
+        }
+    }
+
+    private static void report(String label, long startNanos, int tiles, TextureData2d texture) {
+        double ms = (System.nanoTime() - startNanos) / 1e6;
+        long bytes = (long) tiles * texture.getPixels().capacity();
+        // print a result so the work can't be optimized away
+        System.out.println(String.format("%-11s: %.2f ms per tile, %.0f MB/s (first sample %d)",
+                label, ms / tiles, bytes / ms / 1e3, texture.getPixels().getShort(0) & 0xffff));
+    }
+
+    private static BufferedImage createTwoChannelImage(int width, int height) {
+        ComponentColorModel colorModel = new ComponentColorModel(
+                ColorSpace.getInstance(ColorSpace.CS_GRAY), true, false,
+                Transparency.TRANSLUCENT, DataBuffer.TYPE_USHORT);
+        WritableRaster raster = colorModel.createCompatibleWritableRaster(width, height);
+        Random random = new Random(1);
+        for (int y = 0; y < height; ++y)
+            for (int x = 0; x < width; ++x)
+                for (int b = 0; b < raster.getNumBands(); ++b)
+                    raster.setSample(x, y, b, random.nextInt(65536));
+        return new BufferedImage(colorModel, raster, false, null);
+    }
+
+    // The 16-bit branch of loadRenderedImage as it was before the row copy
+    private static void loadPerPixel(TextureData2d texture, BufferedImage image) {
+        texture.width = texture.usedWidth = image.getWidth();
+        if ((texture.width % 8) != 0)
+            texture.width += 8 - (texture.width % 8);
+        texture.height = image.getHeight();
+        texture.channelCount = image.getColorModel().getNumComponents();
+        texture.bitDepth = 16;
+        ByteBuffer byteBuffer = ByteBuffer.wrap(new byte[texture.height * texture.width * texture.channelCount * 2]);
+        byteBuffer.order(ByteOrder.nativeOrder());
+        ShortBuffer shortBuffer = byteBuffer.asShortBuffer();
+        Raster raster = image.getData();
+        int[] pixelData = new int[texture.channelCount];
+        int[] padData = new int[texture.channelCount];
+        for (int y = 0; y < texture.height; ++y) {
+            raster.getPixel(texture.usedWidth - 1, y, padData);
+            for (int x = 0; x < texture.width; ++x) {
+                if (x < texture.usedWidth) {
+                    raster.getPixel(x, y, pixelData);
+                    for (int i : pixelData)
+                        shortBuffer.put((short) i);
+                } else {
+                    for (int i : padData)
+                        shortBuffer.put((short) i);
+                }
+            }
+        }
+        texture.pixels = byteBuffer;
+    }
+
+}
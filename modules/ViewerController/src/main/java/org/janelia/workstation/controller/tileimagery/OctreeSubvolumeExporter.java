@@ -0,0 +1,362 @@
+package org.janelia.workstation.controller.tileimagery;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import org.janelia.workstation.geom.CoordinateAxis;
+import org.janelia.workstation.geom.Vec3;
+import org.janelia.workstation.octree.ZoomLevel;
+import org.janelia.workstation.octree.ZoomedVoxelIndex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Exports a region of an octree volume slab by slab, so the region can be
+ * any size: each worker thread loads one slab (a range of slices through the
+ * whole region) as a Subvolume, and writes it to a BigTIFF stack or an
+ * OME-Zarr image, so at most one slab per thread is in memory.  Finished
+ * slabs are recorded in a ".progress" file next to the output, which a later
+ * export of the same region picks up from if it was interrupted.
+ */
+public class OctreeSubvolumeExporter {
+
+    public enum Format {
+        BIGTIFF,
+        ZARR
+    }
+
+    private static final Logger log = LoggerFactory.getLogger(OctreeSubvolumeExporter.class);
+
+    // default cap on the size of one slab
+    private static final long MAX_SLAB_BYTES = 256L * 1024 * 1024;
+    // a slab is one buffer, so no slab, even of a chosen depth, can be larger
+    private static final long MAX_BUFFER_BYTES = Integer.MAX_VALUE - 8;
+    private static final int ZARR_CHUNK_WIDTH = 256;
+
+    /**
+     * Where the slabs come from; the production one loads Subvolumes.
+     */
+    interface SlabSource {
+        /** what and where the region is, to tell exports apart */
+        String describe();
+
+        /** width, height and depth of the region */
+        int[] getSize();
+
+        int getChannelCount();
+
+        int getBytesPerIntensity();
+
+        double[] getVoxelMicrometers();
+
+        /** how deep the octree's blocks are, to line slabs up with them */
+        int getBlockDepth();
+
+        /**
+         * Loads depth slices starting at z0 from the top of the region:
+         * channel fastest, then x, y, z, little endian.  Throws rather than
+         * returning a slab with holes where tiles could not be read, so
+         * that the slab isn't recorded as done, and a resumed export tries
+         * it again.
+         */
+        ByteBuffer readSlab(int z0, int depth) throws IOException;
+    }
+
+    interface SlabWriter extends Closeable {
+        void writeSlab(int z0, int depth, ByteBuffer slab) throws IOException;
+
+        /** makes the slabs written so far durable */
+        void sync() throws IOException;
+    }
+
+    private final SlabSource source;
+    private int threadCount = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+    private int slabDepth = 0; // from the block depth and slab size limit
+    private boolean resume = true;
+
+    /**
+     * @param corner1 one corner of the region, in micrometers
+     * @param corner2 the opposite corner
+     * @param micrometerResolution picks the octree level to export
+     */
+    public OctreeSubvolumeExporter(SharedVolumeImage wholeImage, Vec3 corner1, Vec3 corner2, double micrometerResolution) {
+        this(new OctreeSlabSource(wholeImage, corner1, corner2, micrometerResolution));
+    }
+
+    OctreeSubvolumeExporter(SlabSource source) {
+        this.source = source;
+    }
+
+    public void setThreadCount(int threadCount) {
+        this.threadCount = threadCount;
+    }
+
+    public void setSlabDepth(int slabDepth) {
+        this.slabDepth = slabDepth;
+    }
+
+    /**
+     * Whether to continue an interrupted export of the same region, rather
+     * than start over; on by default.
+     */
+    public void setResume(boolean resume) {
+        this.resume = resume;
+    }
+
+    public int[] getSize() {
+        return source.getSize().clone();
+    }
+
+    /**
+     * @throws IllegalArgumentException if a slab would not fit in one buffer
+     */
+    int getSlabDepth() {
+        int[] size = source.getSize();
+        long sliceBytes = (long) size[0] * size[1] * source.getChannelCount() * source.getBytesPerIntensity();
+        int depth = slabDepth;
+        if (depth <= 0) {
+            depth = Math.max(1, source.getBlockDepth());
+            while (depth > 1 && depth * sliceBytes > MAX_SLAB_BYTES) {
+                depth /= 2;
+            }
+        }
+        long slabBytes = depth * sliceBytes;
+        if (slabBytes > MAX_BUFFER_BYTES) {
+            throw new IllegalArgumentException(String.format(
+                    "A slab of %d slices would take %d bytes, more than %d; export a smaller region%s",
+                    depth, slabBytes, MAX_BUFFER_BYTES, depth > 1 ? " or use a smaller slab depth" : ""));
+        }
+        return depth;
+    }
+
+    /**
+     * Writes the region to output, a file for BIGTIFF or a folder for ZARR.
+     *
+     * @return how many slabs were written, as opposed to found done already
+     */
+    public int export(Path output, Format format) throws IOException, InterruptedException {
+        int[] size = source.getSize();
+        int depth = getSlabDepth();
+        int slabCount = (size[2] + depth - 1) / depth;
+        String description = String.format("%s %s %dx%dx%d channels=%d bytes=%d slab=%d", format, source.describe(),
+                size[0], size[1], size[2], source.getChannelCount(), source.getBytesPerIntensity(), depth);
+        Path progressPath = output.resolveSibling(output.getFileName() + ".progress");
+        Set<Integer> done = resume ? readProgress(progressPath, description) : Collections.emptySet();
+        SlabWriter writer = null;
+        if (!done.isEmpty()) {
+            try {
+                writer = openWriter(output, format, depth, false);
+                log.info("Resuming export to {}: {} of {} slabs done", output, done.size(), slabCount);
+            } catch (IOException e) {
+                log.warn("Could not resume export to {}, starting over", output, e);
+                done = Collections.emptySet();
+            }
+        }
+        if (writer == null) {
+            writer = openWriter(output, format, depth, true);
+            Files.write(progressPath, Collections.singletonList(description), StandardCharsets.UTF_8);
+        }
+
+        int remaining = slabCount - done.size();
+        Set<Integer> skipped = done;
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount,
+                new ThreadFactoryBuilder().setNameFormat("SubvolumeExport-%d").setDaemon(true).build());
+        AtomicInteger written = new AtomicInteger();
+        long startTime = System.nanoTime();
+        try {
+            List<Future<?>> slabs = new ArrayList<>();
+            for (int slab = 0; slab < slabCount; slab++) {
+                if (skipped.contains(slab)) {
+                    continue;
+                }
+                int slabIndex = slab;
+                SlabWriter slabWriter = writer;
+                slabs.add(executor.submit(() -> {
+                    int z0 = slabIndex * depth;
+                    int slabSlices = Math.min(depth, size[2] - z0);
+                    ByteBuffer data = source.readSlab(z0, slabSlices);
+                    slabWriter.writeSlab(z0, slabSlices, data);
+                    slabWriter.sync();
+                    recordProgress(progressPath, slabIndex);
+                    int count = written.incrementAndGet();
+                    double seconds = (System.nanoTime() - startTime) / 1e9;
+                    log.info("Exported slab {} ({} of {} this run), {} MB/s", slabIndex, count,
+                            remaining, String.format("%.1f", count * (double) data.capacity() / 1e6 / seconds));
+                    return null;
+                }));
+            }
+            for (Future<?> slab : slabs) {
+                slab.get();
+            }
+        } catch (ExecutionException e) {
+            throw new IOException("Export to " + output + " failed; run again to resume", e.getCause());
+        } finally {
+            executor.shutdownNow();
+            writer.close();
+        }
+        Files.delete(progressPath);
+        return written.get();
+    }
+
+    private SlabWriter openWriter(Path output, Format format, int depth, boolean create) throws IOException {
+        int[] size = source.getSize();
+        switch (format) {
+            case BIGTIFF:
+                return new BigTiffSlabWriter(output, size, source.getChannelCount(), source.getBytesPerIntensity(), create);
+            case ZARR:
+                if (!create && !Files.isDirectory(output.resolve("0"))) {
+                    throw new IOException(output + " has no image to resume");
+                }
+                return new ZarrSlabWriter(output, size, source.getChannelCount(), source.getBytesPerIntensity(),
+                        depth, ZARR_CHUNK_WIDTH, source.getVoxelMicrometers());
+            default:
+                throw new IllegalArgumentException("Unknown format " + format);
+        }
+    }
+
+    // the slabs recorded as done by an export of the same region, if any
+    private static Set<Integer> readProgress(Path progressPath, String description) throws IOException {
+        Set<Integer> done = new HashSet<>();
+        if (Files.exists(progressPath)) {
+            List<String> lines = Files.readAllLines(progressPath, StandardCharsets.UTF_8);
+            if (!lines.isEmpty() && lines.get(0).equals(description)) {
+                for (String line : lines.subList(1, lines.size())) {
+                    // the last line may have been cut off
+                    if (line.matches("\\d+")) {
+                        done.add(Integer.parseInt(line));
+                    }
+                }
+            }
+        }
+        return done;
+    }
+
+    private static synchronized void recordProgress(Path progressPath, int slab) throws IOException {
+        Files.write(progressPath, Collections.singletonList(Integer.toString(slab)), StandardCharsets.UTF_8,
+                StandardOpenOption.APPEND);
+    }
+
+    private static class OctreeSlabSource implements SlabSource {
+        private final SharedVolumeImage wholeImage;
+        private final ZoomLevel zoomLevel;
+        private final ZoomedVoxelIndex origin;
+        private final int[] size;
+        private final TileFormat tileFormat;
+
+        OctreeSlabSource(SharedVolumeImage wholeImage, Vec3 corner1, Vec3 corner2, double micrometerResolution) {
+            // as in the Subvolume constructor taking micrometers
+            this.wholeImage = wholeImage;
+            this.tileFormat = wholeImage.getLoadAdapter().getTileFormat();
+            this.zoomLevel = new ZoomLevel(tileFormat.zoomLevelForCameraZoom(1.0 / micrometerResolution));
+            ZoomedVoxelIndex zvix1 = zoomedVoxelIndex(corner1);
+            ZoomedVoxelIndex zvix2 = zoomedVoxelIndex(corner2);
+            this.origin = new ZoomedVoxelIndex(zoomLevel,
+                    Math.min(zvix1.getX(), zvix2.getX()),
+                    Math.min(zvix1.getY(), zvix2.getY()),
+                    Math.min(zvix1.getZ(), zvix2.getZ()));
+            this.size = new int[] {
+                    Math.abs(zvix1.getX() - zvix2.getX()) + 1,
+                    Math.abs(zvix1.getY() - zvix2.getY()) + 1,
+                    Math.abs(zvix1.getZ() - zvix2.getZ()) + 1};
+        }
+
+        @Override
+        public String describe() {
+            return String.format("%s at %d,%d,%d zoom %d", wholeImage.getVolumeBaseURL(),
+                    origin.getX(), origin.getY(), origin.getZ(), zoomLevel.getLog2ZoomOutFactor());
+        }
+
+        private ZoomedVoxelIndex zoomedVoxelIndex(Vec3 corner) {
+            TileFormat.VoxelXyz vix = tileFormat.voxelXyzForMicrometerXyz(
+                    new TileFormat.MicrometerXyz(corner.getX(), corner.getY(), corner.getZ()));
+            return tileFormat.zoomedVoxelIndexForVoxelXyz(vix, zoomLevel, CoordinateAxis.Z);
+        }
+
+        @Override
+        public int[] getSize() {
+            return size;
+        }
+
+        @Override
+        public int getChannelCount() {
+            return tileFormat.getChannelCount();
+        }
+
+        @Override
+        public int getBytesPerIntensity() {
+            return tileFormat.getBitDepth() / 8;
+        }
+
+        @Override
+        public double[] getVoxelMicrometers() {
+            double[] voxelMicrometers = tileFormat.getVoxelMicrometers().clone();
+            for (int i = 0; i < 3; i++) {
+                voxelMicrometers[i] *= zoomLevel.getZoomOutFactor();
+            }
+            return voxelMicrometers;
+        }
+
+        @Override
+        public int getBlockDepth() {
+            return tileFormat.getTileSize()[2];
+        }
+
+        @Override
+        public ByteBuffer readSlab(int z0, int depth) throws IOException {
+            // Subvolume leaves the slices, rows and columns at its far
+            // corner empty, so ask for one more of each and leave them out
+            Subvolume subvolume = new Subvolume(
+                    new ZoomedVoxelIndex(zoomLevel, origin.getX(), origin.getY(), origin.getZ() + z0),
+                    new ZoomedVoxelIndex(zoomLevel, origin.getX() + size[0], origin.getY() + size[1],
+                            origin.getZ() + z0 + depth),
+                    wholeImage);
+            int pixelBytes = subvolume.getChannelCount() * subvolume.getBytesPerIntensity();
+            int rowBytes = size[0] * pixelBytes;
+            long slabBytes = (long) rowBytes * size[1] * depth;
+            if (slabBytes > MAX_BUFFER_BYTES) {
+                throw new IllegalArgumentException("A slab of " + depth + " slices would take " + slabBytes + " bytes");
+            }
+            if (subvolume.hasLoadFailures()) {
+                throw new IOException("Could not load every tile of slices " + z0 + " to " + (z0 + depth - 1));
+            }
+            int extentX = subvolume.getExtent().getX();
+            int extentY = subvolume.getExtent().getY();
+            ByteBuffer source = subvolume.getByteBuffer().duplicate().order(subvolume.getByteBuffer().order());
+            ByteBuffer slab = ByteBuffer.allocate((int) slabBytes).order(ByteOrder.LITTLE_ENDIAN);
+            // shorts go through views, to put them in little endian order
+            ShortBuffer slabShorts = slab.asShortBuffer();
+            for (int z = 0; z < depth; z++) {
+                for (int y = 0; y < size[1]; y++) {
+                    int start = (int) ((long) pixelBytes * extentX * (y + (long) extentY * z));
+                    source.limit(start + rowBytes).position(start);
+                    if (subvolume.getBytesPerIntensity() == 2) {
+                        slabShorts.put(source.asShortBuffer());
+                    } else {
+                        slab.put(source);
+                    }
+                }
+            }
+            slab.clear();
+            return slab;
+        }
+    }
+}
@@ -1,58 +1,83 @@
 package org.janelia.workstation.controller.tileimagery;
 
-import org.janelia.workstation.controller.tileimagery.TileIndex;
-import org.janelia.workstation.controller.tileimagery.TileTexture;
-
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Set;
 
-public class PersistentCache 
+/**
+ * Lowest resolution textures, which are only evicted when the rest of the
+ * TextureCache is already empty and the memory budget is still exceeded.
+ */
+public class PersistentCache
 {
 	private Set<Integer> obsoleteGlTextures = new HashSet<Integer>();
-	private Map<TileIndex, TileTexture> map = new HashMap<TileIndex, TileTexture>();
-	
-	public void clear() {
+	private Map<TileIndex, TileTexture> map = new LinkedHashMap<TileIndex, TileTexture>(256, 0.75f, true);
+	private long byteSize = 0;
+
+	public synchronized void clear() {
 		for (TileTexture tile : map.values()) {
-			if (tile == null)
-				continue;
-			PyramidTexture texture1 = tile.getTexture();
-			if (texture1 == null)
-				continue;
-			int id = texture1.getTextureId();
-			if (id < 1)
-				continue;
-			obsoleteGlTextures.add(id); // remember OpenGl texture IDs for later deletion.			
+			markObsolete(tile);
 		}
 		map.clear();
+		byteSize = 0;
 	}
-	
-	public boolean containsKey(TileIndex index) {
+
+	public synchronized boolean containsKey(TileIndex index) {
 		return map.containsKey(index);
 	}
-	
-	public TileTexture get(TileIndex index) {
+
+	public synchronized TileTexture get(TileIndex index) {
 		return map.get(index);
 	}
-	
-	public Collection<? extends Integer> popObsoleteGlTextures() {
+
+	public synchronized Collection<? extends Integer> popObsoleteGlTextures() {
 		Set<Integer> result = obsoleteGlTextures;
 		obsoleteGlTextures = new HashSet<Integer>();
 		return result;
 	}
-	
-	public TileTexture put(TileIndex index, TileTexture tile) {
-		return map.put(index, tile);
+
+	public synchronized TileTexture put(TileIndex index, TileTexture tile) {
+		TileTexture previous = map.put(index, tile);
+		if (previous != null)
+			byteSize -= TextureCache.byteSizeOf(previous);
+		byteSize += TextureCache.byteSizeOf(tile);
+		return previous;
+	}
+
+	public synchronized TileTexture removeEldest() {
+		if (map.isEmpty())
+			return null;
+		TileIndex eldest = map.keySet().iterator().next();
+		TileTexture tile = map.remove(eldest);
+		byteSize -= TextureCache.byteSizeOf(tile);
+		markObsolete(tile);
+		return tile;
 	}
-	
-	public int size() {
+
+	public synchronized int size() {
 		return map.size();
 	}
-	
-	public Collection<TileTexture> values() {
-		return map.values();
+
+	public synchronized long getByteSize() {
+		return byteSize;
+	}
+
+	public synchronized Collection<TileTexture> values() {
+		return new ArrayList<>(map.values());
+	}
+
+	private void markObsolete(TileTexture tile) {
+		if (tile == null)
+			return;
+		PyramidTexture texture1 = tile.getTexture();
+		if (texture1 == null)
+			return;
+		int id = texture1.getTextureId();
+		if (id > 0)
+			obsoleteGlTextures.add(id); // remember OpenGl texture IDs for later deletion.
 	}
 
 }
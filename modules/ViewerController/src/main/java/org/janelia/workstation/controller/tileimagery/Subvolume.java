@@ -9,12 +9,18 @@ import java.awt.image.DataBuffer;
 import java.awt.image.DataBufferUShort;
 import java.awt.image.Raster;
 import java.awt.image.WritableRaster;
+import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.ShortBuffer;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
@@ -22,6 +28,7 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 
+import com.google.common.cache.Cache;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 import org.janelia.workstation.integration.util.FrameworkAccess;
@@ -38,6 +45,8 @@ import org.slf4j.LoggerFactory;
 public class Subvolume {
 
     private static final int N_THREADS = 20;
+    // most slices read by one fetch task
+    private static final int SLICES_PER_FETCH = 16;
     private static final String PROGRESS_REPORT_FORMAT = "%d of %d to go...";
 
     private IndeterminateNoteProgressMonitor progressMonitor;
@@ -51,6 +60,10 @@ public class Subvolume {
     private int channelCount = 1;
     private int totalTiles = 0;
     private int remainingTiles = 0;
+    // cleared when any tile could not be fetched, leaving zeroes in the raster
+    private volatile boolean complete = true;
+    // set when a tile read failed, as opposed to the tile not existing
+    private volatile boolean loadFailed = false;
 
     private static final Logger logger = LoggerFactory.getLogger(Subvolume.class);
 
@@ -290,6 +303,23 @@ public class Subvolume {
         return extent;
     }
 
+    /**
+     * @return false if any tile was missing or failed to load, so part of the raster is
+     * zero-filled rather than image data
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+
+    /**
+     * @return true if reading any tile failed, or the load was cut short, so that
+     * loading the same region again could fill in more of it; tiles that don't
+     * exist, eg, past the edge of the volume, don't count
+     */
+    public boolean hasLoadFailures() {
+        return loadFailed;
+    }
+
     public int getIntensityGlobal(VoxelPosition p, int channelIndex) {
         return getIntensityGlobal(p.getX(), p.getY(), p.getZ(), channelIndex);
     }
@@ -373,12 +403,12 @@ public class Subvolume {
         totalTiles = neededTiles.size();
         remainingTiles = neededTiles.size();
         reportProgress(totalTiles, totalTiles);
-        for (final TileIndex tileIx : neededTiles) {
+        for (final List<TileIndex> sliceRun : groupIntoSliceRuns(neededTiles, tileFormat.getTileSize()[2])) {
             Callable<Boolean> fetchTask = new Callable<Boolean>() {
                 @Override
                 public Boolean call() throws Exception {
-                    return fetchTileData(
-                            textureCache, tileIx, loadAdapter, tileFormat, zoom, farCorner
+                    return fetchSliceRun(
+                            textureCache, sliceRun, loadAdapter, tileFormat, zoom, farCorner
                     );
                 }
             };
@@ -402,12 +432,16 @@ public class Subvolume {
                     );
                     FrameworkAccess.handleException(rte);
                     failureOnResult = true;
+                    loadFailed = true;
                 }
                 if (failureOnResult) {
                     logger.info("Request for {}..{} had tile gaps.", origin, extent);
+                    complete = false;
                 }
             }
         } catch (InterruptedException ex) {
+            complete = false;
+            loadFailed = true;
             if (progressMonitor != null) {
                 progressMonitor.close();
             }
@@ -420,110 +454,186 @@ public class Subvolume {
 
     }
 
-    private boolean fetchTileData(TextureCache textureCache, TileIndex tileIx, AbstractTextureLoadAdapter loadAdapter, TileFormat tileFormat, ZoomLevel zoom, ZoomedVoxelIndex farCorner) {
+    /**
+     * Splits the tiles into runs of consecutive slices through one octree
+     * block, so that each fetch reads neighboring pages of the same stack,
+     * in order; runs are kept short enough to spread a deep request over the
+     * fetch threads.
+     *
+     * @param tileDepth how many slices deep the octree's blocks are
+     */
+    static List<List<TileIndex>> groupIntoSliceRuns(Collection<TileIndex> neededTiles, int tileDepth) {
+        Map<List<Integer>, List<TileIndex>> blocks = new LinkedHashMap<>();
+        for (TileIndex tileIx : neededTiles) {
+            int blockDepth = Math.max(1, tileDepth) * tileIx.getDeltaSlice();
+            List<Integer> blockKey = Arrays.asList(tileIx.getX(), tileIx.getY(), tileIx.getZoom(),
+                    Math.floorDiv(tileIx.getCanonicalSlice(), blockDepth));
+            blocks.computeIfAbsent(blockKey, k -> new ArrayList<>()).add(tileIx);
+        }
+        List<List<TileIndex>> sliceRuns = new ArrayList<>();
+        for (List<TileIndex> blockSlices : blocks.values()) {
+            blockSlices.sort(Comparator.comparingInt(TileIndex::getCanonicalSlice));
+            List<TileIndex> sliceRun = new ArrayList<>();
+            for (TileIndex tileIx : blockSlices) {
+                if (!sliceRun.isEmpty() && (sliceRun.size() >= SLICES_PER_FETCH
+                        || !isNextSlice(sliceRun.get(sliceRun.size() - 1), tileIx))) {
+                    sliceRuns.add(sliceRun);
+                    sliceRun = new ArrayList<>();
+                }
+                sliceRun.add(tileIx);
+            }
+            sliceRuns.add(sliceRun);
+        }
+        return sliceRuns;
+    }
+
+    private static boolean isNextSlice(TileIndex tileIx, TileIndex nextIx) {
+        return nextIx.getCanonicalSlice() == tileIx.getCanonicalSlice() + tileIx.getDeltaSlice();
+    }
+
+    /**
+     * Fills in one run of slices: from the texture cache or the slice cache
+     * where they are there, loading the rest a contiguous range at a time.
+     */
+    private boolean fetchSliceRun(TextureCache textureCache, List<TileIndex> sliceRun, AbstractTextureLoadAdapter loadAdapter, TileFormat tileFormat, ZoomLevel zoom, ZoomedVoxelIndex farCorner) {
         boolean filledToEnd = true;
-        try {
+        Cache<TileIndex, TextureData2d> sliceCache = SubvolumeSliceCache.forAdapter(loadAdapter);
+        TextureData2d[] sliceData = new TextureData2d[sliceRun.size()];
+        boolean[] toLoad = new boolean[sliceRun.size()];
+        for (int i = 0; i < sliceRun.size(); i++) {
+            TileIndex tileIx = sliceRun.get(i);
             if (tileIx.getX() < 0 || tileIx.getY() < 0 || tileIx.getZ() < 0) {
                 remainingTiles--;
-                return false;
+                filledToEnd = false;
+                continue;
             }
-            TextureData2dGL tileData = null;
             // First try to get image from cache...
             if ((textureCache != null) && (textureCache.containsKey(tileIx))) {
                 TileTexture tt = textureCache.get(tileIx);
-                tileData = tt.getTextureData();
+                sliceData[i] = tt.getTextureData();
             }
-            // ... if that fails, load the data right now.
-            if (tileData == null) {
-                tileData = new TextureData2dGL(loadAdapter.loadToRam(tileIx));
+            if (sliceData[i] == null) {
+                sliceData[i] = sliceCache.getIfPresent(tileIx);
             }
-            if (tileData == null) {
-                logger.info("Found no tile data for " + tileIx);
-                filledToEnd = false;
-            } else if (origin.getZ() >= 0) {
-                // If the origin were negative, it would mean there was a
-                // z-drill-in beyond the meaningful boundaries of the nascent
-                //  volume, and no data would be available to be added.
-                TileFormat.TileXyz tileXyz = new TileFormat.TileXyz(
-                        tileIx.getX(), tileIx.getY(), tileIx.getZ());
-                ZoomedVoxelIndex tileOrigin = tileFormat.zoomedVoxelIndexForTileXyz(
-                        tileXyz, zoom, tileIx.getSliceAxis());
-                // One Z-tile goes to one destination Z coordinate in this subvolume.
-                int dstZ = tileOrigin.getZ() - origin.getZ(); // local Z coordinate
-                // Y
-                int startY = Math.max(origin.getY(), tileOrigin.getY());
-                int endY = Math.min(farCorner.getY(), tileOrigin.getY() + tileData.getHeight());
-                int overlapY = endY - startY;
-                //System.out.println("TileXyz=" + tileXyz.getX() + "," + tileXyz.getY() + "," + tileXyz.getZ() + ". Start Y=" + startY + ", End Y=" + endY + ", overlapY=" + overlapY);
-                // X
-                int startX = Math.max(origin.getX(), tileOrigin.getX());
-                int endX = Math.min(farCorner.getX(), tileOrigin.getX() + tileData.getUsedWidth());
-                int overlapX = endX - startX;
-                // byte array offsets
-                int pixelBytes = channelCount * bytesPerIntensity;
-                int tileLineBytes = pixelBytes * tileData.getWidth();
-                int subvolumeLineBytes = pixelBytes * extent.getX();
-                // Where to start putting bytes into subvolume?
-                // Probable source of bug: may not be getting proper start location in "subsequent" volume, and/or wrong overlap values.
-                int dstOffset = dstZ * subvolumeLineBytes * extent.getY() // z plane offset
-                        + (startY - origin.getY()) * subvolumeLineBytes // y scan-line offset
-                        + (startX - origin.getX()) * pixelBytes;
-                int srcOffset = (startY - tileOrigin.getY()) * tileLineBytes // y scan-line offset
-                        + (startX - tileOrigin.getX()) * pixelBytes;
-                // Copy one scan line at a time
-                OVERFLOW_LABEL:
-                for (int y = 0; y < overlapY; ++y) {
-                    for (int x = 0; x < overlapX; ++x) {
-                        // TODO faster copy
-                        for (int b = 0; b < pixelBytes; ++b) {
-                            int d = dstOffset + x * pixelBytes + b;
-                            int s = srcOffset + x * pixelBytes + b;
-                            try {
-                                bytes.put(d, tileData.getPixels().get(s));
-                            } catch (Exception ex) {
-                                logger.error("Failed to copy data into pixels buffer: " + ex.getMessage() + ".  Skipping remainder.");
-                                /* for debugging */
-                                if (logger.isDebugEnabled() && d >= bytes.capacity()) {
-                                    logger.info("overflow destination: {} vs {}.", d, bytes.capacity());
-                                    logger.info("dstOffset={}; dstZ={}; extent-Y={}; subvolumeLineBytes={}", dstOffset, dstZ, extent.getY(), subvolumeLineBytes);
-                                    logger.info("dstZ=tileOrigin.getZ() - origin.getZ(); tileOrigin.getZ()={}; origin.getZ()={}.", tileOrigin.getZ(), origin.getZ());
-                                    logger.info("startX={}. endX={}. startY={}. endY={}", startX, endX, startY, endY);
-                                    logger.info("Destination X={}, Y={}, dstZ={}. srcOffset={}.", x, y, dstZ, srcOffset);
-                                    logger.info("overlapX={}, overlapY={}.   tileLineBytes={}.", overlapX, overlapY, tileLineBytes);
-                                }
-                                if (s >= tileData.getPixels().capacity()) {
-                                    logger.info("overflow source: {} vs {}.", s, bytes.capacity());
-                                }
-                                if (s < 0) {
-                                    logger.info("Underflow source: {} vs {}.", s, bytes.capacity());
-                                }
-                                if (d < 0) {
-                                    logger.info("underflow destination: {} vs {}.", d, bytes.capacity());
-                                }
-                                break OVERFLOW_LABEL;
-                            }
-                        }
+            toLoad[i] = sliceData[i] == null;
+        }
+        // ... if that fails, load the data right now.
+        for (int first = 0; first < sliceRun.size(); first++) {
+            if (!toLoad[first]) {
+                continue;
+            }
+            int count = 1;
+            while (first + count < sliceRun.size() && toLoad[first + count]) {
+                count++;
+            }
+            try {
+                List<TextureData2d> loaded = loadAdapter.loadSlicesToRam(sliceRun.get(first), count);
+                for (int i = 0; i < count; i++) {
+                    sliceData[first + i] = loaded.get(i);
+                    if (loaded.get(i) != null) {
+                        sliceCache.put(sliceRun.get(first + i), loaded.get(i));
                     }
-                    dstOffset += subvolumeLineBytes;
-                    srcOffset += tileLineBytes;
                 }
+            } catch (AbstractTextureLoadAdapter.TileLoadError e) {
+                logger.error("Request for {}..{} failed with error {}.", origin, extent, e.getMessage());
+                FrameworkAccess.handleException(e);
+                loadFailed = true;
+            } catch (AbstractTextureLoadAdapter.MissingTileException e) {
+                logger.error("Request for {}..{} failed with error {}.", origin, extent, e.getMessage());
+                FrameworkAccess.handleException(e);
+            }
+            first += count - 1;
+        }
+        for (int i = 0; i < sliceRun.size(); i++) {
+            TileIndex tileIx = sliceRun.get(i);
+            if (tileIx.getX() < 0 || tileIx.getY() < 0 || tileIx.getZ() < 0) {
+                continue;
+            }
+            if (sliceData[i] == null) {
+                logger.info("Found no tile data for " + tileIx);
+                filledToEnd = false;
+            } else {
+                copyTileData(tileIx, sliceData[i], tileFormat, zoom, farCorner);
+            }
+        }
+        return filledToEnd;
+    }
 
-                // There is a slim chance this could be decremented to sub-zero,
-                // since there are multiple threads using this method.  However,
-                // we will avoid incurring the overhead of AtomicInteger by simple
-                // accepting that risk (off-by-a-few is not terrible, here), and
-                // simply ensuring the user never sees a negative remainder.
-                remainingTiles--;
-                int remaining = Math.max(0, remainingTiles);
-                reportProgress(remaining, totalTiles);
+    private void copyTileData(TileIndex tileIx, TextureData2d tileData, TileFormat tileFormat, ZoomLevel zoom, ZoomedVoxelIndex farCorner) {
+        if (origin.getZ() >= 0) {
+            // If the origin were negative, it would mean there was a
+            // z-drill-in beyond the meaningful boundaries of the nascent
+            //  volume, and no data would be available to be added.
+            TileFormat.TileXyz tileXyz = new TileFormat.TileXyz(
+                    tileIx.getX(), tileIx.getY(), tileIx.getZ());
+            ZoomedVoxelIndex tileOrigin = tileFormat.zoomedVoxelIndexForTileXyz(
+                    tileXyz, zoom, tileIx.getSliceAxis());
+            // One Z-tile goes to one destination Z coordinate in this subvolume.
+            int dstZ = tileOrigin.getZ() - origin.getZ(); // local Z coordinate
+            // Y
+            int startY = Math.max(origin.getY(), tileOrigin.getY());
+            int endY = Math.min(farCorner.getY(), tileOrigin.getY() + tileData.getHeight());
+            int overlapY = endY - startY;
+            // X
+            int startX = Math.max(origin.getX(), tileOrigin.getX());
+            int endX = Math.min(farCorner.getX(), tileOrigin.getX() + tileData.getUsedWidth());
+            int overlapX = endX - startX;
+            // byte array offsets
+            int pixelBytes = channelCount * bytesPerIntensity;
+            int tileLineBytes = pixelBytes * tileData.getWidth();
+            int subvolumeLineBytes = pixelBytes * extent.getX();
+            int overlapLineBytes = pixelBytes * overlapX;
+            // Where to start putting bytes into subvolume?
+            int dstOffset = dstZ * subvolumeLineBytes * extent.getY() // z plane offset
+                    + (startY - origin.getY()) * subvolumeLineBytes // y scan-line offset
+                    + (startX - origin.getX()) * pixelBytes;
+            int srcOffset = (startY - tileOrigin.getY()) * tileLineBytes // y scan-line offset
+                    + (startX - tileOrigin.getX()) * pixelBytes;
+            // Copy one scan line at a time
+            try {
+                if (overlapX > 0) {
+                    copyRows(tileData.getPixels(), srcOffset, tileLineBytes,
+                            bytes, dstOffset, subvolumeLineBytes, overlapLineBytes, overlapY);
+                }
+            } catch (IllegalArgumentException | BufferOverflowException ex) {
+                logger.error("Failed to copy data into pixels buffer: " + ex + ".  Skipping remainder.");
+                complete = false;
+                loadFailed = true;
+                if (logger.isDebugEnabled()) {
+                    logger.debug("srcOffset={} of {}; dstOffset={} of {}; line bytes={}; dstZ={}.",
+                            srcOffset, tileData.getPixels().capacity(), dstOffset, bytes.capacity(), overlapLineBytes, dstZ);
+                    logger.debug("startX={}. endX={}. startY={}. endY={}. tileLineBytes={}.",
+                            startX, endX, startY, endY, tileLineBytes);
+                }
             }
 
-        } catch (AbstractTextureLoadAdapter.TileLoadError | AbstractTextureLoadAdapter.MissingTileException e) {
-            // TODO Auto-generated catch block
-            logger.error("Request for {}..{} failed with error {}.", origin, extent, e.getMessage());
-            FrameworkAccess.handleException(e);
+            // There is a slim chance this could be decremented to sub-zero,
+            // since there are multiple threads using this method.  However,
+            // we will avoid incurring the overhead of AtomicInteger by simple
+            // accepting that risk (off-by-a-few is not terrible, here), and
+            // simply ensuring the user never sees a negative remainder.
+            remainingTiles--;
+            int remaining = Math.max(0, remainingTiles);
+            reportProgress(remaining, totalTiles);
+        }
+    }
+
+    /**
+     * Copies rowCount rows of rowBytes each between buffers with different
+     * row strides, leaving the buffers' own positions and limits alone.
+     */
+    static void copyRows(ByteBuffer source, int sourceOffset, int sourceStride,
+            ByteBuffer destination, int destinationOffset, int destinationStride, int rowBytes, int rowCount) {
+        ByteBuffer src = source.duplicate();
+        ByteBuffer dst = destination.duplicate();
+        dst.clear();
+        for (int row = 0; row < rowCount; ++row) {
+            src.limit(sourceOffset + rowBytes).position(sourceOffset);
+            dst.position(destinationOffset);
+            dst.put(src);
+            sourceOffset += sourceStride;
+            destinationOffset += destinationStride;
         }
-        return filledToEnd;
     }
 
     private void allocateRasterMemory(final TileFormat tileFormat) {
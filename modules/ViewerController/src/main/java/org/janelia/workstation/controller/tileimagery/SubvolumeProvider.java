@@ -62,6 +62,14 @@ public class SubvolumeProvider {
         return new Subvolume(center, volumeImage, micrometerVoxels, zoomLevel, extent, tileServer.getTextureCache(), monitor);
     }
 
+    /**
+     * the adapter the data is currently loaded through; it changes when
+     * another sample is opened
+     */
+    public AbstractTextureLoadAdapter getLoadAdapter() {
+        return volumeImage.getLoadAdapter();
+    }
+
     public Subvolume getSubvolume(ZoomedVoxelIndex zv1, ZoomedVoxelIndex zv2) {
         return new Subvolume(zv1, zv2, volumeImage, tileServer.getTextureCache(), null);
     }
@@ -0,0 +1,34 @@
+package org.janelia.workstation.controller.tileimagery;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import org.janelia.workstation.core.util.ConsoleProperties;
+
+/**
+ * Decoded slices kept for later Subvolume requests that overlap earlier
+ * ones, such as tracing neighboring path segments; bounded by bytes, least
+ * recently used first out.  Holds one volume at a time: asking for another
+ * load adapter's slices drops the previous one's.
+ */
+class SubvolumeSliceCache {
+
+    private static final long MAX_BYTES = ConsoleProperties.getInt("console.lvv.subvolumeCacheMB", 512) * 1024L * 1024L;
+
+    private static final Cache<TileIndex, TextureData2d> slices = CacheBuilder.newBuilder()
+            .maximumWeight(MAX_BYTES)
+            .weigher((TileIndex tileIndex, TextureData2d slice) -> slice.getPixels().capacity())
+            .build();
+    private static AbstractTextureLoadAdapter cachedAdapter;
+
+    static synchronized Cache<TileIndex, TextureData2d> forAdapter(AbstractTextureLoadAdapter loadAdapter) {
+        if (loadAdapter != cachedAdapter) {
+            slices.invalidateAll();
+            cachedAdapter = loadAdapter;
+        }
+        return slices;
+    }
+
+    private SubvolumeSliceCache() {
+    }
+}
@@ -18,6 +18,14 @@ implements PyramidTexture
 		this.width = width;
 		this.height = height;
 	}
+
+	/**
+	 * Wraps an existing OpenGL texture object, such as one recycled by the TextureUploader.
+	 */
+	public Texture2dGL(int width, int height, int textureId) {
+		this(width, height);
+		this.textureId = textureId;
+	}
 	
 	@Override
 	public void enable(GL2GL3 gl) {
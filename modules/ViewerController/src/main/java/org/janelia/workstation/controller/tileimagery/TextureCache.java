@@ -1,30 +1,78 @@
 package org.janelia.workstation.controller.tileimagery;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 import org.janelia.workstation.controller.listener.StatusUpdateListener;
+import org.janelia.workstation.core.util.ConsoleProperties;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /*
  * Wrap texture cache so indices can be interpolated for either quadtrees
  * or octrees.
+ *
+ * All tiers share a single memory budget in bytes. When the budget is exceeded,
+ * textures are evicted in priority order: least recently used prefetched textures
+ * first, then least recently displayed textures, and lowest resolution textures
+ * only as a last resort. Pixel data of cached textures lives off-heap.
  */
 public class TextureCache {
 
     private static final Logger LOG = LoggerFactory.getLogger(TextureCache.class);
 
-    private HistoryCache historyCache = new HistoryCache(2000); // textures that have been displayed, ordered by LRU
-    private HistoryCache futureCache = new HistoryCache(3000); // textures we predict will be displayed
+    private static final long MAX_BYTES = ConsoleProperties.getLong("console.lvv.textureCacheMB", 1536) * 1024 * 1024;
+    // Fraction of the budget that prefetched, but not yet displayed, textures may occupy
+    private static final double FUTURE_FRACTION = 0.6;
+    // Nominal cost of an entry with no pixel data, such as a MISSING tile
+    private static final long ENTRY_OVERHEAD_BYTES = 256;
+    // Used to estimate capacity before any texture has been loaded
+    private static final int DEFAULT_FUTURE_CAPACITY = 3000;
+
+    private HistoryCache historyCache = new HistoryCache(); // textures that have been displayed, ordered by LRU
+    private HistoryCache futureCache = new HistoryCache(); // textures we predict will be displayed
     private PersistentCache persistentCache = new PersistentCache(); // lowest resolution textures for everything
+    private final TextureMemoryPool memoryPool = new TextureMemoryPool();
+    private TextureUploader textureUploader = new TextureUploader();
+    // Evicted textures whose memory is recycled on the next popObsoleteTextureIds(), from the GL thread
+    private List<TileTexture> evictedTextures = new ArrayList<>();
     private Map<TileIndex, Long> queuedTextureTime = new HashMap<>();
     private StatusUpdateListener queueDrainedListener;
 
+    private final long maxBytes;
+    private long hitCount = 0;
+    private long missCount = 0;
+    private long evictionCount = 0;
+    private long addedBytes = 0;
+    private long addedCount = 0;
+
+    public TextureCache() {
+        this(MAX_BYTES);
+    }
+
+    public TextureCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    static long byteSizeOf(TileTexture texture) {
+        if (texture == null) {
+            return 0;
+        }
+        return ENTRY_OVERHEAD_BYTES + texture.getPixelByteCount();
+    }
+
     public synchronized void add(TileTexture texture) {
+        texture.moveToOffHeap(memoryPool);
+        texture.setUploader(textureUploader);
+        long byteSize = byteSizeOf(texture);
+        addedBytes += byteSize;
+        addedCount += 1;
+        evictToFit(byteSize);
         TileIndex index = texture.getIndex();
         if (index.getZoom() == index.getMaxZoom()) {
             persistentCache.put(texture.getIndex(), texture);
@@ -33,7 +81,29 @@ public class TextureCache {
         }
     }
 
+    private void evictToFit(long incomingBytes) {
+        long target = maxBytes - incomingBytes;
+        while (getByteSize() > target) {
+            TileTexture evicted = futureCache.removeEldest();
+            if (evicted == null) {
+                evicted = historyCache.removeEldest();
+            }
+            if (evicted == null) {
+                evicted = persistentCache.removeEldest();
+            }
+            if (evicted == null) {
+                return;
+            }
+            evictionCount += 1;
+            evictedTextures.add(evicted);
+            LOG.trace("Evicted {} from texture cache", evicted.getIndex());
+        }
+    }
+
     synchronized public void clear() {
+        evictedTextures.addAll(futureCache.values());
+        evictedTextures.addAll(historyCache.values());
+        evictedTextures.addAll(persistentCache.values());
         futureCache.clear();
         historyCache.clear();
         persistentCache.clear();
@@ -47,13 +117,20 @@ public class TextureCache {
     }
 
     synchronized TileTexture get(TileIndex index) {
+        TileTexture result;
         if (persistentCache.containsKey(index)) {
-            return persistentCache.get(index);
+            result = persistentCache.get(index);
         } else if (historyCache.containsKey(index)) {
-            return historyCache.get(index);
+            result = historyCache.get(index);
         } else {
-            return futureCache.get(index);
+            result = futureCache.get(index);
         }
+        if (result != null) {
+            hitCount += 1;
+        } else {
+            missCount += 1;
+        }
+        return result;
     }
 
     // Keep track of recently queued textures, to avoid redundant loads
@@ -121,6 +198,48 @@ public class TextureCache {
         return futureCache.size() + historyCache.size() + persistentCache.size();
     }
 
+    /**
+     * @return bytes currently charged against the memory budget, across all tiers
+     */
+    public synchronized long getByteSize() {
+        return futureCache.getByteSize() + historyCache.getByteSize() + persistentCache.getByteSize();
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * @return estimated number of prefetched textures that fit in the budget,
+     * based on the average size of the textures loaded so far.
+     */
+    public synchronized int getFutureCapacity() {
+        if (addedCount == 0) {
+            return DEFAULT_FUTURE_CAPACITY;
+        }
+        long averageBytes = Math.max(1, addedBytes / addedCount);
+        return (int) Math.min(Integer.MAX_VALUE, (long) (FUTURE_FRACTION * maxBytes) / averageBytes);
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * @return bytes reserved off-heap for texture pixels, including recycled chunks
+     */
+    public long getReservedBytes() {
+        return memoryPool.getReservedBytes();
+    }
+
     public synchronized Collection<TileTexture> values() {
         Set<TileTexture> result = new HashSet<>();
         result.addAll(historyCache.values());
@@ -142,10 +261,23 @@ public class TextureCache {
         return historyCache;
     }
 
+    /**
+     * Should be called with a current OpenGL context, once per frame. Evicted textures
+     * are not displayed after this point, so their pixel memory is recycled here too.
+     */
     public int[] popObsoleteTextureIds() {
-        Set<Integer> ids = historyCache.popObsoleteGlTextures();
-        ids.addAll(persistentCache.popObsoleteGlTextures());
-        ids.addAll(futureCache.popObsoleteGlTextures());
+        List<TileTexture> released;
+        Set<Integer> ids;
+        synchronized (this) {
+            released = evictedTextures;
+            evictedTextures = new ArrayList<>();
+            ids = historyCache.popObsoleteGlTextures();
+            ids.addAll(persistentCache.popObsoleteGlTextures());
+            ids.addAll(futureCache.popObsoleteGlTextures());
+        }
+        for (TileTexture texture : released) {
+            memoryPool.release(texture.releaseOffHeapMemory());
+        }
         int result[] = new int[ids.size()];
         int i = 0;
         for (int val : ids) {
@@ -155,6 +287,17 @@ public class TextureCache {
         return result;
     }
 
+    public TextureUploader getTextureUploader() {
+        return textureUploader;
+    }
+
+    /**
+     * Share an uploader with a replacement cache, so that its pooled OpenGL objects stay in use.
+     */
+    public void setTextureUploader(TextureUploader textureUploader) {
+        this.textureUploader = textureUploader;
+    }
+
     /**
      * @param queueDrainedListener the queueDrainedListener to set
      */
@@ -1,7 +1,12 @@
 package org.janelia.workstation.controller.tileimagery;
 
 
+import java.awt.image.BufferedImage;
 import java.awt.image.ColorModel;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferShort;
+import java.awt.image.DataBufferUShort;
 import java.awt.image.IndexColorModel;
 import java.awt.image.Raster;
 import java.awt.image.RenderedImage;
@@ -28,6 +33,9 @@ public class TextureData2d {
     protected int channelCount = 3;
     protected float textureCoordX = 1.0f;
 
+    /**
+     * Decode an image into texture pixels, padding each scan line to a multiple of 8 pixels.
+     */
     public void loadRenderedImage(RenderedImage image) {
         ColorModel colorModel = image.getColorModel();
         // If input image uses indexed color table, convert to RGB first.
@@ -56,54 +64,95 @@ public class TextureData2d {
         int rowByteCount = pixelByteCount * this.width;
         int imageByteCount = this.height * rowByteCount;
         // Allocate image store buffer, exactly as it will be passed to openGL
-        // TODO - Consider sharing a buffer among multiple textures to save allocation time.
-        // (there would need to be a separate one for each thread)
-        byte byteArray[] = new byte[imageByteCount];
-        ByteBuffer byteBuffer = ByteBuffer.wrap(byteArray);
+        ByteBuffer byteBuffer = ByteBuffer.wrap(new byte[imageByteCount]);
         byteBuffer.order(ByteOrder.nativeOrder());
-        ShortBuffer shortBuffer = byteBuffer.asShortBuffer(); // for 16-bit case
-        //
-        Raster raster = image.getData();
-        int pixelData[] = new int[this.channelCount];
-        int padData[] = new int[this.channelCount]; // color for edge padding
-        final boolean is16Bit = (this.bitDepth == 16);
-        if (is16Bit) {
-            for (int y = 0; y < this.height; ++y) {
-                // Choose ragged right edge pad color from right
-                // edge of used portion of scan line.
-                raster.getPixel(this.usedWidth-1, y, padData);
-                for (int x = 0; x < this.width; ++x) {
-                    if (x < this.usedWidth) { // used portion of scan line
-                        raster.getPixel(x, y, pixelData);
-                        for (int i : pixelData) {
-                            shortBuffer.put((short)i);
-                        }
-                    } else { // (not zero) pad right edge
-                        for (int i : padData) {
-                            shortBuffer.put((short)i);
-                        }
-                    }
-                }
+        // BufferedImage.getData() would copy the whole raster
+        Raster raster = (image instanceof BufferedImage)
+                ? ((BufferedImage) image).getRaster()
+                : image.getData();
+        if (this.bitDepth == 16) {
+            copyRows16(raster, byteBuffer.asShortBuffer());
+        } else {
+            copyRows8(raster, byteBuffer);
+        }
+        byteBuffer.rewind();
+        pixels = byteBuffer;
+    }
+
+    /**
+     * @return offset of the first sample of each pixel in the backing array, or -1 if
+     * samples are not stored as interleaved pixels in channel order.
+     */
+    private int interleavedRowOffset(Raster raster, int y) {
+        if (!(raster.getSampleModel() instanceof ComponentSampleModel))
+            return -1;
+        ComponentSampleModel sampleModel = (ComponentSampleModel) raster.getSampleModel();
+        if (raster.getDataBuffer().getNumBanks() != 1)
+            return -1;
+        if (sampleModel.getPixelStride() != channelCount)
+            return -1;
+        int[] bandOffsets = sampleModel.getBandOffsets();
+        for (int b = 0; b < bandOffsets.length; ++b) {
+            if (bandOffsets[b] != b)
+                return -1;
+        }
+        int smX = raster.getMinX() - raster.getSampleModelTranslateX();
+        int smY = raster.getMinY() + y - raster.getSampleModelTranslateY();
+        return raster.getDataBuffer().getOffset() + sampleModel.getOffset(smX, smY);
+    }
+
+    private void copyRows16(Raster raster, ShortBuffer target) {
+        int usedSamples = usedWidth * channelCount;
+        int rowSamples = width * channelCount;
+        short[] source = null;
+        if (raster.getDataBuffer() instanceof DataBufferUShort)
+            source = ((DataBufferUShort) raster.getDataBuffer()).getData();
+        else if (raster.getDataBuffer() instanceof DataBufferShort)
+            source = ((DataBufferShort) raster.getDataBuffer()).getData();
+        int[] rowData = null;
+        for (int y = 0; y < height; ++y) {
+            int offset = (source == null) ? -1 : interleavedRowOffset(raster, y);
+            target.position(y * rowSamples);
+            if (offset >= 0) {
+                // whole row copy straight from the image data
+                target.put(source, offset, usedSamples);
+            } else {
+                if (rowData == null)
+                    rowData = new int[usedSamples];
+                raster.getPixels(raster.getMinX(), raster.getMinY() + y, usedWidth, 1, rowData);
+                for (int i = 0; i < usedSamples; ++i)
+                    target.put((short) rowData[i]);
             }
-        } else { // 8-bit
-            for (int y = 0; y < this.height; ++y) {
-                raster.getPixel(this.usedWidth-1, y, padData);
-                for (int x = 0; x < this.width; ++x) {
-                    if (x < this.usedWidth) {
-                        raster.getPixel(x, y, pixelData);
-                        for (int i : pixelData) {
-                            byteBuffer.put((byte)i);
-                        }
-                    } else { // zero pad right edge
-                        for (int i : padData) {
-                            byteBuffer.put((byte)i);
-                        }
-                    }
-                }
+            // Ragged right edge is padded with the last pixel of the scan line
+            int lastPixel = y * rowSamples + usedSamples - channelCount;
+            for (int s = usedSamples; s < rowSamples; ++s)
+                target.put(target.get(lastPixel + s % channelCount));
+        }
+    }
+
+    private void copyRows8(Raster raster, ByteBuffer target) {
+        int usedSamples = usedWidth * channelCount;
+        int rowSamples = width * channelCount;
+        byte[] source = null;
+        if (raster.getDataBuffer() instanceof DataBufferByte)
+            source = ((DataBufferByte) raster.getDataBuffer()).getData();
+        int[] rowData = null;
+        for (int y = 0; y < height; ++y) {
+            int offset = (source == null) ? -1 : interleavedRowOffset(raster, y);
+            target.position(y * rowSamples);
+            if (offset >= 0) {
+                target.put(source, offset, usedSamples);
+            } else {
+                if (rowData == null)
+                    rowData = new int[usedSamples];
+                raster.getPixels(raster.getMinX(), raster.getMinY() + y, usedWidth, 1, rowData);
+                for (int i = 0; i < usedSamples; ++i)
+                    target.put((byte) rowData[i]);
             }
+            int lastPixel = y * rowSamples + usedSamples - channelCount;
+            for (int s = usedSamples; s < rowSamples; ++s)
+                target.put(target.get(lastPixel + s % channelCount));
         }
-        pixels = byteBuffer;
-        return;
     }
 
     public void releaseMemory() {
@@ -327,10 +376,8 @@ public class TextureData2d {
         bitDepth=byteBuffer.getInt();
         channelCount=byteBuffer.getInt();
         textureCoordX=byteBuffer.getFloat();
-        int remainingBytes=byteBuffer.remaining();
-        byte[] pixelArray=new byte[remainingBytes];
-        byteBuffer.get(pixelArray);
-        pixels=ByteBuffer.wrap(pixelArray);
+        // Share the pixel bytes with the serialized form instead of copying them
+        pixels=byteBuffer.slice();
     }
 
 }
@@ -42,25 +42,48 @@ implements TextureDataI
 
 	@Override
 	public PyramidTexture createTexture(GL2GL3 gl) {
-		Texture2dGL texture = new Texture2dGL(width, height);
+		return createTexture(gl, 0, false, false);
+	}
+
+	/**
+	 * Uploads the pixels into a texture object.
+	 *
+	 * @param textureId existing texture object to fill, or 0 to generate a new one
+	 * @param reuseStorage true if the existing texture object already has storage of this size and format
+	 * @param fromUnpackBuffer true to read the pixels from the currently bound pixel unpack buffer,
+	 * rather than from client memory
+	 */
+	PyramidTexture createTexture(GL2GL3 gl, int textureId, boolean reuseStorage, boolean fromUnpackBuffer) {
+		Texture2dGL texture = new Texture2dGL(width, height, textureId);
 		texture.enable(gl);
 		texture.bind(gl);
-		pixels.rewind();
 		if (swapBytes)
 			gl.glPixelStorei(GL2GL3.GL_UNPACK_SWAP_BYTES, GL.GL_TRUE);
 		else
 			gl.glPixelStorei(GL2GL3.GL_UNPACK_SWAP_BYTES, GL.GL_FALSE);
-		gl.glTexImage2D(
-				target,
-				mipmapLevel,
-				internalFormat,
-				width,
-				height,
-				border,
-				format,
-				type,
-				pixels);
-		GLError.checkGlError(gl, "glTexImage2D");
+		if (fromUnpackBuffer) {
+			if (reuseStorage)
+				gl.glTexSubImage2D(target, mipmapLevel, 0, 0, width, height, format, type, 0L);
+			else
+				gl.glTexImage2D(target, mipmapLevel, internalFormat, width, height, border, format, type, 0L);
+		}
+		else {
+			pixels.rewind();
+			if (reuseStorage)
+				gl.glTexSubImage2D(target, mipmapLevel, 0, 0, width, height, format, type, pixels);
+			else
+				gl.glTexImage2D(
+						target,
+						mipmapLevel,
+						internalFormat,
+						width,
+						height,
+						border,
+						format,
+						type,
+						pixels);
+		}
+		GLError.checkGlError(gl, reuseStorage ? "glTexSubImage2D" : "glTexImage2D");
 		texture.disable(gl);
 		texture.setLinearized(linearized);
 		// Invert Y texture coordinates so GL system matches image system.
@@ -69,6 +92,13 @@ implements TextureDataI
 		return texture;
 	}
 
+	/**
+	 * @return number of bytes glTexImage2D reads for this texture
+	 */
+	public int getUploadByteCount() {
+		return width * height * channelCount * (bitDepth / 8);
+	}
+
 	@Override
 	public boolean isLinearized() {
 		return linearized;
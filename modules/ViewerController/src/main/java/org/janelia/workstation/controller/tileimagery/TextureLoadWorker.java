@@ -16,14 +16,17 @@ public class TextureLoadWorker implements Runnable {
     private TileTexture texture;
     private TextureCache textureCache;
     private TileServer tileServer;
+    // Only textures wanted on screen are staged; prefetched ones would hold unpack buffers for nothing
+    private boolean staged;
 
-    TextureLoadWorker(TileTexture texture, TextureCache textureCache, TileServer tileServer) {
+    TextureLoadWorker(TileTexture texture, TextureCache textureCache, TileServer tileServer, boolean staged) {
         if (texture.getLoadStatus().ordinal() < TileTexture.LoadStatus.LOAD_QUEUED.ordinal()) {
             texture.setLoadStatus(TileTexture.LoadStatus.LOAD_QUEUED);
         }
         this.texture = texture;
         this.textureCache = textureCache;
         this.tileServer = tileServer;
+        this.staged = staged;
     }
 
     public TileTexture getTexture() {
@@ -48,6 +51,10 @@ public class TextureLoadWorker implements Runnable {
             boolean loadedSuccessfully = texture.loadImageToRam();
             LOG.debug("loadedSuccessfully={} loadStatus={}", loadedSuccessfully, texture.getLoadStatus());
             if (loadedSuccessfully) {
+                if (staged) {
+                    // Copy pixels toward the GPU now, while the texture is not yet visible to eviction
+                    textureCache.getTextureUploader().stage(texture);
+                }
                 textureCache.add(texture);
                 tileServer.textureLoaded(texture.getIndex());
             }
@@ -0,0 +1,93 @@
+package org.janelia.workstation.controller.tileimagery;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Off-heap storage for cached texture pixels.
+ *
+ * Memory is reserved from the operating system in large direct-buffer slabs, which are
+ * carved into texture sized chunks. Released chunks are kept on a free list per chunk size,
+ * so that the steady state of panning through a volume (where all tiles have the same
+ * dimensions) does not allocate at all. Slabs are never returned individually; they are
+ * freed together when the owning TextureCache is discarded.
+ */
+class TextureMemoryPool {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TextureMemoryPool.class);
+
+    private static final int DEFAULT_SLAB_SIZE = 64 * 1024 * 1024;
+
+    private final int slabSize;
+    private final Map<Integer, Deque<ByteBuffer>> freeChunks = new HashMap<>();
+    private ByteBuffer currentSlab;
+    private long reservedBytes = 0; // total bytes in slabs, plus oversized chunks
+    private long freeBytes = 0; // bytes sitting on the free lists
+
+    TextureMemoryPool() {
+        this(DEFAULT_SLAB_SIZE);
+    }
+
+    TextureMemoryPool(int slabSize) {
+        this.slabSize = slabSize;
+    }
+
+    /**
+     * @return a native order direct buffer with exactly byteCount capacity, positioned at zero.
+     */
+    synchronized ByteBuffer allocate(int byteCount) {
+        Deque<ByteBuffer> free = freeChunks.get(byteCount);
+        ByteBuffer chunk = (free == null) ? null : free.pollFirst();
+        if (chunk != null) {
+            freeBytes -= byteCount;
+        } else if (byteCount > slabSize / 4) {
+            // Unusually large textures get their own buffer, to avoid wasting slab tails
+            chunk = ByteBuffer.allocateDirect(byteCount);
+            reservedBytes += byteCount;
+        } else {
+            if (currentSlab == null || currentSlab.remaining() < byteCount) {
+                if (currentSlab != null) {
+                    LOG.trace("Abandoning {} bytes at the end of a texture slab", currentSlab.remaining());
+                }
+                currentSlab = ByteBuffer.allocateDirect(slabSize);
+                reservedBytes += slabSize;
+                LOG.debug("Allocated new texture slab; {} MB now reserved", reservedBytes / (1024 * 1024));
+            }
+            int start = currentSlab.position();
+            currentSlab.limit(start + byteCount);
+            chunk = currentSlab.slice();
+            currentSlab.limit(currentSlab.capacity());
+            currentSlab.position(start + byteCount);
+        }
+        chunk.clear();
+        chunk.order(ByteOrder.nativeOrder());
+        return chunk;
+    }
+
+    /**
+     * Return a chunk obtained from allocate() so that it can be handed out again.
+     */
+    synchronized void release(ByteBuffer chunk) {
+        if (chunk == null || !chunk.isDirect()) {
+            return;
+        }
+        freeChunks.computeIfAbsent(chunk.capacity(), k -> new ArrayDeque<>()).addFirst(chunk);
+        freeBytes += chunk.capacity();
+    }
+
+    synchronized long getReservedBytes() {
+        return reservedBytes;
+    }
+
+    synchronized long getFreeBytes() {
+        return freeBytes;
+    }
+
+}
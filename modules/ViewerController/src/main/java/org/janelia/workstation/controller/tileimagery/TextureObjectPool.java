@@ -0,0 +1,144 @@
+package org.janelia.workstation.controller.tileimagery;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Bookkeeping for recycled OpenGL texture objects, keyed by size and format.
+ *
+ * Refilling an idle texture object of the right shape with glTexSubImage2D avoids
+ * the driver reallocating texture storage for every tile. This class only tracks
+ * texture ids; the caller makes the OpenGL calls, with a current context.
+ */
+class TextureObjectPool {
+
+    private final int maxIdleTextures;
+    // Shape of every texture object created through this pool, by texture id
+    private final Map<Integer, Key> keys = new HashMap<>();
+    private final Map<Key, Deque<Integer>> idleTextures = new HashMap<>();
+    private int idleCount = 0;
+    private long reuseCount = 0;
+
+    TextureObjectPool(int maxIdleTextures) {
+        this.maxIdleTextures = maxIdleTextures;
+    }
+
+    /**
+     * @return an idle texture object with the given shape, or 0 if there is none
+     */
+    synchronized int take(Key key) {
+        Deque<Integer> idle = idleTextures.get(key);
+        if (idle == null || idle.isEmpty()) {
+            return 0;
+        }
+        idleCount -= 1;
+        reuseCount += 1;
+        return idle.pollFirst();
+    }
+
+    /**
+     * Remember the shape of a texture object, so it can be recycled once it is obsolete.
+     */
+    synchronized void register(int textureId, Key key) {
+        keys.put(textureId, key);
+    }
+
+    /**
+     * Return an obsolete texture object to the pool.
+     *
+     * @return false if the texture object was not kept, and should be deleted by the caller
+     */
+    synchronized boolean recycle(int textureId) {
+        Key key = keys.get(textureId);
+        if (key == null) {
+            return false;
+        }
+        if (idleCount >= maxIdleTextures) {
+            keys.remove(textureId);
+            return false;
+        }
+        idleTextures.computeIfAbsent(key, k -> new ArrayDeque<>()).addFirst(textureId);
+        idleCount += 1;
+        return true;
+    }
+
+    /**
+     * Forget all idle texture objects.
+     *
+     * @return ids of the idle texture objects, for deletion by the caller
+     */
+    synchronized int[] drain() {
+        int[] result = new int[idleCount];
+        int i = 0;
+        for (Deque<Integer> idle : idleTextures.values()) {
+            for (int textureId : idle) {
+                keys.remove(textureId);
+                result[i++] = textureId;
+            }
+        }
+        idleTextures.clear();
+        idleCount = 0;
+        return result;
+    }
+
+    synchronized int getIdleCount() {
+        return idleCount;
+    }
+
+    synchronized long getReuseCount() {
+        return reuseCount;
+    }
+
+    /**
+     * Size and format of a texture object; texture objects with equal keys can hold each other's pixels.
+     */
+    static final class Key {
+        private final int width;
+        private final int height;
+        private final int internalFormat;
+        private final int format;
+        private final int type;
+
+        Key(int width, int height, int internalFormat, int format, int type) {
+            this.width = width;
+            this.height = height;
+            this.internalFormat = internalFormat;
+            this.format = format;
+            this.type = type;
+        }
+
+        static Key of(TextureData2dGL textureData) {
+            return new Key(textureData.getWidth(), textureData.getHeight(),
+                    textureData.getInternalFormat(), textureData.getFormat(), textureData.getType());
+        }
+
+        @Override
+        public int hashCode() {
+            int result = width;
+            result = 31 * result + height;
+            result = 31 * result + internalFormat;
+            result = 31 * result + format;
+            result = 31 * result + type;
+            return result;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return width == other.width
+                    && height == other.height
+                    && internalFormat == other.internalFormat
+                    && format == other.format
+                    && type == other.type;
+        }
+    }
+
+}
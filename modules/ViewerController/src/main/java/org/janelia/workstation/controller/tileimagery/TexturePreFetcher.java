@@ -1,14 +1,8 @@
 package org.janelia.workstation.controller.tileimagery;
 
-import java.util.HashMap;
-import java.util.Map;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.Future;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.ThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
-
-import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.Set;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -17,22 +11,15 @@ class TexturePreFetcher {
 
     private static final Logger log = LoggerFactory.getLogger(TexturePreFetcher.class);
 
-    private final ThreadPoolExecutor textureLoadExecutor;
-    private final Map<Future<?>, TileIndex> futures = new HashMap<>();
+    private final TileLoadScheduler loadScheduler;
+    // Tiles requested since the last beginRequests(), and the bands they were requested in
+    private final Set<TileIndex> requestedTiles = new HashSet<>();
+    private final Set<TileLoadScheduler.Band> requestedBands = EnumSet.noneOf(TileLoadScheduler.Band.class);
     private TextureCache textureCache; // holds texture
     private AbstractTextureLoadAdapter loadAdapter; // knows how to load textures
 
-    TexturePreFetcher(int coreThreadPoolSize, int maxThreadPoolSize) {
-        textureLoadExecutor = new ThreadPoolExecutor(
-                coreThreadPoolSize,
-                maxThreadPoolSize,
-                0, TimeUnit.SECONDS,
-                new LinkedBlockingQueue<>(),
-                new ThreadFactoryBuilder()
-                        .setNameFormat("TexturePreFetch-%03d")
-                        .setDaemon(true)
-                        .build()
-        );
+    TexturePreFetcher(TileLoadScheduler loadScheduler) {
+        this.loadScheduler = loadScheduler;
     }
 
     /**
@@ -41,7 +28,7 @@ class TexturePreFetcher {
      * Returns "true" if this tile would occupy desired space in the future
      * cache.
      */
-    synchronized boolean loadDisplayedTexture(TileIndex index, TileServer tileServer) {
+    synchronized boolean loadDisplayedTexture(TileIndex index, TileServer tileServer, TileLoadScheduler.Band band) {
         if (textureCache == null) {
             log.trace("loadDisplayedTexture - return because textureCache is null");
             return false;
@@ -59,41 +46,50 @@ class TexturePreFetcher {
             log.trace("loadDisplayedTexture - already in current cache");
             return false; // we already have this one!
         }
-        if (textureCache.isLoadQueued(index)) {
+        requestedTiles.add(index);
+        requestedBands.add(band);
+        if (textureCache.isLoadQueued(index) && loadScheduler.resubmit(index, band)) {
             log.trace("loadDisplayedTexture - already queued");
-            return false;
+            return (index.getZoom() != index.getMaxZoom());
         }
+        final TextureCache cache = textureCache;
         TileTexture texture = new TileTexture(index, loadAdapter);
-        TextureLoadWorker textureLoadWorker = new TextureLoadWorker(texture, textureCache, tileServer);
+        TextureLoadWorker textureLoadWorker = new TextureLoadWorker(texture, cache, tileServer,
+                band != TileLoadScheduler.Band.PREFETCH);
         // TODO - handle MISSING textures vs. ERROR textures
-        Future<?> foo = textureLoadExecutor.submit(textureLoadWorker);
-        futures.put(foo, texture.getIndex());
-        textureCache.setLoadQueued(index, true);
+        // marked before submitting, since a fast worker clears the mark as soon as it finishes
+        cache.setLoadQueued(index, true);
+        if (loadScheduler.submit(index, band, textureLoadWorker, () -> cache.setLoadQueued(index, false))) {
+            log.debug("loadDisplayedTexture - queued for download: {}", index);
+        } else {
+            cache.setLoadQueued(index, false);
+        }
         // Lowest resolution textures are in the persistent cache, and thus
         // do not impact the future cache.
-        log.debug("loadDisplayedTexture - queued for download: {}", index);
         return (index.getZoom() != index.getMaxZoom());
     }
 
-    synchronized void clear() {
-        if (textureCache == null) {
-            return;
-        }
-        BlockingQueue<Runnable> blockingQueue = textureLoadExecutor.getQueue();
-        if (blockingQueue == null) {
-            return;
+    /**
+     * Start a new round of requests; see cancelUnrequested().
+     */
+    synchronized void beginRequests() {
+        requestedTiles.clear();
+    }
+
+    /**
+     * Cancel queued loads from earlier rounds that were not requested again since beginRequests().
+     */
+    synchronized void cancelUnrequested() {
+        for (TileLoadScheduler.Band band : requestedBands) {
+            loadScheduler.retainOnly(band, requestedTiles);
         }
-        //synchronize on it to prevent tasks from being polled
-        synchronized (blockingQueue) {
-            //clear the Queue
-            for (Runnable r : blockingQueue) {
-                if (futures.containsKey(r)) {
-                    textureCache.setLoadQueued(futures.get(r), false);
-                }
-            }
-            blockingQueue.clear();
+    }
+
+    synchronized void clear() {
+        for (TileLoadScheduler.Band band : requestedBands) {
+            loadScheduler.cancel(band);
         }
-        futures.clear();
+        requestedTiles.clear();
     }
 
     void setLoadAdapter(AbstractTextureLoadAdapter loadAdapter) {
@@ -0,0 +1,292 @@
+package org.janelia.workstation.controller.tileimagery;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import javax.media.opengl.GL2GL3;
+
+import org.janelia.workstation.core.util.ConsoleProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Streams decoded tile pixels into OpenGL textures without stalling the frame.
+ *
+ * Once per frame, on the GL thread, beginFrame() maps a ring of pixel unpack buffers.
+ * Texture load worker threads copy freshly decoded pixels into those mapped buffers with
+ * stage(), so the GL thread only has to unmap the buffer and start an asynchronous
+ * glTexImage2D from it. While one set of buffers is being copied to texture memory by
+ * the driver, the other set is being filled by the workers. Only textures wanted on screen
+ * are staged, and a staged buffer that is not uploaded within a few frames is reclaimed.
+ *
+ * Uploads are limited to a byte budget per frame, so that a burst of tiles arriving
+ * after a zoom jump is spread over several frames, instead of producing one long frame.
+ * Texture objects of obsolete tiles are recycled by size and format, and refilled with
+ * glTexSubImage2D rather than being deleted and reallocated.
+ */
+public class TextureUploader {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TextureUploader.class);
+
+    private static final long BYTES_PER_FRAME = ConsoleProperties.getLong("console.lvv.textureUploadMBPerFrame", 24) * 1024 * 1024;
+    private static final int BUFFER_COUNT = ConsoleProperties.getInt("console.lvv.textureUploadBuffers", 4);
+    private static final int MAX_IDLE_TEXTURES = ConsoleProperties.getInt("console.lvv.textureObjectPoolSize", 128);
+    // Staged buffers not uploaded within this many frames are taken back for other textures
+    private static final int MAX_STAGED_FRAMES = ConsoleProperties.getInt("console.lvv.textureStagedFrames", 8);
+
+    private enum BufferState {
+        IDLE, // not mapped; can be mapped at the start of the next frame
+        MAPPED, // mapped, waiting for a worker to fill it
+        FILLING, // a worker is copying pixels into it
+        STAGED // holds the pixels of one texture, waiting for upload
+    }
+
+    private static class UnpackBuffer {
+        private int bufferId = 0;
+        private int capacity = 0;
+        private ByteBuffer mapped;
+        private BufferState state = BufferState.IDLE;
+        private long stagedFrame = 0;
+    }
+
+    private final long bytesPerFrame;
+    private final TextureObjectPool texturePool;
+    private final List<UnpackBuffer> buffers = new ArrayList<>();
+    private final Deque<UnpackBuffer> mappedBuffers = new ArrayDeque<>();
+    private final Map<TileTexture, UnpackBuffer> stagedBuffers = new IdentityHashMap<>();
+    // Size of the largest texture offered to stage(); unpack buffers are sized to fit it
+    private int bufferBytes = 0;
+
+    // Per frame accounting, only touched on the GL thread
+    private long frameBytes = 0;
+    private int frameUploadCount = 0;
+    private long frameCount = 0;
+    private boolean deferredUploads = false;
+
+    private long stagedUploadCount = 0;
+    private long directUploadCount = 0;
+    private long deferredUploadCount = 0;
+
+    public TextureUploader() {
+        this(BYTES_PER_FRAME, BUFFER_COUNT, MAX_IDLE_TEXTURES);
+    }
+
+    public TextureUploader(long bytesPerFrame, int bufferCount, int maxIdleTextures) {
+        this.bytesPerFrame = bytesPerFrame;
+        this.texturePool = new TextureObjectPool(maxIdleTextures);
+        for (int i = 0; i < bufferCount; i++) {
+            buffers.add(new UnpackBuffer());
+        }
+    }
+
+    /**
+     * Should be called with a current OpenGL context, at the start of each frame.
+     * Resets the upload budget and maps the free unpack buffers for the workers to fill.
+     */
+    public void beginFrame(GL2GL3 gl) {
+        frameBytes = 0;
+        frameUploadCount = 0;
+        deferredUploads = false;
+        synchronized (this) {
+            frameCount += 1;
+            // Buffers staged for textures that were evicted, or uploaded some other way, are still mapped;
+            //  so are those of textures that have not been displayed for a while, which would otherwise
+            //  hold the whole ring
+            Iterator<Map.Entry<TileTexture, UnpackBuffer>> staged = stagedBuffers.entrySet().iterator();
+            while (staged.hasNext()) {
+                Map.Entry<TileTexture, UnpackBuffer> entry = staged.next();
+                if (entry.getKey().getLoadStatus() != TileTexture.LoadStatus.RAM_LOADED
+                        || frameCount - entry.getValue().stagedFrame > MAX_STAGED_FRAMES) {
+                    staged.remove();
+                    entry.getValue().state = BufferState.MAPPED;
+                    mappedBuffers.addLast(entry.getValue());
+                }
+            }
+            if (bufferBytes == 0) {
+                return; // nothing has been staged yet, so the buffer size is unknown
+            }
+            for (UnpackBuffer buffer : buffers) {
+                if (buffer.state == BufferState.MAPPED && buffer.capacity < bufferBytes) {
+                    // Too small for the textures now arriving
+                    mappedBuffers.remove(buffer);
+                    gl.glBindBuffer(GL2GL3.GL_PIXEL_UNPACK_BUFFER, buffer.bufferId);
+                    gl.glUnmapBuffer(GL2GL3.GL_PIXEL_UNPACK_BUFFER);
+                    buffer.mapped = null;
+                    buffer.state = BufferState.IDLE;
+                }
+                if (buffer.state == BufferState.IDLE) {
+                    map(gl, buffer, bufferBytes);
+                }
+            }
+            gl.glBindBuffer(GL2GL3.GL_PIXEL_UNPACK_BUFFER, 0);
+        }
+    }
+
+    private void map(GL2GL3 gl, UnpackBuffer buffer, int byteCount) {
+        if (buffer.bufferId == 0) {
+            int[] ids = {0};
+            gl.glGenBuffers(1, ids, 0);
+            buffer.bufferId = ids[0];
+        }
+        gl.glBindBuffer(GL2GL3.GL_PIXEL_UNPACK_BUFFER, buffer.bufferId);
+        // Respecifying the data store lets the driver keep the previous one until pending uploads finish
+        gl.glBufferData(GL2GL3.GL_PIXEL_UNPACK_BUFFER, byteCount, null, GL2GL3.GL_STREAM_DRAW);
+        buffer.capacity = byteCount;
+        buffer.mapped = gl.glMapBuffer(GL2GL3.GL_PIXEL_UNPACK_BUFFER, GL2GL3.GL_WRITE_ONLY);
+        if (buffer.mapped == null) {
+            LOG.warn("Failed to map pixel unpack buffer {}", buffer.bufferId);
+            return;
+        }
+        buffer.state = BufferState.MAPPED;
+        mappedBuffers.addLast(buffer);
+    }
+
+    /**
+     * Copy the pixels of a freshly loaded texture into a mapped unpack buffer, if one is free.
+     * Safe to call from worker threads, before the texture is added to the cache.
+     * Textures that could not be staged are uploaded straight from memory instead.
+     */
+    void stage(TileTexture texture) {
+        TextureData2dGL textureData = texture.getTextureData();
+        if (textureData == null || textureData.getPixels() == null) {
+            return;
+        }
+        int byteCount = textureData.getUploadByteCount();
+        if (byteCount <= 0 || byteCount > textureData.getPixels().capacity()) {
+            return;
+        }
+        UnpackBuffer buffer = null;
+        synchronized (this) {
+            bufferBytes = Math.max(bufferBytes, byteCount);
+            Iterator<UnpackBuffer> it = mappedBuffers.iterator();
+            while (it.hasNext()) {
+                UnpackBuffer candidate = it.next();
+                if (candidate.capacity >= byteCount) {
+                    it.remove();
+                    candidate.state = BufferState.FILLING;
+                    buffer = candidate;
+                    break;
+                }
+            }
+        }
+        if (buffer == null) {
+            return;
+        }
+        ByteBuffer source = textureData.getPixels().duplicate();
+        source.clear();
+        source.limit(byteCount);
+        ByteBuffer target = buffer.mapped.duplicate();
+        target.clear();
+        target.put(source);
+        synchronized (this) {
+            buffer.state = BufferState.STAGED;
+            buffer.stagedFrame = frameCount;
+            stagedBuffers.put(texture, buffer);
+        }
+    }
+
+    /**
+     * Upload a texture, if the budget for this frame allows it. The first upload of
+     * each frame is always allowed, so that large textures still make progress.
+     * Should be called with a current OpenGL context.
+     *
+     * @return the new OpenGL texture, or null if the upload was deferred to a later frame
+     */
+    PyramidTexture upload(GL2GL3 gl, TileTexture texture) {
+        TextureData2dGL textureData = texture.getTextureData();
+        int byteCount = textureData.getUploadByteCount();
+        if (!reserve(byteCount)) {
+            return null;
+        }
+        TextureObjectPool.Key key = TextureObjectPool.Key.of(textureData);
+        int textureId = texturePool.take(key);
+        UnpackBuffer buffer;
+        synchronized (this) {
+            buffer = stagedBuffers.remove(texture);
+        }
+        PyramidTexture result = null;
+        if (buffer != null) {
+            gl.glBindBuffer(GL2GL3.GL_PIXEL_UNPACK_BUFFER, buffer.bufferId);
+            // Unmapping fails if the buffer contents were lost, e.g. by a display mode change
+            if (gl.glUnmapBuffer(GL2GL3.GL_PIXEL_UNPACK_BUFFER)) {
+                result = textureData.createTexture(gl, textureId, textureId != 0, true);
+                stagedUploadCount += 1;
+            }
+            gl.glBindBuffer(GL2GL3.GL_PIXEL_UNPACK_BUFFER, 0);
+            synchronized (this) {
+                buffer.mapped = null;
+                buffer.state = BufferState.IDLE;
+            }
+        }
+        if (result == null) {
+            result = textureData.createTexture(gl, textureId, textureId != 0, false);
+            directUploadCount += 1;
+        }
+        texturePool.register(result.getTextureId(), key);
+        return result;
+    }
+
+    /**
+     * Charge an upload against the budget of the current frame.
+     *
+     * @return false if the upload should wait for a later frame
+     */
+    boolean reserve(long byteCount) {
+        if (frameUploadCount > 0 && frameBytes + byteCount > bytesPerFrame) {
+            deferredUploads = true;
+            deferredUploadCount += 1;
+            return false;
+        }
+        frameUploadCount += 1;
+        frameBytes += byteCount;
+        return true;
+    }
+
+    /**
+     * Keep obsolete texture objects for reuse by later uploads.
+     *
+     * @return ids of the texture objects that were not kept, which the caller should delete
+     */
+    public int[] recycleTextures(int[] textureIds) {
+        int[] discarded = new int[textureIds.length];
+        int count = 0;
+        for (int textureId : textureIds) {
+            if (!texturePool.recycle(textureId)) {
+                discarded[count++] = textureId;
+            }
+        }
+        int[] result = new int[count];
+        System.arraycopy(discarded, 0, result, 0, count);
+        return result;
+    }
+
+    /**
+     * @return true if uploads were deferred in the current frame, so another frame should be drawn soon
+     */
+    public boolean hasDeferredUploads() {
+        return deferredUploads;
+    }
+
+    public long getStagedUploadCount() {
+        return stagedUploadCount;
+    }
+
+    public long getDirectUploadCount() {
+        return directUploadCount;
+    }
+
+    public long getDeferredUploadCount() {
+        return deferredUploadCount;
+    }
+
+    public long getTextureReuseCount() {
+        return texturePool.getReuseCount();
+    }
+
+}
@@ -45,6 +45,8 @@ public class Tile2d implements GLActor {
     private final TileFormat tileFormat;
     private LoadStatus loadStatus = LoadStatus.NO_TEXTURE_LOADED;
     private TileTexture bestTexture;
+    // Already uploaded lower resolution texture, drawn while bestTexture waits for its upload budget
+    private TileTexture uploadedTexture;
     private double yMax = 0; // To help flip Raveler tiles in Y
     private int filter = GL2.GL_LINEAR;
     private BoundingBox3d boundingBox3d;
@@ -71,6 +73,7 @@ public class Tile2d implements GLActor {
             // Hey! I just noticed I have the best possible texture
             bestTexture = texture;
             setLoadStatus(LoadStatus.BEST_TEXTURE_LOADED);
+            findUploadedTexture(textureCache);
             return;
         }
         ix = ix.zoomOut(); // Try some lower resolution textures
@@ -79,6 +82,7 @@ public class Tile2d implements GLActor {
             if (texture != null && texture.getLoadStatus().ordinal() >= TileTexture.LoadStatus.RAM_LOADED.ordinal()) {
                 bestTexture = texture;
                 setLoadStatus(LoadStatus.COARSE_TEXTURE_LOADED);
+                findUploadedTexture(textureCache);
                 return;
             }
             ix = ix.zoomOut();
@@ -86,6 +90,23 @@ public class Tile2d implements GLActor {
         // No texture was found; maybe next time
     }
 
+    // Remember a coarser texture that is already in video memory, in case bestTexture is not
+    private void findUploadedTexture(TextureCache textureCache) {
+        uploadedTexture = null;
+        if (bestTexture.getLoadStatus() == TileTexture.LoadStatus.GL_LOADED) {
+            return;
+        }
+        TileIndex ix = bestTexture.getIndex().zoomOut();
+        while (ix != null) {
+            TileTexture texture = textureCache.get(ix);
+            if (texture != null && texture.getLoadStatus() == TileTexture.LoadStatus.GL_LOADED) {
+                uploadedTexture = texture;
+                return;
+            }
+            ix = ix.zoomOut();
+        }
+    }
+
     @Override
     public int hashCode() {
         final int prime = 31;
@@ -157,14 +178,21 @@ public class Tile2d implements GLActor {
         // log.info("Rendering tile "+getIndex());
         GL2 gl = glDrawable.getGL().getGL2();
         bestTexture.init(gl);
-        PyramidTexture texture = bestTexture.getTexture();
+        TileTexture shownTexture = bestTexture;
+        if (shownTexture.getTexture() == null && uploadedTexture != null) {
+            shownTexture = uploadedTexture; // best texture upload was deferred
+        }
+        PyramidTexture texture = shownTexture.getTexture();
         if (texture == null) {
             if (LOG.isDebugEnabled()) {
                 new Exception("Texture is null").printStackTrace();
             }
             return;
         }
-        if (!bestTexture.getIndex().equals(getIndex())) {
+        if (shownTexture == bestTexture) {
+            uploadedTexture = null;
+        }
+        if (!shownTexture.getIndex().equals(getIndex())) {
             // log.info("using imperfect texture "+bestTexture.getIndex()+" for tile "+getIndex());
         }
         texture.enable(gl);
@@ -176,7 +204,7 @@ public class Tile2d implements GLActor {
         gl.glBegin(GL2.GL_QUADS);
         // draw quad
         Vec3 corners[] = computeCornerPositions(camera);
-        Point2D texCoords[] = computeTextureCoordinates();
+        Point2D texCoords[] = computeTextureCoordinates(shownTexture);
         //dumpPoints(corners, texCoords, camera);            
         int cornerOrder[] = {0, 1, 2, 3};
         for (int c : cornerOrder) {
@@ -188,8 +216,8 @@ public class Tile2d implements GLActor {
         texture.disable(gl);
 
         // Record display time, if first display for texture
-        if (bestTexture.getFirstDisplayTime() == bestTexture.getInvalidTime()) {
-            bestTexture.setFirstDisplayTime(System.nanoTime());
+        if (shownTexture.getFirstDisplayTime() == shownTexture.getInvalidTime()) {
+            shownTexture.setFirstDisplayTime(System.nanoTime());
         }
     }
 
@@ -209,12 +237,12 @@ public class Tile2d implements GLActor {
         gl.glColor3d(1.0, 1.0, 1.0);
     }
 
-    private Point2D[] computeTextureCoordinates() {
-        PyramidTexture texture = bestTexture.getTexture();
+    private Point2D[] computeTextureCoordinates(TileTexture tileTexture) {
+        PyramidTexture texture = tileTexture.getTexture();
         assert (texture != null);
         TextureCoords tc0 = texture.getImageTexCoords();
         // Adjust texture coordinates for relative zoom level
-        int dZoom = bestTexture.getIndex().getZoom() - getIndex().getZoom();
+        int dZoom = tileTexture.getIndex().getZoom() - getIndex().getZoom();
         int textureScale = (int) (Math.pow(2, dZoom) + 0.1);
         // Remember texture coordinates might already not go from 0->1
         double tcXTotal = tc0.right() - tc0.left();
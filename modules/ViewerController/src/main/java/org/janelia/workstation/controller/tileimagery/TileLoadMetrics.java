@@ -0,0 +1,204 @@
+package org.janelia.workstation.controller.tileimagery;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Per-stage timings and byte counts of the tile loading pipeline, shared by all tile servers.
+ *
+ * A tile waits in the TileLoadScheduler queue, is fetched and decoded into texture pixels
+ * by a load adapter, and finally uploaded to the GPU. The rendering library reads a TIFF
+ * page and converts it to texture pixels in one call, so fetching and decoding are timed
+ * together, and the metrics don't tell storage-bound sessions from CPU-bound ones.
+ * The metrics are visible over JMX, in the TileLoadMetricsPanel, and as CSV.
+ */
+public class TileLoadMetrics implements TileLoadMetricsMBean {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TileLoadMetrics.class);
+
+    private static final String OBJECT_NAME = "org.janelia.workstation:type=TileLoadMetrics";
+
+    public enum Stage {
+        QUEUE_WAIT, // request until a loader thread picks it up
+        FETCH_DECODE, // reading the tile from storage or the network, and converting it to texture pixels
+        UPLOAD, // copying texture pixels to the GPU
+        TOTAL // request until the load completes
+    }
+
+    private static TileLoadMetrics instance;
+
+    public static synchronized TileLoadMetrics getInstance() {
+        if (instance == null) {
+            instance = new TileLoadMetrics();
+            instance.register();
+        }
+        return instance;
+    }
+
+    private final Map<Stage, LatencyHistogram> histograms = new EnumMap<>(Stage.class);
+    private final LongAdder fetchedBytes = new LongAdder();
+    private final LongAdder uploadedBytes = new LongAdder();
+    private volatile long resetTime = System.nanoTime();
+
+    TileLoadMetrics() {
+        for (Stage stage : Stage.values()) {
+            histograms.put(stage, new LatencyHistogram());
+        }
+    }
+
+    private void register() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(OBJECT_NAME));
+        } catch (JMException e) {
+            LOG.warn("Could not register tile load metrics with JMX", e);
+        }
+    }
+
+    public void record(Stage stage, long nanos) {
+        histograms.get(stage).recordNanos(nanos);
+    }
+
+    public void recordFetchDecode(long nanos, long byteCount) {
+        record(Stage.FETCH_DECODE, nanos);
+        fetchedBytes.add(byteCount);
+    }
+
+    public void recordUpload(long nanos, long byteCount) {
+        record(Stage.UPLOAD, nanos);
+        uploadedBytes.add(byteCount);
+    }
+
+    public LatencyHistogram getHistogram(Stage stage) {
+        return histograms.get(stage);
+    }
+
+    @Override
+    public long getTileCount() {
+        return histograms.get(Stage.TOTAL).getCount();
+    }
+
+    @Override
+    public double getQueueWaitP50Millis() {
+        return histograms.get(Stage.QUEUE_WAIT).getPercentileMillis(50);
+    }
+
+    @Override
+    public double getQueueWaitP95Millis() {
+        return histograms.get(Stage.QUEUE_WAIT).getPercentileMillis(95);
+    }
+
+    @Override
+    public double getFetchDecodeP50Millis() {
+        return histograms.get(Stage.FETCH_DECODE).getPercentileMillis(50);
+    }
+
+    @Override
+    public double getFetchDecodeP95Millis() {
+        return histograms.get(Stage.FETCH_DECODE).getPercentileMillis(95);
+    }
+
+    @Override
+    public double getUploadP50Millis() {
+        return histograms.get(Stage.UPLOAD).getPercentileMillis(50);
+    }
+
+    @Override
+    public double getUploadP95Millis() {
+        return histograms.get(Stage.UPLOAD).getPercentileMillis(95);
+    }
+
+    @Override
+    public double getTotalP50Millis() {
+        return histograms.get(Stage.TOTAL).getPercentileMillis(50);
+    }
+
+    @Override
+    public double getTotalP95Millis() {
+        return histograms.get(Stage.TOTAL).getPercentileMillis(95);
+    }
+
+    @Override
+    public long getFetchedBytes() {
+        return fetchedBytes.sum();
+    }
+
+    @Override
+    public long getUploadedBytes() {
+        return uploadedBytes.sum();
+    }
+
+    /**
+     * @return bytes fetched per second of wall clock time since the last reset
+     */
+    @Override
+    public double getFetchMegabytesPerSecond() {
+        double seconds = (System.nanoTime() - resetTime) / 1e9;
+        return seconds <= 0 ? 0 : fetchedBytes.sum() / (1024.0 * 1024.0) / seconds;
+    }
+
+    @Override
+    public double getPercentileMillis(String stage, double percentile) {
+        return histograms.get(Stage.valueOf(stage)).getPercentileMillis(percentile);
+    }
+
+    public void writeCsv(Writer writer) throws IOException {
+        writer.write("stage,count,mean_ms,p50_ms,p95_ms,p99_ms,max_ms,bytes\n");
+        for (Stage stage : Stage.values()) {
+            LatencyHistogram histogram = histograms.get(stage);
+            long bytes = stage == Stage.FETCH_DECODE ? fetchedBytes.sum() : stage == Stage.UPLOAD ? uploadedBytes.sum() : 0;
+            writer.write(String.format(Locale.US, "%s,%d,%.3f,%.3f,%.3f,%.3f,%.3f,%d\n",
+                    stage.name().toLowerCase(Locale.US),
+                    histogram.getCount(),
+                    histogram.getMeanMillis(),
+                    histogram.getPercentileMillis(50),
+                    histogram.getPercentileMillis(95),
+                    histogram.getPercentileMillis(99),
+                    histogram.getMaxMillis(),
+                    bytes));
+        }
+    }
+
+    @Override
+    public String toCsv() {
+        StringWriter writer = new StringWriter();
+        try {
+            writeCsv(writer);
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // StringWriter does not throw
+        }
+        return writer.toString();
+    }
+
+    @Override
+    public void writeCsv(String path) throws IOException {
+        try (Writer writer = Files.newBufferedWriter(Paths.get(path), StandardCharsets.UTF_8)) {
+            writeCsv(writer);
+        }
+    }
+
+    @Override
+    public void reset() {
+        for (LatencyHistogram histogram : histograms.values()) {
+            histogram.reset();
+        }
+        fetchedBytes.reset();
+        uploadedBytes.reset();
+        resetTime = System.nanoTime();
+    }
+
+}
@@ -0,0 +1,47 @@
+package org.janelia.workstation.controller.tileimagery;
+
+import java.io.IOException;
+
+/**
+ * JMX view of the tile loading pipeline timings, registered as
+ * org.janelia.workstation:type=TileLoadMetrics.
+ */
+public interface TileLoadMetricsMBean {
+
+    long getTileCount();
+
+    double getQueueWaitP50Millis();
+
+    double getQueueWaitP95Millis();
+
+    double getFetchDecodeP50Millis();
+
+    double getFetchDecodeP95Millis();
+
+    double getUploadP50Millis();
+
+    double getUploadP95Millis();
+
+    double getTotalP50Millis();
+
+    double getTotalP95Millis();
+
+    long getFetchedBytes();
+
+    long getUploadedBytes();
+
+    double getFetchMegabytesPerSecond();
+
+    /**
+     * @param stage one of QUEUE_WAIT, FETCH_DECODE, UPLOAD, TOTAL
+     * @param percentile between 0 and 100
+     */
+    double getPercentileMillis(String stage, double percentile);
+
+    String toCsv();
+
+    void writeCsv(String path) throws IOException;
+
+    void reset();
+
+}
@@ -0,0 +1,145 @@
+package org.janelia.workstation.controller.tileimagery;
+
+import java.awt.BorderLayout;
+import java.awt.Dimension;
+import java.awt.FlowLayout;
+import java.io.File;
+import java.io.IOException;
+
+import javax.swing.JButton;
+import javax.swing.JFileChooser;
+import javax.swing.JLabel;
+import javax.swing.JOptionPane;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JTable;
+import javax.swing.Timer;
+import javax.swing.table.AbstractTableModel;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Dashboard of tile loading pipeline timings, refreshed while it is showing.
+ */
+public class TileLoadMetricsPanel extends JPanel {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TileLoadMetricsPanel.class);
+
+    private static final String[] COLUMNS = {"Stage", "Count", "Mean ms", "p50 ms", "p95 ms", "p99 ms", "Max ms", "MB"};
+
+    private final TileLoadMetrics metrics;
+    private final MetricsTableModel tableModel = new MetricsTableModel();
+    private final JLabel summaryLabel = new JLabel();
+    private final Timer timer = new Timer(1000 /*ms*/, e -> refresh());
+
+    public TileLoadMetricsPanel(TileLoadMetrics metrics) {
+        super(new BorderLayout());
+        this.metrics = metrics;
+
+        JTable table = new JTable(tableModel);
+        table.setFillsViewportHeight(true);
+        JScrollPane scrollPane = new JScrollPane(table);
+        scrollPane.setPreferredSize(new Dimension(560, 130));
+        add(scrollPane, BorderLayout.CENTER);
+
+        JButton resetButton = new JButton("Reset");
+        resetButton.addActionListener(e -> {
+            metrics.reset();
+            refresh();
+        });
+        JButton saveButton = new JButton("Save CSV...");
+        saveButton.addActionListener(e -> saveCsv());
+        JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+        buttonPanel.add(resetButton);
+        buttonPanel.add(saveButton);
+
+        JPanel bottomPanel = new JPanel(new BorderLayout());
+        bottomPanel.add(summaryLabel, BorderLayout.WEST);
+        bottomPanel.add(buttonPanel, BorderLayout.EAST);
+        add(bottomPanel, BorderLayout.SOUTH);
+
+        refresh();
+    }
+
+    @Override
+    public void addNotify() {
+        super.addNotify();
+        timer.start();
+    }
+
+    @Override
+    public void removeNotify() {
+        timer.stop();
+        super.removeNotify();
+    }
+
+    private void refresh() {
+        tableModel.fireTableDataChanged();
+        summaryLabel.setText(String.format(" %.1f MB/s fetched", metrics.getFetchMegabytesPerSecond()));
+    }
+
+    private void saveCsv() {
+        JFileChooser chooser = new JFileChooser();
+        chooser.setDialogTitle("Save tile load metrics");
+        chooser.setSelectedFile(new File("tile-load-metrics.csv"));
+        if (chooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        File file = chooser.getSelectedFile();
+        try {
+            metrics.writeCsv(file.getAbsolutePath());
+        } catch (IOException e) {
+            LOG.error("Error writing tile load metrics to {}", file, e);
+            JOptionPane.showMessageDialog(this,
+                    "Could not write " + file,
+                    "Error saving tile load metrics",
+                    JOptionPane.ERROR_MESSAGE);
+        }
+    }
+
+    private class MetricsTableModel extends AbstractTableModel {
+
+        @Override
+        public int getRowCount() {
+            return TileLoadMetrics.Stage.values().length;
+        }
+
+        @Override
+        public int getColumnCount() {
+            return COLUMNS.length;
+        }
+
+        @Override
+        public String getColumnName(int column) {
+            return COLUMNS[column];
+        }
+
+        @Override
+        public Object getValueAt(int row, int column) {
+            TileLoadMetrics.Stage stage = TileLoadMetrics.Stage.values()[row];
+            LatencyHistogram histogram = metrics.getHistogram(stage);
+            switch (column) {
+                case 0:
+                    return stage.name().toLowerCase().replace('_', ' ');
+                case 1:
+                    return histogram.getCount();
+                case 2:
+                    return String.format("%.1f", histogram.getMeanMillis());
+                case 3:
+                    return String.format("%.1f", histogram.getPercentileMillis(50));
+                case 4:
+                    return String.format("%.1f", histogram.getPercentileMillis(95));
+                case 5:
+                    return String.format("%.1f", histogram.getPercentileMillis(99));
+                case 6:
+                    return String.format("%.1f", histogram.getMaxMillis());
+                default:
+                    long bytes = stage == TileLoadMetrics.Stage.FETCH_DECODE ? metrics.getFetchedBytes()
+                            : stage == TileLoadMetrics.Stage.UPLOAD ? metrics.getUploadedBytes() : 0;
+                    return bytes == 0 ? "" : String.format("%.1f", bytes / (1024.0 * 1024.0));
+            }
+        }
+    }
+
+}
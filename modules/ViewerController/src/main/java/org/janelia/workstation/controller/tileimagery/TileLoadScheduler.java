@@ -0,0 +1,399 @@
+package org.janelia.workstation.controller.tileimagery;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ThreadFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import org.janelia.workstation.geom.Vec3;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Single loading queue for all tile loads of a TileServer: displayed textures, the
+ * lowest resolution pre-fetch, umbrella pre-fetch, and the 3D volume cache.
+ *
+ * Requests are ordered by band, then by distance from the (predicted) camera focus,
+ * with coarser zoom levels first. Requests for a tile that is already queued or loading
+ * are merged, and queued requests that are no longer wanted can be cancelled.
+ */
+public class TileLoadScheduler {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TileLoadScheduler.class);
+
+    /**
+     * Request categories, in priority order.
+     */
+    public enum Band {
+        DISPLAY(true), // needed for the current view
+        MIN_RES(true), // lowest resolution textures for the whole volume
+        PREFETCH(true), // textures we predict will be displayed
+        RAM_CACHE(false); // volume cache neighbourhood; does not produce a texture
+
+        private final boolean loadsTexture;
+
+        Band(boolean loadsTexture) {
+            this.loadsTexture = loadsTexture;
+        }
+    }
+
+    // Priority units are tiles; a band outweighs any realistic distance
+    private static final double BAND_WEIGHT = 1000.0;
+    private static final double ZOOM_WEIGHT = 0.25;
+    // How far ahead to extrapolate camera motion
+    private static final double LOOKAHEAD_SECONDS = 0.5;
+    // Smoothing for the camera velocity estimate
+    private static final double VELOCITY_SMOOTHING = 0.5;
+    // Ignore focus changes further apart than this, e.g. jumps to a new location
+    private static final double MAX_VELOCITY_INTERVAL_SECONDS = 1.0;
+    private static final int LATENCY_SAMPLE_COUNT = 1024;
+
+    private static class Task {
+        private final TileIndex index;
+        private final long submitTime = System.nanoTime();
+        private Runnable load;
+        private boolean loadsTexture;
+        private Set<Band> bands = EnumSet.noneOf(Band.class);
+        private Runnable onCancel;
+        private Entry entry; // current position in the queue; null once started
+
+        private Task(TileIndex index) {
+            this.index = index;
+        }
+    }
+
+    // Queue entries are immutable; changing a priority adds a new entry and orphans the old one
+    private static class Entry implements Comparable<Entry> {
+        private final Task task;
+        private final double priority;
+        private final long sequence;
+
+        private Entry(Task task, double priority, long sequence) {
+            this.task = task;
+            this.priority = priority;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(Entry other) {
+            int result = Double.compare(priority, other.priority);
+            if (result == 0) {
+                result = Long.compare(sequence, other.sequence); // first come, first served
+            }
+            return result;
+        }
+    }
+
+    private final PriorityQueue<Entry> queue = new PriorityQueue<>();
+    private final Map<TileIndex, Task> queuedTasks = new HashMap<>();
+    private final Map<TileIndex, Task> runningTasks = new HashMap<>();
+    private final List<Thread> workers = new ArrayList<>();
+    private long sequence = 0;
+    private boolean isShutdown = false;
+
+    private TileFormat tileFormat;
+    private Vec3 focus;
+    private Vec3 velocity = new Vec3(0, 0, 0); // scene units per second
+    private long focusTime;
+
+    private final long[] latencies = new long[LATENCY_SAMPLE_COUNT];
+    private int latencyCount = 0;
+    private long completedCount = 0;
+
+    public TileLoadScheduler(int threadCount) {
+        ThreadFactory threadFactory = new ThreadFactoryBuilder()
+                .setNameFormat("TileLoad-%03d")
+                .setDaemon(true)
+                .build();
+        for (int i = 0; i < threadCount; ++i) {
+            Thread worker = threadFactory.newThread(this::runWorker);
+            workers.add(worker);
+            worker.start();
+        }
+    }
+
+    /**
+     * Queue a tile load, or merge it with an identical load that is already queued or running.
+     *
+     * @param onCancel called if the load is cancelled before it starts; may be null
+     * @return true if this load will run, false if the request was merged into an existing load
+     */
+    public synchronized boolean submit(TileIndex index, Band band, Runnable load, Runnable onCancel) {
+        if (isShutdown) {
+            return false;
+        }
+        Task running = runningTasks.get(index);
+        if (running != null && (running.loadsTexture || !band.loadsTexture)) {
+            return false; // already being loaded
+        }
+        Task task = queuedTasks.get(index);
+        boolean isNew = (task == null);
+        if (isNew) {
+            task = new Task(index);
+            queuedTasks.put(index, task);
+        }
+        boolean adopted = isNew || (band.loadsTexture && !task.loadsTexture);
+        if (adopted) {
+            // A texture load also fills the volume cache, so it replaces a volume cache load
+            task.load = load;
+            task.loadsTexture = band.loadsTexture;
+            task.onCancel = onCancel;
+        }
+        addBand(task, band);
+        return adopted;
+    }
+
+    /**
+     * Cheap alternative to submit() for a tile whose load is believed to be queued already:
+     * updates the priority of that load without building a new one.
+     *
+     * @return true if a load of the tile that serves this band is queued or running
+     */
+    public synchronized boolean resubmit(TileIndex index, Band band) {
+        Task running = runningTasks.get(index);
+        if (running != null && (running.loadsTexture || !band.loadsTexture)) {
+            return true;
+        }
+        Task task = queuedTasks.get(index);
+        if (task == null || (band.loadsTexture && !task.loadsTexture)) {
+            return false;
+        }
+        addBand(task, band);
+        return true;
+    }
+
+    // Must hold lock
+    private void addBand(Task task, Band band) {
+        task.bands.add(band);
+        double priority = priorityOf(task.index, band);
+        if (task.entry == null || priority < task.entry.priority) {
+            task.entry = new Entry(task, priority, sequence++);
+            queue.add(task.entry);
+            notify();
+        }
+    }
+
+    /**
+     * Cancel all queued requests from a band, unless they are also wanted by another band.
+     */
+    public void cancel(Band band) {
+        retainOnly(band, null);
+    }
+
+    /**
+     * Cancel queued requests from a band for tiles not in the given set, e.g. because
+     * they left the view. Loads that have already started run to completion.
+     */
+    public void retainOnly(Band band, Collection<TileIndex> wanted) {
+        List<Task> cancelled = new ArrayList<>();
+        synchronized (this) {
+            Iterator<Task> it = queuedTasks.values().iterator();
+            while (it.hasNext()) {
+                Task task = it.next();
+                if (!task.bands.contains(band)) {
+                    continue;
+                }
+                if (wanted != null && wanted.contains(task.index)) {
+                    continue;
+                }
+                task.bands.remove(band);
+                if (task.bands.isEmpty()) {
+                    it.remove();
+                    task.entry = null; // orphans its queue entry
+                    cancelled.add(task);
+                }
+            }
+            // Drop orphaned entries eagerly, so the queue does not grow while panning
+            if (!cancelled.isEmpty()) {
+                queue.removeIf(e -> e.task.entry != e);
+            }
+        }
+        for (Task task : cancelled) {
+            if (task.onCancel != null) {
+                task.onCancel.run();
+            }
+        }
+        if (!cancelled.isEmpty()) {
+            LOG.trace("Cancelled {} tile loads from {}", cancelled.size(), band);
+        }
+    }
+
+    public synchronized void setTileFormat(TileFormat tileFormat) {
+        this.tileFormat = tileFormat;
+    }
+
+    /**
+     * Track the camera focus, to estimate which way the user is panning or scrolling.
+     */
+    public synchronized void setFocus(Vec3 newFocus) {
+        if (newFocus == null) {
+            return;
+        }
+        if (focus != null && newFocus.minus(focus).normSqr() == 0) {
+            return; // several listeners may report the same focus
+        }
+        long now = System.nanoTime();
+        if (focus != null) {
+            double seconds = (now - focusTime) / 1e9;
+            if (seconds > MAX_VELOCITY_INTERVAL_SECONDS) {
+                velocity = new Vec3(0, 0, 0);
+            } else if (seconds > 0) {
+                Vec3 instantVelocity = newFocus.minus(focus).times(1.0 / seconds);
+                velocity = velocity.times(1.0 - VELOCITY_SMOOTHING).plus(instantVelocity.times(VELOCITY_SMOOTHING));
+            }
+        }
+        focus = newFocus.clone();
+        focusTime = now;
+    }
+
+    /**
+     * @return where the camera focus is expected to be shortly, given its recent motion
+     */
+    synchronized Vec3 getPredictedFocus() {
+        if (focus == null) {
+            return null;
+        }
+        double seconds = (System.nanoTime() - focusTime) / 1e9;
+        if (seconds > MAX_VELOCITY_INTERVAL_SECONDS) {
+            return focus; // camera has come to rest
+        }
+        return focus.plus(velocity.times(LOOKAHEAD_SECONDS));
+    }
+
+    private double priorityOf(TileIndex index, Band band) {
+        double priority = band.ordinal() * BAND_WEIGHT
+                + ZOOM_WEIGHT * (index.getMaxZoom() - index.getZoom());
+        Vec3 target = getPredictedFocus();
+        if (target == null || tileFormat == null) {
+            return priority;
+        }
+        TileIndex focusIndex = tileFormat.tileIndexForXyz(target, index.getZoom(), index.getSliceAxis());
+        int depthAxis = index.getSliceAxis().index();
+        double distanceSqr = 0;
+        for (int i = 0; i < 3; ++i) {
+            double d;
+            if (i == depthAxis) {
+                // depth is in full resolution slices for tiles, but in zoomed slices for the focus
+                double zoomedSlice = index.getCoordinate(i) / (double) index.getDeltaSlice();
+                d = (zoomedSlice - focusIndex.getCoordinate(i)) / tileFormat.getTileSize()[i];
+            } else {
+                d = index.getCoordinate(i) - focusIndex.getCoordinate(i);
+            }
+            distanceSqr += d * d;
+        }
+        return priority + Math.sqrt(distanceSqr);
+    }
+
+    private void runWorker() {
+        while (true) {
+            Task task;
+            synchronized (this) {
+                // A load may have swallowed the interrupt from shutdown(), so check the flag too
+                task = isShutdown ? null : nextTask();
+                while (task == null) {
+                    if (isShutdown) {
+                        return;
+                    }
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    task = nextTask();
+                }
+                queuedTasks.remove(task.index);
+                task.entry = null;
+                runningTasks.put(task.index, task);
+            }
+            TileLoadMetrics metrics = TileLoadMetrics.getInstance();
+            metrics.record(TileLoadMetrics.Stage.QUEUE_WAIT, System.nanoTime() - task.submitTime);
+            try {
+                task.load.run();
+            } catch (RuntimeException e) {
+                LOG.error("Error loading tile {}", task.index, e);
+            } finally {
+                synchronized (this) {
+                    if (runningTasks.get(task.index) == task) {
+                        runningTasks.remove(task.index);
+                    }
+                    recordLatency(System.nanoTime() - task.submitTime);
+                }
+                metrics.record(TileLoadMetrics.Stage.TOTAL, System.nanoTime() - task.submitTime);
+            }
+        }
+    }
+
+    // Must hold lock
+    private Task nextTask() {
+        Entry entry = queue.poll();
+        while (entry != null && entry.task.entry != entry) {
+            entry = queue.poll(); // skip cancelled and re-prioritized entries
+        }
+        return entry == null ? null : entry.task;
+    }
+
+    private void recordLatency(long nanos) {
+        latencies[(int) (completedCount % LATENCY_SAMPLE_COUNT)] = nanos;
+        completedCount += 1;
+        latencyCount = (int) Math.min(completedCount, LATENCY_SAMPLE_COUNT);
+    }
+
+    /**
+     * @return number of tile loads waiting to start
+     */
+    public synchronized int getQueueDepth() {
+        return queuedTasks.size();
+    }
+
+    public synchronized int getRunningCount() {
+        return runningTasks.size();
+    }
+
+    public synchronized long getCompletedCount() {
+        return completedCount;
+    }
+
+    /**
+     * @param percentile between 0 and 100
+     * @return request-to-completion latency of recent tile loads, in milliseconds
+     */
+    public double getLatencyPercentileMillis(double percentile) {
+        long[] samples;
+        synchronized (this) {
+            if (latencyCount == 0) {
+                return 0;
+            }
+            samples = Arrays.copyOf(latencies, latencyCount);
+        }
+        Arrays.sort(samples);
+        int rank = (int) Math.ceil(percentile / 100.0 * samples.length) - 1;
+        rank = Math.max(0, Math.min(samples.length - 1, rank));
+        return samples[rank] / 1e6;
+    }
+
+    /**
+     * Stop the worker threads, e.g. because the volume they load from was closed or replaced.
+     * Queued loads are dropped; loads that have already started run to completion.
+     */
+    public void shutdown() {
+        synchronized (this) {
+            isShutdown = true;
+            queuedTasks.clear();
+            queue.clear();
+            notifyAll();
+        }
+        for (Thread worker : workers) {
+            worker.interrupt();
+        }
+    }
+
+}
@@ -26,7 +26,6 @@ public class TileServer implements ComponentListener, // so changes in viewer si
         VolumeLoadListener {
 
     private static final Logger LOG = LoggerFactory.getLogger(TileServer.class);
-    private static final int MIN_RES_TILE_LOADER_CONCURRENCY = 10;
     private static final int HIGHER_RES_TILE_LOADER_CONCURRENCY = 15;
 
     // Derived from individual ViewTileManagers
@@ -42,9 +41,11 @@ public class TileServer implements ComponentListener, // so changes in viewer si
     private LoadStatus loadStatus = LoadStatus.UNINITIALIZED;
 
     // One thread pool to load minimal representation of volume
-    private final TexturePreFetcher minResPreFetcher; //!!!! = new TexturePreFetcher(MIN_RES_TILE_LOADER_CONCURRENCY, MIN_RES_TILE_LOADER_CONCURRENCY);
+    // Shared by the pre-fetchers and the volume cache, so that loads are prioritized together
+    private final TileLoadScheduler loadScheduler = new TileLoadScheduler(HIGHER_RES_TILE_LOADER_CONCURRENCY);
+    private final TexturePreFetcher minResPreFetcher;
     // One thread pool to load current and prefetch textures
-    private final TexturePreFetcher futurePreFetcher; //!!!! = new TexturePreFetcher(MIN_RES_TILE_LOADER_CONCURRENCY, HIGHER_RES_TILE_LOADER_CONCURRENCY);
+    private final TexturePreFetcher futurePreFetcher;
 
     // Refactoring 6/12/2013
     private SharedVolumeImage sharedVolumeImage;
@@ -61,8 +62,8 @@ public class TileServer implements ComponentListener, // so changes in viewer si
     private Set<TileIndex> currentDisplayTiles = new HashSet<>();
 
     public TileServer(SharedVolumeImage sharedVolumeImage) {
-        this.minResPreFetcher = new TexturePreFetcher(MIN_RES_TILE_LOADER_CONCURRENCY, MIN_RES_TILE_LOADER_CONCURRENCY);
-        this.futurePreFetcher = new TexturePreFetcher(MIN_RES_TILE_LOADER_CONCURRENCY, HIGHER_RES_TILE_LOADER_CONCURRENCY);
+        this.minResPreFetcher = new TexturePreFetcher(loadScheduler);
+        this.futurePreFetcher = new TexturePreFetcher(loadScheduler);
 
         setSharedVolumeImage(sharedVolumeImage.setTileLoaderProvider(new BlockTiffOctreeTileLoaderProvider() {
             int concurrency = HIGHER_RES_TILE_LOADER_CONCURRENCY;
@@ -70,7 +71,8 @@ public class TileServer implements ComponentListener, // so changes in viewer si
             @Override
             public BlockTiffOctreeLoadAdapter createLoadAdapter(String baseURI) {
                 return TileStackCacheController.createInstance(
-                        new TileStackOctreeLoadAdapter(new TileFormat(), URI.create(baseURI), concurrency));
+                        new TileStackOctreeLoadAdapter(new TileFormat(), URI.create(baseURI), concurrency),
+                        loadScheduler);
             }
         }));
 
@@ -123,7 +125,7 @@ public class TileServer implements ComponentListener, // so changes in viewer si
             }
         }
         for (TileIndex i : tileGenerator) {
-            minResPreFetcher.loadDisplayedTexture(i, TileServer.this);
+            minResPreFetcher.loadDisplayedTexture(i, TileServer.this, TileLoadScheduler.Band.MIN_RES);
         }
     }
 
@@ -146,12 +148,17 @@ public class TileServer implements ComponentListener, // so changes in viewer si
     public void clearCache() {
         // Replace entire texture cache, to avoid retained textures
         int[] textureIds = null;
+        TextureUploader textureUploader = null;
         if (textureCache != null) {
             textureCache.clear();
             textureIds = textureCache.popObsoleteTextureIds();
             textureCache.setQueueDrainedListener(null);
+            textureUploader = textureCache.getTextureUploader();
         }
         textureCache = new TextureCache();
+        if (textureUploader != null) {
+            textureCache.setTextureUploader(textureUploader);
+        }
         textureCache.setQueueDrainedListener(queueDrainedListener);
         if (textureIds != null) {
             textureCache.getHistoryCache().storeObsoleteTextureIds(textureIds); // so old texture ids can get deleted next draw
@@ -204,6 +211,10 @@ public class TileServer implements ComponentListener, // so changes in viewer si
         this.sharedVolumeImage.addVolumeLoadListener(this);
     }
 
+    public TileLoadScheduler getLoadScheduler() {
+        return loadScheduler;
+    }
+
     public TextureCache getTextureCache() {
         return textureCache;
     }
@@ -256,10 +267,12 @@ public class TileServer implements ComponentListener, // so changes in viewer si
         }
         updateLoadStatus();
 
-        futurePreFetcher.clear();
+        // Keep queued loads that are still wanted, so they do not lose their place in line
+        futurePreFetcher.beginRequests();
+        updateLoadFocus();
 
         Set<TileIndex> cacheableTextures = new HashSet<TileIndex>();
-        int maxCacheable = (int) (0.90 * getTextureCache().getFutureCache().getMaxSize());
+        int maxCacheable = (int) (0.90 * getTextureCache().getFutureCapacity());
 
         LOG.debug("rearrangeLoadQueue for {} ViewTileManagers", viewTileManagers.size());
         // First in line are current display tiles
@@ -272,7 +285,7 @@ public class TileServer implements ComponentListener, // so changes in viewer si
                 if (cacheableTextures.contains(ix)) {
                     continue; // already noted
                 }
-                if (futurePreFetcher.loadDisplayedTexture(ix, TileServer.this)) {
+                if (futurePreFetcher.loadDisplayedTexture(ix, TileServer.this, TileLoadScheduler.Band.DISPLAY)) {
                     cacheableTextures.add(ix);
                 }
             }
@@ -329,7 +342,7 @@ public class TileServer implements ComponentListener, // so changes in viewer si
                         break;
                     }
 
-                    if (futurePreFetcher.loadDisplayedTexture(ix, TileServer.this)) {
+                    if (futurePreFetcher.loadDisplayedTexture(ix, TileServer.this, TileLoadScheduler.Band.PREFETCH)) {
                         cacheableTextures.add(ix);
                     }
                 }
@@ -343,15 +356,25 @@ public class TileServer implements ComponentListener, // so changes in viewer si
                         break;
                     }
 
-                    if (futurePreFetcher.loadDisplayedTexture(ix, TileServer.this)) {
+                    if (futurePreFetcher.loadDisplayedTexture(ix, TileServer.this, TileLoadScheduler.Band.PREFETCH)) {
                         cacheableTextures.add(ix);
                     }
                 }
             }
         }
+        futurePreFetcher.cancelUnrequested();
         updateLoadStatus();
     }
 
+    private void updateLoadFocus() {
+        for (ViewTileManager vtm : viewTileManagers) {
+            if (vtm.getTileConsumer().isShowing() && vtm.getTileConsumer().getCamera() != null) {
+                loadScheduler.setFocus(vtm.getTileConsumer().getCamera().getFocus());
+                return;
+            }
+        }
+    }
+
     public void refreshCurrentTileSet() {
         LOG.trace("refreshCurrentTileSet");
         TileSet tiles = createLatestTiles();
@@ -417,6 +440,15 @@ public class TileServer implements ComponentListener, // so changes in viewer si
         futurePreFetcher.clear();
     }
 
+    /**
+     * Stop loading for good, and release the loader threads; for when the volume is closed
+     * or another one replaces it.
+     */
+    public void shutdown() {
+        stop();
+        loadScheduler.shutdown();
+    }
+
     //-------------------------------------------IMPLEMENTS VolumeLoadListener
     @Override
     public void volumeLoaded(URL url) {
@@ -426,6 +458,7 @@ public class TileServer implements ComponentListener, // so changes in viewer si
         // Initialize pre-fetchers
         minResPreFetcher.setLoadAdapter(sharedVolumeImage.getLoadAdapter());
         futurePreFetcher.setLoadAdapter(sharedVolumeImage.getLoadAdapter());
+        loadScheduler.setTileFormat(sharedVolumeImage.getLoadAdapter().getTileFormat());
         clearCache();
         refreshCurrentTileSet();
     }
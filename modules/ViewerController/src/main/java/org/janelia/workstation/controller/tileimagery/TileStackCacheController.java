@@ -13,16 +13,17 @@ public class TileStackCacheController extends BlockTiffOctreeLoadAdapter {
         return instance;
     }
 
-    public static TileStackCacheController createInstance(BlockTiffOctreeLoadAdapter blockKeyTileLoader) {
-        instance = new TileStackCacheController(blockKeyTileLoader);
+    public static TileStackCacheController createInstance(BlockTiffOctreeLoadAdapter blockKeyTileLoader,
+                                                          TileLoadScheduler loadScheduler) {
+        instance = new TileStackCacheController(blockKeyTileLoader, loadScheduler);
         return instance;
     }
 
     private final CachedBlockTiffOctreeLoadAdapter cachedTilesLoader;
 
-    private TileStackCacheController(BlockTiffOctreeLoadAdapter blockKeyTileLoader) {
+    private TileStackCacheController(BlockTiffOctreeLoadAdapter blockKeyTileLoader, TileLoadScheduler loadScheduler) {
         super(blockKeyTileLoader.getTileFormat(), blockKeyTileLoader.getVolumeBaseURI());
-        this.cachedTilesLoader = new CachedBlockTiffOctreeLoadAdapter(blockKeyTileLoader);
+        this.cachedTilesLoader = new CachedBlockTiffOctreeLoadAdapter(blockKeyTileLoader, loadScheduler);
     }
 
     @Override
@@ -4,13 +4,19 @@ package org.janelia.workstation.controller.tileimagery;
  * Created by murphys on 11/6/2015.
  */
 
+import javax.swing.JDialog;
 import javax.swing.JPanel;
+import javax.swing.SwingUtilities;
 import javax.swing.Timer;
 import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Font;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
 import java.awt.image.BufferedImage;
 import java.util.Collection;
 
@@ -19,7 +25,10 @@ import java.util.Collection;
  */
 public class TileStackCacheStatusPanel extends JPanel implements ActionListener {
 
-    private static final int PANEL_HEIGHT=210;
+    private static final int MAP_HEIGHT=210;
+    private static final int STATS_HEIGHT=73;
+    private static final int PANEL_HEIGHT=MAP_HEIGHT+STATS_HEIGHT;
+    private static final int MB=1024*1024;
     private static final int PANEL_WIDTH=90;
     private static final int Z_OFFSET=60;
     private static final int BOX_XSIZE=7;
@@ -31,27 +40,41 @@ public class TileStackCacheStatusPanel extends JPanel implements ActionListener
     private long combinedLoadTime = 0;
 
     private Timer timer=new Timer(500 /*ms*/, this);
+    private final TileServer tileServer;
     Collection<int[]> cachingMap;
     Color[] statusColors=new Color[] { Color.RED, Color.YELLOW, Color.GREEN };
     int zLevelCenter=3;
 
-    public TileStackCacheStatusPanel() {
+    public TileStackCacheStatusPanel(TileServer tileServer) {
+        this.tileServer = tileServer;
+        setPreferredSize(new Dimension(PANEL_WIDTH, PANEL_HEIGHT));
+        setToolTipText("Click for tile load timings");
+        addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                showLoadMetrics();
+            }
+        });
         timer.start();
     }
 
+    private void showLoadMetrics() {
+        JDialog dialog = new JDialog(SwingUtilities.getWindowAncestor(this), "Tile Load Timings");
+        dialog.setDefaultCloseOperation(JDialog.DISPOSE_ON_CLOSE);
+        dialog.add(new TileLoadMetricsPanel(TileLoadMetrics.getInstance()));
+        dialog.pack();
+        dialog.setLocationRelativeTo(this);
+        dialog.setVisible(true);
+    }
+
     @Override
     public void actionPerformed(ActionEvent e) {
-        if (VolumeCache.useVolumeCache()) {
-            if (!isVisible()) {
-                setVisible(true);
-            }
+        if (VolumeCache.useVolumeCache() && TileStackCacheController.getInstance() != null) {
             cachingMap = TileStackCacheController.getInstance().getCachingMap();
-            repaint();
         } else {
-            if (isVisible()) {
-                setVisible(false);
-            }
+            cachingMap = null;
         }
+        repaint();
     }
 
     private int[] getStatusBoxCoordinates(int[] statusArr) {
@@ -63,7 +86,7 @@ public class TileStackCacheStatusPanel extends JPanel implements ActionListener
 
         int y1=zLevelCenter-y;
         int x1=zLevelCenter+x;
-        y = (PANEL_HEIGHT - (Z_OFFSET*3))/2 + (z+1)*Z_OFFSET + y1*(BOX_YSIZE+BOX_YBORDER);
+        y = (MAP_HEIGHT - (Z_OFFSET*3))/2 + (z+1)*Z_OFFSET + y1*(BOX_YSIZE+BOX_YBORDER);
         x = (PANEL_WIDTH - (BOX_YSIZE+BOX_XBORDER)*7)/2 + x1*(BOX_XSIZE+BOX_XBORDER);
 
         return new int[] { x, y };
@@ -71,20 +94,45 @@ public class TileStackCacheStatusPanel extends JPanel implements ActionListener
 
     @Override
     public void paint(Graphics graphics) {
-        if (cachingMap==null)
-            return;
         BufferedImage image=new BufferedImage(PANEL_WIDTH, PANEL_HEIGHT, BufferedImage.TYPE_INT_RGB);
         Graphics2D g = image.createGraphics();
         g.setBackground(Color.BLACK);
 
-        for (int[] statusArr : cachingMap) {
-            int[] xy = getStatusBoxCoordinates(statusArr);
-            g.setColor(statusColors[statusArr[3]]);
-            g.fillRect(xy[0], xy[1], BOX_XSIZE, BOX_YSIZE);
+        if (cachingMap!=null) {
+            for (int[] statusArr : cachingMap) {
+                int[] xy = getStatusBoxCoordinates(statusArr);
+                g.setColor(statusColors[statusArr[3]]);
+                g.fillRect(xy[0], xy[1], BOX_XSIZE, BOX_YSIZE);
+            }
         }
 
+        paintTextureCacheStats(g);
+
         graphics.drawImage(image, 0, 0, this);
     }
 
+    private void paintTextureCacheStats(Graphics2D g) {
+        TextureCache textureCache = tileServer.getTextureCache();
+        if (textureCache==null)
+            return;
+        long hits = textureCache.getHitCount();
+        long lookups = hits + textureCache.getMissCount();
+        int hitPercent = lookups > 0 ? (int) (100 * hits / lookups) : 0;
+        g.setColor(Color.LIGHT_GRAY);
+        g.setFont(new Font(Font.SANS_SERIF, Font.PLAIN, 9));
+        int y = MAP_HEIGHT + 10;
+        g.drawString("tex " + textureCache.getByteSize()/MB + "/" + textureCache.getMaxBytes()/MB + " MB", 2, y);
+        g.drawString("hit " + hitPercent + "% of " + lookups, 2, y + 11);
+        g.drawString("evicted " + textureCache.getEvictionCount(), 2, y + 22);
+        TileLoadScheduler loadScheduler = tileServer.getLoadScheduler();
+        g.drawString("queued " + loadScheduler.getQueueDepth() + " (" + loadScheduler.getRunningCount() + ")", 2, y + 33);
+        g.drawString(String.format("load %.0f/%.0f ms",
+                loadScheduler.getLatencyPercentileMillis(50),
+                loadScheduler.getLatencyPercentileMillis(95)), 2, y + 44);
+        g.drawString(String.format("fetch %.0f/%.0f ms",
+                TileLoadMetrics.getInstance().getFetchDecodeP50Millis(),
+                TileLoadMetrics.getInstance().getFetchDecodeP95Millis()), 2, y + 55);
+    }
+
 }
 
@@ -1,5 +1,7 @@
 package org.janelia.workstation.controller.tileimagery;
 
+import java.nio.ByteBuffer;
+
 import javax.media.opengl.GL2;
 
 /*
@@ -29,6 +31,10 @@ public class TileTexture {
     private TextureData2dGL textureData;
     private PyramidTexture texture = null;
     private AbstractTextureLoadAdapter loadAdapter;
+    // Size of the off-heap pixel storage owned by the TextureCache, if any
+    private int pixelByteCount = 0;
+    // Streams the pixels to OpenGL within a per-frame budget, if set
+    private TextureUploader uploader;
 
     // time stamps for performance measurement
     private long constructTime = System.nanoTime();
@@ -93,6 +99,45 @@ public class TileTexture {
         texture = null;
     }
 
+    /**
+     * Copy pixel data into storage from the texture cache memory pool, so that
+     * cached textures do not occupy the Java heap.
+     */
+    synchronized void moveToOffHeap(TextureMemoryPool memoryPool) {
+        if (pixelByteCount > 0) {
+            return; // already moved
+        }
+        if (textureData == null || textureData.getPixels() == null) {
+            return;
+        }
+        ByteBuffer source = textureData.getPixels().duplicate();
+        source.clear();
+        ByteBuffer target = memoryPool.allocate(source.capacity());
+        target.put(source);
+        target.rewind();
+        textureData.setPixels(target);
+        pixelByteCount = target.capacity();
+    }
+
+    /**
+     * Release texture memory after eviction from the texture cache.
+     *
+     * @return the off-heap pixel storage, for recycling, or null if the pixels were on the heap
+     */
+    synchronized ByteBuffer releaseOffHeapMemory() {
+        ByteBuffer pixels = null;
+        if (pixelByteCount > 0 && textureData != null) {
+            pixels = textureData.getPixels();
+        }
+        pixelByteCount = 0;
+        releaseMemory();
+        return pixels;
+    }
+
+    int getPixelByteCount() {
+        return pixelByteCount;
+    }
+
     public void setFirstDisplayTime(long firstDisplayTime) {
         this.firstDisplayTime = firstDisplayTime;
     }
@@ -133,6 +178,10 @@ public class TileTexture {
         return textureData;
     }
 
+    void setTextureData(TextureData2dGL textureData) {
+        this.textureData = textureData;
+    }
+
     public void init(GL2 gl) {
         if (textureData == null) {
             return;
@@ -143,9 +192,18 @@ public class TileTexture {
         if (getLoadStatus().ordinal() >= LoadStatus.GL_LOADED.ordinal()) {
             return; // already initialized
         }		// TODO what if there is already a texture allocated...
-        texture = textureData.createTexture(gl);
+        long startTime = System.nanoTime();
+        if (uploader != null) {
+            texture = uploader.upload(gl, this);
+            if (texture == null) {
+                return; // over budget; try again next frame
+            }
+        } else {
+            texture = textureData.createTexture(gl);
+        }
         setLoadStatus(LoadStatus.GL_LOADED);
         uploadTextureTime = System.nanoTime();
+        TileLoadMetrics.getInstance().recordUpload(uploadTextureTime - startTime, textureData.getUploadByteCount());
     }
 
     synchronized boolean loadImageToRam() {
@@ -163,6 +221,10 @@ public class TileTexture {
         return true;
     }
 
+    void setUploader(TextureUploader uploader) {
+        this.uploader = uploader;
+    }
+
     public void setIndex(TileIndex index) {
         this.index = index;
     }
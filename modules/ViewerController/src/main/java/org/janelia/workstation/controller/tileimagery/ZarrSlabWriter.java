@@ -0,0 +1,161 @@
+package org.janelia.workstation.controller.tileimagery;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Writes a single scale OME-Zarr image (Zarr v2), with axes c, z, y, x, as
+ * uncompressed chunks, one channel each and as deep as a slab, so that every
+ * slab fills chunks of its own.  Each chunk is written under a temporary
+ * name, forced to disk and then moved into place, so an interrupted export
+ * leaves no partial chunks behind; sync() forces the folders the chunks were
+ * moved into.
+ */
+class ZarrSlabWriter implements OctreeSubvolumeExporter.SlabWriter {
+
+    private final Path arrayFolder;
+    private final int[] size;
+    private final int channelCount;
+    private final int bytesPerIntensity;
+    private final int chunkDepth;
+    private final int chunkWidth;
+    // folders holding chunks moved into place since the last sync()
+    private final Set<Path> unsyncedFolders = new LinkedHashSet<>();
+
+    ZarrSlabWriter(Path folder, int[] size, int channelCount, int bytesPerIntensity,
+            int chunkDepth, int chunkWidth, double[] voxelMicrometers) throws IOException {
+        this.arrayFolder = folder.resolve("0");
+        this.size = size;
+        this.channelCount = channelCount;
+        this.bytesPerIntensity = bytesPerIntensity;
+        this.chunkDepth = chunkDepth;
+        this.chunkWidth = chunkWidth;
+        long chunkBytes = (long) bytesPerIntensity * chunkDepth * chunkWidth * chunkWidth;
+        if (chunkBytes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException(String.format(
+                    "Zarr chunks %d slices deep would take %d bytes each; use a smaller slab depth",
+                    chunkDepth, chunkBytes));
+        }
+        Files.createDirectories(arrayFolder);
+        writeText(folder.resolve(".zgroup"), "{\"zarr_format\": 2}\n");
+        writeText(folder.resolve(".zattrs"), String.format("{\"multiscales\": [{\"version\": \"0.4\", \"axes\": ["
+                + "{\"name\": \"c\", \"type\": \"channel\"}, "
+                + "{\"name\": \"z\", \"type\": \"space\", \"unit\": \"micrometer\"}, "
+                + "{\"name\": \"y\", \"type\": \"space\", \"unit\": \"micrometer\"}, "
+                + "{\"name\": \"x\", \"type\": \"space\", \"unit\": \"micrometer\"}], "
+                + "\"datasets\": [{\"path\": \"0\", \"coordinateTransformations\": "
+                + "[{\"type\": \"scale\", \"scale\": [1.0, %s, %s, %s]}]}]}]}\n",
+                voxelMicrometers[2], voxelMicrometers[1], voxelMicrometers[0]));
+        writeText(arrayFolder.resolve(".zarray"), String.format("{\"zarr_format\": 2, "
+                + "\"shape\": [%d, %d, %d, %d], \"chunks\": [1, %d, %d, %d], "
+                + "\"dtype\": \"%s\", \"compressor\": null, \"fill_value\": 0, \"filters\": null, "
+                + "\"order\": \"C\", \"dimension_separator\": \"/\"}\n",
+                channelCount, size[2], size[1], size[0], chunkDepth, chunkWidth, chunkWidth,
+                bytesPerIntensity == 2 ? "<u2" : "|u1"));
+        unsyncedFolders.add(folder);
+        unsyncedFolders.add(arrayFolder);
+    }
+
+    /**
+     * @param slab channel fastest, then x, y, z, little endian; z0 must
+     * start a chunk
+     */
+    @Override
+    public void writeSlab(int z0, int depth, ByteBuffer slab) throws IOException {
+        ByteBuffer source = slab.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        ShortBuffer sourceShorts = source.asShortBuffer();
+        // edge chunks are stored full size, as Zarr expects
+        ByteBuffer chunk = ByteBuffer.allocate(bytesPerIntensity * chunkDepth * chunkWidth * chunkWidth)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        ShortBuffer chunkShorts = chunk.asShortBuffer();
+        for (int c = 0; c < channelCount; c++) {
+            for (int y0 = 0; y0 < size[1]; y0 += chunkWidth) {
+                for (int x0 = 0; x0 < size[0]; x0 += chunkWidth) {
+                    chunk.clear();
+                    Arrays.fill(chunk.array(), (byte) 0);
+                    int rows = Math.min(chunkWidth, size[1] - y0);
+                    int columns = Math.min(chunkWidth, size[0] - x0);
+                    for (int z = 0; z < depth; z++) {
+                        for (int y = 0; y < rows; y++) {
+                            int from = channelCount * (x0 + size[0] * (y0 + y + size[1] * z)) + c;
+                            int to = chunkWidth * (y + chunkWidth * z);
+                            for (int x = 0; x < columns; x++, from += channelCount, to++) {
+                                if (bytesPerIntensity == 2) {
+                                    chunkShorts.put(to, sourceShorts.get(from));
+                                } else {
+                                    chunk.put(to, source.get(from));
+                                }
+                            }
+                        }
+                    }
+                    Path chunkPath = arrayFolder.resolve(c + "/" + (z0 / chunkDepth) + "/"
+                            + (y0 / chunkWidth) + "/" + (x0 / chunkWidth));
+                    Files.createDirectories(chunkPath.getParent());
+                    Path partPath = chunkPath.resolveSibling(chunkPath.getFileName() + ".part");
+                    try (FileChannel partChannel = FileChannel.open(partPath, StandardOpenOption.CREATE,
+                            StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                        chunk.clear();
+                        while (chunk.hasRemaining()) {
+                            partChannel.write(chunk);
+                        }
+                        partChannel.force(false);
+                    }
+                    Files.move(partPath, chunkPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                    synchronized (unsyncedFolders) {
+                        unsyncedFolders.add(chunkPath.getParent());
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Forces the folders of the chunks written so far, so their new entries
+     * survive a crash.  Holds the lock throughout, so a sync() that finds
+     * nothing left to do returns only after the one that took its folders
+     * has forced them.
+     */
+    @Override
+    public void sync() throws IOException {
+        synchronized (unsyncedFolders) {
+            for (Path folder : unsyncedFolders) {
+                forceFolder(folder);
+            }
+            unsyncedFolders.clear();
+        }
+    }
+
+    @Override
+    public void close() {
+    }
+
+    private static void forceFolder(Path folder) throws IOException {
+        FileChannel folderChannel;
+        try {
+            folderChannel = FileChannel.open(folder, StandardOpenOption.READ);
+        } catch (IOException e) {
+            // folders can't be opened on Windows, where the moves are durable once the files are
+            return;
+        }
+        try {
+            folderChannel.force(true);
+        } finally {
+            folderChannel.close();
+        }
+    }
+
+    private static void writeText(Path path, String text) throws IOException {
+        Files.write(path, text.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,180 @@
+package org.janelia.workstation.controller.tools;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.janelia.model.domain.tiledMicroscope.TmNeuronMetadata;
+import org.janelia.workstation.controller.access.PartialCreateException;
+import org.janelia.workstation.swc.SWCData;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Imports a set of SWC files as neurons.  The files are parsed in parallel, each is built into a
+ * complete neuron locally, and the neurons are created on the server in batches, rather than
+ * with a blocking create and then a save for every file.
+ *
+ * Memory and server load are bounded: only a few parsed files wait to be built, and the parser
+ * blocks while the maximum number of batches are being created.  The first failure stops the
+ * import; batches already sent are still finished and reported to the listener, as are the
+ * neurons created from a batch that only partly failed.
+ */
+public class BulkNeuronImporter {
+
+    private static final Logger log = LoggerFactory.getLogger(BulkNeuronImporter.class);
+
+    /**
+     * Builds a complete neuron, with its ID, annotations and notes, from a parsed file.
+     */
+    public interface NeuronBuilder {
+        TmNeuronMetadata build(File swcFile, SWCData swcData) throws Exception;
+    }
+
+    /**
+     * Creates a batch of neurons on the server, returning the created neurons.  A creator that
+     * manages only part of a batch throws a PartialCreateException holding the ones it created.
+     */
+    public interface NeuronCreator {
+        List<TmNeuronMetadata> create(List<TmNeuronMetadata> neurons) throws Exception;
+    }
+
+    /**
+     * Called from creator threads as each batch is created.
+     */
+    public interface Listener {
+        void created(List<TmNeuronMetadata> neurons, int createdCount, int totalCount);
+    }
+
+    private final NeuronBuilder builder;
+    private final NeuronCreator creator;
+    private final int parseThreads;
+    private final int batchSize;
+    private final int maxBatchesInFlight;
+
+    public BulkNeuronImporter(NeuronBuilder builder, NeuronCreator creator,
+                              int parseThreads, int batchSize, int maxBatchesInFlight) {
+        this.builder = builder;
+        this.creator = creator;
+        this.parseThreads = Math.max(1, parseThreads);
+        this.batchSize = Math.max(1, batchSize);
+        this.maxBatchesInFlight = Math.max(1, maxBatchesInFlight);
+    }
+
+    /**
+     * @return the number of neurons created
+     */
+    public int importFiles(List<File> swcFiles, Listener listener) throws Exception {
+        Import anImport = new Import(swcFiles.size(), listener);
+        try {
+            Exception failure = null;
+            try {
+                SWCData.readInParallel(swcFiles, parseThreads, 2 * parseThreads,
+                        (swcFile, swcData) -> anImport.add(builder.build(swcFile, swcData)));
+                anImport.flush();
+            } catch (Exception e) {
+                failure = e;
+            }
+            // batches already sent are always seen through, so every neuron
+            //  created on the server also reaches the listener
+            try {
+                anImport.await();
+            } catch (Exception e) {
+                if (failure == null) {
+                    failure = e;
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        } finally {
+            anImport.creatorExecutor.shutdownNow();
+        }
+        log.info("Imported {} neurons from {} files", anImport.createdCount.get(), swcFiles.size());
+        return anImport.createdCount.get();
+    }
+
+    /**
+     * State of one call to importFiles
+     */
+    private class Import {
+        private final ExecutorService creatorExecutor = Executors.newFixedThreadPool(maxBatchesInFlight,
+                new ThreadFactoryBuilder()
+                        .setNameFormat("NeuronCreator-%d")
+                        .setDaemon(true)
+                        .build());
+        private final Semaphore batchesInFlight = new Semaphore(maxBatchesInFlight);
+        private final AtomicInteger createdCount = new AtomicInteger();
+        private final AtomicReference<Exception> failure = new AtomicReference<>();
+        private final List<Future<?>> creations = new ArrayList<>();
+        private final int totalCount;
+        private final Listener listener;
+        private List<TmNeuronMetadata> batch = new ArrayList<>();
+
+        Import(int totalCount, Listener listener) {
+            this.totalCount = totalCount;
+            this.listener = listener;
+        }
+
+        void add(TmNeuronMetadata neuron) throws Exception {
+            batch.add(neuron);
+            if (batch.size() >= batchSize) {
+                flush();
+            }
+        }
+
+        void flush() throws Exception {
+            if (batch.isEmpty()) {
+                return;
+            }
+            List<TmNeuronMetadata> neurons = batch;
+            batch = new ArrayList<>();
+            // wait for a slot, so parsing doesn't run ahead of the server
+            batchesInFlight.acquire();
+            if (failure.get() != null) {
+                batchesInFlight.release();
+                throw failure.get();
+            }
+            creations.add(creatorExecutor.submit(() -> {
+                try {
+                    List<TmNeuronMetadata> created = creator.create(neurons);
+                    listener.created(created, createdCount.addAndGet(created.size()), totalCount);
+                    return null;
+                } catch (PartialCreateException e) {
+                    // the neurons that were created exist on the server, so they're reported too
+                    List<TmNeuronMetadata> created = e.getCreated();
+                    if (!created.isEmpty()) {
+                        listener.created(created, createdCount.addAndGet(created.size()), totalCount);
+                    }
+                    failure.compareAndSet(null, e);
+                    throw e;
+                } catch (Exception e) {
+                    failure.compareAndSet(null, e);
+                    throw e;
+                } finally {
+                    batchesInFlight.release();
+                }
+            }));
+        }
+
+        void await() throws Exception {
+            for (Future<?> creation : creations) {
+                try {
+                    creation.get();
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    throw cause instanceof Exception ? (Exception) cause : e;
+                }
+            }
+        }
+    }
+
+}
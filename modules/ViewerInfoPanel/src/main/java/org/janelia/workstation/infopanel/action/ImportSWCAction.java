@@ -87,17 +87,22 @@ public class ImportSWCAction extends AbstractAction {
 
                         @Override
                         protected void doStuff() throws Exception {
-                            int imported = 0;
-                            int index = 0;
-                            int total = swcFiles.size();
                             TmWorkspace workspace = TmModelManager.getInstance().getCurrentWorkspace();
+                            List<File> existingFiles = new ArrayList<>();
                             for (File swcFile : swcFiles) {
-                                setStatus(swcFile.getName());
                                 if (swcFile.exists()) {
-                                    annotationModel.importBulkSWCData(swcFile, workspace);
-                                    imported++;
+                                    existingFiles.add(swcFile);
                                 }
-                                setProgress(index++, total);
+                            }
+                            int imported;
+                            if (existingFiles.size() == 1) {
+                                File swcFile = existingFiles.get(0);
+                                setStatus(swcFile.getName());
+                                annotationModel.importBulkSWCData(swcFile, workspace);
+                                imported = 1;
+                            } else {
+                                // files are parsed in parallel, and neurons created in batches
+                                imported = annotationModel.importBulkSWCData(existingFiles, workspace, this);
                             }
                             setStatus("Successfully imported "+imported+" files");
                         }